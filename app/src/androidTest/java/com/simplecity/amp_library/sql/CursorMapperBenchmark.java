@@ -0,0 +1,202 @@
+package com.simplecity.amp_library.sql;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Debug;
+import android.provider.MediaStore;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import com.simplecity.amp_library.model.Song;
+import io.reactivex.functions.Function;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Compares mapping a synthetic 50k song library the old way (column indexes looked up for every row, into an unsized list)
+ * against {@link Song#mapper()} (column indexes resolved once per cursor, repeated strings shared, into a pre-sized list).
+ * <p>
+ * The timings & allocations are logged under {@link #TAG}, e.g. {@code adb logcat -s CursorMapperBenchmark}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CursorMapperBenchmark {
+
+    private static final String TAG = "CursorMapperBenchmark";
+
+    private static final int SONG_COUNT = 50_000;
+
+    private static final int SONGS_PER_ALBUM = 12;
+
+    private static final int ALBUMS_PER_ARTIST = 4;
+
+    private static final int WARMUP_RUNS = 2;
+
+    private static final int RUNS = 5;
+
+    @Test
+    public void mapSongs() throws Exception {
+        Cursor cursor = createCursor();
+        try {
+            Function<Cursor, Song> perRowColumns = Song::new;
+
+            for (int i = 0; i < WARMUP_RUNS; i++) {
+                mapUnsized(cursor, perRowColumns);
+                mapPresized(cursor, Song.mapper());
+            }
+
+            Result before = measure("Per row column lookup", cursor, () -> mapUnsized(cursor, perRowColumns));
+            Result after = measure("CursorMapper", cursor, () -> mapPresized(cursor, Song.mapper()));
+
+            Log.i(TAG, String.format("Speedup: %.2fx, allocated bytes: %.2fx",
+                    before.millis / (double) Math.max(1, after.millis),
+                    before.bytes / (double) Math.max(1, after.bytes)));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void mappersAgree() throws Exception {
+        Cursor cursor = createCursor();
+        try {
+            List<Song> before = mapUnsized(cursor, Song::new);
+            List<Song> after = mapPresized(cursor, Song.mapper());
+
+            assertEquals(before.size(), after.size());
+            for (int i = 0; i < before.size(); i++) {
+                assertEquals(before.get(i), after.get(i));
+                assertEquals(before.get(i).name, after.get(i).name);
+                assertEquals(before.get(i).artistName, after.get(i).artistName);
+                assertEquals(before.get(i).albumName, after.get(i).albumName);
+                assertEquals(before.get(i).albumArtistName, after.get(i).albumArtistName);
+                assertEquals(before.get(i).path, after.get(i).path);
+                assertEquals(before.get(i).track, after.get(i).track);
+                assertEquals(before.get(i).discNumber, after.get(i).discNumber);
+            }
+
+            // Songs of the same album share a single instance of its name
+            assertSame(after.get(0).albumName, after.get(1).albumName);
+            assertSame(after.get(0).artistName, after.get(SONGS_PER_ALBUM).artistName);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static Result measure(String name, Cursor cursor, Run run) throws Exception {
+        long millis = 0;
+        long bytes = 0;
+        for (int i = 0; i < RUNS; i++) {
+            Runtime.getRuntime().gc();
+            //noinspection deprecation
+            Debug.startAllocCounting();
+            //noinspection deprecation
+            Debug.resetThreadAllocSize();
+            long start = System.nanoTime();
+            run.run();
+            millis += (System.nanoTime() - start) / 1_000_000;
+            //noinspection deprecation
+            bytes += Debug.getThreadAllocSize();
+            //noinspection deprecation
+            Debug.stopAllocCounting();
+        }
+        Result result = new Result(millis / RUNS, bytes / RUNS);
+        Log.i(TAG, String.format("%s: %s rows in %sms, %s bytes allocated", name, cursor.getCount(), result.millis, result.bytes));
+        return result;
+    }
+
+    /**
+     * As songs were mapped before {@link CursorMapper}.
+     */
+    private static List<Song> mapUnsized(Cursor cursor, Function<Cursor, Song> mapper) throws Exception {
+        List<Song> songs = new ArrayList<>();
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            songs.add(mapper.apply(cursor));
+        }
+        return songs;
+    }
+
+    /**
+     * As {@link SqlUtils#createQuery(android.content.Context, Function, com.simplecity.amp_library.model.Query)} maps songs.
+     */
+    private static List<Song> mapPresized(Cursor cursor, Function<Cursor, Song> mapper) throws Exception {
+        List<Song> songs = new ArrayList<>(cursor.getCount());
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            songs.add(mapper.apply(cursor));
+        }
+        return songs;
+    }
+
+    /**
+     * @return a cursor over {@link #SONG_COUNT} songs, with {@link Song#getProjection()}'s columns. Each album has
+     * {@link #SONGS_PER_ALBUM} songs, and each artist {@link #ALBUMS_PER_ARTIST} albums.
+     */
+    private static Cursor createCursor() {
+        String[] projection = Song.getProjection();
+        MatrixCursor cursor = new MatrixCursor(projection, SONG_COUNT);
+        for (int i = 0; i < SONG_COUNT; i++) {
+            int album = i / SONGS_PER_ALBUM;
+            int artist = album / ALBUMS_PER_ARTIST;
+            MatrixCursor.RowBuilder row = cursor.newRow();
+            for (String column : projection) {
+                row.add(getValue(column, i, album, artist));
+            }
+        }
+        return cursor;
+    }
+
+    private static Object getValue(String column, int song, int album, int artist) {
+        switch (column) {
+            case MediaStore.Audio.Media._ID:
+                return (long) song + 1;
+            case MediaStore.Audio.Media.DATA:
+                return "/storage/emulated/0/Music/Artist " + artist + "/Album " + album + "/" + song + ".mp3";
+            case MediaStore.Audio.Media.TITLE:
+                return "Song " + song;
+            case MediaStore.Audio.Media.ARTIST_ID:
+                return (long) artist + 1;
+            case MediaStore.Audio.Media.ARTIST:
+                // Built for every row, so each row has its own instance, as a real cursor's rows do
+                return "Artist " + artist;
+            case MediaStore.Audio.Media.ALBUM_ID:
+                return (long) album + 1;
+            case MediaStore.Audio.Media.ALBUM:
+                return "Album " + album;
+            case MediaStore.Audio.Media.DURATION:
+                return 180_000L + song % 120_000;
+            case MediaStore.Audio.Media.YEAR:
+                return 1970 + album % 50;
+            case MediaStore.Audio.Media.TRACK:
+                return 1000 + song % SONGS_PER_ALBUM + 1;
+            case MediaStore.Audio.Media.DATE_ADDED:
+                return 1_500_000_000 + song;
+            case MediaStore.Audio.Media.IS_PODCAST:
+                return 0;
+            case MediaStore.Audio.Media.BOOKMARK:
+                return 0L;
+            case "album_artist":
+                return "Artist " + artist;
+            default:
+                return null;
+        }
+    }
+
+    private interface Run {
+        void run() throws Exception;
+    }
+
+    private static final class Result {
+        final long millis;
+        final long bytes;
+
+        Result(long millis, long bytes) {
+            this.millis = millis;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -332,7 +332,7 @@ public class ShuttleApplication extends DaggerApplication {
         // If the maximum number of cursors is created (based on memory/processor speed or god knows what else), then the device
         // will start throwing CursorWindow exceptions, and the queries will slow down massively. This ends up making all queries slow.
         // This task isn't time critical, so we can afford to let it just casually do its job.
-        return SqlBriteUtils.createSingleList(this, Genre::new, Genre.getQuery())
+        return SqlBriteUtils.createSingleList(this, Genre.mapper(), Genre.getQuery())
                 .flatMapObservable(Observable::fromIterable)
                 .concatMap(genre -> Observable.just(genre).delay(50, TimeUnit.MILLISECONDS))
                 .flatMapSingle(genre -> GenreExtKt.getSongsObservable(genre, getApplicationContext())
@@ -4,7 +4,6 @@ import com.jakewharton.rxrelay2.BehaviorRelay
 import com.simplecity.amp_library.data.Repository.AlbumsRepository
 import com.simplecity.amp_library.model.Album
 import com.simplecity.amp_library.utils.LogUtils
-import com.simplecity.amp_library.utils.Operators
 import io.reactivex.Observable
 import io.reactivex.disposables.Disposable
 import io.reactivex.functions.Consumer
@@ -20,8 +19,8 @@ class AlbumsRepository @Inject constructor(private val songsRepository: Reposito
 
     override fun getAlbums(): Observable<List<Album>> {
         if (albumsSubscription == null || albumsSubscription?.isDisposed == true) {
-            albumsSubscription = songsRepository.getSongs()
-                .flatMap { songs -> Observable.just(Operators.songsToAlbums(songs)) }
+            albumsSubscription = songsRepository.getLibrarySnapshot()
+                .map { snapshot -> snapshot.albums }
                 .subscribe(
                     albumsRelay,
                     Consumer { error -> LogUtils.logException(PlaylistsRepository.TAG, "Failed to get albums", error) }
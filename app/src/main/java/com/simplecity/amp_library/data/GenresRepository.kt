@@ -20,7 +20,7 @@ class GenresRepository @Inject constructor(private val application: ShuttleAppli
 
     override fun getGenres(): Observable<List<Genre>> {
         if (genresSubscription == null || genresSubscription?.isDisposed == true) {
-            genresSubscription = SqlBriteUtils.createObservableList<Genre>(application, { Genre(it) }, Genre.getQuery())
+            genresSubscription = SqlBriteUtils.createObservableList<Genre>(application, Genre.mapper(), Genre.getQuery())
                 .subscribe(
                     genresRelay,
                     Consumer { error -> LogUtils.logException(PlaylistsRepository.TAG, "Failed to get genres", error) }
@@ -0,0 +1,245 @@
+package com.simplecity.amp_library.data
+
+import android.content.Context
+import android.support.annotation.WorkerThread
+import android.util.Log
+import com.simplecity.amp_library.model.Song
+import com.simplecity.amp_library.utils.LogUtils
+import io.reactivex.Maybe
+import io.reactivex.schedulers.Schedulers
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.util.zip.CRC32
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Persists the most recent list of [Song]s to a compact binary file, so the library can be served at startup before
+ * MediaStore has been queried.
+ *
+ * File layout (big-endian):
+ *
+ * header:  magic (int), version (int), payload length (int), CRC32 of payload (int)
+ * payload: string count (int), strings (length-prefixed UTF-8), song count (int), songs
+ *
+ * Each song stores its primitive fields inline, and its strings as indexes into the shared string table, so repeated
+ * artist, album and folder names are written once.
+ *
+ * The file is memory-mapped on read. Any mismatch in magic, version, length or checksum discards the file.
+ */
+@Singleton
+class LibraryCache @Inject constructor(context: Context) {
+
+    private val file = File(context.applicationContext.cacheDir, FILE_NAME)
+
+    /**
+     * Returns the cached songs, or completes empty if there is no valid cache.
+     */
+    fun read(): Maybe<List<Song>> {
+        return Maybe.fromCallable<List<Song>> { readSongs() }
+            .subscribeOn(Schedulers.io())
+    }
+
+    @WorkerThread
+    @Synchronized
+    fun readSongs(): List<Song>? {
+        if (!file.exists()) {
+            return null
+        }
+
+        val time = System.currentTimeMillis()
+
+        return try {
+            RandomAccessFile(file, "r").use { randomAccessFile ->
+                val channel = randomAccessFile.channel
+                if (channel.size() < HEADER_SIZE) {
+                    throw IOException("Truncated header")
+                }
+                val buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+
+                if (buffer.int != MAGIC) throw IOException("Bad magic")
+                if (buffer.int != VERSION) throw IOException("Unsupported version")
+                val payloadLength = buffer.int
+                val checksum = buffer.int
+                if (payloadLength != buffer.remaining()) throw IOException("Bad payload length")
+                if (checksum(buffer.duplicate()) != checksum) throw IOException("Bad checksum")
+
+                val songs = readPayload(buffer)
+
+                if (LOGGING_ENABLED) {
+                    Log.d(TAG, "Read ${songs.size} songs in ${System.currentTimeMillis() - time}ms")
+                }
+
+                songs
+            }
+        } catch (e: Exception) {
+            LogUtils.logException(TAG, "Failed to read library cache", e)
+            file.delete()
+            null
+        }
+    }
+
+    @WorkerThread
+    @Synchronized
+    fun write(songs: List<Song>) {
+        val time = System.currentTimeMillis()
+
+        try {
+            val payload = writePayload(songs)
+
+            val crc = CRC32()
+            crc.update(payload)
+
+            val tempFile = File(file.parentFile, "$FILE_NAME.tmp")
+            DataOutputStream(FileOutputStream(tempFile).buffered()).use { output ->
+                output.writeInt(MAGIC)
+                output.writeInt(VERSION)
+                output.writeInt(payload.size)
+                output.writeInt(crc.value.toInt())
+                output.write(payload)
+            }
+            if (!tempFile.renameTo(file)) {
+                tempFile.delete()
+                throw IOException("Failed to rename ${tempFile.name}")
+            }
+
+            if (LOGGING_ENABLED) {
+                Log.d(TAG, "Wrote ${songs.size} songs in ${System.currentTimeMillis() - time}ms")
+            }
+        } catch (e: IOException) {
+            LogUtils.logException(TAG, "Failed to write library cache", e)
+        }
+    }
+
+    fun clear() {
+        file.delete()
+    }
+
+    private fun writePayload(songs: List<Song>): ByteArray {
+        val strings = LinkedHashMap<String, Int>()
+        fun indexOf(string: String?): Int {
+            if (string == null) return NULL_STRING
+            return strings.getOrPut(string) { strings.size }
+        }
+
+        val songBytes = ByteArrayOutputStream(songs.size * SONG_SIZE_ESTIMATE)
+        DataOutputStream(songBytes).use { output ->
+            output.writeInt(songs.size)
+            for (song in songs) {
+                output.writeLong(song.id)
+                output.writeInt(indexOf(song.name))
+                output.writeLong(song.artistId)
+                output.writeInt(indexOf(song.artistName))
+                output.writeLong(song.albumId)
+                output.writeInt(indexOf(song.albumName))
+                output.writeInt(indexOf(song.albumArtistName))
+                output.writeLong(song.duration)
+                output.writeInt(song.year)
+                output.writeInt(song.track)
+                output.writeInt(song.discNumber)
+                output.writeInt(song.dateAdded)
+                output.writeInt(indexOf(song.path))
+                output.writeBoolean(song.isPodcast)
+                output.writeLong(song.bookMark)
+            }
+        }
+
+        val payload = ByteArrayOutputStream(songBytes.size() + strings.size * STRING_SIZE_ESTIMATE)
+        DataOutputStream(payload).use { output ->
+            output.writeInt(strings.size)
+            for (string in strings.keys) {
+                val bytes = string.toByteArray(Charsets.UTF_8)
+                output.writeInt(bytes.size)
+                output.write(bytes)
+            }
+            songBytes.writeTo(output)
+        }
+        return payload.toByteArray()
+    }
+
+    private fun readPayload(buffer: ByteBuffer): List<Song> {
+        val stringCount = buffer.int
+        val strings = arrayOfNulls<String>(stringCount)
+        var scratch = ByteArray(256)
+        for (i in 0 until stringCount) {
+            val length = buffer.int
+            if (length > scratch.size) {
+                scratch = ByteArray(length)
+            }
+            buffer.get(scratch, 0, length)
+            strings[i] = String(scratch, 0, length, Charsets.UTF_8)
+        }
+
+        fun stringAt(index: Int): String? {
+            return if (index == NULL_STRING) null else strings[index]
+        }
+
+        val songCount = buffer.int
+        val songs = ArrayList<Song>(songCount)
+        for (i in 0 until songCount) {
+            val song = Song()
+            song.id = buffer.long
+            song.name = stringAt(buffer.int)
+            song.artistId = buffer.long
+            song.artistName = stringAt(buffer.int)
+            song.albumId = buffer.long
+            song.albumName = stringAt(buffer.int)
+            song.albumArtistName = stringAt(buffer.int)
+            song.duration = buffer.long
+            song.year = buffer.int
+            song.track = buffer.int
+            song.discNumber = buffer.int
+            song.dateAdded = buffer.int
+            song.path = stringAt(buffer.int)
+            song.isPodcast = buffer.get().toInt() != 0
+            song.bookMark = buffer.long
+            songs.add(song)
+        }
+        return songs
+    }
+
+    /**
+     * Computes the CRC32 of the remaining bytes of [buffer], copying through a small scratch array rather than the whole payload.
+     */
+    private fun checksum(buffer: ByteBuffer): Int {
+        val crc = CRC32()
+        val scratch = ByteArray(CHECKSUM_CHUNK_SIZE)
+        while (buffer.hasRemaining()) {
+            val length = Math.min(scratch.size, buffer.remaining())
+            buffer.get(scratch, 0, length)
+            crc.update(scratch, 0, length)
+        }
+        return crc.value.toInt()
+    }
+
+    companion object {
+        const val TAG = "LibraryCache"
+
+        private const val LOGGING_ENABLED = false
+
+        private const val FILE_NAME = "library.bin"
+
+        private const val MAGIC = 0x53484c42 // "SHLB"
+
+        /**
+         * Increment when the layout, or the set of persisted [Song] fields, changes.
+         */
+        private const val VERSION = 1
+
+        private const val HEADER_SIZE = 16
+
+        private const val NULL_STRING = -1
+
+        private const val SONG_SIZE_ESTIMATE = 80
+
+        private const val STRING_SIZE_ESTIMATE = 24
+
+        private const val CHECKSUM_CHUNK_SIZE = 64 * 1024
+    }
+}
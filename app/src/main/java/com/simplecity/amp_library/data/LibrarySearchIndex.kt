@@ -0,0 +1,57 @@
+package com.simplecity.amp_library.data
+
+import com.jakewharton.rxrelay2.BehaviorRelay
+import com.simplecity.amp_library.model.Album
+import com.simplecity.amp_library.model.AlbumArtist
+import com.simplecity.amp_library.model.Song
+import com.simplecity.amp_library.utils.LogUtils
+import io.reactivex.Observable
+import io.reactivex.disposables.Disposable
+import io.reactivex.functions.Consumer
+import io.reactivex.schedulers.Schedulers
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Holds [SearchIndex]es over song, album and album-artist names.
+ *
+ * The indexes are built from the first [LibrarySnapshot], and updated in place from each subsequent one, so a search only
+ * pays for a lookup, and a library change only pays for the items which were added, removed or renamed.
+ */
+@Singleton
+class LibrarySearchIndex @Inject constructor(private val songsRepository: Repository.SongsRepository) {
+
+    val songs = SearchIndex<Song>({ song -> song.id }, { song -> song.name })
+
+    val albums = SearchIndex<Album>({ album -> album.id }, { album -> album.name })
+
+    val albumArtists = SearchIndex<AlbumArtist>({ albumArtist -> albumArtist.name }, { albumArtist -> albumArtist.name })
+
+    private var indexSubscription: Disposable? = null
+    private val indexRelay = BehaviorRelay.create<LibrarySearchIndex>()
+
+    /**
+     * Emits this index once it reflects the current library, and again after each library change.
+     */
+    fun getIndex(): Observable<LibrarySearchIndex> {
+        if (indexSubscription == null || indexSubscription?.isDisposed == true) {
+            indexSubscription = songsRepository.getLibrarySnapshot()
+                .observeOn(Schedulers.io())
+                .map { snapshot ->
+                    songs.update(snapshot.songs)
+                    albums.update(snapshot.albums)
+                    albumArtists.update(snapshot.albumArtists)
+                    this
+                }
+                .subscribe(
+                    indexRelay,
+                    Consumer { error -> LogUtils.logException(TAG, "Failed to update search index", error) }
+                )
+        }
+        return indexRelay.subscribeOn(Schedulers.io())
+    }
+
+    companion object {
+        const val TAG = "LibrarySearchIndex"
+    }
+}
@@ -0,0 +1,108 @@
+package com.simplecity.amp_library.data
+
+import com.simplecity.amp_library.model.Album
+import com.simplecity.amp_library.model.AlbumArtist
+import com.simplecity.amp_library.model.Song
+import com.simplecity.amp_library.utils.Operators
+
+/**
+ * An immutable view of the (filtered) song library, built once per MediaStore emission.
+ *
+ * Alongside the ordered [songs] list, the snapshot holds indexes keyed by song id, album id and parent folder, so that
+ * repository lookups are a hash probe rather than a scan of the whole library. The snapshot's [albums] and
+ * [albumArtists] are aggregated from the same songs in a single pass.
+ *
+ * Lists returned from the lookup functions preserve library order (within each album or folder), and must not be mutated.
+ */
+class LibrarySnapshot(val songs: List<Song>) {
+
+    private val songsById = HashMap<Long, Song>(capacityFor(songs.size))
+
+    private val songsByAlbumId = HashMap<Long, MutableList<Song>>()
+
+    private val songsByFolder = HashMap<String, MutableList<Song>>()
+
+    init {
+        for (song in songs) {
+            // Songs carried over from a previous snapshot already have their keys, so this only costs anything for new rows
+            song.computeSortKeys()
+            songsById[song.id] = song
+            songsByAlbumId.getOrPut(song.albumId) { ArrayList() }.add(song)
+            song.path?.let { path -> songsByFolder.getOrPut(folderKey(path)) { ArrayList() }.add(song) }
+        }
+    }
+
+    private val aggregate by lazy { Operators.aggregate(songs) }
+
+    /**
+     * The [Album]s built from [songs]. Aggregated once, on first access, together with [albumArtists].
+     */
+    val albums: List<Album>
+        get() = aggregate.albums
+
+    /**
+     * The [AlbumArtist]s built from [songs]. Aggregated once, on first access, together with [albums].
+     */
+    val albumArtists: List<AlbumArtist>
+        get() = aggregate.albumArtists
+
+    val size: Int
+        get() = songs.size
+
+    fun getSong(songId: Long): Song? {
+        return songsById[songId]
+    }
+
+    fun getSongsForAlbum(albumId: Long): List<Song> {
+        return songsByAlbumId[albumId] ?: emptyList()
+    }
+
+    /**
+     * Returns the songs belonging to any of the [AlbumArtist]'s albums. Each album is a single lookup.
+     */
+    fun getSongsForAlbumArtist(albumArtist: AlbumArtist): List<Song> {
+        if (albumArtist.albums.size == 1) {
+            return getSongsForAlbum(albumArtist.albums[0].id)
+        }
+        val result = ArrayList<Song>()
+        albumArtist.albums
+            .map { album -> album.id }
+            .distinct()
+            .forEach { albumId -> result.addAll(getSongsForAlbum(albumId)) }
+        return result
+    }
+
+    /**
+     * Returns the songs whose file lives directly inside the given folder.
+     *
+     * @param recursive whether to include the songs in the folder's subfolders. If so, the songs are grouped by folder, in
+     * path order, and each folder's songs are in library order.
+     */
+    fun getSongsInFolder(folderPath: String, recursive: Boolean): List<Song> {
+        val folderKey = folderPath.trimEnd('/')
+        if (!recursive) {
+            return songsByFolder[folderKey] ?: emptyList()
+        }
+        val prefix = "$folderKey/"
+        val result = ArrayList<Song>()
+        songsByFolder.keys
+            .filter { key -> key == folderKey || key.startsWith(prefix) }
+            .sorted()
+            .forEach { key -> result.addAll(songsByFolder.getValue(key)) }
+        return result
+    }
+
+    companion object {
+
+        val EMPTY = LibrarySnapshot(emptyList())
+
+        private fun capacityFor(size: Int): Int {
+            return (size / 0.75f).toInt() + 1
+        }
+
+        private fun folderKey(path: String): String {
+            val index = path.lastIndexOf('/')
+            return if (index > 0) path.substring(0, index) else ""
+        }
+    }
+}
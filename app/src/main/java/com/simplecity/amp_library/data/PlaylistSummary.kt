@@ -0,0 +1,19 @@
+package com.simplecity.amp_library.data
+
+import com.simplecity.amp_library.model.Song
+
+/**
+ * The number of songs in a playlist, and their total duration (millis).
+ */
+data class PlaylistSummary(val songCount: Int, val duration: Long) {
+
+    val isEmpty: Boolean
+        get() = songCount == 0
+
+    companion object {
+
+        fun of(songs: List<Song>): PlaylistSummary {
+            return PlaylistSummary(songs.size, songs.fold(0L) { duration, song -> duration + song.duration })
+        }
+    }
+}
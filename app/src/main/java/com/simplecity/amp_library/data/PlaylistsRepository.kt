@@ -9,6 +9,7 @@ import com.simplecity.amp_library.R
 import com.simplecity.amp_library.data.Repository.SongsRepository
 import com.simplecity.amp_library.model.Playlist
 import com.simplecity.amp_library.model.Playlist.Type
+import com.simplecity.amp_library.model.Query
 import com.simplecity.amp_library.sql.sqlbrite.SqlBriteUtils
 import com.simplecity.amp_library.utils.LogUtils
 import com.simplecity.amp_library.utils.playlists.PlaylistManager
@@ -16,23 +17,36 @@ import io.reactivex.Observable
 import io.reactivex.disposables.Disposable
 import io.reactivex.functions.BiFunction
 import io.reactivex.functions.Consumer
+import io.reactivex.functions.Function
+import io.reactivex.functions.Function3
 import io.reactivex.schedulers.Schedulers
 import javax.inject.Inject
 import javax.inject.Singleton
 
 @Singleton
 class PlaylistsRepository @Inject constructor(
-    private val context: Context
+    private val context: Context,
+    private val smartPlaylistStore: SmartPlaylistStore
 ) : Repository.PlaylistsRepository {
 
     private var playlistsSubscription: Disposable? = null
     private val playlistsRelay = BehaviorRelay.create<List<Playlist>>()
 
+    private var autoPlaylistSummariesSubscription: Disposable? = null
+    private val autoPlaylistSummariesRelay = BehaviorRelay.create<Map<Long, PlaylistSummary>>()
+
+    private var userPlaylistSummariesSubscription: Disposable? = null
+    private val userPlaylistSummariesRelay = BehaviorRelay.create<Map<Long, PlaylistSummary>>()
+
+    // Guarded by memberSummaryRelays
+    private val memberSummaryRelays = HashMap<Long, BehaviorRelay<PlaylistSummary>>()
+    private val memberSummarySubscriptions = HashMap<Long, Disposable>()
+
     override fun getPlaylists(): Observable<List<Playlist>> {
         if (playlistsSubscription == null || playlistsSubscription?.isDisposed == true) {
             playlistsSubscription = SqlBriteUtils.createObservableList(
                 context,
-                { cursor -> Playlist(context, cursor) },
+                Playlist.mapper(context),
                 Playlist.getQuery()
             )
                 .subscribe(
@@ -44,44 +58,126 @@ class PlaylistsRepository @Inject constructor(
     }
 
     override fun getAllPlaylists(songsRepository: SongsRepository): Observable<MutableList<Playlist>> {
-        val defaultPlaylistsObservable = Observable.fromCallable<List<Playlist>> {
-            val playlists = mutableListOf<Playlist>()
-
-            // Todo: Hide Podcasts if there are no songs
-            playlists.add(getPodcastPlaylist())
-            playlists.add(getRecentlyAddedPlaylist())
-            playlists.add(getMostPlayedPlaylist())
+        val defaultPlaylists = listOf(getPodcastPlaylist(), getRecentlyAddedPlaylist(), getMostPlayedPlaylist())
 
-            playlists
-        }.subscribeOn(Schedulers.io())
+        // Only the default playlists are hidden when empty. User-created playlists, favorites and smart playlists are always
+        // shown, so the list never waits on their contents.
+        val defaultPlaylistsObservable = getAutoPlaylistSummaries(songsRepository)
+            .map { summaries -> defaultPlaylists.filter { playlist -> summaries[playlist.id]?.isEmpty == false } }
+            .distinctUntilChanged()
 
-        val playlistsObservable = getPlaylists()
+        val smartPlaylistsObservable = smartPlaylistStore.getSmartPlaylists()
+            .map { smartPlaylists -> smartPlaylists.map { smartPlaylist -> smartPlaylist.toPlaylist() } }
 
-        return Observable.combineLatest<List<Playlist>, List<Playlist>, MutableList<Playlist>>(
-            defaultPlaylistsObservable, playlistsObservable, BiFunction { defaultPlaylists: List<Playlist>, playlists1: List<Playlist> ->
+        return Observable.combineLatest<List<Playlist>, List<Playlist>, List<Playlist>, MutableList<Playlist>>(
+            defaultPlaylistsObservable, smartPlaylistsObservable, getPlaylists(),
+            Function3 { defaultPlaylists: List<Playlist>, smartPlaylists: List<Playlist>, playlists: List<Playlist> ->
                 val list = mutableListOf<Playlist>()
                 list.addAll(defaultPlaylists)
-                list.addAll(playlists1)
+                list.addAll(smartPlaylists)
+                list.addAll(playlists)
                 list
             })
-            .concatMap { playlists ->
-                Observable.fromIterable<Playlist?>(playlists)
-                    .concatMap<Playlist> { playlist ->
+    }
+
+    override fun getPlaylistSummaries(songsRepository: SongsRepository): Observable<Map<Long, PlaylistSummary>> {
+        return Observable.combineLatest(
+            getAutoPlaylistSummaries(songsRepository),
+            getUserPlaylistSummaries(),
+            BiFunction { autoPlaylistSummaries: Map<Long, PlaylistSummary>, userPlaylistSummaries: Map<Long, PlaylistSummary> ->
+                autoPlaylistSummaries + userPlaylistSummaries
+            })
+    }
+
+    /**
+     * Summaries of the default and smart playlists, whose songs [SongsRepository] already holds (and caches) in memory.
+     */
+    private fun getAutoPlaylistSummaries(songsRepository: SongsRepository): Observable<Map<Long, PlaylistSummary>> {
+        if (autoPlaylistSummariesSubscription == null || autoPlaylistSummariesSubscription?.isDisposed == true) {
+            val defaultPlaylists = listOf(getPodcastPlaylist(), getRecentlyAddedPlaylist(), getMostPlayedPlaylist(), getRecentlyPlayedPlaylist())
+
+            autoPlaylistSummariesSubscription = smartPlaylistStore.getSmartPlaylists()
+                .map { smartPlaylists -> defaultPlaylists + smartPlaylists.map { smartPlaylist -> smartPlaylist.toPlaylist() } }
+                .switchMap { playlists ->
+                    combineSummaries(playlists.map { playlist ->
                         songsRepository.getSongs(playlist)
-                            .first(emptyList())
-                            .flatMapObservable { songs ->
-                                if (playlist.type != Type.USER_CREATED && playlist.type != Type.FAVORITES && songs.isEmpty()
-                                ) {
-                                    Observable.empty()
-                                } else {
-                                    Observable.just(playlist)
-                                }
-                            }
-                    }
-                    .toList()
-                    .toObservable()
+                            .map { songs -> PlaylistSummary.of(songs) }
+                            .distinctUntilChanged()
+                            .map { summary -> Pair(playlist.id, summary) }
+                    })
+                }
+                .subscribe(
+                    autoPlaylistSummariesRelay,
+                    Consumer { error -> LogUtils.logException(TAG, "Failed to get playlist summaries", error) }
+                )
+        }
+        return autoPlaylistSummariesRelay.subscribeOn(Schedulers.io())
+    }
+
+    /**
+     * Summaries of the MediaStore playlists.
+     *
+     * Each playlist has its own continuous query, projecting just the members' durations, which is only re-run when that
+     * playlist's contents change. Adding or removing a playlist starts or stops its query, leaving the others be.
+     */
+    private fun getUserPlaylistSummaries(): Observable<Map<Long, PlaylistSummary>> {
+        if (userPlaylistSummariesSubscription == null || userPlaylistSummariesSubscription?.isDisposed == true) {
+            userPlaylistSummariesSubscription = getPlaylists()
+                .map { playlists -> playlists.map { playlist -> playlist.id }.distinct() }
+                .distinctUntilChanged()
+                .switchMap { playlistIds ->
+                    combineSummaries(getMemberSummaries(playlistIds).map { (playlistId, relay) ->
+                        relay.map { summary -> Pair(playlistId, summary) }
+                    })
+                }
+                .subscribe(
+                    userPlaylistSummariesRelay,
+                    Consumer { error -> LogUtils.logException(TAG, "Failed to get playlist summaries", error) }
+                )
+        }
+        return userPlaylistSummariesRelay.subscribeOn(Schedulers.io())
+    }
+
+    /**
+     * Returns the summary relay for each of the passed in playlists, subscribing any which are new, and disposing those
+     * belonging to playlists which no longer exist.
+     */
+    private fun getMemberSummaries(playlistIds: List<Long>): List<Pair<Long, BehaviorRelay<PlaylistSummary>>> {
+        synchronized(memberSummaryRelays) {
+            val removedPlaylistIds = memberSummaryRelays.keys - playlistIds
+            removedPlaylistIds.forEach { playlistId ->
+                memberSummarySubscriptions.remove(playlistId)?.dispose()
+                memberSummaryRelays.remove(playlistId)
             }
 
+            return playlistIds.map { playlistId ->
+                val relay = memberSummaryRelays.getOrPut(playlistId) {
+                    val relay = BehaviorRelay.create<PlaylistSummary>()
+                    val query = Query.Builder()
+                        .uri(MediaStore.Audio.Playlists.Members.getContentUri("external", playlistId))
+                        .projection(arrayOf(MediaStore.Audio.Playlists.Members.DURATION))
+                        .build()
+                    memberSummarySubscriptions[playlistId] = SqlBriteUtils.createObservableList(context, { cursor -> cursor.getLong(0) }, query)
+                        .map { durations -> PlaylistSummary(durations.size, durations.sum()) }
+                        .subscribe(
+                            relay,
+                            Consumer { error -> LogUtils.logException(TAG, "Failed to get playlist summary", error) }
+                        )
+                    relay
+                }
+                Pair(playlistId, relay)
+            }
+        }
+    }
+
+    private fun combineSummaries(summaries: List<Observable<Pair<Long, PlaylistSummary>>>): Observable<Map<Long, PlaylistSummary>> {
+        if (summaries.isEmpty()) {
+            return Observable.just(emptyMap())
+        }
+        return Observable.combineLatest(summaries, Function<Array<Any>, Map<Long, PlaylistSummary>> { pairs ->
+            @Suppress("UNCHECKED_CAST")
+            pairs.associate { pair -> pair as Pair<Long, PlaylistSummary> }
+        })
     }
 
     override fun deletePlaylist(playlist: Playlist) {
@@ -90,6 +186,11 @@ class PlaylistsRepository @Inject constructor(
             return
         }
 
+        if (playlist.type == Type.SMART) {
+            smartPlaylistStore.delete(playlist)
+            return
+        }
+
         ContentUris.withAppendedId(MediaStore.Audio.Playlists.EXTERNAL_CONTENT_URI, playlist.id)?.let { uri ->
             context.contentResolver.delete(uri, null, null)
         }
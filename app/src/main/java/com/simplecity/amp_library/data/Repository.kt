@@ -17,6 +17,17 @@ interface Repository {
          */
         fun getAllSongs(): Observable<List<Song>>
 
+        /**
+         * Returns a continuous List of all [Song]s, as last queried from MediaStore (never the cached library), no filtering
+         * is applied. Use when a stale library would do harm.
+         */
+        fun getMediaStoreSongs(): Observable<List<Song>>
+
+        /**
+         * Returns a continuous stream of indexed [LibrarySnapshot]s, excluding songs which are blacklisted, podcasts, or not-whitelisted.
+         */
+        fun getLibrarySnapshot(): Observable<LibrarySnapshot>
+
         /**
          * Returns a continuous List of [Song]s, excluding those which are blacklisted, podcasts, or not-whitelisted.
          */
@@ -79,6 +90,12 @@ interface Repository {
          */
         fun getAllPlaylists(songsRepository: SongsRepository): Observable<MutableList<Playlist>>
 
+        /**
+         * Returns a continuous Map of [PlaylistSummary]s (song count & duration), keyed by [Playlist] id, for every playlist
+         * including those which [getAllPlaylists] hides because they're empty.
+         */
+        fun getPlaylistSummaries(songsRepository: SongsRepository): Observable<Map<Long, PlaylistSummary>>
+
         fun deletePlaylist(playlist: Playlist)
 
 
@@ -0,0 +1,292 @@
+package com.simplecity.amp_library.data
+
+import com.simplecity.amp_library.utils.JaroWinklerScorer
+import java.util.Locale
+
+/**
+ * A trigram index over a single text field of [T], answering case-insensitive 'contains' queries.
+ *
+ * Each item occupies a slot, and every distinct trigram of its (lower-cased) text maps to a posting list of slots. A query
+ * only looks at the slots in the shortest posting list of its trigrams, and verifies each candidate with a plain
+ * `contains`, so results are exact. Queries shorter than a trigram fall back to a scan of the pre-normalized text.
+ *
+ * [update] diffs the passed in items against the index by key, so only added, removed or renamed items touch the postings.
+ * Removed slots are tombstoned, and the index is compacted once tombstones outnumber live items.
+ *
+ * Items whose text is null are not indexed. Results are returned in slot (insertion) order.
+ *
+ * [fuzzySearch] scores every item with [JaroWinklerScorer], against text which is normalized once per item and kept.
+ */
+class SearchIndex<T : Any>(
+    private val keyOf: (T) -> Any?,
+    private val textOf: (T) -> String?
+) {
+
+    private var items = ArrayList<T?>()
+
+    private var texts = ArrayList<String?>()
+
+    /**
+     * The [JaroWinklerScorer.normalize]d text for each slot, filled in by the first fuzzy search to reach it.
+     */
+    private var fuzzyTexts = ArrayList<CharArray?>()
+
+    private val slotsByKey = HashMap<Any?, Int>()
+
+    private val postings = HashMap<Long, IntList>()
+
+    private var liveCount = 0
+
+    val size: Int
+        @Synchronized get() = liveCount
+
+    /**
+     * Incremented by each [update] which changes the indexed items. Results from an older version may be stale.
+     */
+    var version = 0
+        @Synchronized get
+        private set
+
+    /**
+     * Brings the index in line with [newItems], adding, replacing and removing entries as required.
+     */
+    @Synchronized
+    fun update(newItems: List<T>) {
+        val seen = HashSet<Any?>((newItems.size / 0.75f).toInt() + 1)
+        val previousSlotCount = items.size
+        val previousLiveCount = liveCount
+        var replaced = false
+
+        for (item in newItems) {
+            val text = textOf(item) ?: continue
+            val key = keyOf(item)
+            seen.add(key)
+
+            val slot = slotsByKey[key]
+            if (slot != null) {
+                if (items[slot] === item) {
+                    continue
+                }
+                val normalized = normalize(text)
+                if (texts[slot] == normalized) {
+                    // Same text, so the postings are still valid.
+                    items[slot] = item
+                    replaced = true
+                    continue
+                }
+                removeSlot(slot)
+                addSlot(key, item, normalized)
+            } else {
+                addSlot(key, item, normalize(text))
+            }
+        }
+
+        val iterator = slotsByKey.entries.iterator()
+        while (iterator.hasNext()) {
+            val entry = iterator.next()
+            if (!seen.contains(entry.key)) {
+                removeSlot(entry.value)
+                iterator.remove()
+            }
+        }
+
+        if (replaced || items.size != previousSlotCount || liveCount != previousLiveCount) {
+            version++
+        }
+
+        if (items.size - liveCount > Math.max(liveCount, MIN_COMPACTION_SIZE)) {
+            compact()
+        }
+    }
+
+    /**
+     * @return every indexed item, in slot order.
+     */
+    @Synchronized
+    fun all(): List<T> {
+        val result = ArrayList<T>(liveCount)
+        for (item in items) {
+            item?.let { result.add(it) }
+        }
+        return result
+    }
+
+    /**
+     * @return the items whose text contains [query], ignoring case. An empty query returns every item.
+     */
+    @Synchronized
+    fun search(query: String): List<T> {
+        return search(query, null)
+    }
+
+    /**
+     * As [search], but when [within] is non-null only its items are considered. [within] must be the result of an earlier
+     * search of this index (at the current [version]) for a query contained in [query], so that it is a superset of the
+     * result. Whichever of [within] and the shortest posting list is smaller is verified.
+     */
+    @Synchronized
+    fun search(query: String, within: List<T>?): List<T> {
+        val normalizedQuery = normalize(query)
+        if (normalizedQuery.isEmpty()) {
+            return within ?: all()
+        }
+
+        var candidates: IntList? = null
+        if (normalizedQuery.length >= GRAM_SIZE) {
+            for (i in 0..normalizedQuery.length - GRAM_SIZE) {
+                val posting = postings[gramAt(normalizedQuery, i)] ?: return emptyList()
+                if (candidates == null || posting.size < candidates.size) {
+                    candidates = posting
+                }
+            }
+        }
+
+        if (within != null && (candidates == null || within.size < candidates.size)) {
+            return within.filter { item ->
+                slotsByKey[keyOf(item)]?.let { slot -> texts[slot]?.contains(normalizedQuery) } ?: false
+            }
+        }
+
+        if (candidates == null) {
+            return scan(normalizedQuery, items.indices)
+        }
+
+        val result = ArrayList<T>()
+        for (i in 0 until candidates.size) {
+            val slot = candidates[i]
+            val text = texts[slot]
+            if (text != null && text.contains(normalizedQuery)) {
+                result.add(items[slot]!!)
+            }
+        }
+        return result
+    }
+
+    /**
+     * @return the items whose text scores above [threshold] against [query], best match first, then in [comparator] order.
+     * An empty query returns every item, in [comparator] order.
+     */
+    @Synchronized
+    fun fuzzySearch(query: String, threshold: Double, comparator: Comparator<in T>): List<T> {
+        val normalizedQuery = JaroWinklerScorer.normalize(query)
+        if (normalizedQuery.isEmpty()) {
+            return all().sortedWith(comparator)
+        }
+
+        val matches = ArrayList<ScoredItem<T>>()
+        for (slot in items.indices) {
+            val item = items[slot] ?: continue
+            val text = fuzzyTexts[slot] ?: JaroWinklerScorer.normalize(texts[slot]).also { fuzzyTexts[slot] = it }
+            val score = JaroWinklerScorer.adjustedScore(text, normalizedQuery, threshold)
+            if (score > threshold) {
+                matches.add(ScoredItem(item, score))
+            }
+        }
+
+        return matches
+            .sortedWith(Comparator { a, b ->
+                val result = java.lang.Double.compare(b.score, a.score)
+                if (result != 0) result else comparator.compare(a.item, b.item)
+            })
+            .map { scoredItem -> scoredItem.item }
+    }
+
+    private fun scan(normalizedQuery: String, slots: IntRange): List<T> {
+        val result = ArrayList<T>()
+        for (slot in slots) {
+            val text = texts[slot]
+            if (text != null && text.contains(normalizedQuery)) {
+                result.add(items[slot]!!)
+            }
+        }
+        return result
+    }
+
+    private fun addSlot(key: Any?, item: T, normalizedText: String) {
+        val slot = items.size
+        items.add(item)
+        texts.add(normalizedText)
+        fuzzyTexts.add(null)
+        slotsByKey[key] = slot
+        liveCount++
+
+        if (normalizedText.length >= GRAM_SIZE) {
+            val grams = HashSet<Long>()
+            for (i in 0..normalizedText.length - GRAM_SIZE) {
+                val gram = gramAt(normalizedText, i)
+                if (grams.add(gram)) {
+                    postings.getOrPut(gram) { IntList() }.add(slot)
+                }
+            }
+        }
+    }
+
+    /**
+     * Tombstones the slot. Its postings are left in place, and skipped at query time.
+     */
+    private fun removeSlot(slot: Int) {
+        if (items[slot] != null) {
+            items[slot] = null
+            texts[slot] = null
+            fuzzyTexts[slot] = null
+            liveCount--
+        }
+    }
+
+    private fun compact() {
+        val liveSlots = slotsByKey.entries.sortedBy { entry -> entry.value }
+        val oldItems = items
+        val oldTexts = texts
+        val oldFuzzyTexts = fuzzyTexts
+
+        items = ArrayList(liveSlots.size)
+        texts = ArrayList(liveSlots.size)
+        fuzzyTexts = ArrayList(liveSlots.size)
+        slotsByKey.clear()
+        postings.clear()
+        liveCount = 0
+
+        liveSlots.forEach { entry ->
+            addSlot(entry.key, oldItems[entry.value]!!, oldTexts[entry.value]!!)
+            fuzzyTexts[fuzzyTexts.size - 1] = oldFuzzyTexts[entry.value]
+        }
+    }
+
+    private class ScoredItem<T>(val item: T, val score: Double)
+
+    /**
+     * A growable list of primitive ints, used for posting lists.
+     */
+    private class IntList {
+        private var data = IntArray(4)
+
+        var size = 0
+            private set
+
+        fun add(value: Int) {
+            if (size == data.size) {
+                data = data.copyOf(size * 2)
+            }
+            data[size++] = value
+        }
+
+        operator fun get(index: Int): Int {
+            return data[index]
+        }
+    }
+
+    companion object {
+
+        private const val GRAM_SIZE = 3
+
+        private const val MIN_COMPACTION_SIZE = 1024
+
+        fun normalize(text: String): String {
+            return text.toLowerCase(Locale.getDefault())
+        }
+
+        private fun gramAt(text: String, index: Int): Long {
+            return (text[index].toLong() shl 32) or (text[index + 1].toLong() shl 16) or text[index + 2].toLong()
+        }
+    }
+}
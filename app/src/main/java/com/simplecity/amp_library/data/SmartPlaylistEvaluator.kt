@@ -0,0 +1,80 @@
+package com.simplecity.amp_library.data
+
+import com.simplecity.amp_library.model.Song
+
+/**
+ * Evaluates a [SmartPlaylistRule] against successive library snapshots, play stats and genre memberships, re-testing only
+ * the songs which have changed since the previous evaluation.
+ *
+ * Unchanged rows keep their [Song] instance from one snapshot to the next (see SongDeltaOperator), so a song only needs
+ * re-testing if its instance or its [PlayStats] differ from last time. If nothing that matches (or matched) has changed,
+ * the previous result list is returned as-is, so callers can skip identical emissions by reference.
+ *
+ * Not thread safe; evaluations are expected to be serialized (as they are within a single Rx stream).
+ */
+class SmartPlaylistEvaluator(val rule: SmartPlaylistRule) {
+
+    private var snapshot: LibrarySnapshot? = null
+
+    private var playStats: Map<Long, PlayStats> = emptyMap()
+
+    private var genreMembers: Map<String, Set<Long>> = emptyMap()
+
+    /**
+     * The ids of the songs which matched at the last evaluation.
+     */
+    private val matches = HashSet<Long>()
+
+    private var result: List<Song> = emptyList()
+
+    fun evaluate(snapshot: LibrarySnapshot, playStats: Map<Long, PlayStats>, genreMembers: Map<String, Set<Long>>): List<Song> {
+        val previousSnapshot = this.snapshot
+        val previousPlayStats = this.playStats
+
+        // A change in the membership of any referenced genre could affect any song, so start over.
+        val genreMembersChanged = rule.genres.any { genre -> genreMembers[genre] != this.genreMembers[genre] }
+
+        var changed = false
+        if (previousSnapshot == null || genreMembersChanged) {
+            matches.clear()
+            for (song in snapshot.songs) {
+                if (rule.matches(song, playStats[song.id] ?: PlayStats.NONE, genreMembers)) {
+                    matches.add(song.id)
+                }
+            }
+            changed = true
+        } else if (previousSnapshot !== snapshot || previousPlayStats !== playStats) {
+            for (song in snapshot.songs) {
+                val stats = playStats[song.id]
+                if (previousSnapshot.getSong(song.id) === song && stats == previousPlayStats[song.id]) {
+                    continue
+                }
+                val matched = rule.matches(song, stats ?: PlayStats.NONE, genreMembers)
+                val wasMatched = if (matched) !matches.add(song.id) else matches.remove(song.id)
+                // A matching song whose instance or stats changed may have moved in the order (or had its fields updated)
+                if (matched || wasMatched) {
+                    changed = true
+                }
+            }
+            // Matching songs which have since been removed from the library
+            val iterator = matches.iterator()
+            while (iterator.hasNext()) {
+                if (snapshot.getSong(iterator.next()) == null) {
+                    iterator.remove()
+                    changed = true
+                }
+            }
+        }
+
+        this.snapshot = snapshot
+        this.playStats = playStats
+        this.genreMembers = genreMembers
+
+        if (changed) {
+            // Collected in library order, so songs which compare equal under the rule's order keep their library order.
+            val songs = snapshot.songs.filterTo(ArrayList(matches.size)) { song -> matches.contains(song.id) }
+            result = rule.arrange(songs, playStats)
+        }
+        return result
+    }
+}
@@ -0,0 +1,347 @@
+package com.simplecity.amp_library.data
+
+import com.simplecity.amp_library.model.Song
+import com.simplecity.amp_library.utils.ComparisonUtils
+import java.util.Locale
+
+/**
+ * A song's play count, and the time it was last played (millis), from the play count table.
+ */
+data class PlayStats(val playCount: Int, val lastPlayed: Long) {
+
+    companion object {
+        val NONE = PlayStats(0, 0)
+    }
+}
+
+/**
+ * A user-defined smart playlist rule, compiled from text such as:
+ *
+ *     genre = Jazz AND year > 2000 AND playCount >= 3 ORDER BY lastPlayed DESC LIMIT 200
+ *
+ * The grammar is `[condition (AND condition)*] [ORDER BY field [ASC|DESC]] [LIMIT n]`, where a condition is
+ * `field operator value`. Keywords and field names are case-insensitive.
+ *
+ * Text fields (title, artist, album, albumArtist, path, genre) support `=`, `!=` and `~` (contains), and are compared
+ * ignoring case. Values may be quoted, or left bare, in which case they run up to the next keyword. Genre only supports
+ * `=` and `!=`. Numeric fields (year, track, duration, dateAdded, playCount, lastPlayed) support `=`, `!=`, `<`, `<=`
+ * (or `≤`), `>` and `>=` (or `≥`). Durations are in seconds, and dateAdded & lastPlayed are in seconds since the epoch.
+ *
+ * Conditions compile to predicates over a [Song] and its [PlayStats], and the order to a [Comparator], so rules are
+ * evaluated against the in-memory [LibrarySnapshot] rather than by querying MediaStore. See [SmartPlaylistEvaluator].
+ */
+class SmartPlaylistRule private constructor(
+    val text: String,
+    private val conditions: List<Condition>,
+    private val order: Order?,
+    val limit: Int
+) {
+
+    /**
+     * The (lower case) names of the genres referenced by this rule. Membership of these genres must be passed to [matches].
+     */
+    val genres: Set<String> = conditions.filter { condition -> condition.field == Field.GENRE }.map { condition -> condition.text!! }.toSet()
+
+    /**
+     * @param genreMembers the ids of the songs belonging to each of [genres], keyed by lower case genre name.
+     */
+    fun matches(song: Song, playStats: PlayStats, genreMembers: Map<String, Set<Long>>): Boolean {
+        return conditions.all { condition -> condition.matches(song, playStats, genreMembers) }
+    }
+
+    /**
+     * Sorts the matching songs (in place) into the rule's order, if it has one, and applies the limit.
+     */
+    fun arrange(songs: MutableList<Song>, playStats: Map<Long, PlayStats>): List<Song> {
+        order?.let { order ->
+            songs.sortWith(Comparator { a, b -> order.compare(a, playStats[a.id] ?: PlayStats.NONE, b, playStats[b.id] ?: PlayStats.NONE) })
+        }
+        return if (limit in 0 until songs.size) songs.subList(0, limit) else songs
+    }
+
+    override fun toString(): String {
+        return text
+    }
+
+    private enum class Field(val key: String, val isText: Boolean) {
+        TITLE("title", true),
+        ARTIST("artist", true),
+        ALBUM("album", true),
+        ALBUM_ARTIST("albumartist", true),
+        PATH("path", true),
+        GENRE("genre", true),
+        YEAR("year", false),
+        TRACK("track", false),
+        DURATION("duration", false),
+        DATE_ADDED("dateadded", false),
+        PLAY_COUNT("playcount", false),
+        LAST_PLAYED("lastplayed", false);
+
+        fun text(song: Song): String? {
+            return when (this) {
+                TITLE -> song.name
+                ARTIST -> song.artistName
+                ALBUM -> song.albumName
+                ALBUM_ARTIST -> song.albumArtistName
+                PATH -> song.path
+                else -> throw IllegalStateException("$key is not a text field")
+            }
+        }
+
+        fun number(song: Song, playStats: PlayStats): Long {
+            return when (this) {
+                YEAR -> song.year.toLong()
+                TRACK -> song.track.toLong()
+                DURATION -> song.duration / 1000
+                DATE_ADDED -> song.dateAdded.toLong()
+                PLAY_COUNT -> playStats.playCount.toLong()
+                LAST_PLAYED -> playStats.lastPlayed / 1000
+                else -> throw IllegalStateException("$key is not a numeric field")
+            }
+        }
+    }
+
+    private enum class Operator(val symbol: String) {
+        EQUAL("="),
+        NOT_EQUAL("!="),
+        LESS("<"),
+        LESS_OR_EQUAL("<="),
+        GREATER(">"),
+        GREATER_OR_EQUAL(">="),
+        CONTAINS("~");
+
+        fun test(comparison: Int): Boolean {
+            return when (this) {
+                EQUAL -> comparison == 0
+                NOT_EQUAL -> comparison != 0
+                LESS -> comparison < 0
+                LESS_OR_EQUAL -> comparison <= 0
+                GREATER -> comparison > 0
+                GREATER_OR_EQUAL -> comparison >= 0
+                CONTAINS -> throw IllegalStateException("~ is not a comparison")
+            }
+        }
+    }
+
+    /**
+     * @param text the lower case value, for text fields.
+     */
+    private class Condition(val field: Field, val operator: Operator, val text: String?, val number: Long) {
+
+        fun matches(song: Song, playStats: PlayStats, genreMembers: Map<String, Set<Long>>): Boolean {
+            if (field == Field.GENRE) {
+                val isMember = genreMembers[text]?.contains(song.id) == true
+                return if (operator == Operator.EQUAL) isMember else !isMember
+            }
+            if (field.isText) {
+                val value = field.text(song)?.toLowerCase(Locale.getDefault()) ?: ""
+                return when (operator) {
+                    Operator.CONTAINS -> value.contains(text!!)
+                    Operator.EQUAL -> value == text
+                    else -> value != text
+                }
+            }
+            return operator.test(field.number(song, playStats).compareTo(number))
+        }
+    }
+
+    private class Order(val field: Field, val descending: Boolean) {
+
+        fun compare(a: Song, aStats: PlayStats, b: Song, bStats: PlayStats): Int {
+            val comparison = if (field.isText) {
+                ComparisonUtils.compare(field.text(a), field.text(b))
+            } else {
+                ComparisonUtils.compareLong(field.number(a, aStats), field.number(b, bStats))
+            }
+            return if (descending) -comparison else comparison
+        }
+    }
+
+    /**
+     * A recursive-descent parser over the tokens of a rule. Bare words are kept as typed (for values), keywords and field
+     * names are matched ignoring case.
+     */
+    private class Parser(private val text: String) {
+
+        private val tokens = tokenize(text)
+
+        private var position = 0
+
+        fun parse(): SmartPlaylistRule {
+            val conditions = mutableListOf<Condition>()
+            if (position < tokens.size && !isKeyword(peek(), ORDER)) {
+                conditions.add(parseCondition())
+                while (position < tokens.size && isKeyword(peek(), AND)) {
+                    position++
+                    conditions.add(parseCondition())
+                }
+            }
+
+            var order: Order? = null
+            if (position < tokens.size && isKeyword(peek(), ORDER)) {
+                position++
+                expectKeyword(BY)
+                val field = parseField()
+                if (field == Field.GENRE) {
+                    throw error("Can't order by genre")
+                }
+                var descending = false
+                if (position < tokens.size && (isKeyword(peek(), ASC) || isKeyword(peek(), DESC))) {
+                    descending = isKeyword(next(), DESC)
+                }
+                order = Order(field, descending)
+            }
+
+            var limit = NO_LIMIT
+            if (position < tokens.size && isKeyword(peek(), LIMIT)) {
+                position++
+                limit = next().toIntOrNull()?.takeIf { it >= 0 } ?: throw error("Invalid limit")
+            }
+
+            if (position < tokens.size) {
+                throw error("Unexpected '${peek()}'")
+            }
+
+            return SmartPlaylistRule(text, conditions, order, limit)
+        }
+
+        private fun parseCondition(): Condition {
+            val field = parseField()
+            val symbol = next()
+            val operator = Operator.values().firstOrNull { operator -> operator.symbol == symbol } ?: throw error("Expected an operator, found '$symbol'")
+            val value = parseValue()
+
+            if (field.isText) {
+                if (operator != Operator.EQUAL && operator != Operator.NOT_EQUAL && (operator != Operator.CONTAINS || field == Field.GENRE)) {
+                    throw error("'${operator.symbol}' can't be used with ${field.key}")
+                }
+                return Condition(field, operator, value.toLowerCase(Locale.getDefault()), 0)
+            }
+
+            if (operator == Operator.CONTAINS) {
+                throw error("'~' can't be used with ${field.key}")
+            }
+            return Condition(field, operator, null, value.toLongOrNull() ?: throw error("Expected a number for ${field.key}, found '$value'"))
+        }
+
+        private fun parseField(): Field {
+            val token = next()
+            return Field.values().firstOrNull { field -> field.key.equals(token, ignoreCase = true) } ?: throw error("Unknown field '$token'")
+        }
+
+        /**
+         * A quoted string, or a run of bare words up to the next keyword.
+         */
+        private fun parseValue(): String {
+            val token = next()
+            if (token.length >= 2 && (token[0] == '"' || token[0] == '\'')) {
+                return token.substring(1, token.length - 1)
+            }
+            val words = mutableListOf(token)
+            while (position < tokens.size && !KEYWORDS.any { keyword -> isKeyword(peek(), keyword) }) {
+                words.add(next())
+            }
+            return words.joinToString(" ")
+        }
+
+        private fun peek(): String {
+            return tokens[position]
+        }
+
+        private fun next(): String {
+            if (position >= tokens.size) {
+                throw error("Unexpected end of rule")
+            }
+            return tokens[position++]
+        }
+
+        private fun expectKeyword(keyword: String) {
+            if (!isKeyword(next(), keyword)) {
+                throw error("Expected '$keyword'")
+            }
+        }
+
+        private fun isKeyword(token: String, keyword: String): Boolean {
+            return token.equals(keyword, ignoreCase = true)
+        }
+
+        private fun error(message: String): IllegalArgumentException {
+            return IllegalArgumentException("$message in smart playlist rule: $text")
+        }
+
+        companion object {
+
+            private const val AND = "AND"
+            private const val ORDER = "ORDER"
+            private const val BY = "BY"
+            private const val ASC = "ASC"
+            private const val DESC = "DESC"
+            private const val LIMIT = "LIMIT"
+
+            private val KEYWORDS = listOf(AND, ORDER, LIMIT)
+
+            private fun tokenize(text: String): List<String> {
+                val tokens = mutableListOf<String>()
+                var i = 0
+                while (i < text.length) {
+                    val c = text[i]
+                    when {
+                        c.isWhitespace() -> i++
+                        c == '"' || c == '\'' -> {
+                            val end = text.indexOf(c, i + 1)
+                            if (end == -1) {
+                                throw IllegalArgumentException("Unterminated quote in smart playlist rule: $text")
+                            }
+                            tokens.add(text.substring(i, end + 1))
+                            i = end + 1
+                        }
+                        c == '≤' -> {
+                            tokens.add("<=")
+                            i++
+                        }
+                        c == '≥' -> {
+                            tokens.add(">=")
+                            i++
+                        }
+                        c == '!' || c == '<' || c == '>' -> {
+                            if (i + 1 < text.length && text[i + 1] == '=') {
+                                tokens.add(text.substring(i, i + 2))
+                                i += 2
+                            } else {
+                                tokens.add(c.toString())
+                                i++
+                            }
+                        }
+                        c == '=' || c == '~' -> {
+                            tokens.add(c.toString())
+                            i++
+                        }
+                        else -> {
+                            val start = i
+                            while (i < text.length && !text[i].isWhitespace() && text[i] !in OPERATOR_CHARS) {
+                                i++
+                            }
+                            tokens.add(text.substring(start, i))
+                        }
+                    }
+                }
+                return tokens
+            }
+
+            private const val OPERATOR_CHARS = "=!<>~≤≥\"'"
+        }
+    }
+
+    companion object {
+
+        const val NO_LIMIT = -1
+
+        /**
+         * @throws IllegalArgumentException if the rule is malformed.
+         */
+        @JvmStatic
+        fun parse(text: String): SmartPlaylistRule {
+            return Parser(text).parse()
+        }
+    }
+}
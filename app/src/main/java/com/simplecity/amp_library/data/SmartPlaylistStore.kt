@@ -0,0 +1,106 @@
+package com.simplecity.amp_library.data
+
+import android.content.ContentValues
+import android.content.Context
+import android.database.Cursor
+import com.jakewharton.rxrelay2.BehaviorRelay
+import com.simplecity.amp_library.model.Playlist
+import com.simplecity.amp_library.sql.databases.SmartPlaylistDbOpenHelper
+import com.simplecity.amp_library.utils.LogUtils
+import com.simplecity.amp_library.utils.playlists.PlaylistManager
+import com.squareup.sqlbrite2.SqlBrite
+import io.reactivex.Observable
+import io.reactivex.disposables.Disposable
+import io.reactivex.functions.Consumer
+import io.reactivex.schedulers.Schedulers
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * A user-defined smart playlist.
+ *
+ * @param id the row id. See [playlistId] for the id of the corresponding [Playlist].
+ * @param rule the compiled rule, or null if the stored rule couldn't be parsed.
+ */
+class SmartPlaylist(val id: Long, val name: String, val rule: SmartPlaylistRule?) {
+
+    /**
+     * Smart playlists occupy their own (negative) range of [Playlist] ids, so they can't collide with MediaStore playlists,
+     * which share preference keys etc. by id.
+     */
+    val playlistId: Long
+        get() = PlaylistManager.PlaylistIds.SMART_PLAYLISTS - id
+
+    fun toPlaylist(): Playlist {
+        return Playlist(Playlist.Type.SMART, playlistId, name, false, false, true, false, false)
+    }
+}
+
+/**
+ * Persists [SmartPlaylist] definitions (a name, and the text of a [SmartPlaylistRule]).
+ */
+@Singleton
+class SmartPlaylistStore @Inject constructor(context: Context) {
+
+    private val database = SqlBrite.Builder()
+        .build()
+        .wrapDatabaseHelper(SmartPlaylistDbOpenHelper(context), Schedulers.io())
+
+    private var smartPlaylistsSubscription: Disposable? = null
+    private val smartPlaylistsRelay = BehaviorRelay.create<List<SmartPlaylist>>()
+
+    /**
+     * @return a **continuous** stream of [SmartPlaylist]s, backed by a behavior relay for caching query results.
+     */
+    fun getSmartPlaylists(): Observable<List<SmartPlaylist>> {
+        if (smartPlaylistsSubscription == null || smartPlaylistsSubscription?.isDisposed == true) {
+            smartPlaylistsSubscription = database.createQuery(
+                SmartPlaylistDbOpenHelper.TABLE_NAME,
+                "SELECT * FROM " + SmartPlaylistDbOpenHelper.TABLE_NAME + " ORDER BY " + SmartPlaylistDbOpenHelper.COLUMN_ID
+            )
+                .mapToList { cursor -> createSmartPlaylist(cursor) }
+                .subscribe(
+                    smartPlaylistsRelay,
+                    Consumer { error -> LogUtils.logException(TAG, "Failed to get smart playlists", error) }
+                )
+        }
+        return smartPlaylistsRelay.subscribeOn(Schedulers.io())
+    }
+
+    /**
+     * Adds a smart playlist.
+     *
+     * @throws IllegalArgumentException if the rule is malformed. See [SmartPlaylistRule.parse].
+     */
+    fun add(name: String, rule: String) {
+        SmartPlaylistRule.parse(rule)
+
+        val values = ContentValues(2)
+        values.put(SmartPlaylistDbOpenHelper.COLUMN_NAME, name)
+        values.put(SmartPlaylistDbOpenHelper.COLUMN_RULE, rule)
+        database.insert(SmartPlaylistDbOpenHelper.TABLE_NAME, values)
+    }
+
+    fun delete(playlist: Playlist) {
+        database.delete(
+            SmartPlaylistDbOpenHelper.TABLE_NAME,
+            SmartPlaylistDbOpenHelper.COLUMN_ID + " = " + (PlaylistManager.PlaylistIds.SMART_PLAYLISTS - playlist.id)
+        )
+    }
+
+    private fun createSmartPlaylist(cursor: Cursor): SmartPlaylist {
+        val id = cursor.getLong(cursor.getColumnIndexOrThrow(SmartPlaylistDbOpenHelper.COLUMN_ID))
+        val name = cursor.getString(cursor.getColumnIndexOrThrow(SmartPlaylistDbOpenHelper.COLUMN_NAME))
+        val rule = try {
+            SmartPlaylistRule.parse(cursor.getString(cursor.getColumnIndexOrThrow(SmartPlaylistDbOpenHelper.COLUMN_RULE)))
+        } catch (e: IllegalArgumentException) {
+            LogUtils.logException(TAG, "Invalid smart playlist rule", e)
+            null
+        }
+        return SmartPlaylist(id, name, rule)
+    }
+
+    companion object {
+        const val TAG = "SmartPlaylistStore"
+    }
+}
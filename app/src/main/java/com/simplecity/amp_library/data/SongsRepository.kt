@@ -3,7 +3,6 @@ package com.simplecity.amp_library.data
 
 import android.content.Context
 import android.provider.MediaStore
-import android.util.Pair
 import com.jakewharton.rxrelay2.BehaviorRelay
 import com.simplecity.amp_library.data.Repository.SongsRepository
 import com.simplecity.amp_library.model.Album
@@ -20,14 +19,20 @@ import com.simplecity.amp_library.utils.LogUtils
 import com.simplecity.amp_library.utils.SettingsManager
 import com.simplecity.amp_library.utils.StringUtils
 import com.simplecity.amp_library.utils.playlists.PlaylistManager
+import com.simplecity.amp_library.utils.sorting.Comparators
 import io.reactivex.Observable
 import io.reactivex.ObservableTransformer
 import io.reactivex.disposables.Disposable
+import io.reactivex.functions.BiFunction
 import io.reactivex.functions.Consumer
+import io.reactivex.functions.Function
 import io.reactivex.functions.Function3
 import io.reactivex.schedulers.Schedulers
 import java.util.ArrayList
 import java.util.Arrays
+import java.util.Locale
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
 import javax.inject.Inject
 import javax.inject.Singleton
 
@@ -36,18 +41,51 @@ open class SongsRepository @Inject constructor(
     private val context: Context,
     private val blacklistRepository: Repository.BlacklistRepository,
     private val whitelistRepository: Repository.WhitelistRepository,
-    private val settingsManager: SettingsManager
+    private val settingsManager: SettingsManager,
+    private val libraryCache: LibraryCache,
+    private val smartPlaylistStore: SmartPlaylistStore
 ) : SongsRepository {
 
     private var songsSubscription: Disposable? = null
-    private val songsRelay = BehaviorRelay.create<List<Song>>()
+    private val snapshotRelay = BehaviorRelay.create<LibrarySnapshot>()
 
     private var allSongsSubscription: Disposable? = null
     private val allSongsRelay = BehaviorRelay.create<List<Song>>()
+    private val mediaStoreSongsRelay = BehaviorRelay.create<List<Song>>()
+
+    /**
+     * Rewrites the library cache, off the thread which delivers MediaStore changes.
+     */
+    private val libraryCacheScheduler = Schedulers.from(Executors.newSingleThreadExecutor())
+
+    private var mostPlayedSubscription: Disposable? = null
+    private val mostPlayedRelay = BehaviorRelay.create<List<Song>>()
+
+    private var recentlyPlayedSubscription: Disposable? = null
+    private val recentlyPlayedRelay = BehaviorRelay.create<List<Song>>()
+
+    private var playStatsSubscription: Disposable? = null
+    private val playStatsRelay = BehaviorRelay.create<Map<Long, PlayStats>>()
+
+    private var smartPlaylistsSubscription: Disposable? = null
+    private val smartPlaylistsRelay = BehaviorRelay.create<Map<Long, List<Song>>>()
 
     override fun getAllSongs(): Observable<List<Song>> {
         if (allSongsSubscription == null || allSongsSubscription?.isDisposed == true) {
-            allSongsSubscription = SqlBriteUtils.createObservableList<Song>(context, { Song(it) }, Song.getQuery())
+            // Serve the cached library immediately, until the MediaStore query emits. The cache is refreshed once a burst of
+            // MediaStore changes has settled, rather than rewritten for every change.
+            allSongsSubscription = SqlBriteUtils.createSongDeltaList(context, Song.mapper(), Song.getQuery())
+                .publish { mediaStoreSongs ->
+                    Observable.merge(
+                        libraryCache.read().toObservable().takeUntil(mediaStoreSongs),
+                        mediaStoreSongs.doOnNext(mediaStoreSongsRelay),
+                        mediaStoreSongs
+                            .debounce(LIBRARY_CACHE_WRITE_DELAY_MILLIS, TimeUnit.MILLISECONDS, libraryCacheScheduler)
+                            .doOnNext { songs -> libraryCache.write(songs) }
+                            .ignoreElements()
+                            .toObservable()
+                    )
+                }
                 .subscribe(
                     allSongsRelay,
                     Consumer { error -> LogUtils.logException(PlaylistsRepository.TAG, "Failed to get all songs", error) }
@@ -58,50 +96,56 @@ open class SongsRepository @Inject constructor(
             .subscribeOn(Schedulers.io())
     }
 
-    override fun getSongs(predicate: ((Song) -> Boolean)?): Observable<List<Song>> {
+    override fun getMediaStoreSongs(): Observable<List<Song>> {
+        getAllSongs()
+
+        return mediaStoreSongsRelay
+            .subscribeOn(Schedulers.io())
+    }
+
+    override fun getLibrarySnapshot(): Observable<LibrarySnapshot> {
         if (songsSubscription == null || songsSubscription?.isDisposed == true) {
             songsSubscription = getAllSongs()
                 .compose(getInclExclTransformer())
-                .map { songs ->
-                    songs
-                        .filterNot { song -> song.isPodcast }
-                        .toList()
-                }
-                .subscribe(songsRelay)
+                .map { songs -> LibrarySnapshot(songs.filterNot { song -> song.isPodcast }) }
+                .subscribe(
+                    snapshotRelay,
+                    Consumer { error -> LogUtils.logException(TAG, "Failed to build library snapshot", error) }
+                )
         }
 
-        return songsRelay
-            .map { songs -> predicate?.let { predicate -> songs.filter(predicate) } ?: songs }
+        return snapshotRelay
             .subscribeOn(Schedulers.io())
     }
 
+    override fun getSongs(predicate: ((Song) -> Boolean)?): Observable<List<Song>> {
+        return getLibrarySnapshot()
+            .map { snapshot -> predicate?.let { predicate -> snapshot.songs.filter(predicate) } ?: snapshot.songs }
+    }
+
     override fun getSongs(album: Album): Observable<List<Song>> {
-        return getSongs { song -> song.albumId == album.id }
+        return getLibrarySnapshot()
+            .map { snapshot -> snapshot.getSongsForAlbum(album.id) }
     }
 
     override fun getSongs(albumArtist: AlbumArtist): Observable<List<Song>> {
-        return getSongs { song ->
-            albumArtist.albums
-                .map { album -> album.id }
-                .any { albumId -> albumId == song.albumId }
-        }
+        return getLibrarySnapshot()
+            .map { snapshot -> snapshot.getSongsForAlbumArtist(albumArtist) }
     }
 
     override fun getSongs(playlist: Playlist): Observable<List<Song>> {
+        if (playlist.type == Playlist.Type.SMART) {
+            return getSmartPlaylistSongs()
+                .map { songs -> songs[playlist.id] ?: emptyList() }
+                // Evaluation returns the same list if the playlist is unaffected by a change
+                .distinctUntilChanged { a, b -> a === b }
+        }
+
         return when (playlist.id) {
             PlaylistManager.PlaylistIds.RECENTLY_ADDED_PLAYLIST -> {
                 val numWeeks = settingsManager.numWeeks * 3600 * 24 * 7
                 return getSongs { song -> song.dateAdded > System.currentTimeMillis() / 1000 - numWeeks }
-                    .map { songs ->
-                        songs
-                            .sortedWith(Comparator { a, b -> ComparisonUtils.compare(a.albumArtistName, b.albumArtistName) })
-                            .sortedWith(Comparator { a, b -> ComparisonUtils.compare(a.albumArtistName, b.albumArtistName) })
-                            .sortedWith(Comparator { a, b -> ComparisonUtils.compareInt(b.year, a.year) })
-                            .sortedWith(Comparator { a, b -> ComparisonUtils.compareInt(a.track, b.track) })
-                            .sortedWith(Comparator { a, b -> ComparisonUtils.compareInt(a.discNumber, b.discNumber) })
-                            .sortedWith(Comparator { a, b -> ComparisonUtils.compare(a.albumName, b.albumName) })
-                            .sortedWith(Comparator { a, b -> ComparisonUtils.compareLong(b.dateAdded.toLong(), a.dateAdded.toLong()) })
-                    }
+                    .map { songs -> songs.sortedWith(Comparators.SONG_RECENTLY_ADDED) }
             }
 
             PlaylistManager.PlaylistIds.PODCASTS_PLAYLIST -> {
@@ -111,51 +155,9 @@ open class SongsRepository @Inject constructor(
                     .map { songs -> songs.sortedWith(Comparator { a, b -> ComparisonUtils.compareLong(a.playlistSongPlayOrder, b.playlistSongPlayOrder) }) }
             }
 
-            PlaylistManager.PlaylistIds.MOST_PLAYED_PLAYLIST -> {
-                val query = Query.Builder()
-                    .uri(PlayCountTable.URI)
-                    .projection(arrayOf(PlayCountTable.COLUMN_ID, PlayCountTable.COLUMN_PLAY_COUNT))
-                    .sort(PlayCountTable.COLUMN_PLAY_COUNT + " DESC")
-                    .build()
-
-                SqlBriteUtils.createObservableList(context, { cursor ->
-                    Pair(
-                        cursor.getLong(cursor.getColumnIndexOrThrow(PlayCountTable.COLUMN_ID)),
-                        cursor.getInt(cursor.getColumnIndexOrThrow(PlayCountTable.COLUMN_PLAY_COUNT))
-                    )
-                }, query)
-                    .flatMap { pairs ->
-                        getSongs { song ->
-                            pairs.firstOrNull { pair ->
-                                song.playCount = pair.second
-                                pair.first == song.id && pair.second >= 2
-                            } != null
-                        }.map { songs -> songs.sortedWith(Comparator { a, b -> ComparisonUtils.compareInt(b.playCount, a.playCount) }) }
-                    }
-            }
-
-            PlaylistManager.PlaylistIds.RECENTLY_PLAYED_PLAYLIST -> {
-                val query = Query.Builder()
-                    .uri(PlayCountTable.URI)
-                    .projection(arrayOf(PlayCountTable.COLUMN_ID, PlayCountTable.COLUMN_TIME_PLAYED))
-                    .sort(PlayCountTable.COLUMN_TIME_PLAYED + " DESC")
-                    .build()
+            PlaylistManager.PlaylistIds.MOST_PLAYED_PLAYLIST -> getMostPlayedSongs()
 
-                SqlBriteUtils.createObservableList(context, { cursor ->
-                    Pair(
-                        cursor.getLong(cursor.getColumnIndexOrThrow(PlayCountTable.COLUMN_ID)),
-                        cursor.getLong(cursor.getColumnIndexOrThrow(PlayCountTable.COLUMN_TIME_PLAYED))
-                    )
-                }, query)
-                    .flatMap { pairs ->
-                        getSongs { song ->
-                            pairs.filter { pair ->
-                                song.lastPlayed = pair.second
-                                pair.first == song.id
-                            }.firstOrNull() != null
-                        }.map { songs -> songs.sortedWith(Comparator { a, b -> ComparisonUtils.compareLong(b.lastPlayed, a.lastPlayed) }) }
-                    }
-            }
+            PlaylistManager.PlaylistIds.RECENTLY_PLAYED_PLAYLIST -> getRecentlyPlayedSongs()
 
             else -> {
                 val query = Song.getQuery()
@@ -166,21 +168,205 @@ open class SongsRepository @Inject constructor(
                 projection.add(MediaStore.Audio.Playlists.Members.PLAY_ORDER)
                 query.projection = projection.toTypedArray()
 
-                SqlBriteUtils.createObservableList<Song>(context, { Playlist.createSongFromPlaylistCursor(it) }, query)
+                SqlBriteUtils.createObservableList<Song>(context, Playlist.songMapper(), query)
                     .map { songs -> songs.sortedWith(Comparator { a, b -> ComparisonUtils.compareLong(a.playlistSongPlayOrder, b.playlistSongPlayOrder) }) }
             }
         }
     }
 
+    /**
+     * Songs played at least twice, most played first.
+     *
+     * The play counts are joined to the library by id, via [LibrarySnapshot.getSong], and the result is cached until either
+     * the play counts or the library change. Each song is a copy carrying its play count, as the snapshot's songs are shared.
+     */
+    private fun getMostPlayedSongs(): Observable<List<Song>> {
+        if (mostPlayedSubscription == null || mostPlayedSubscription?.isDisposed == true) {
+            val query = Query.Builder()
+                .uri(PlayCountTable.URI)
+                .projection(arrayOf(PlayCountTable.COLUMN_ID, PlayCountTable.COLUMN_PLAY_COUNT))
+                .selection(PlayCountTable.COLUMN_PLAY_COUNT + " >= 2")
+                .sort(PlayCountTable.COLUMN_PLAY_COUNT + " DESC")
+                .build()
+
+            val playCounts = SqlBriteUtils.createObservableList(context, { cursor ->
+                Pair(
+                    cursor.getLong(cursor.getColumnIndexOrThrow(PlayCountTable.COLUMN_ID)),
+                    cursor.getInt(cursor.getColumnIndexOrThrow(PlayCountTable.COLUMN_PLAY_COUNT))
+                )
+            }, query)
+
+            mostPlayedSubscription = Observable.combineLatest(
+                playCounts,
+                getLibrarySnapshot(),
+                BiFunction { pairs: List<Pair<Long, Int>>, snapshot: LibrarySnapshot ->
+                    // Already in play count order
+                    pairs.mapNotNull { (songId, playCount) -> snapshot.getSong(songId)?.let { song -> Song(song).apply { this.playCount = playCount } } }
+                })
+                .subscribe(
+                    mostPlayedRelay,
+                    Consumer { error -> LogUtils.logException(TAG, "Failed to get most played songs", error) }
+                )
+        }
+
+        return mostPlayedRelay
+            .subscribeOn(Schedulers.io())
+    }
+
+    /**
+     * Songs which have been played, most recently played first. See [getMostPlayedSongs].
+     */
+    private fun getRecentlyPlayedSongs(): Observable<List<Song>> {
+        if (recentlyPlayedSubscription == null || recentlyPlayedSubscription?.isDisposed == true) {
+            val query = Query.Builder()
+                .uri(PlayCountTable.URI)
+                .projection(arrayOf(PlayCountTable.COLUMN_ID, PlayCountTable.COLUMN_TIME_PLAYED))
+                .sort(PlayCountTable.COLUMN_TIME_PLAYED + " DESC")
+                .build()
+
+            val timesPlayed = SqlBriteUtils.createObservableList(context, { cursor ->
+                Pair(
+                    cursor.getLong(cursor.getColumnIndexOrThrow(PlayCountTable.COLUMN_ID)),
+                    cursor.getLong(cursor.getColumnIndexOrThrow(PlayCountTable.COLUMN_TIME_PLAYED))
+                )
+            }, query)
+
+            recentlyPlayedSubscription = Observable.combineLatest(
+                timesPlayed,
+                getLibrarySnapshot(),
+                BiFunction { pairs: List<Pair<Long, Long>>, snapshot: LibrarySnapshot ->
+                    // Already in last played order
+                    pairs.mapNotNull { (songId, lastPlayed) -> snapshot.getSong(songId)?.let { song -> Song(song).apply { this.lastPlayed = lastPlayed } } }
+                })
+                .subscribe(
+                    recentlyPlayedRelay,
+                    Consumer { error -> LogUtils.logException(TAG, "Failed to get recently played songs", error) }
+                )
+        }
+
+        return recentlyPlayedRelay
+            .subscribeOn(Schedulers.io())
+    }
+
+    /**
+     * The songs belonging to each smart playlist, keyed by [Playlist] id.
+     *
+     * Every smart playlist is evaluated in the one stream, against the library snapshot, the play stats and the membership
+     * of whichever genres the rules reference. Each playlist keeps a [SmartPlaylistEvaluator] across emissions, so a change
+     * to a few songs (or a few play counts) only re-tests those songs.
+     */
+    private fun getSmartPlaylistSongs(): Observable<Map<Long, List<Song>>> {
+        if (smartPlaylistsSubscription == null || smartPlaylistsSubscription?.isDisposed == true) {
+            val evaluators = HashMap<Long, SmartPlaylistEvaluator>()
+
+            smartPlaylistsSubscription = smartPlaylistStore.getSmartPlaylists()
+                .switchMap { smartPlaylists ->
+                    val genres = smartPlaylists.flatMap { smartPlaylist -> smartPlaylist.rule?.genres ?: emptySet() }.toSet()
+
+                    Observable.combineLatest(
+                        getLibrarySnapshot(),
+                        getPlayStats(),
+                        getGenreMembers(genres),
+                        Function3 { snapshot: LibrarySnapshot, playStats: Map<Long, PlayStats>, genreMembers: Map<String, Set<Long>> ->
+                            synchronized(evaluators) {
+                                evaluators.keys.retainAll(smartPlaylists.map { smartPlaylist -> smartPlaylist.playlistId })
+
+                                smartPlaylists.associate { smartPlaylist ->
+                                    val songs = smartPlaylist.rule?.let { rule ->
+                                        var evaluator = evaluators[smartPlaylist.playlistId]
+                                        if (evaluator == null || evaluator.rule.text != rule.text) {
+                                            evaluator = SmartPlaylistEvaluator(rule)
+                                            evaluators[smartPlaylist.playlistId] = evaluator
+                                        }
+                                        evaluator.evaluate(snapshot, playStats, genreMembers)
+                                    } ?: emptyList()
+                                    smartPlaylist.playlistId to songs
+                                }
+                            }
+                        })
+                }
+                .subscribe(
+                    smartPlaylistsRelay,
+                    Consumer { error -> LogUtils.logException(TAG, "Failed to evaluate smart playlists", error) }
+                )
+        }
+
+        return smartPlaylistsRelay
+            .subscribeOn(Schedulers.io())
+    }
+
+    /**
+     * The [PlayStats] of every song which has been played, keyed by song id.
+     */
+    private fun getPlayStats(): Observable<Map<Long, PlayStats>> {
+        if (playStatsSubscription == null || playStatsSubscription?.isDisposed == true) {
+            val query = Query.Builder()
+                .uri(PlayCountTable.URI)
+                .projection(arrayOf(PlayCountTable.COLUMN_ID, PlayCountTable.COLUMN_PLAY_COUNT, PlayCountTable.COLUMN_TIME_PLAYED))
+                .build()
+
+            playStatsSubscription = SqlBriteUtils.createObservableList(context, { cursor ->
+                Pair(
+                    cursor.getLong(cursor.getColumnIndexOrThrow(PlayCountTable.COLUMN_ID)),
+                    PlayStats(
+                        cursor.getInt(cursor.getColumnIndexOrThrow(PlayCountTable.COLUMN_PLAY_COUNT)),
+                        cursor.getLong(cursor.getColumnIndexOrThrow(PlayCountTable.COLUMN_TIME_PLAYED))
+                    )
+                )
+            }, query)
+                .map { pairs -> pairs.toMap() }
+                .subscribe(
+                    playStatsRelay,
+                    Consumer { error -> LogUtils.logException(TAG, "Failed to get play stats", error) }
+                )
+        }
+
+        return playStatsRelay
+            .subscribeOn(Schedulers.io())
+    }
+
+    /**
+     * The ids of the songs belonging to each of the passed in genres, keyed by lower case genre name. Genres which don't
+     * exist are absent from the map.
+     */
+    private fun getGenreMembers(genres: Set<String>): Observable<Map<String, Set<Long>>> {
+        if (genres.isEmpty()) {
+            return Observable.just(emptyMap())
+        }
+
+        return SqlBriteUtils.createObservableList<Genre>(context, Genre.mapper(), Genre.getQuery())
+            .map { allGenres -> allGenres.filter { genre -> genre.name != null && genres.contains(genre.name.toLowerCase(Locale.getDefault())) } }
+            .distinctUntilChanged()
+            .switchMap { matchingGenres ->
+                if (matchingGenres.isEmpty()) {
+                    Observable.just<Map<String, Set<Long>>>(emptyMap())
+                } else {
+                    Observable.combineLatest(
+                        matchingGenres.map { genre ->
+                            val query = Query.Builder()
+                                .uri(MediaStore.Audio.Genres.Members.getContentUri("external", genre.id))
+                                .projection(arrayOf(MediaStore.Audio.Genres.Members.AUDIO_ID))
+                                .build()
+                            SqlBriteUtils.createObservableList(context, { cursor -> cursor.getLong(0) }, query)
+                                .map { songIds -> Pair(genre.name.toLowerCase(Locale.getDefault()), songIds.toSet()) }
+                        },
+                        Function<Array<Any>, Map<String, Set<Long>>> { members ->
+                            // MediaStore can hold several genres whose names differ only in case
+                            val genreMembers = HashMap<String, Set<Long>>()
+                            members.forEach { member ->
+                                @Suppress("UNCHECKED_CAST")
+                                val (name, songIds) = member as Pair<String, Set<Long>>
+                                genreMembers[name] = genreMembers[name]?.plus(songIds) ?: songIds
+                            }
+                            genreMembers
+                        })
+                }
+            }
+    }
+
     override fun getSongs(genre: Genre): Observable<List<Song>> {
         return getSongs()
-            .map { songs ->
-                songs.sortedWith(Comparator { a, b -> ComparisonUtils.compareInt(b.year, a.year) })
-                    .sortedWith(Comparator { a, b -> ComparisonUtils.compareInt(a.track, b.track) })
-                    .sortedWith(Comparator { a, b -> ComparisonUtils.compareInt(a.discNumber, b.discNumber) })
-                    .sortedWith(Comparator { a, b -> ComparisonUtils.compare(a.albumName, b.albumName) })
-                    .sortedWith(Comparator { a, b -> ComparisonUtils.compare(a.albumArtistName, b.albumArtistName) })
-            }
+            .map { songs -> songs.sortedWith(Comparators.SONG_GENRE) }
     }
 
     private fun getInclExclTransformer(): ObservableTransformer<List<Song>, List<Song>> {
@@ -213,5 +399,7 @@ open class SongsRepository @Inject constructor(
 
     companion object {
         const val TAG = "SongsRepository"
+
+        private const val LIBRARY_CACHE_WRITE_DELAY_MILLIS = 2000L
     }
 }
\ No newline at end of file
@@ -0,0 +1,211 @@
+package com.simplecity.amp_library.glide.fetcher;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+import com.simplecity.amp_library.model.ArtworkProvider;
+import com.simplecity.amp_library.utils.LogUtils;
+import io.reactivex.Completable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers which local artwork sources (MediaStore, folder & tag) came up empty for a given artwork key, so that
+ * {@link MultiFetcher} can skip them next time, rather than repeating the query, directory scan or tag parse.
+ * <p>
+ * Each miss is recorded against the modification time of the file it depends on: the audio file for the MediaStore & tag
+ * sources, or its folder for the folder source. If that time has changed (the tags were edited, an image was added to the
+ * folder), the miss no longer applies. Remote misses aren't recorded, as they're usually down to the network.
+ * <p>
+ * Misses are persisted to a small file in the cache dir, written a few seconds after the last change.
+ */
+public final class ArtworkMissCache {
+
+    private static final String TAG = "ArtworkMissCache";
+
+    private static final String FILE_NAME = "artwork_misses";
+
+    private static final int VERSION = 1;
+
+    private static final int MAX_ENTRIES = 10000;
+
+    private static final long WRITE_DELAY_SECONDS = 5;
+
+    private static volatile ArtworkMissCache instance;
+
+    public static ArtworkMissCache getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ArtworkMissCache.class) {
+                if (instance == null) {
+                    instance = new ArtworkMissCache(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private final File file;
+
+    // Guarded by this. Access ordered, so the least recently used misses are dropped first.
+    private final Map<String, Long> misses = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private boolean loaded;
+
+    @Nullable
+    private Disposable writeDisposable;
+
+    private ArtworkMissCache(Context context) {
+        file = new File(context.getCacheDir(), FILE_NAME);
+    }
+
+    /**
+     * @return true if the source is known to have no artwork for this provider.
+     */
+    @WorkerThread
+    public synchronized boolean isMiss(@NonNull ArtworkProvider artworkProvider, @ArtworkProvider.Type int type) {
+        long lastModified = getLastModified(artworkProvider, type);
+        if (lastModified == 0) {
+            return false;
+        }
+        ensureLoaded();
+        Long missLastModified = misses.get(getKey(artworkProvider, type));
+        return missLastModified != null && missLastModified == lastModified;
+    }
+
+    /**
+     * Records that the source has no artwork for this provider.
+     */
+    @WorkerThread
+    public synchronized void putMiss(@NonNull ArtworkProvider artworkProvider, @ArtworkProvider.Type int type) {
+        long lastModified = getLastModified(artworkProvider, type);
+        if (lastModified == 0) {
+            return;
+        }
+        ensureLoaded();
+        misses.put(getKey(artworkProvider, type), lastModified);
+        scheduleWrite();
+    }
+
+    /**
+     * Records that the source has artwork for this provider, in case it was previously a miss.
+     */
+    @WorkerThread
+    public synchronized void removeMiss(@NonNull ArtworkProvider artworkProvider, @ArtworkProvider.Type int type) {
+        ensureLoaded();
+        if (misses.remove(getKey(artworkProvider, type)) != null) {
+            scheduleWrite();
+        }
+    }
+
+    /**
+     * Forgets every miss, for when the artwork caches are cleared.
+     */
+    public synchronized void clear() {
+        loaded = true;
+        misses.clear();
+        scheduleWrite();
+    }
+
+    private static String getKey(ArtworkProvider artworkProvider, @ArtworkProvider.Type int type) {
+        return artworkProvider.getArtworkKey() + "_" + type;
+    }
+
+    /**
+     * @return the modification time of the file the source depends on, or 0 if there isn't one (in which case, misses
+     * aren't recorded).
+     */
+    private static long getLastModified(ArtworkProvider artworkProvider, @ArtworkProvider.Type int type) {
+        File file = artworkProvider.getArtworkFile();
+        if (file == null) {
+            return 0;
+        }
+        switch (type) {
+            case ArtworkProvider.Type.MEDIA_STORE:
+            case ArtworkProvider.Type.TAG:
+                return file.lastModified();
+            case ArtworkProvider.Type.FOLDER:
+                File folder = file.getParentFile();
+                return folder == null ? 0 : folder.lastModified();
+            default:
+                return 0;
+        }
+    }
+
+    private void scheduleWrite() {
+        if (writeDisposable == null) {
+            writeDisposable = Completable.timer(WRITE_DELAY_SECONDS, TimeUnit.SECONDS, Schedulers.io())
+                    .subscribe(
+                            this::write,
+                            error -> LogUtils.logException(TAG, "Error writing artwork misses", error)
+                    );
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        if (!file.exists()) {
+            return;
+        }
+
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (inputStream.readInt() != VERSION) {
+                return;
+            }
+            int count = inputStream.readInt();
+            for (int i = 0; i < count; i++) {
+                misses.put(inputStream.readUTF(), inputStream.readLong());
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read artwork misses: " + e.toString());
+            misses.clear();
+        }
+    }
+
+    @WorkerThread
+    private void write() {
+        List<String> keys;
+        List<Long> lastModifieds;
+        synchronized (this) {
+            writeDisposable = null;
+            keys = new ArrayList<>(misses.keySet());
+            lastModifieds = new ArrayList<>(misses.values());
+        }
+
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            outputStream.writeInt(VERSION);
+            outputStream.writeInt(keys.size());
+            for (int i = 0, size = keys.size(); i < size; i++) {
+                outputStream.writeUTF(keys.get(i));
+                outputStream.writeLong(lastModifieds.get(i));
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write artwork misses: " + e.toString());
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.simplecity.amp_library.glide.fetcher;
+
+import android.content.Context;
+import android.preference.PreferenceManager;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+import com.simplecity.amp_library.utils.SettingsManager;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Pre-scaled artwork thumbnails, stored on disk at a few canonical sizes, so repeat loads (scrolling back through a grid)
+ * read a small file rather than fetching & decoding the full cover again. See {@link ThumbnailFetcher}.
+ * <p>
+ * Thumbnails are keyed by the artwork's fetcher id (the artwork key, plus any user selected artwork) and size. The least
+ * recently used thumbnails are deleted once the total exceeds the size budget chosen in settings.
+ */
+public final class ArtworkThumbnailCache {
+
+    private static final String TAG = "ArtworkThumbnailCache";
+
+    private static final String DIRECTORY_NAME = "artwork_thumbnails";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Thumbnail sizes (px, longest side), roughly: list items, grid items & now playing. Ascending.
+     */
+    static final int[] SIZES = { 256, 512, 1024 };
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static volatile ArtworkThumbnailCache instance;
+
+    public static ArtworkThumbnailCache getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ArtworkThumbnailCache.class) {
+                if (instance == null) {
+                    SettingsManager settingsManager = new SettingsManager(PreferenceManager.getDefaultSharedPreferences(context));
+                    instance = new ArtworkThumbnailCache(context.getApplicationContext(), settingsManager.getArtworkCacheSizeMb() * 1024L * 1024L);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @return the canonical thumbnail size for a target of the given dimensions, or 0 if the target is larger than any
+     * thumbnail (or of unknown size), in which case the full artwork should be loaded.
+     */
+    public static int getThumbnailSize(int width, int height) {
+        int targetSize = Math.max(width, height);
+        if (targetSize <= 0) {
+            return 0;
+        }
+        for (int size : SIZES) {
+            if (size >= targetSize) {
+                return size;
+            }
+        }
+        return 0;
+    }
+
+    private final File directory;
+
+    // Guarded by this. Thumbnail file name -> length. Access ordered, so the least recently used come first.
+    private final Map<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // Guarded by this
+    private long totalLength;
+
+    // Guarded by this
+    private long maxLength;
+
+    // Guarded by this
+    private boolean loaded;
+
+    private ArtworkThumbnailCache(Context context, long maxLength) {
+        this(new File(context.getCacheDir(), DIRECTORY_NAME), maxLength);
+    }
+
+    ArtworkThumbnailCache(@NonNull File directory, long maxLength) {
+        this.directory = directory;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * @return a stream over the thumbnail (which must be closed), or null if there isn't one.
+     */
+    @WorkerThread
+    @Nullable
+    public synchronized InputStream get(@NonNull String id, int size) {
+        ensureLoaded();
+        String name = getName(id, size);
+        if (entries.get(name) == null) {
+            return null;
+        }
+        File file = new File(directory, name);
+        try {
+            InputStream inputStream = new FileInputStream(file);
+            // So the least recently used order survives a restart
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+            return inputStream;
+        } catch (FileNotFoundException e) {
+            remove(name);
+            return null;
+        }
+    }
+
+    @WorkerThread
+    public void put(@NonNull String id, int size, @NonNull byte[] thumbnail) {
+        String name = getName(id, size);
+
+        synchronized (this) {
+            ensureLoaded();
+        }
+
+        // Written to a temporary file first, so a reader never sees a partial thumbnail
+        File tempFile = new File(directory, name + "." + Thread.currentThread().getId() + TEMP_SUFFIX);
+        File file = new File(directory, name);
+        try (FileOutputStream outputStream = new FileOutputStream(tempFile)) {
+            outputStream.write(thumbnail);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write thumbnail: " + e.toString());
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            return;
+        }
+
+        synchronized (this) {
+            if (!tempFile.renameTo(file)) {
+                //noinspection ResultOfMethodCallIgnored
+                tempFile.delete();
+                return;
+            }
+            remove(name);
+            entries.put(name, (long) thumbnail.length);
+            totalLength += thumbnail.length;
+            trimToSize();
+        }
+    }
+
+    /**
+     * Sets the size budget, deleting the least recently used thumbnails if it's now exceeded.
+     */
+    @WorkerThread
+    public synchronized void setMaxLength(long maxLength) {
+        this.maxLength = maxLength;
+        ensureLoaded();
+        trimToSize();
+    }
+
+    /**
+     * Deletes every thumbnail, for when the artwork caches are cleared.
+     */
+    @WorkerThread
+    public synchronized void clear() {
+        ensureLoaded();
+        for (String name : entries.keySet()) {
+            //noinspection ResultOfMethodCallIgnored
+            new File(directory, name).delete();
+        }
+        entries.clear();
+        totalLength = 0;
+    }
+
+    // Guarded by this
+    private void remove(String name) {
+        Long length = entries.remove(name);
+        if (length != null) {
+            totalLength -= length;
+        }
+    }
+
+    // Guarded by this
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalLength > maxLength && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            //noinspection ResultOfMethodCallIgnored
+            new File(directory, entry.getKey()).delete();
+            totalLength -= entry.getValue();
+            iterator.remove();
+        }
+    }
+
+    // Guarded by this
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.e(TAG, "Failed to create thumbnail directory");
+            return;
+        }
+
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        // Oldest first, as they're added in access order
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (file.getName().endsWith(TEMP_SUFFIX)) {
+                // Left over from an interrupted write
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+                continue;
+            }
+            long length = file.length();
+            entries.put(file.getName(), length);
+            totalLength += length;
+        }
+        trimToSize();
+    }
+
+    static String getName(String id, int size) {
+        return sha1(id) + "_" + size;
+    }
+
+    private static String sha1(String string) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(string.getBytes(UTF_8));
+            StringBuilder stringBuilder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                stringBuilder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return stringBuilder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is always available
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.simplecity.amp_library.glide.fetcher;
 
 import android.content.Context;
+import android.os.Process;
+import android.support.annotation.Nullable;
 import com.bumptech.glide.Priority;
 import com.bumptech.glide.load.data.DataFetcher;
 import com.simplecity.amp_library.ShuttleApplication;
@@ -10,26 +12,68 @@ import com.simplecity.amp_library.utils.SettingsManager;
 import com.simplecity.amp_library.utils.ShuttleUtils;
 import java.io.File;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+/**
+ * Loads artwork from the first source, in order of preference, which has some.
+ * <p>
+ * The local sources (MediaStore, then tags & folders in the user's preferred order) are tried in parallel, and the most
+ * preferred source with artwork wins as soon as every source ahead of it has come up empty. So a slow tag parse no longer
+ * holds up the folder check, but a folder image never beats embedded artwork the user prefers. The remaining sources are
+ * then cancelled, and any stream they opened is closed.
+ * <p>
+ * Remote artwork is only requested once every local source has missed, so we don't make a network request for artwork we
+ * already have.
+ */
 public class MultiFetcher implements DataFetcher<InputStream> {
 
     private static final String TAG = "MultiFetcher";
 
+    /**
+     * Runs the local sources. Shared by all fetchers, and sized to the device, so a grid full of loads doesn't spawn a
+     * thread per source.
+     */
+    private static final ExecutorService sourceExecutor = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()),
+            runnable -> {
+                Thread thread = new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }, "MultiFetcher source");
+                thread.setDaemon(true);
+                return thread;
+            });
+
     private Context applicationContext;
 
-    private DataFetcher<InputStream> dataFetcher;
+    private volatile DataFetcher<InputStream> dataFetcher;
 
     private ArtworkProvider artworkProvider;
 
     private SettingsManager settingsManager;
 
+    private ArtworkMissCache missCache;
+
     private boolean allowOfflineDownload = false;
 
+    // Guarded by this
+    private final List<Source> sources = new ArrayList<>();
+
+    // Guarded by this
+    private boolean isCancelled;
+
     public MultiFetcher(Context context, ArtworkProvider artworkProvider, SettingsManager settingsManager, boolean allowOfflineDownload) {
         applicationContext = context;
         this.artworkProvider = artworkProvider;
         this.settingsManager = settingsManager;
         this.allowOfflineDownload = allowOfflineDownload;
+        this.missCache = ArtworkMissCache.getInstance(context);
     }
 
     private InputStream loadData(DataFetcher<InputStream> dataFetcher, Priority priority) {
@@ -45,6 +89,78 @@ public class MultiFetcher implements DataFetcher<InputStream> {
         return inputStream;
     }
 
+    /**
+     * A local source, loading on {@link #sourceExecutor}.
+     */
+    private final class Source {
+
+        final DataFetcher<InputStream> fetcher;
+
+        @ArtworkProvider.Type
+        final int type;
+
+        Future<InputStream> future;
+
+        // Guarded by this
+        private boolean isAbandoned;
+
+        // Guarded by this
+        @Nullable
+        private InputStream inputStream;
+
+        Source(DataFetcher<InputStream> fetcher, @ArtworkProvider.Type int type) {
+            this.fetcher = fetcher;
+            this.type = type;
+        }
+
+        void start(Priority priority) {
+            future = sourceExecutor.submit(() -> load(priority));
+        }
+
+        private InputStream load(Priority priority) {
+            // Skip sources known to be empty. See ArtworkMissCache.
+            if (missCache.isMiss(artworkProvider, type)) {
+                return null;
+            }
+
+            InputStream inputStream = loadData(fetcher, priority);
+
+            synchronized (this) {
+                if (isAbandoned) {
+                    // A failure here may just be the interrupt, so it doesn't count as a miss
+                    if (inputStream != null) {
+                        fetcher.cleanup();
+                    }
+                    return null;
+                }
+                if (inputStream == null) {
+                    missCache.putMiss(artworkProvider, type);
+                } else {
+                    missCache.removeMiss(artworkProvider, type);
+                }
+                this.inputStream = inputStream;
+                return inputStream;
+            }
+        }
+
+        /**
+         * Stops the source loading, closing its stream if it has one.
+         */
+        void abandon() {
+            synchronized (this) {
+                isAbandoned = true;
+                if (inputStream != null) {
+                    fetcher.cleanup();
+                    inputStream = null;
+                }
+            }
+            fetcher.cancel();
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+    }
+
     @Override
     public InputStream loadData(Priority priority) throws Exception {
         InputStream inputStream = null;
@@ -65,37 +181,8 @@ public class MultiFetcher implements DataFetcher<InputStream> {
         }
 
         //No user selected artwork. Check local then remote sources, according to user's preferences.
-
-        //Check the MediaStore
-        if (inputStream == null && !settingsManager.ignoreMediaStoreArtwork()) {
-            dataFetcher = new MediaStoreFetcher(applicationContext, artworkProvider);
-            inputStream = loadData(dataFetcher, priority);
-        }
-
         if (inputStream == null) {
-            if (settingsManager.preferEmbeddedArtwork()) {
-                //Check tags
-                if (!settingsManager.ignoreEmbeddedArtwork()) {
-                    dataFetcher = new TagFetcher(artworkProvider);
-                    inputStream = loadData(dataFetcher, priority);
-                }
-                //Check folders
-                if (inputStream == null && !settingsManager.ignoreFolderArtwork()) {
-                    dataFetcher = new FolderFetcher(artworkProvider, null);
-                    inputStream = loadData(dataFetcher, priority);
-                }
-            } else {
-                //Check folders
-                if (!settingsManager.ignoreFolderArtwork()) {
-                    dataFetcher = new FolderFetcher(artworkProvider, null);
-                    inputStream = loadData(dataFetcher, priority);
-                }
-                //Check tags
-                if (inputStream == null && !settingsManager.ignoreEmbeddedArtwork()) {
-                    dataFetcher = new TagFetcher(artworkProvider);
-                    inputStream = loadData(dataFetcher, priority);
-                }
-            }
+            inputStream = loadLocalData(priority);
         }
 
         if (inputStream == null) {
@@ -104,13 +191,110 @@ public class MultiFetcher implements DataFetcher<InputStream> {
                     && ShuttleUtils.isOnline(applicationContext, true))) {
 
                 //Last FM
-                dataFetcher = new RemoteFetcher(artworkProvider);
+                synchronized (this) {
+                    if (isCancelled) {
+                        return null;
+                    }
+                    dataFetcher = new RemoteFetcher(artworkProvider);
+                }
                 inputStream = loadData(dataFetcher, priority);
             }
         }
         return inputStream;
     }
 
+    /**
+     * @return the local sources which are enabled, most preferred first.
+     */
+    private List<Source> getLocalSources() {
+        List<Source> sources = new ArrayList<>(3);
+
+        //Check the MediaStore
+        if (!settingsManager.ignoreMediaStoreArtwork()) {
+            sources.add(new Source(new MediaStoreFetcher(applicationContext, artworkProvider), ArtworkProvider.Type.MEDIA_STORE));
+        }
+
+        Source tagSource = settingsManager.ignoreEmbeddedArtwork() ? null : new Source(new TagFetcher(artworkProvider), ArtworkProvider.Type.TAG);
+        Source folderSource = settingsManager.ignoreFolderArtwork() ? null : new Source(new FolderFetcher(artworkProvider, null), ArtworkProvider.Type.FOLDER);
+
+        if (settingsManager.preferEmbeddedArtwork()) {
+            //Check tags, then folders
+            addIfNotNull(sources, tagSource);
+            addIfNotNull(sources, folderSource);
+        } else {
+            //Check folders, then tags
+            addIfNotNull(sources, folderSource);
+            addIfNotNull(sources, tagSource);
+        }
+
+        return sources;
+    }
+
+    private static void addIfNotNull(List<Source> sources, @Nullable Source source) {
+        if (source != null) {
+            sources.add(source);
+        }
+    }
+
+    /**
+     * Starts every local source, then waits on them in order of preference, returning the first stream found.
+     */
+    @Nullable
+    private InputStream loadLocalData(Priority priority) throws InterruptedException {
+        List<Source> localSources = getLocalSources();
+        if (localSources.isEmpty()) {
+            return null;
+        }
+
+        synchronized (this) {
+            if (isCancelled) {
+                return null;
+            }
+            sources.addAll(localSources);
+            for (Source source : localSources) {
+                source.start(priority);
+            }
+        }
+
+        InputStream inputStream = null;
+        Source winner = null;
+        for (Source source : localSources) {
+            try {
+                inputStream = source.future.get();
+            } catch (CancellationException e) {
+                // cancel() was called
+                return null;
+            } catch (ExecutionException e) {
+                inputStream = null;
+            }
+            if (inputStream != null) {
+                winner = source;
+                break;
+            }
+        }
+
+        synchronized (this) {
+            sources.remove(winner);
+            abandonSources();
+            if (winner != null) {
+                if (isCancelled) {
+                    winner.abandon();
+                    return null;
+                }
+                dataFetcher = winner.fetcher;
+            }
+        }
+        return inputStream;
+    }
+
+    // Guarded by this
+    private void abandonSources() {
+        for (Source source : sources) {
+            source.abandon();
+        }
+        sources.clear();
+    }
+
     @Override
     public void cleanup() {
         if (dataFetcher != null) {
@@ -120,6 +304,11 @@ public class MultiFetcher implements DataFetcher<InputStream> {
 
     @Override
     public void cancel() {
+        synchronized (this) {
+            isCancelled = true;
+            abandonSources();
+        }
+        DataFetcher<InputStream> dataFetcher = this.dataFetcher;
         if (dataFetcher != null) {
             dataFetcher.cancel();
         }
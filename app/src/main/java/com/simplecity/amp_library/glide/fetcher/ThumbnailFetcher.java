@@ -0,0 +1,167 @@
+package com.simplecity.amp_library.glide.fetcher;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.annotation.Nullable;
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.data.DataFetcher;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Serves artwork from the {@link ArtworkThumbnailCache} at the given canonical size. On a miss, the artwork is loaded
+ * from the wrapped fetcher & decoded once, and scaled down to a thumbnail at every canonical size, which are all stored.
+ * So a miss at another size later on doesn't load the source again (which, for remote artwork, means downloading it).
+ */
+public class ThumbnailFetcher implements DataFetcher<InputStream> {
+
+    private static final int QUALITY = 85;
+
+    /**
+     * How much of the source to buffer while reading the image bounds. See BitmapAndSizeDecoder.
+     */
+    private static final int MARK_LIMIT = 100 * 2048;
+
+    private final DataFetcher<InputStream> sourceFetcher;
+
+    private final ArtworkThumbnailCache thumbnailCache;
+
+    private final int size;
+
+    @Nullable
+    private InputStream inputStream;
+
+    private volatile boolean isCancelled;
+
+    public ThumbnailFetcher(DataFetcher<InputStream> sourceFetcher, ArtworkThumbnailCache thumbnailCache, int size) {
+        this.sourceFetcher = sourceFetcher;
+        this.thumbnailCache = thumbnailCache;
+        this.size = size;
+    }
+
+    @Override
+    public InputStream loadData(Priority priority) throws Exception {
+        String sourceId = sourceFetcher.getId();
+
+        inputStream = thumbnailCache.get(sourceId, size);
+        if (inputStream != null) {
+            return inputStream;
+        }
+
+        InputStream sourceStream = sourceFetcher.loadData(priority);
+        if (sourceStream == null || isCancelled) {
+            return null;
+        }
+
+        byte[][] thumbnails;
+        try {
+            thumbnails = createThumbnails(sourceStream);
+        } finally {
+            sourceFetcher.cleanup();
+        }
+        if (thumbnails == null || isCancelled) {
+            return null;
+        }
+
+        byte[] thumbnail = null;
+        for (int i = 0; i < ArtworkThumbnailCache.SIZES.length; i++) {
+            thumbnailCache.put(sourceId, ArtworkThumbnailCache.SIZES[i], thumbnails[i]);
+            if (ArtworkThumbnailCache.SIZES[i] == size) {
+                thumbnail = thumbnails[i];
+            }
+        }
+        if (thumbnail == null) {
+            return null;
+        }
+
+        inputStream = new ByteArrayInputStream(thumbnail);
+        return inputStream;
+    }
+
+    /**
+     * @return the image at each of {@link ArtworkThumbnailCache#SIZES}, downsampled & scaled so its longest side is at most
+     * that size, encoded as WebP. Or null if it couldn't be decoded.
+     */
+    @Nullable
+    private static byte[][] createThumbnails(InputStream source) throws IOException {
+        if (!source.markSupported()) {
+            source = new BufferedInputStream(source);
+        }
+
+        source.mark(MARK_LIMIT);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeStream(source, null, options);
+        source.reset();
+
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        // Decode at the largest power of 2 reduction which is still at least the largest thumbnail size
+        int[] sizes = ArtworkThumbnailCache.SIZES;
+        int largestSize = sizes[sizes.length - 1];
+        int longestSide = Math.max(options.outWidth, options.outHeight);
+        int sampleSize = 1;
+        while (longestSide / (sampleSize * 2) >= largestSize) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+
+        Bitmap bitmap = BitmapFactory.decodeStream(source, null, options);
+        if (bitmap == null) {
+            return null;
+        }
+
+        // Largest first, each scaled from the last, so every size costs less than the one before
+        byte[][] thumbnails = new byte[sizes.length][];
+        for (int i = sizes.length - 1; i >= 0; i--) {
+            longestSide = Math.max(bitmap.getWidth(), bitmap.getHeight());
+            if (longestSide > sizes[i]) {
+                float scale = sizes[i] / (float) longestSide;
+                Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                        Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                        Math.max(1, Math.round(bitmap.getHeight() * scale)),
+                        true);
+                if (scaled != bitmap) {
+                    bitmap.recycle();
+                }
+                bitmap = scaled;
+            }
+
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            bitmap.compress(Bitmap.CompressFormat.WEBP, QUALITY, outputStream);
+            thumbnails[i] = outputStream.toByteArray();
+        }
+        bitmap.recycle();
+        return thumbnails;
+    }
+
+    @Override
+    public void cleanup() {
+        if (inputStream != null) {
+            try {
+                inputStream.close();
+            } catch (IOException ignored) {
+
+            }
+        }
+        sourceFetcher.cleanup();
+    }
+
+    @Override
+    public void cancel() {
+        isCancelled = true;
+        sourceFetcher.cancel();
+    }
+
+    @Override
+    public String getId() {
+        // Distinct from the full artwork, so Glide's source cache doesn't serve a thumbnail to a larger target
+        return sourceFetcher.getId() + "_thumbnail_" + size;
+    }
+}
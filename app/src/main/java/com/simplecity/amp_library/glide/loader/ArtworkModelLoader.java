@@ -2,11 +2,14 @@ package com.simplecity.amp_library.glide.loader;
 
 import android.content.Context;
 import android.preference.PreferenceManager;
+import android.support.annotation.Nullable;
 import com.bumptech.glide.load.data.DataFetcher;
 import com.bumptech.glide.load.model.GenericLoaderFactory;
 import com.bumptech.glide.load.model.ModelLoader;
 import com.bumptech.glide.load.model.ModelLoaderFactory;
+import com.simplecity.amp_library.glide.fetcher.ArtworkThumbnailCache;
 import com.simplecity.amp_library.glide.fetcher.MultiFetcher;
+import com.simplecity.amp_library.glide.fetcher.ThumbnailFetcher;
 import com.simplecity.amp_library.model.ArtworkProvider;
 import com.simplecity.amp_library.utils.SettingsManager;
 import java.io.InputStream;
@@ -19,17 +22,37 @@ public class ArtworkModelLoader implements ModelLoader<ArtworkProvider, InputStr
 
     private SettingsManager settingsManager;
 
+    @Nullable
+    private ArtworkThumbnailCache thumbnailCache;
+
     public ArtworkModelLoader(Context context, boolean allowOfflineDownload) {
+        this(context, allowOfflineDownload, null);
+    }
+
+    /**
+     * @param thumbnailCache if non-null, targets small enough for a thumbnail are served from this cache.
+     */
+    public ArtworkModelLoader(Context context, boolean allowOfflineDownload, @Nullable ArtworkThumbnailCache thumbnailCache) {
         this.applicationContext = context.getApplicationContext();
         this.allowOfflineDownload = allowOfflineDownload;
         this.settingsManager = new SettingsManager(PreferenceManager.getDefaultSharedPreferences(context));
+        this.thumbnailCache = thumbnailCache;
     }
 
     private static final String TAG = "ArtworkModelLoader";
 
     @Override
     public DataFetcher<InputStream> getResourceFetcher(ArtworkProvider model, int width, int height) {
-        return new MultiFetcher(applicationContext, model, settingsManager, allowOfflineDownload);
+        MultiFetcher multiFetcher = new MultiFetcher(applicationContext, model, settingsManager, allowOfflineDownload);
+        if (thumbnailCache != null) {
+            int thumbnailSize = ArtworkThumbnailCache.getThumbnailSize(width, height);
+            if (thumbnailSize != 0) {
+                // The thumbnail cache already holds the artwork at every thumbnail size, so these loads should use
+                // DiskCacheStrategy.RESULT rather than also caching the thumbnail in Glide's source cache
+                return new ThumbnailFetcher(multiFetcher, thumbnailCache, thumbnailSize);
+            }
+        }
+        return multiFetcher;
     }
 
     /**
@@ -37,9 +60,16 @@ public class ArtworkModelLoader implements ModelLoader<ArtworkProvider, InputStr
      */
     public static class Factory implements ModelLoaderFactory<ArtworkProvider, InputStream> {
 
+        @Nullable
+        private final ArtworkThumbnailCache thumbnailCache;
+
+        public Factory(@Nullable ArtworkThumbnailCache thumbnailCache) {
+            this.thumbnailCache = thumbnailCache;
+        }
+
         @Override
         public ModelLoader<ArtworkProvider, InputStream> build(Context context, GenericLoaderFactory factories) {
-            return new ArtworkModelLoader(context, false);
+            return new ArtworkModelLoader(context, false, thumbnailCache);
         }
 
         @Override
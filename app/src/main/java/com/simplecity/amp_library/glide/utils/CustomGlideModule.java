@@ -4,6 +4,7 @@ import android.content.Context;
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.GlideBuilder;
 import com.bumptech.glide.module.GlideModule;
+import com.simplecity.amp_library.glide.fetcher.ArtworkThumbnailCache;
 import com.simplecity.amp_library.glide.loader.ArtworkModelLoader;
 import com.simplecity.amp_library.model.ArtworkProvider;
 import java.io.InputStream;
@@ -21,6 +22,6 @@ public class CustomGlideModule implements GlideModule {
 
     @Override
     public void registerComponents(Context context, Glide glide) {
-        glide.register(ArtworkProvider.class, InputStream.class, new ArtworkModelLoader.Factory());
+        glide.register(ArtworkProvider.class, InputStream.class, new ArtworkModelLoader.Factory(ArtworkThumbnailCache.getInstance(context)));
     }
 }
\ No newline at end of file
@@ -43,6 +43,10 @@ public class Album implements
 
     private String sortKey;
 
+    private transient byte[] sortCollationKey;
+    private transient byte[] nameCollationKey;
+    private transient byte[] albumArtistNameCollationKey;
+
     public Album(long id, String name, List<Artist> artists, String albumArtistName, int numSongs, int numDiscs, int year, long lastPlayed, long dateAdded, List<String> paths, int songPlayCount) {
         this.id = id;
         this.name = name;
@@ -194,6 +198,39 @@ public class Album implements
     @Override
     public void setSortKey() {
         sortKey = StringUtils.keyFor(name);
+        sortCollationKey = null;
+    }
+
+    public byte[] getSortCollationKey() {
+        if (sortCollationKey == null) {
+            sortCollationKey = ComparisonUtils.getCollationKey(getSortKey());
+        }
+        return sortCollationKey;
+    }
+
+    public byte[] getNameCollationKey() {
+        if (nameCollationKey == null) {
+            nameCollationKey = ComparisonUtils.getCollationKey(name);
+        }
+        return nameCollationKey;
+    }
+
+    public byte[] getAlbumArtistNameCollationKey() {
+        if (albumArtistNameCollationKey == null) {
+            albumArtistNameCollationKey = ComparisonUtils.getCollationKey(albumArtistName);
+        }
+        return albumArtistNameCollationKey;
+    }
+
+    /**
+     * Computes all sort & collation keys up front, so that subsequent sorts and section name lookups don't need to.
+     */
+    @WorkerThread
+    public void computeSortKeys() {
+        getSortKey();
+        getSortCollationKey();
+        getNameCollationKey();
+        getAlbumArtistNameCollationKey();
     }
 
     @Override
@@ -240,6 +277,13 @@ public class Album implements
         return ArtworkUtils.getAllFolderArtwork(getArtworkPath());
     }
 
+    @Nullable
+    @Override
+    public File getArtworkFile() {
+        String path = getArtworkPath();
+        return path == null ? null : new File(path);
+    }
+
     @Nullable
     @WorkerThread
     private String getArtworkPath() {
@@ -251,6 +295,6 @@ public class Album implements
 
     @Override
     public int compareTo(@NonNull Album album) {
-        return ComparisonUtils.compare(getSortKey(), album.getSortKey());
+        return ComparisonUtils.compare(getSortCollationKey(), album.getSortCollationKey());
     }
 }
\ No newline at end of file
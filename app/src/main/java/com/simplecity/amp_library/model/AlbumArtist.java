@@ -3,7 +3,7 @@ package com.simplecity.amp_library.model;
 import android.content.Context;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import com.annimon.stream.Stream;
+import android.support.annotation.WorkerThread;
 import com.simplecity.amp_library.data.Repository;
 import com.simplecity.amp_library.utils.ComparisonUtils;
 import com.simplecity.amp_library.utils.StringUtils;
@@ -30,15 +30,16 @@ public class AlbumArtist implements
 
     private String sortKey;
 
+    private transient byte[] sortCollationKey;
+    private transient byte[] nameCollationKey;
+
     public AlbumArtist(String name, List<Album> albums) {
         this.name = name;
         this.albums = albums;
     }
 
     public Single<List<Song>> getSongsSingle(Repository.SongsRepository songsRepository) {
-        return songsRepository.getSongs(song -> Stream.of(albums)
-                .map(album -> album.id)
-                .anyMatch(albumId -> albumId == song.albumId))
+        return songsRepository.getSongs(this)
                 .first(Collections.emptyList());
     }
 
@@ -53,6 +54,31 @@ public class AlbumArtist implements
     @Override
     public void setSortKey() {
         sortKey = StringUtils.keyFor(name);
+        sortCollationKey = null;
+    }
+
+    public byte[] getSortCollationKey() {
+        if (sortCollationKey == null) {
+            sortCollationKey = ComparisonUtils.getCollationKey(getSortKey());
+        }
+        return sortCollationKey;
+    }
+
+    public byte[] getNameCollationKey() {
+        if (nameCollationKey == null) {
+            nameCollationKey = ComparisonUtils.getCollationKey(name);
+        }
+        return nameCollationKey;
+    }
+
+    /**
+     * Computes all sort & collation keys up front, so that subsequent sorts and section name lookups don't need to.
+     */
+    @WorkerThread
+    public void computeSortKeys() {
+        getSortKey();
+        getSortCollationKey();
+        getNameCollationKey();
     }
 
     @Override
@@ -157,8 +183,14 @@ public class AlbumArtist implements
         return Collections.emptyList();
     }
 
+    @Nullable
+    @Override
+    public File getArtworkFile() {
+        return null;
+    }
+
     @Override
     public int compareTo(@NonNull AlbumArtist albumArtist) {
-        return ComparisonUtils.compare(getSortKey(), albumArtist.getSortKey());
+        return ComparisonUtils.compare(getSortCollationKey(), albumArtist.getSortCollationKey());
     }
 }
\ No newline at end of file
@@ -33,4 +33,10 @@ public interface ArtworkProvider {
 
     @Nullable
     List<File> getFolderArtworkFiles();
+
+    /**
+     * @return the audio file whose tags (and folder) the local artwork sources are read from, or null if there isn't one.
+     */
+    @Nullable
+    File getArtworkFile();
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package com.simplecity.amp_library.model;
 
 import android.database.Cursor;
 import android.provider.MediaStore;
+import com.simplecity.amp_library.sql.CursorMapper;
 import java.io.Serializable;
 
 public class Genre implements Serializable {
@@ -27,9 +28,30 @@ public class Genre implements Serializable {
                 .build();
     }
 
+    /**
+     * Column indexes for {@link #getProjection()}, resolved once per cursor.
+     */
+    public static final class Columns {
+        final int id;
+        final int name;
+
+        public Columns(Cursor cursor) {
+            id = cursor.getColumnIndex(MediaStore.Audio.Genres._ID);
+            name = cursor.getColumnIndex(MediaStore.Audio.Genres.NAME);
+        }
+    }
+
+    public static CursorMapper<Genre, Columns> mapper() {
+        return new CursorMapper<>(Columns::new, (cursor, columns, strings) -> new Genre(cursor, columns));
+    }
+
     public Genre(Cursor cursor) {
-        this.id = cursor.getLong(cursor.getColumnIndex(MediaStore.Audio.Genres._ID));
-        this.name = cursor.getString(cursor.getColumnIndex(MediaStore.Audio.Genres.NAME));
+        this(cursor, new Columns(cursor));
+    }
+
+    public Genre(Cursor cursor, Columns columns) {
+        this.id = cursor.getLong(columns.id);
+        this.name = cursor.getString(columns.name);
     }
 
     public Genre(long genreId, String name) {
@@ -4,6 +4,7 @@ import android.content.Context;
 import android.database.Cursor;
 import android.provider.MediaStore;
 import com.simplecity.amp_library.R;
+import com.simplecity.amp_library.sql.CursorMapper;
 import com.simplecity.amp_library.utils.playlists.FavoritesPlaylistManager;
 import com.simplecity.amp_library.utils.playlists.PlaylistManager;
 import io.reactivex.annotations.NonNull;
@@ -23,6 +24,7 @@ public class Playlist implements Serializable {
         int RECENTLY_PLAYED = 3;
         int FAVORITES = 4;
         int USER_CREATED = 5;
+        int SMART = 6;
     }
 
     @Type
@@ -62,13 +64,56 @@ public class Playlist implements Serializable {
         this.canSort = canSort;
     }
 
+    /**
+     * Column indexes for {@link #PROJECTION}, resolved once per cursor.
+     */
+    public static final class Columns {
+        final int id;
+        final int name;
+
+        public Columns(Cursor cursor) {
+            id = cursor.getColumnIndex(MediaStore.Audio.Playlists._ID);
+            name = cursor.getColumnIndex(MediaStore.Audio.Playlists.NAME);
+        }
+    }
+
+    /**
+     * Column indexes for a {@link MediaStore.Audio.Playlists.Members} cursor, which includes the {@link Song} projection.
+     */
+    public static final class SongColumns {
+        final Song.Columns songColumns;
+        final int audioId;
+        final int playlistSongId;
+        final int playOrder;
+
+        public SongColumns(Cursor cursor) {
+            songColumns = new Song.Columns(cursor);
+            audioId = cursor.getColumnIndexOrThrow(MediaStore.Audio.Playlists.Members.AUDIO_ID);
+            playlistSongId = cursor.getColumnIndexOrThrow(MediaStore.Audio.Playlists.Members._ID);
+            playOrder = cursor.getColumnIndexOrThrow(MediaStore.Audio.Playlists.Members.PLAY_ORDER);
+        }
+    }
+
+    public static CursorMapper<Playlist, Columns> mapper(Context context) {
+        String favoritesName = context.getString(R.string.fav_title);
+        return new CursorMapper<>(Columns::new, (cursor, columns, strings) -> new Playlist(favoritesName, cursor, columns));
+    }
+
+    public static CursorMapper<Song, SongColumns> songMapper() {
+        return new CursorMapper<>(SongColumns::new, Playlist::createSongFromPlaylistCursor);
+    }
+
     public Playlist(Context context, Cursor cursor) {
-        id = cursor.getLong(cursor.getColumnIndex(MediaStore.Audio.Playlists._ID));
-        name = cursor.getString(cursor.getColumnIndex(MediaStore.Audio.Playlists.NAME));
+        this(context.getString(R.string.fav_title), cursor, new Columns(cursor));
+    }
+
+    private Playlist(String favoritesName, Cursor cursor, Columns columns) {
+        id = cursor.getLong(columns.id);
+        name = cursor.getString(columns.name);
         type = Type.USER_CREATED;
         canClear = true;
 
-        if (context.getString(R.string.fav_title).equals(name)) {
+        if (favoritesName.equals(name)) {
             type = Type.FAVORITES;
             canDelete = false;
             canRename = false;
@@ -124,10 +169,14 @@ public class Playlist implements Serializable {
     }
 
     public static Song createSongFromPlaylistCursor(Cursor cursor) {
-        Song song = new Song(cursor);
-        song.id = cursor.getLong(cursor.getColumnIndexOrThrow(MediaStore.Audio.Playlists.Members.AUDIO_ID));
-        song.playlistSongId = cursor.getLong(cursor.getColumnIndexOrThrow(MediaStore.Audio.Playlists.Members._ID));
-        song.playlistSongPlayOrder = cursor.getLong(cursor.getColumnIndexOrThrow(MediaStore.Audio.Playlists.Members.PLAY_ORDER));
+        return createSongFromPlaylistCursor(cursor, new SongColumns(cursor), null);
+    }
+
+    private static Song createSongFromPlaylistCursor(Cursor cursor, SongColumns columns, @Nullable CursorMapper.StringPool strings) {
+        Song song = new Song(cursor, columns.songColumns, strings);
+        song.id = cursor.getLong(columns.audioId);
+        song.playlistSongId = cursor.getLong(columns.playlistSongId);
+        song.playlistSongPlayOrder = cursor.getLong(columns.playOrder);
         return song;
     }
 }
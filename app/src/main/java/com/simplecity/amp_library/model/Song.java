@@ -7,8 +7,10 @@ import android.net.Uri;
 import android.provider.MediaStore;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
 import android.text.TextUtils;
 import com.simplecity.amp_library.R;
+import com.simplecity.amp_library.sql.CursorMapper;
 import com.simplecity.amp_library.sql.SqlUtils;
 import com.simplecity.amp_library.sql.providers.PlayCountTable;
 import com.simplecity.amp_library.sql.sqlbrite.SqlBriteUtils;
@@ -69,6 +71,13 @@ public class Song implements
 
     private String artworkKey;
     private String sortKey;
+    private String albumSortKey;
+    private String artistSortKey;
+
+    private transient byte[] sortCollationKey;
+    private transient byte[] nameCollationKey;
+    private transient byte[] albumNameCollationKey;
+    private transient byte[] albumArtistNameCollationKey;
 
     public static String[] getProjection() {
         return new String[] {
@@ -99,56 +108,153 @@ public class Song implements
                 .build();
     }
 
+    /**
+     * Column indexes for {@link #getProjection()}, resolved once per cursor.
+     */
+    public static final class Columns {
+        final int id;
+        final int title;
+        final int artistId;
+        final int artist;
+        final int albumId;
+        final int album;
+        final int duration;
+        final int year;
+        final int track;
+        final int dateAdded;
+        final int data;
+        final int albumArtist;
+        final int isPodcast;
+        final int bookmark;
+
+        public Columns(Cursor cursor) {
+            id = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID);
+            title = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.TITLE);
+            artistId = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ARTIST_ID);
+            artist = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ARTIST);
+            albumId = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM_ID);
+            album = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM);
+            duration = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DURATION);
+            year = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.YEAR);
+            track = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.TRACK);
+            dateAdded = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATE_ADDED);
+            data = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATA);
+            albumArtist = cursor.getColumnIndex("album_artist");
+            isPodcast = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.IS_PODCAST);
+            bookmark = cursor.getColumnIndex(MediaStore.Audio.Media.BOOKMARK);
+        }
+    }
+
+    /**
+     * @return a mapper which resolves column indexes once per cursor, and shares repeated artist & album names between rows.
+     */
+    public static CursorMapper<Song, Columns> mapper() {
+        return new CursorMapper<>(Columns::new, Song::new);
+    }
+
     public Song(Cursor cursor) {
+        this(cursor, new Columns(cursor), null);
+    }
 
-        id = cursor.getLong(cursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID));
+    public Song(Cursor cursor, Columns columns, @Nullable CursorMapper.StringPool strings) {
 
-        name = cursor.getString(cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.TITLE));
+        id = cursor.getLong(columns.id);
 
-        artistId = cursor.getLong(cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ARTIST_ID));
+        name = cursor.getString(columns.title);
 
-        artistName = cursor.getString(cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ARTIST));
+        artistId = cursor.getLong(columns.artistId);
 
-        albumId = cursor.getLong(cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM_ID));
+        artistName = getString(cursor, columns.artist, strings);
 
-        albumName = cursor.getString(cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM));
+        albumId = cursor.getLong(columns.albumId);
 
-        duration = cursor.getLong(cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DURATION));
+        albumName = getString(cursor, columns.album, strings);
 
-        year = cursor.getInt(cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.YEAR));
+        duration = cursor.getLong(columns.duration);
 
-        track = cursor.getInt(cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.TRACK));
+        year = cursor.getInt(columns.year);
+
+        track = cursor.getInt(columns.track);
 
         if (track >= 1000) {
             discNumber = track / 1000;
             track = track % 1000;
         }
 
-        dateAdded = cursor.getInt(cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATE_ADDED));
+        dateAdded = cursor.getInt(columns.dateAdded);
 
-        path = cursor.getString(cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATA));
+        path = cursor.getString(columns.data);
 
         albumArtistName = artistName;
-        if (cursor.getColumnIndex("album_artist") != -1) {
-            String albumArtist = cursor.getString(cursor.getColumnIndex("album_artist"));
+        if (columns.albumArtist != -1) {
+            String albumArtist = getString(cursor, columns.albumArtist, strings);
             if (albumArtist != null) {
                 albumArtistName = albumArtist;
             }
         }
 
-        isPodcast = cursor.getInt(cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.IS_PODCAST)) == 1;
+        isPodcast = cursor.getInt(columns.isPodcast) == 1;
 
-        bookMark = cursor.getLong(cursor.getColumnIndex(MediaStore.Audio.Media.BOOKMARK));
+        bookMark = cursor.getLong(columns.bookmark);
 
         //Populate the artwork key & sort key properties if null.
         setSortKey();
         setArtworkKey();
     }
 
+    private static String getString(Cursor cursor, int columnIndex, @Nullable CursorMapper.StringPool strings) {
+        return strings != null ? strings.get(cursor, columnIndex) : cursor.getString(columnIndex);
+    }
+
     public Song() {
 
     }
 
+    /**
+     * A copy of the passed in song, sharing its cached labels & keys. Used to annotate a song from the library (with a play
+     * count, say) without changing the instance every other subscriber to the library sees.
+     */
+    public Song(@NonNull Song song) {
+        id = song.id;
+        name = song.name;
+        artistName = song.artistName;
+        artistId = song.artistId;
+        albumName = song.albumName;
+        albumId = song.albumId;
+        duration = song.duration;
+        year = song.year;
+        dateAdded = song.dateAdded;
+        playlistSongId = song.playlistSongId;
+        playlistSongPlayOrder = song.playlistSongPlayOrder;
+        playCount = song.playCount;
+        lastPlayed = song.lastPlayed;
+        startTime = song.startTime;
+        elapsedTime = song.elapsedTime;
+        isPaused = song.isPaused;
+        track = song.track;
+        discNumber = song.discNumber;
+        isPodcast = song.isPodcast;
+        path = song.path;
+        bookMark = song.bookMark;
+        albumArtistName = song.albumArtistName;
+        tagInfo = song.tagInfo;
+        durationLabel = song.durationLabel;
+        bitrateLabel = song.bitrateLabel;
+        sampleRateLabel = song.sampleRateLabel;
+        formatLabel = song.formatLabel;
+        trackNumberLabel = song.trackNumberLabel;
+        discNumberLabel = song.discNumberLabel;
+        fileSizeLabel = song.fileSizeLabel;
+        artworkKey = song.artworkKey;
+        sortKey = song.sortKey;
+        albumSortKey = song.albumSortKey;
+        artistSortKey = song.artistSortKey;
+        sortCollationKey = song.sortCollationKey;
+        nameCollationKey = song.nameCollationKey;
+        albumNameCollationKey = song.albumNameCollationKey;
+        albumArtistNameCollationKey = song.albumArtistNameCollationKey;
+    }
+
     public Single<Genre> getGenre(Context context) {
         Query query = Genre.getQuery();
         query.uri = MediaStore.Audio.Genres.getContentUriForAudioId("external", (int) id);
@@ -342,6 +448,64 @@ public class Song implements
     @Override
     public void setSortKey() {
         sortKey = StringUtils.keyFor(name);
+        sortCollationKey = null;
+    }
+
+    public byte[] getSortCollationKey() {
+        if (sortCollationKey == null) {
+            sortCollationKey = ComparisonUtils.getCollationKey(getSortKey());
+        }
+        return sortCollationKey;
+    }
+
+    public byte[] getNameCollationKey() {
+        if (nameCollationKey == null) {
+            nameCollationKey = ComparisonUtils.getCollationKey(name);
+        }
+        return nameCollationKey;
+    }
+
+    public byte[] getAlbumNameCollationKey() {
+        if (albumNameCollationKey == null) {
+            albumNameCollationKey = ComparisonUtils.getCollationKey(albumName);
+        }
+        return albumNameCollationKey;
+    }
+
+    public byte[] getAlbumArtistNameCollationKey() {
+        if (albumArtistNameCollationKey == null) {
+            albumArtistNameCollationKey = ComparisonUtils.getCollationKey(albumArtistName);
+        }
+        return albumArtistNameCollationKey;
+    }
+
+    public String getAlbumSortKey() {
+        if (albumSortKey == null) {
+            albumSortKey = StringUtils.keyFor(albumName);
+        }
+        return albumSortKey;
+    }
+
+    public String getArtistSortKey() {
+        if (artistSortKey == null) {
+            artistSortKey = StringUtils.keyFor(artistName);
+        }
+        return artistSortKey;
+    }
+
+    /**
+     * Computes all sort & collation keys up front, so that subsequent sorts and section name lookups (which may happen
+     * on the main thread) don't need to.
+     */
+    @WorkerThread
+    public void computeSortKeys() {
+        getSortKey();
+        getAlbumSortKey();
+        getArtistSortKey();
+        getSortCollationKey();
+        getNameCollationKey();
+        getAlbumNameCollationKey();
+        getAlbumArtistNameCollationKey();
     }
 
     @Override
@@ -387,6 +551,12 @@ public class Song implements
         return ArtworkUtils.getAllFolderArtwork(path);
     }
 
+    @Nullable
+    @Override
+    public File getArtworkFile() {
+        return path == null ? null : new File(path);
+    }
+
     @Override
     public String toString() {
         return "\nSong{" +
@@ -399,6 +569,6 @@ public class Song implements
     @Nullable
     @Override
     public int compareTo(@NonNull Song song) {
-        return ComparisonUtils.compare(getSortKey(), song.getSortKey());
+        return ComparisonUtils.compare(getSortCollationKey(), song.getSortCollationKey());
     }
 }
\ No newline at end of file
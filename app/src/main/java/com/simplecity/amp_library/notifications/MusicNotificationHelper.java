@@ -138,7 +138,7 @@ public class MusicNotificationHelper extends NotificationHelper {
                 .load(song)
                 .asBitmap()
                 .priority(Priority.IMMEDIATE)
-                .diskCacheStrategy(DiskCacheStrategy.ALL)
+                .diskCacheStrategy(DiskCacheStrategy.RESULT)
                 .override(600, 600)
                 .placeholder(PlaceholderProvider.getInstance(context).getPlaceHolderDrawable(song.albumName, false, settingsManager))
                 .into(new SimpleTarget<Bitmap>() {
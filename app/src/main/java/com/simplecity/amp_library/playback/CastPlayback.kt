@@ -155,7 +155,10 @@ class CastPlayback(context: Context, castSession: CastSession) : Playback {
         return false
     }
 
-    override fun setNextDataSource(path: String?) {
+    // The receiver is only sent the current track
+    override val lookAhead: Int = 0
+
+    override fun setNextDataSources(paths: List<String>) {
         // Nothing to do
     }
 
@@ -0,0 +1,101 @@
+package com.simplecity.amp_library.playback;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Coalesces change notifications (see {@link com.simplecity.amp_library.playback.constants.InternalIntents}) which arrive in
+ * quick succession, such as the META_CHANGED, PLAY_STATE_CHANGED & QUEUE_CHANGED which follow a track change, and hands them
+ * to each {@link Consumer} together once the burst is over.
+ * <p>
+ * Each action is dispatched at most once per window, however many times it was posted. Consumers are expected to read the
+ * current state when they're called, so they only ever see the latest state.
+ * <p>
+ * Consumers are called on the main thread, in the order they were added, as they read state (such as the queue) which is
+ * only touched from there. Slow work should be handed off from within the consumer, from a snapshot of that state.
+ */
+final class ChangeDispatcher {
+
+    interface Consumer {
+
+        /**
+         * Called on the main thread.
+         *
+         * @param actions the distinct actions posted since the last dispatch, in the order they were first posted.
+         */
+        void onChanges(@NonNull Set<String> actions);
+    }
+
+    /**
+     * How long to wait for further changes after the first, before dispatching. About a frame.
+     */
+    private static final long WINDOW_MILLIS = 16;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final List<Consumer> consumers = new ArrayList<>();
+
+    private final Runnable dispatchRunnable = this::dispatch;
+
+    private final Set<String> pendingActions = new LinkedHashSet<>();
+
+    private boolean released;
+
+    /**
+     * Adds a consumer. Call on the main thread, before anything is posted.
+     */
+    void addConsumer(@NonNull Consumer consumer) {
+        consumers.add(consumer);
+    }
+
+    /**
+     * Queues the action for the next dispatch, scheduling one if necessary. May be called from any thread.
+     */
+    void post(@NonNull String action) {
+        synchronized (pendingActions) {
+            if (released) {
+                return;
+            }
+            if (pendingActions.isEmpty()) {
+                handler.postDelayed(dispatchRunnable, WINDOW_MILLIS);
+            }
+            pendingActions.add(action);
+        }
+    }
+
+    /**
+     * Dispatches any pending actions now, rather than waiting for the window to end. Call on the main thread.
+     */
+    void dispatch() {
+        Set<String> actions;
+        synchronized (pendingActions) {
+            handler.removeCallbacks(dispatchRunnable);
+            if (pendingActions.isEmpty()) {
+                return;
+            }
+            actions = Collections.unmodifiableSet(new LinkedHashSet<>(pendingActions));
+            pendingActions.clear();
+        }
+        for (int i = 0, size = consumers.size(); i < size; i++) {
+            consumers.get(i).onChanges(actions);
+        }
+    }
+
+    /**
+     * Drops any pending actions. Actions posted from here on are ignored. Call {@link #dispatch()} first to send out any
+     * pending actions instead.
+     */
+    void release() {
+        synchronized (pendingActions) {
+            released = true;
+            handler.removeCallbacks(dispatchRunnable);
+            pendingActions.clear();
+        }
+    }
+}
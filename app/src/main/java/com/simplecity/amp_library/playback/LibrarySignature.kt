@@ -0,0 +1,39 @@
+package com.simplecity.amp_library.playback
+
+import com.simplecity.amp_library.model.Song
+
+/**
+ * Identifies a list of songs (the library, as shuffled by shuffle-all) by its size and a hash of its ids, in order.
+ *
+ * A queue built from the whole library is saved as just its signature & [ShuffleOrder], and rebuilt from the library when
+ * it's restored, provided the library still has the same signature.
+ */
+data class LibrarySignature(val size: Int, val checksum: Long) {
+
+    fun matches(songs: List<Song>): Boolean {
+        return songs.size == size && checksum(songs) == checksum
+    }
+
+    companion object {
+
+        private const val FNV_OFFSET_BASIS = -0x340d631b7bdddcdbL
+
+        private const val FNV_PRIME = 0x100000001b3L
+
+        @JvmStatic
+        fun of(songs: List<Song>): LibrarySignature {
+            return LibrarySignature(songs.size, checksum(songs))
+        }
+
+        /**
+         * 64 bit FNV-1a over the ids, a whole id at a time.
+         */
+        private fun checksum(songs: List<Song>): Long {
+            var hash = FNV_OFFSET_BASIS
+            songs.forEach { song ->
+                hash = (hash xor song.id) * FNV_PRIME
+            }
+            return hash
+        }
+    }
+}
@@ -8,8 +8,8 @@ import android.content.Context
 import android.media.AudioAttributes
 import android.media.MediaPlayer
 import android.net.Uri
+import android.os.ParcelFileDescriptor
 import android.os.PowerManager
-import android.text.TextUtils
 import android.util.Log
 import com.simplecity.amp_library.exceptions.AppExceptions.MediaPlayerException
 import com.simplecity.amp_library.model.Song
@@ -17,12 +17,42 @@ import com.simplecity.amp_library.utils.LogUtils
 import io.reactivex.Observable
 import io.reactivex.android.schedulers.AndroidSchedulers
 import java.io.File
+import java.io.FileNotFoundException
 import java.io.IOException
 
-internal class MediaPlayerPlayback(context: Context) : LocalPlayback(context), MediaPlayer.OnErrorListener, MediaPlayer.OnCompletionListener {
+/**
+ * Plays local files via [MediaPlayer].
+ *
+ * Gapless transitions are handled via a look-ahead of the upcoming tracks (see [setNextDataSources]): the next track is
+ * prepared in a second player, which is handed to the current one via [MediaPlayer.setNextMediaPlayer] once both are
+ * prepared, and file descriptors are held open for the few tracks after that. The look-ahead is reconciled against each new
+ * list of upcoming tracks, so the next player is only rebuilt when the next track actually changes.
+ *
+ * @param lookAhead the number of upcoming tracks to look ahead to: the next is prepared, and the rest have their descriptors
+ * opened.
+ */
+internal class MediaPlayerPlayback @JvmOverloads constructor(
+    context: Context,
+    override val lookAhead: Int = DEFAULT_LOOK_AHEAD
+) : LocalPlayback(context), MediaPlayer.OnErrorListener, MediaPlayer.OnCompletionListener {
+
+    private val audioAttributes = AudioAttributes.Builder()
+        .setUsage(AudioAttributes.USAGE_MEDIA)
+        .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+        .build()
 
     private var currentMediaPlayer: MediaPlayer? = createMediaPlayer(context)
+    private var isCurrentPrepared: Boolean = false
+
     private var nextMediaPlayer: MediaPlayer? = null
+    private var nextPath: String? = null
+    private var isNextPrepared: Boolean = false
+    private var isNextLinked: Boolean = false
+
+    /**
+     * Open descriptors for the tracks after the next one, by path.
+     */
+    private val lookAheadDescriptors = LinkedHashMap<String, ParcelFileDescriptor>()
 
     override var isInitialized: Boolean = false
 
@@ -83,12 +113,26 @@ internal class MediaPlayerPlayback(context: Context) : LocalPlayback(context), M
         synchronized(this) {
             fadeAnimator?.cancel()
             currentMediaPlayer?.let { currentMediaPlayer ->
-                setDataSourceImpl(currentMediaPlayer, song.path) { success ->
-                    isInitialized = success
+                // Re-preparing the current player drops its link to the next one. The next player itself stays prepared, and
+                // is linked again once the current one is ready.
+                isInitialized = false
+                isCurrentPrepared = false
+                isNextLinked = false
 
-                    if (isInitialized) {
-                        // Invalidate any old 'next data source', will be re-set via external call to setNextDataSource().
-                        setNextDataSource(null)
+                // The player may still be preparing, or its last load may have failed, so return it to Idle before setting
+                // the new data source.
+                try {
+                    currentMediaPlayer.reset()
+                } catch (e: IllegalStateException) {
+                    LogUtils.logException(TAG, "load() failed to reset media player", e)
+                }
+
+                currentMediaPlayer.setOnPreparedListener { mediaPlayer ->
+                    synchronized(this) {
+                        if (mediaPlayer !== this.currentMediaPlayer) return@setOnPreparedListener
+
+                        isCurrentPrepared = true
+                        isInitialized = true
 
                         if (seekPosition != 0L) {
                             seekTo(seekPosition)
@@ -97,8 +141,17 @@ internal class MediaPlayerPlayback(context: Context) : LocalPlayback(context), M
                         if (playWhenReady) {
                             start()
                         }
+
+                        linkNextMediaPlayer()
+                    }
+                    completion?.invoke(true)
+                }
+
+                setDataSourceImpl(currentMediaPlayer, song.path) { success ->
+                    if (!success) {
+                        isInitialized = false
+                        completion?.invoke(false)
                     }
-                    completion?.invoke(isInitialized)
                 }
             }
         }
@@ -112,46 +165,122 @@ internal class MediaPlayerPlayback(context: Context) : LocalPlayback(context), M
         } catch (e: IOException) {
             LogUtils.logException(TAG, "setDataSourceImpl failed", e)
             callback(false)
+        } catch (e: IllegalStateException) {
+            LogUtils.logException(TAG, "setDataSourceImpl failed", e)
+            callback(false)
         }
     }
 
-    override fun setNextDataSource(path: String?) {
-        if (path == null) {
-            releaseNextMediaPlayer()
-            return
-        }
+    override fun setNextDataSources(paths: List<String>) {
+        synchronized(this) {
+            val upcomingPaths = paths.take(lookAhead).distinct()
+            val nextPath = upcomingPaths.firstOrNull()
 
-        nextMediaPlayer = MediaPlayer().apply {
-            setWakeMode(context, PowerManager.PARTIAL_WAKE_LOCK)
-            setAudioAttributes(audioAttributes)
-            setOnPreparedListener { mp ->
-                mp.start()
-                mp.setOnPreparedListener(null)
+            if (nextPath != this.nextPath) {
+                releaseNextMediaPlayer()
+                nextPath?.let { prepareNextMediaPlayer(it) }
+            } else if (isNextPrepared && !isNextLinked) {
+                linkNextMediaPlayer()
             }
-            setOnCompletionListener { mp ->
-                mp.release()
-                nextMediaPlayer = null
+
+            // Close the descriptors we no longer need, and open the new ones
+            val iterator = lookAheadDescriptors.entries.iterator()
+            while (iterator.hasNext()) {
+                val entry = iterator.next()
+                if (entry.key == nextPath || entry.key !in upcomingPaths) {
+                    entry.value.closeQuietly()
+                    iterator.remove()
+                }
             }
+            upcomingPaths.drop(1)
+                .filterNot { path -> lookAheadDescriptors.containsKey(path) }
+                .forEach { path -> openDescriptor(path)?.let { descriptor -> lookAheadDescriptors[path] = descriptor } }
         }
+    }
 
-        setDataSourceImpl(nextMediaPlayer!!, path) { success ->
-            if (success) {
-                try {
-                    currentMediaPlayer?.setNextMediaPlayer(nextMediaPlayer)
-                } catch (e: Exception) {
-                    LogUtils.logException(TAG, "setNextDataSource failed - failed to call setNextMediaPlayer on currentMediaPlayer", e)
-                    releaseNextMediaPlayer()
+    private fun prepareNextMediaPlayer(path: String) {
+        val descriptor = lookAheadDescriptors.remove(path) ?: openDescriptor(path) ?: return
+
+        // Always a fresh (Idle) player, so a previous next player that was still preparing, or failed, is never reused
+        isNextPrepared = false
+        isNextLinked = false
+
+        val mediaPlayer = createMediaPlayer(context)
+        try {
+            mediaPlayer.setDataSource(descriptor.fileDescriptor)
+            mediaPlayer.setOnPreparedListener { preparedMediaPlayer ->
+                synchronized(this) {
+                    if (preparedMediaPlayer === nextMediaPlayer) {
+                        isNextPrepared = true
+                        linkNextMediaPlayer()
+                    }
                 }
-            } else {
-                LogUtils.logException(TAG, "setDataSourceImpl failed for path: [$path]. Setting next media player to null", null)
-                releaseNextMediaPlayer()
             }
+            mediaPlayer.prepareAsync()
+        } catch (e: Exception) {
+            LogUtils.logException(TAG, "Failed to prepare next media player for path: [$path]", e)
+            mediaPlayer.release()
+            return
+        } finally {
+            // MediaPlayer holds its own duplicate of the descriptor
+            descriptor.closeQuietly()
+        }
+
+        nextMediaPlayer = mediaPlayer
+        this.nextPath = path
+    }
+
+    /**
+     * Hands the next player to the current one, once both are prepared.
+     */
+    private fun linkNextMediaPlayer() {
+        if (!isCurrentPrepared || !isNextPrepared || isNextLinked) {
+            return
+        }
+        try {
+            currentMediaPlayer?.setNextMediaPlayer(nextMediaPlayer)
+            isNextLinked = true
+        } catch (e: Exception) {
+            LogUtils.logException(TAG, "linkNextMediaPlayer failed - failed to call setNextMediaPlayer on currentMediaPlayer", e)
         }
     }
 
     private fun releaseNextMediaPlayer() {
+        if (isNextLinked) {
+            try {
+                currentMediaPlayer?.setNextMediaPlayer(null)
+            } catch (e: Exception) {
+                LogUtils.logException(TAG, "releaseNextMediaPlayer failed - failed to unlink next media player", e)
+            }
+        }
         nextMediaPlayer?.release()
         nextMediaPlayer = null
+        nextPath = null
+        isNextPrepared = false
+        isNextLinked = false
+    }
+
+    private fun openDescriptor(path: String): ParcelFileDescriptor? {
+        return try {
+            if (path.startsWith("/")) {
+                ParcelFileDescriptor.open(File(path), ParcelFileDescriptor.MODE_READ_ONLY)
+            } else {
+                context.contentResolver.openFileDescriptor(Uri.parse(path), "r")
+            }
+        } catch (e: FileNotFoundException) {
+            LogUtils.logException(TAG, "Failed to open descriptor for path: [$path]", e)
+            null
+        } catch (e: SecurityException) {
+            LogUtils.logException(TAG, "Failed to open descriptor for path: [$path]", e)
+            null
+        }
+    }
+
+    private fun ParcelFileDescriptor.closeQuietly() {
+        try {
+            close()
+        } catch (ignored: IOException) {
+        }
     }
 
     override fun start() {
@@ -171,15 +300,16 @@ internal class MediaPlayerPlayback(context: Context) : LocalPlayback(context), M
     override fun stop() {
         synchronized(this) {
             super.stop()
-            if (isInitialized) {
-                try {
-                    currentMediaPlayer?.reset()
-                } catch (e: IllegalStateException) {
-                    LogUtils.logException(TAG, "stop() failed", e)
-                    throw MediaPlayerException("Failed to stop media player", e)
-                }
-                isInitialized = false
+            // Reset even if not yet prepared (or the last load failed), so the player is always Idle for the next load
+            try {
+                currentMediaPlayer?.reset()
+            } catch (e: IllegalStateException) {
+                LogUtils.logException(TAG, "stop() failed", e)
+                throw MediaPlayerException("Failed to stop media player", e)
             }
+            isInitialized = false
+            isCurrentPrepared = false
+            isNextLinked = false
             callbacks?.onPlayStateChanged(this)
         }
     }
@@ -190,6 +320,9 @@ internal class MediaPlayerPlayback(context: Context) : LocalPlayback(context), M
     override fun release() {
         synchronized(this) {
             stop()
+            releaseNextMediaPlayer()
+            lookAheadDescriptors.values.forEach { descriptor -> descriptor.closeQuietly() }
+            lookAheadDescriptors.clear()
             currentMediaPlayer?.release()
         }
     }
@@ -244,6 +377,8 @@ internal class MediaPlayerPlayback(context: Context) : LocalPlayback(context), M
         when (what) {
             MediaPlayer.MEDIA_ERROR_SERVER_DIED -> {
                 isInitialized = false
+                isCurrentPrepared = false
+                releaseNextMediaPlayer()
                 currentMediaPlayer?.release()
                 currentMediaPlayer = createMediaPlayer(context)
                 callbacks?.onError(this, "Server died")
@@ -258,10 +393,15 @@ internal class MediaPlayerPlayback(context: Context) : LocalPlayback(context), M
     }
 
     override fun onCompletion(mediaPlayer: MediaPlayer) {
-        if (mediaPlayer === currentMediaPlayer && nextMediaPlayer != null) {
+        if (mediaPlayer === currentMediaPlayer && nextMediaPlayer != null && isNextLinked) {
+            // The next player has already taken over
             currentMediaPlayer?.release()
             currentMediaPlayer = nextMediaPlayer
+            isCurrentPrepared = true
             nextMediaPlayer = null
+            nextPath = null
+            isNextPrepared = false
+            isNextLinked = false
             callbacks?.onTrackEnded(this, true)
         } else {
             callbacks?.onTrackEnded(this, false)
@@ -275,6 +415,9 @@ internal class MediaPlayerPlayback(context: Context) : LocalPlayback(context), M
     private fun createMediaPlayer(context: Context): MediaPlayer {
         val mediaPlayer = MediaPlayer()
         mediaPlayer.setWakeMode(context, PowerManager.PARTIAL_WAKE_LOCK)
+        mediaPlayer.setAudioAttributes(audioAttributes)
+        mediaPlayer.setOnCompletionListener(this)
+        mediaPlayer.setOnErrorListener(this)
         return mediaPlayer
     }
 
@@ -353,5 +496,10 @@ internal class MediaPlayerPlayback(context: Context) : LocalPlayback(context), M
 
     companion object {
         private const val TAG = "MediaPlayerPlayback"
+
+        /**
+         * The next track, plus descriptors for the two after it.
+         */
+        const val DEFAULT_LOOK_AHEAD = 3
     }
 }
\ No newline at end of file
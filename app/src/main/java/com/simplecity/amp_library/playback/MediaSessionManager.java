@@ -14,7 +14,6 @@ import android.support.v4.media.session.MediaSessionCompat;
 import android.support.v4.media.session.PlaybackStateCompat;
 import android.text.TextUtils;
 import android.util.Log;
-import com.annimon.stream.Stream;
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.request.animation.GlideAnimation;
 import com.bumptech.glide.request.target.SimpleTarget;
@@ -109,15 +108,9 @@ class MediaSessionManager {
 
             @Override
             public void onSkipToQueueItem(long id) {
-                List<QueueItem> queueItems = queueManager.getCurrentPlaylist();
-
-                QueueItem queueItem = Stream.of(queueItems)
-                        .filter(aQueueItem -> (long) aQueueItem.hashCode() == id)
-                        .findFirst()
-                        .orElse(null);
-
-                if (queueItem != null) {
-                    playbackManager.setQueuePosition(queueItems.indexOf(queueItem));
+                int index = queueManager.getCurrentPlaylist().indexOfId(id);
+                if (index != -1) {
+                    playbackManager.setQueuePosition(index);
                 }
             }
 
@@ -225,7 +218,7 @@ class MediaSessionManager {
         builder.setState(playState, playbackManager.getSeekPosition(), 1.0f);
 
         if (currentQueueItem != null) {
-            builder.setActiveQueueItemId((long) currentQueueItem.hashCode());
+            builder.setActiveQueueItemId(currentQueueItem.getId());
         }
 
         PlaybackStateCompat playbackState = builder.build();
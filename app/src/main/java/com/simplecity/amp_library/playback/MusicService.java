@@ -38,15 +38,15 @@ import com.simplecity.amp_library.ui.screens.queue.QueueItem;
 import com.simplecity.amp_library.utils.AnalyticsManager;
 import com.simplecity.amp_library.utils.LogUtils;
 import com.simplecity.amp_library.utils.SettingsManager;
-import com.simplecity.amp_library.utils.ShuttleUtils;
 import com.simplecity.amp_library.utils.playlists.FavoritesPlaylistManager;
 import dagger.android.AndroidInjection;
-import io.reactivex.Completable;
 import io.reactivex.disposables.CompositeDisposable;
-import io.reactivex.schedulers.Schedulers;
 import java.util.ArrayList;
 import java.util.ConcurrentModificationException;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import javax.inject.Inject;
 import kotlin.Unit;
 
@@ -77,6 +77,13 @@ public class MusicService extends MediaBrowserServiceCompat {
 
     private ScrobbleManager scrobbleManager;
 
+    private final ChangeDispatcher changeDispatcher = new ChangeDispatcher();
+
+    /**
+     * Sends the broadcasts which follow a change, in order, off the main thread.
+     */
+    private final ExecutorService broadcastExecutor = Executors.newSingleThreadExecutor();
+
     private final IBinder binder = new LocalBinder(this);
 
     private BroadcastReceiver unmountReceiver = null;
@@ -121,6 +128,15 @@ public class MusicService extends MediaBrowserServiceCompat {
     @Inject
     PlaybackSettingsManager playbackSettingsManager;
 
+    @Inject
+    QueueStore queueStore;
+
+    @Inject
+    PlaybackMonitor playbackMonitor;
+
+    @Inject
+    PlayCountRecorder playCountRecorder;
+
     @Inject
     SettingsManager settingsManager;
 
@@ -136,10 +152,16 @@ public class MusicService extends MediaBrowserServiceCompat {
         AndroidInjection.inject(this);
         super.onCreate();
 
+        changeDispatcher.addConsumer(this::dispatchBroadcasts);
+        changeDispatcher.addConsumer(this::dispatchNotification);
+        changeDispatcher.addConsumer(this::dispatchWidgets);
+        changeDispatcher.addConsumer(actions -> saveState(false));
+
         queueManager = new QueueManager(
                 musicServiceCallbacks,
                 songsRepository,
                 playbackSettingsManager,
+                queueStore,
                 settingsManager
         );
 
@@ -308,6 +330,8 @@ public class MusicService extends MediaBrowserServiceCompat {
     public void onDestroy() {
         analyticsManager.dropBreadcrumb(TAG, "onDestroy()");
 
+        playCountRecorder.flush();
+
         saveState(true);
 
         //Shutdown the EQ
@@ -335,6 +359,14 @@ public class MusicService extends MediaBrowserServiceCompat {
 
         playbackManager.destroy();
 
+        // Send out whatever changed since the last dispatch (including the final PLAY_STATE_CHANGED from destroy()) before
+        // we tear down
+        changeDispatcher.dispatch();
+        changeDispatcher.release();
+        broadcastExecutor.shutdown();
+
+        playbackMonitor.setPosition(PlaybackPosition.NONE);
+
         dummyNotificationHelper.teardown(this);
         notificationHelper.tearDown();
 
@@ -1064,35 +1096,114 @@ public class MusicService extends MediaBrowserServiceCompat {
         return intent;
     }
 
+    /**
+     * Updates the playback state immediately, and queues the (more expensive) notification, widget, broadcast and state-saving
+     * work, which is coalesced with any other changes made in quick succession. See {@link #dispatchChanges(Set)}.
+     */
     void notifyChange(String action) {
         switch (action) {
             case InternalIntents.TRACK_ENDING:
                 onTrackEnded();
                 return;
-            case InternalIntents.FAVORITE_CHANGED:
-                updateNotification();
-                return;
             case InternalIntents.PLAY_STATE_CHANGED:
                 onPlayStateChanged();
+                publishPosition();
                 break;
             case InternalIntents.META_CHANGED:
                 onMetaChanged();
+                publishPosition();
                 break;
             case InternalIntents.QUEUE_CHANGED:
                 onQueueChanged();
                 break;
+            case InternalIntents.POSITION_CHANGED:
+                publishPosition();
+                break;
         }
 
-        Intent intent = new Intent(action);
+        changeDispatcher.post(action);
+    }
+
+    /**
+     * Hands the {@link PlaybackMonitor} a new snapshot of the position, which it interpolates from until the next change.
+     */
+    private void publishPosition() {
         Song currentSong = queueManager.getCurrentSong();
-        if (currentSong != null) {
-            intent.putExtras(getExtras(currentSong));
+        long duration = currentSong != null ? currentSong.duration : 0;
+        playbackMonitor.setPosition(new PlaybackPosition(getSeekPosition(), duration, System.nanoTime(), isPlaying() ? 1f : 0f));
+    }
+
+    /**
+     * The consumers of a set of coalesced changes (see {@link ChangeDispatcher}) notify everything outside of playback. Each
+     * is updated once, from the current state, however many changes it's being told about.
+     * <p>
+     * They run on the main thread, as they read the queue. Their slow parts (artwork loads, the favorite lookup & the queue
+     * write) are already asynchronous.
+     */
+    private void dispatchNotification(@NonNull Set<String> actions) {
+        if (actions.contains(InternalIntents.META_CHANGED)
+                || actions.contains(InternalIntents.PLAY_STATE_CHANGED)
+                || actions.contains(InternalIntents.FAVORITE_CHANGED)) {
+            updateNotification();
+        }
+    }
+
+    private void dispatchWidgets(@NonNull Set<String> actions) {
+        if (actions.contains(InternalIntents.META_CHANGED)) {
+            widgetManager.notifyChange(this, InternalIntents.META_CHANGED);
+        } else {
+            for (String action : actions) {
+                widgetManager.notifyChange(this, action);
+            }
         }
-        sendBroadcast(intent);
+    }
+
+    /**
+     * Called on the main thread, so the broadcasts are built from the state at the time of the change.
+     */
+    private void dispatchBroadcasts(@NonNull Set<String> actions) {
+        boolean metaChanged = actions.contains(InternalIntents.META_CHANGED);
+        boolean playStateChanged = actions.contains(InternalIntents.PLAY_STATE_CHANGED);
+
+        // Build the broadcasts here, from the current state, and send them in the background
 
-        widgetManager.notifyChange(this, action);
+        final Song currentSong = queueManager.getCurrentSong();
+        final boolean isPlaying = isPlaying();
+        final Bundle extras = currentSong != null ? getExtras(currentSong) : null;
+
+        final List<Intent> intents = new ArrayList<>(actions.size() + 2);
+        for (String action : actions) {
+            if (InternalIntents.FAVORITE_CHANGED.equals(action)) {
+                continue;
+            }
+            Intent intent = new Intent(action);
+            if (extras != null) {
+                intent.putExtras(extras);
+            }
+            intents.add(intent);
+        }
+        if (currentSong != null && (metaChanged || playStateChanged)) {
+            intents.add(getTaskerIntent(currentSong));
+            if (metaChanged || isPlaying) {
+                intents.add(getPebbleIntent(currentSong));
+            }
+        }
 
-        saveState(false);
+        broadcastExecutor.execute(() -> {
+            for (Intent intent : intents) {
+                sendBroadcast(intent);
+            }
+            if (currentSong != null) {
+                if (metaChanged) {
+                    bluetoothManager.sendMetaChangedIntent(this, extras);
+                    scrobbleManager.scrobbleBroadcast(this, ScrobbleManager.ScrobbleStatus.START, currentSong);
+                }
+                if (playStateChanged) {
+                    bluetoothManager.sendPlayStateChangedIntent(this, extras);
+                    scrobbleManager.scrobbleBroadcast(this, isPlaying ? ScrobbleManager.ScrobbleStatus.RESUME : ScrobbleManager.ScrobbleStatus.PAUSE, currentSong);
+                }
+            }
+        });
     }
 
     private void onQueueChanged() {
@@ -1102,37 +1213,18 @@ public class MusicService extends MediaBrowserServiceCompat {
     }
 
     private void onMetaChanged() {
-        updateNotification();
-
         if (queueManager.getCurrentSong() != null) {
             queueManager.getCurrentSong().setStartTime();
-
-            sendBroadcast(getTaskerIntent(queueManager.getCurrentSong()));
-
-            sendBroadcast(getPebbleIntent(queueManager.getCurrentSong()));
-
-            bluetoothManager.sendMetaChangedIntent(this, getExtras(queueManager.getCurrentSong()));
-
-            scrobbleManager.scrobbleBroadcast(this, ScrobbleManager.ScrobbleStatus.START, queueManager.getCurrentSong());
         }
     }
 
     private void onPlayStateChanged() {
-        updateNotification();
-
         if (queueManager.getCurrentSong() != null) {
-
-            bluetoothManager.sendPlayStateChangedIntent(this, getExtras(queueManager.getCurrentSong()));
-
-            sendBroadcast(getTaskerIntent(queueManager.getCurrentSong()));
-
             if (isPlaying()) {
                 queueManager.getCurrentSong().setResumed();
-                sendBroadcast(getPebbleIntent(queueManager.getCurrentSong()));
             } else {
                 queueManager.getCurrentSong().setPaused();
             }
-            scrobbleManager.scrobbleBroadcast(this, isPlaying() ? ScrobbleManager.ScrobbleStatus.RESUME : ScrobbleManager.ScrobbleStatus.PAUSE, queueManager.getCurrentSong());
         }
     }
 
@@ -1141,13 +1233,7 @@ public class MusicService extends MediaBrowserServiceCompat {
         Song finishedSong = queueManager.getCurrentSong();
         if (finishedSong != null) {
             if (finishedSong.hasPlayed()) {
-                disposables.add(
-                        Completable.fromAction(() -> ShuttleUtils.incrementPlayCount(this, finishedSong))
-                                .subscribeOn(Schedulers.io())
-                                .subscribe(() -> {
-                                    // Nothing to do
-                                }, error -> LogUtils.logException(TAG, "Error incrementing play count", error))
-                );
+                playCountRecorder.record(finishedSong);
             }
             scrobbleManager.scrobbleBroadcast(this, ScrobbleManager.ScrobbleStatus.COMPLETE, finishedSong);
         }
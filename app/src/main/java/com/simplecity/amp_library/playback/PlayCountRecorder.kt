@@ -0,0 +1,102 @@
+package com.simplecity.amp_library.playback
+
+import android.content.ContentValues
+import android.content.Context
+import android.support.annotation.WorkerThread
+import com.simplecity.amp_library.model.Song
+import com.simplecity.amp_library.sql.providers.PlayCountTable
+import com.simplecity.amp_library.utils.LogUtils
+import io.reactivex.Completable
+import io.reactivex.disposables.Disposable
+import io.reactivex.schedulers.Schedulers
+import java.util.concurrent.TimeUnit
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Records plays (towards play counts & 'recently played') in batches.
+ *
+ * Plays are buffered in memory, and written [FLUSH_DELAY_SECONDS] after the first of a batch (or when [flush] is called) via
+ * a single bulk insert to [PlayCountTable.PLAYS_URI]. That's one transaction and one change notification per batch, rather than
+ * a query, an update and possibly an insert (each with its own notification) per play.
+ */
+@Singleton
+class PlayCountRecorder @Inject constructor(context: Context) {
+
+    private class Play(var count: Int, var timePlayed: Long)
+
+    private val contentResolver = context.applicationContext.contentResolver
+
+    // Guarded by pendingPlays
+    private val pendingPlays = LinkedHashMap<Long, Play>()
+    private var flushDisposable: Disposable? = null
+
+    /**
+     * Buffers a play of the passed in song, scheduling a flush if one isn't already pending.
+     */
+    fun record(song: Song) {
+        synchronized(pendingPlays) {
+            val play = pendingPlays[song.id]
+            if (play == null) {
+                pendingPlays[song.id] = Play(1, System.currentTimeMillis())
+            } else {
+                play.count++
+                play.timePlayed = System.currentTimeMillis()
+            }
+
+            if (flushDisposable == null) {
+                flushDisposable = Completable.timer(FLUSH_DELAY_SECONDS, TimeUnit.SECONDS, Schedulers.io())
+                    .subscribe(
+                        { writePendingPlays() },
+                        { error -> LogUtils.logException(TAG, "Error writing play counts", error) }
+                    )
+            }
+        }
+    }
+
+    /**
+     * Writes any buffered plays now (in the background), rather than waiting for the scheduled flush.
+     */
+    fun flush() {
+        synchronized(pendingPlays) {
+            flushDisposable?.dispose()
+            flushDisposable = null
+        }
+        Completable.fromAction { writePendingPlays() }
+            .subscribeOn(Schedulers.io())
+            .subscribe(
+                { },
+                { error -> LogUtils.logException(TAG, "Error writing play counts", error) }
+            )
+    }
+
+    @WorkerThread
+    private fun writePendingPlays() {
+        val plays = synchronized(pendingPlays) {
+            flushDisposable = null
+            if (pendingPlays.isEmpty()) {
+                return
+            }
+            val plays = pendingPlays.map { (id, play) ->
+                ContentValues(3).apply {
+                    put(PlayCountTable.COLUMN_ID, id)
+                    put(PlayCountTable.COLUMN_PLAY_COUNT, play.count)
+                    put(PlayCountTable.COLUMN_TIME_PLAYED, play.timePlayed)
+                }
+            }
+            pendingPlays.clear()
+            plays
+        }
+
+        contentResolver.bulkInsert(PlayCountTable.PLAYS_URI, plays.toTypedArray())
+    }
+
+    companion object {
+        const val TAG = "PlayCountRecorder"
+
+        /**
+         * How long plays are buffered for before being written.
+         */
+        private const val FLUSH_DELAY_SECONDS = 30L
+    }
+}
@@ -22,7 +22,18 @@ interface Playback {
 
     fun willResumePlayback(): Boolean
 
-    fun setNextDataSource(path: String?)
+    /**
+     * The number of upcoming tracks this playback prepares ahead of track changes, and so the most paths it wants passed
+     * to [setNextDataSources].
+     */
+    val lookAhead: Int
+
+    /**
+     * @param paths the paths of the upcoming tracks, in play order (empty if playback will complete after this track). The
+     * first is the track to transition to when this one ends. Called whenever the queue changes, so implementations should
+     * only do work when the upcoming tracks actually change.
+     */
+    fun setNextDataSources(paths: List<String>)
 
     fun release()
 
@@ -18,13 +18,13 @@ import com.simplecity.amp_library.model.Song;
 import com.simplecity.amp_library.playback.constants.InternalIntents;
 import com.simplecity.amp_library.services.Equalizer;
 import com.simplecity.amp_library.ui.screens.queue.QueueItem;
-import com.simplecity.amp_library.ui.screens.queue.QueueItemKt;
 import com.simplecity.amp_library.utils.LogUtils;
 import com.simplecity.amp_library.utils.SettingsManager;
 import com.simplecity.amp_library.utils.SleepTimer;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.CompositeDisposable;
 import io.reactivex.schedulers.Schedulers;
+import java.util.ArrayList;
 import java.util.List;
 import kotlin.Unit;
 import kotlin.jvm.functions.Function1;
@@ -179,15 +179,12 @@ public class PlaybackManager implements Playback.Callbacks {
         if (ContextCompat.checkSelfPermission(context, Manifest.permission.READ_EXTERNAL_STORAGE) == PackageManager.PERMISSION_GRANTED) {
             disposables.add(songsRepository.getSongs((Function1<? super Song, Boolean>) null)
                     .firstOrError()
+                    .map(QueueManager::shuffleLibrary)
                     .subscribeOn(Schedulers.io())
                     .observeOn(AndroidSchedulers.mainThread())
-                    .subscribe(songs -> {
-                        queueManager.playlist = QueueItemKt.toQueueItems(songs);
-                        queueManager.queuePosition = -1;
-                        queueManager.makeShuffleList();
-                        queueManager.setShuffleMode(QueueManager.ShuffleMode.ON);
+                    .subscribe(shuffledQueue -> {
+                        queueManager.setShuffledQueue(shuffledQueue);
                         notifyChange(InternalIntents.QUEUE_CHANGED);
-                        queueManager.queuePosition = 0;
                         load(true, true, 0);
                     }, error -> LogUtils.logException(TAG, "Error playing auto shuffle list", error)));
         } else {
@@ -356,14 +353,12 @@ public class PlaybackManager implements Playback.Callbacks {
 
     void setNextTrack() {
         queueManager.nextPlayPos = getNextPosition(false);
-        if (queueManager.nextPlayPos >= 0
-                && !queueManager.getCurrentPlaylist().isEmpty()
-                && queueManager.nextPlayPos < queueManager.getCurrentPlaylist().size()) {
-            final Song nextSong = queueManager.getCurrentPlaylist().get(queueManager.nextPlayPos).getSong();
-            playback.setNextDataSource(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI + "/" + nextSong.id);
-        } else {
-            playback.setNextDataSource(null);
+        List<Song> upcomingSongs = queueManager.getUpcomingSongs(queueManager.nextPlayPos, playback.getLookAhead());
+        List<String> paths = new ArrayList<>(upcomingSongs.size());
+        for (Song song : upcomingSongs) {
+            paths.add(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI + "/" + song.id);
         }
+        playback.setNextDataSources(paths);
     }
 
     void enqueue(List<Song> songs, int action) {
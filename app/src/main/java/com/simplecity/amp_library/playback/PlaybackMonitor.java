@@ -1,48 +1,60 @@
 package com.simplecity.amp_library.playback;
 
-import com.simplecity.amp_library.utils.MusicServiceConnectionUtils;
+import android.support.annotation.NonNull;
+import android.view.Choreographer;
+import com.jakewharton.rxrelay2.BehaviorRelay;
 import io.reactivex.BackpressureStrategy;
 import io.reactivex.Flowable;
-import io.reactivex.Observable;
 import io.reactivex.android.schedulers.AndroidSchedulers;
-import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+/**
+ * Provides the playback position to the UI.
+ * <p>
+ * Rather than polling the player, the service pushes a {@link PlaybackPosition} snapshot on each state change (play, pause,
+ * seek, track change), and the position is interpolated from the latest snapshot, once per display frame, for as long as
+ * there are subscribers and playback is advancing. While paused, subscribers get a single update.
+ */
 @Singleton
 public class PlaybackMonitor {
 
     private static final String TAG = "PlaybackMonitor";
 
+    private final BehaviorRelay<PlaybackPosition> positionRelay = BehaviorRelay.createDefault(PlaybackPosition.NONE);
+
     private Flowable<Float> progressObservable;
     private Flowable<Long> currentTimeObservable;
 
     @Inject
-    PlaybackMonitor(MediaManager mediaManager) {
-        progressObservable = Flowable.defer(() -> Observable.interval(32, TimeUnit.MILLISECONDS)
-                .filter(aLong -> {
-                    if (MusicServiceConnectionUtils.serviceBinder != null
-                            && MusicServiceConnectionUtils.serviceBinder.getService() != null) {
-                        if (mediaManager.getDuration() > 0) {
-                            return true;
-                        }
+    PlaybackMonitor() {
+        Flowable<PlaybackPosition> positions = positionRelay
+                .toFlowable(BackpressureStrategy.LATEST)
+                .observeOn(AndroidSchedulers.mainThread());
+
+        progressObservable = positions
+                .switchMap(position -> {
+                    if (position.getDuration() <= 0) {
+                        return Flowable.<Float>empty();
                     }
-                    return false;
+                    return positionsAt(position).map(time -> (float) time / (float) position.getDuration());
                 })
-                .observeOn(AndroidSchedulers.mainThread())
-                .map(aLong -> (float) mediaManager.getPosition() / (float) mediaManager.getDuration())
-                .toFlowable(BackpressureStrategy.DROP))
                 .share();
 
-        currentTimeObservable = Flowable.defer(() -> Observable.interval(150, TimeUnit.MILLISECONDS)
-                .filter(aLong -> MusicServiceConnectionUtils.serviceBinder != null
-                        && MusicServiceConnectionUtils.serviceBinder.getService() != null)
-                .observeOn(AndroidSchedulers.mainThread())
-                .map(time -> mediaManager.getPosition())
-                .toFlowable(BackpressureStrategy.DROP))
+        currentTimeObservable = positions
+                .switchMap(PlaybackMonitor::positionsAt)
+                // Subscribers only display whole seconds
+                .distinctUntilChanged(time -> time / 1000)
                 .share();
     }
 
+    /**
+     * Called by the service whenever the playback state changes.
+     */
+    void setPosition(@NonNull PlaybackPosition position) {
+        positionRelay.accept(position);
+    }
+
     public Flowable<Float> getProgressObservable() {
         return progressObservable;
     }
@@ -50,4 +62,35 @@ public class PlaybackMonitor {
     public Flowable<Long> getCurrentTimeObservable() {
         return currentTimeObservable;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return the position now, followed by the position at each display frame while playback is advancing.
+     */
+    private static Flowable<Long> positionsAt(@NonNull PlaybackPosition position) {
+        Flowable<Long> now = Flowable.fromCallable(() -> position.getPosition(System.nanoTime()));
+        if (!position.isAdvancing()) {
+            return now;
+        }
+        return now.concatWith(frames().map(position::getPosition));
+    }
+
+    /**
+     * Emits the frame time (in the {@link System#nanoTime()} time base) of each display frame, while subscribed.
+     */
+    private static Flowable<Long> frames() {
+        return Flowable.<Long>create(emitter -> {
+            Choreographer choreographer = Choreographer.getInstance();
+            Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    emitter.onNext(frameTimeNanos);
+                    choreographer.postFrameCallback(this);
+                }
+            };
+            choreographer.postFrameCallback(frameCallback);
+            emitter.setCancellable(() -> choreographer.removeFrameCallback(frameCallback));
+        }, BackpressureStrategy.DROP)
+                .subscribeOn(AndroidSchedulers.mainThread())
+                .unsubscribeOn(AndroidSchedulers.mainThread());
+    }
+}
@@ -0,0 +1,51 @@
+package com.simplecity.amp_library.playback;
+
+/**
+ * A snapshot of the playback position, taken when the playback state changes, from which the position at any later time can
+ * be interpolated without asking the player.
+ */
+public final class PlaybackPosition {
+
+    public static final PlaybackPosition NONE = new PlaybackPosition(0, 0, 0, 0);
+
+    /**
+     * The position (ms) at {@link #timeNanos}.
+     */
+    private final long position;
+
+    private final long duration;
+
+    /**
+     * When the snapshot was taken, in the {@link System#nanoTime()} time base (which is also the time base of
+     * {@link android.view.Choreographer} frame times).
+     */
+    private final long timeNanos;
+
+    /**
+     * Playback speed: 1 while playing, 0 while paused.
+     */
+    private final float speed;
+
+    public PlaybackPosition(long position, long duration, long timeNanos, float speed) {
+        this.position = position;
+        this.duration = duration;
+        this.timeNanos = timeNanos;
+        this.speed = speed;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public boolean isAdvancing() {
+        return speed != 0 && duration > 0;
+    }
+
+    /**
+     * @return the interpolated position (ms) at the passed in time, clamped to the duration.
+     */
+    public long getPosition(long timeNanos) {
+        long position = this.position + (long) ((timeNanos - this.timeNanos) / 1000000L * speed);
+        return Math.max(0, duration > 0 ? Math.min(position, duration) : position);
+    }
+}
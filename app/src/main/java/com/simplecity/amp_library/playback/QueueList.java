@@ -0,0 +1,400 @@
+package com.simplecity.amp_library.playback;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import com.simplecity.amp_library.model.Song;
+import com.simplecity.amp_library.ui.screens.queue.QueueItem;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The list behind the playlist & shuffle list. Backed by an {@link ArrayList}, with two indexes on top:
+ * <ul>
+ * <li>{@link QueueItem#getId()} to position, so {@link #indexOf(Object)} is a hash lookup rather than an equals() scan.
+ * Edits only invalidate the positions from the edited index onwards, and the index is re-extended lazily on the next lookup.</li>
+ * <li>Song to the items of that song, so occurrences can be renumbered for just the songs an edit touched (usually a
+ * single item), via {@link #updateOccurrence(Collection)}, rather than by grouping the whole queue.</li>
+ * </ul>
+ * Bulk edits ({@link #addAll(int, Collection)}, {@link #removeAll(Collection)}, {@link #move(int, int)}) are single
+ * passes over the backing array.
+ * <p>
+ * A list created via {@link #ordered(QueueList, ShuffleOrder)} starts out as a view of another list in a {@link ShuffleOrder},
+ * so a shuffled queue costs nothing until it's edited or searched. The backing array & indexes are only built then (or
+ * when the other list is about to be edited).
+ * <p>
+ * Not thread-safe; only touched from the main thread, as the queue always has been.
+ */
+final class QueueList extends AbstractList<QueueItem> implements RandomAccess {
+
+    @NonNull
+    private final ArrayList<QueueItem> items;
+
+    /**
+     * QueueItem id to position, of the first copy if the same item is in the list more than once. Entries with a position
+     * below {@link #indexedUpTo} are exact; the rest may be stale.
+     */
+    private final HashMap<Long, Integer> positions = new HashMap<>();
+
+    private int indexedUpTo = 0;
+
+    private final HashMap<Song, List<QueueItem>> itemsBySong = new HashMap<>();
+
+    /**
+     * While set, this list is a view of {@link #source} in this order, and {@link #items} & the indexes are empty.
+     */
+    @Nullable
+    private ShuffleOrder order;
+
+    @Nullable
+    private QueueList source;
+
+    /**
+     * The view (if any) ordered over this list, which has to be materialised before this list is edited.
+     */
+    @Nullable
+    private QueueList orderedView;
+
+    /**
+     * @return a view of {@code source} in the passed in order, computed an item at a time. Any view previously ordered over
+     * {@code source} is materialised.
+     */
+    @NonNull
+    static QueueList ordered(@NonNull QueueList source, @NonNull ShuffleOrder order) {
+        if (order.getSize() != source.size()) {
+            throw new IllegalArgumentException("Order size: " + order.getSize() + " list size: " + source.size());
+        }
+        source.materialize();
+        if (source.orderedView != null) {
+            source.orderedView.materialize();
+        }
+        QueueList queueList = new QueueList();
+        queueList.order = order;
+        queueList.source = source;
+        source.orderedView = queueList;
+        return queueList;
+    }
+
+    QueueList() {
+        items = new ArrayList<>();
+    }
+
+    QueueList(@NonNull Collection<QueueItem> queueItems) {
+        items = new ArrayList<>(queueItems);
+        for (QueueItem queueItem : items) {
+            addToSong(queueItem);
+        }
+    }
+
+    @Override
+    public QueueItem get(int index) {
+        if (order != null) {
+            //noinspection ConstantConditions
+            return source.get(order.get(index));
+        }
+        return items.get(index);
+    }
+
+    @Override
+    public int size() {
+        if (order != null) {
+            return order.getSize();
+        }
+        return items.size();
+    }
+
+    @Override
+    public QueueItem set(int index, QueueItem queueItem) {
+        beforeEdit();
+        QueueItem previous = items.set(index, queueItem);
+        forgetPosition(previous, index);
+        removeFromSong(previous);
+        addToSong(queueItem);
+        invalidateFrom(index);
+        return previous;
+    }
+
+    @Override
+    public void add(int index, QueueItem queueItem) {
+        beforeEdit();
+        items.add(index, queueItem);
+        addToSong(queueItem);
+        invalidateFrom(index);
+        modCount++;
+    }
+
+    @Override
+    public QueueItem remove(int index) {
+        beforeEdit();
+        QueueItem removed = items.remove(index);
+        forgetPosition(removed, index);
+        removeFromSong(removed);
+        invalidateFrom(index);
+        modCount++;
+        return removed;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        int index = indexOf(o);
+        if (index == -1) {
+            return false;
+        }
+        remove(index);
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends QueueItem> queueItems) {
+        return addAll(size(), queueItems);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends QueueItem> queueItems) {
+        if (queueItems.isEmpty()) {
+            return false;
+        }
+        beforeEdit();
+        items.addAll(index, queueItems);
+        for (QueueItem queueItem : queueItems) {
+            addToSong(queueItem);
+        }
+        invalidateFrom(index);
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Removes every item contained in {@code queueItems}, in a single pass. Pass a {@link java.util.Set} for large removals.
+     */
+    @Override
+    public boolean removeAll(@NonNull Collection<?> queueItems) {
+        beforeEdit();
+        int size = items.size();
+        int write = 0;
+        for (int read = 0; read < size; read++) {
+            QueueItem queueItem = items.get(read);
+            if (queueItems.contains(queueItem)) {
+                positions.remove(queueItem.getId());
+                removeFromSong(queueItem);
+                if (write == read) {
+                    invalidateFrom(read);
+                }
+            } else {
+                if (write != read) {
+                    items.set(write, queueItem);
+                }
+                write++;
+            }
+        }
+        if (write == size) {
+            return false;
+        }
+        items.subList(write, size).clear();
+        modCount++;
+        return true;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        beforeEdit();
+        List<QueueItem> range = items.subList(fromIndex, toIndex);
+        for (QueueItem queueItem : range) {
+            forgetPosition(queueItem, fromIndex);
+            removeFromSong(queueItem);
+        }
+        range.clear();
+        invalidateFrom(fromIndex);
+        modCount++;
+    }
+
+    @Override
+    public void clear() {
+        // A view has nothing to clear but its order
+        detach();
+        if (orderedView != null) {
+            orderedView.materialize();
+        }
+        items.clear();
+        positions.clear();
+        itemsBySong.clear();
+        indexedUpTo = 0;
+        modCount++;
+    }
+
+    /**
+     * Moves the item at {@code from} to {@code to}, shifting the items in between.
+     */
+    void move(int from, int to) {
+        if (from == to) {
+            return;
+        }
+        beforeEdit();
+        if (from < to) {
+            Collections.rotate(items.subList(from, to + 1), -1);
+        } else {
+            Collections.rotate(items.subList(to, from + 1), 1);
+        }
+        invalidateFrom(Math.min(from, to));
+        modCount++;
+    }
+
+    /**
+     * @return the position of the item, found by identity (via its id), falling back to equality.
+     */
+    @Override
+    public int indexOf(Object o) {
+        if (o instanceof QueueItem) {
+            int index = indexOfId(((QueueItem) o).getId());
+            if (index != -1 && items.get(index) == o) {
+                return index;
+            }
+        }
+        return super.indexOf(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) != -1;
+    }
+
+    /**
+     * @return the position of the item with the passed in {@link QueueItem#getId()}, or -1.
+     */
+    int indexOfId(long id) {
+        materialize();
+        Integer index = positions.get(id);
+        if (index != null && index < indexedUpTo) {
+            return index;
+        }
+        if (indexedUpTo < items.size()) {
+            for (int i = indexedUpTo, size = items.size(); i < size; i++) {
+                long itemId = items.get(i).getId();
+                Integer existing = positions.get(itemId);
+                // Keep an earlier copy of the same item
+                if (existing == null || existing >= i || items.get(existing).getId() != itemId) {
+                    positions.put(itemId, i);
+                }
+            }
+            indexedUpTo = items.size();
+            index = positions.get(id);
+            if (index != null) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Renumbers the occurrence of every item in the list, in list order.
+     */
+    void updateOccurrence() {
+        updateOccurrence(itemsBySong.keySet());
+    }
+
+    /**
+     * Renumbers the occurrences of the items of the passed in songs, in list order. Songs with a single item are O(1).
+     */
+    void updateOccurrence(@NonNull Collection<Song> songs) {
+        materialize();
+        for (Song song : songs) {
+            List<QueueItem> songItems = itemsBySong.get(song);
+            if (songItems == null) {
+                continue;
+            }
+            if (songItems.size() > 1) {
+                Collections.sort(songItems, (a, b) -> Integer.compare(indexOfId(a.getId()), indexOfId(b.getId())));
+            }
+            for (int i = 0, size = songItems.size(); i < size; i++) {
+                songItems.get(i).setOccurrence(i + 1);
+            }
+        }
+    }
+
+    /**
+     * @return true if any song has more than one item in the list.
+     */
+    boolean hasDuplicateSongs() {
+        materialize();
+        return itemsBySong.size() < items.size();
+    }
+
+    private void beforeEdit() {
+        materialize();
+        if (orderedView != null) {
+            orderedView.materialize();
+        }
+    }
+
+    /**
+     * Copies a view's items into the backing array, after which it's an ordinary list.
+     */
+    private void materialize() {
+        ShuffleOrder order = this.order;
+        QueueList source = this.source;
+        if (order == null || source == null) {
+            return;
+        }
+        detach();
+        items.ensureCapacity(order.getSize());
+        for (int i = 0, size = order.getSize(); i < size; i++) {
+            QueueItem queueItem = source.get(order.get(i));
+            items.add(queueItem);
+            addToSong(queueItem);
+        }
+    }
+
+    private void detach() {
+        if (source != null && source.orderedView == this) {
+            source.orderedView = null;
+        }
+        order = null;
+        source = null;
+    }
+
+    /**
+     * Drops the position of an item being removed from {@code index}, unless it's of an earlier copy of the same item (which
+     * is still exact). Call before {@link #invalidateFrom(int)}.
+     */
+    private void forgetPosition(QueueItem queueItem, int index) {
+        Integer position = positions.get(queueItem.getId());
+        if (position != null && (position >= index || position >= indexedUpTo)) {
+            positions.remove(queueItem.getId());
+        }
+    }
+
+    private void invalidateFrom(int index) {
+        if (index < indexedUpTo) {
+            indexedUpTo = index;
+        }
+    }
+
+    private void addToSong(QueueItem queueItem) {
+        List<QueueItem> songItems = itemsBySong.get(queueItem.getSong());
+        if (songItems == null) {
+            songItems = new ArrayList<>(1);
+            itemsBySong.put(queueItem.getSong(), songItems);
+        }
+        songItems.add(queueItem);
+    }
+
+    private void removeFromSong(QueueItem queueItem) {
+        List<QueueItem> songItems = itemsBySong.get(queueItem.getSong());
+        if (songItems == null) {
+            return;
+        }
+        for (int i = 0, size = songItems.size(); i < size; i++) {
+            if (songItems.get(i) == queueItem) {
+                songItems.remove(i);
+                break;
+            }
+        }
+        if (songItems.isEmpty()) {
+            itemsBySong.remove(queueItem.getSong());
+        }
+    }
+}
@@ -2,7 +2,6 @@ package com.simplecity.amp_library.playback;
 
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import com.annimon.stream.Stream;
 import com.simplecity.amp_library.data.Repository;
 import com.simplecity.amp_library.model.Song;
 import com.simplecity.amp_library.playback.constants.InternalIntents;
@@ -12,21 +11,36 @@ import com.simplecity.amp_library.ui.screens.queue.QueueItem;
 import com.simplecity.amp_library.ui.screens.queue.QueueItemKt;
 import com.simplecity.amp_library.utils.LogUtils;
 import com.simplecity.amp_library.utils.SettingsManager;
+import io.reactivex.Maybe;
+import io.reactivex.Observable;
+import io.reactivex.Single;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.Disposable;
 import io.reactivex.schedulers.Schedulers;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import kotlin.Unit;
 import kotlin.jvm.functions.Function0;
+import kotlin.jvm.functions.Function1;
 
 public class QueueManager {
 
     private static final String TAG = "QueueManager";
 
+    /**
+     * How long a reload waits for an up to date library (when the first one to arrive, perhaps from the cache, doesn't fit
+     * the saved queue) before making do with the library it has.
+     */
+    private static final long LIBRARY_TIMEOUT_SECONDS = 5;
+
     public @interface ShuffleMode {
         int OFF = 0;
         int ON = 1;
@@ -43,13 +57,25 @@ public class QueueManager {
         int LAST = 1;
     }
 
-    private final char hexDigits[] = new char[] { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
-
     @NonNull
-    List<QueueItem> playlist = new ArrayList<>();
+    QueueList playlist = new QueueList();
 
     @NonNull
-    List<QueueItem> shuffleList = new ArrayList<>();
+    QueueList shuffleList = new QueueList();
+
+    /**
+     * The order shuffleList was generated in, for as long as neither list has been edited since. While set, the shuffle
+     * list is saved as this order's seed, rather than as ids.
+     */
+    @Nullable
+    ShuffleOrder shuffleOrder;
+
+    /**
+     * The library the playlist was built from by shuffle-all, for as long as neither list has been edited since (so
+     * shuffleOrder is set too). While set, the whole queue is saved as this signature and the shuffle order.
+     */
+    @Nullable
+    LibrarySignature library;
 
     @ShuffleMode
     int shuffleMode = ShuffleMode.OFF;
@@ -61,6 +87,12 @@ public class QueueManager {
 
     boolean queueIsSaveable = true;
 
+    /**
+     * True if the {@link QueueStore} may not match playlist & shuffleList (because an edit was made while the queue wasn't
+     * saveable, or before it was reloaded). The next save writes a full snapshot rather than journaling an edit.
+     */
+    private boolean queueStoreStale = true;
+
     int queuePosition = -1;
     int nextPlayPos = -1;
 
@@ -70,22 +102,26 @@ public class QueueManager {
 
     private PlaybackSettingsManager playbackSettingsManager;
 
+    private QueueStore queueStore;
+
     private SettingsManager settingsManager;
 
     public QueueManager(
             MusicService.Callbacks musicServiceCallbacks,
             Repository.SongsRepository songsRepository,
             PlaybackSettingsManager playbackSettingsManager,
+            QueueStore queueStore,
             SettingsManager settingsManager
     ) {
         this.musicServiceCallbacks = musicServiceCallbacks;
         this.songsRepository = songsRepository;
         this.playbackSettingsManager = playbackSettingsManager;
+        this.queueStore = queueStore;
         this.settingsManager = settingsManager;
     }
 
     private void notifyQueueChanged() {
-        saveQueue(true);
+        saveQueue(false);
         musicServiceCallbacks.notifyChange(InternalIntents.QUEUE_CHANGED);
     }
 
@@ -121,11 +157,13 @@ public class QueueManager {
         List<QueueItem> queueItems = QueueItemKt.toQueueItems(songs);
 
         if (!playlist.equals(queueItems)) {
-            playlist.clear();
+            // The shuffle list first, so it's detached from the playlist rather than materialised
             shuffleList.clear();
+            playlist.clear();
+            clearShuffleOrder();
 
+            // toQueueItems() has already numbered the occurrences
             playlist.addAll(queueItems);
-            QueueItemKt.updateOccurrence(playlist);
         }
 
         queuePosition = position;
@@ -134,6 +172,8 @@ public class QueueManager {
             makeShuffleList();
         }
 
+        saveQueueSnapshot();
+
         openCurrentAndNext.run();
 
         notifyMetaChanged();
@@ -157,7 +197,13 @@ public class QueueManager {
             to = getCurrentPlaylist().size() - 1;
         }
 
-        getCurrentPlaylist().add(to, getCurrentPlaylist().remove(from));
+        Song movedSong = getCurrentPlaylist().get(from).getSong();
+        getCurrentPlaylist().move(from, to);
+        clearShuffleOrder();
+
+        if (canJournalEdit()) {
+            queueStore.move(getCurrentListId(), from, to);
+        }
 
         if (from < to) {
             if (queuePosition == from) {
@@ -173,14 +219,15 @@ public class QueueManager {
             }
         }
 
-        QueueItemKt.updateOccurrence(getCurrentPlaylist());
+        getCurrentPlaylist().updateOccurrence(Collections.singleton(movedSong));
 
         notifyQueueChanged();
     }
 
     void clearQueue() {
-        playlist.clear();
         shuffleList.clear();
+        playlist.clear();
+        clearShuffleOrder();
 
         queuePosition = -1;
         nextPlayPos = -1;
@@ -189,11 +236,17 @@ public class QueueManager {
             setShuffleMode(ShuffleMode.OFF);
         }
 
+        saveQueueSnapshot();
+
         notifyQueueChanged();
     }
 
+    private int getCurrentListId() {
+        return shuffleMode == ShuffleMode.OFF ? QueueStore.LIST_PLAYLIST : QueueStore.LIST_SHUFFLE;
+    }
+
     @NonNull
-    List<QueueItem> getCurrentPlaylist() {
+    QueueList getCurrentPlaylist() {
         if (shuffleMode == ShuffleMode.OFF) {
             return playlist;
         } else {
@@ -242,6 +295,37 @@ public class QueueManager {
         }
     }
 
+    /**
+     * @param position the position of the next song, as returned by {@link #getNextPosition(boolean)}
+     * @return up to {@code count} songs which will play from {@code position} onwards, honouring the repeat mode.
+     */
+    @NonNull
+    List<Song> getUpcomingSongs(int position, int count) {
+        List<QueueItem> currentPlaylist = getCurrentPlaylist();
+        List<Song> songs = new ArrayList<>(count);
+        if (position < 0 || position >= currentPlaylist.size()) {
+            return songs;
+        }
+        int start = position;
+        while (songs.size() < count) {
+            songs.add(currentPlaylist.get(position).getSong());
+            if (repeatMode == RepeatMode.ONE) {
+                break;
+            }
+            position++;
+            if (position >= currentPlaylist.size()) {
+                if (repeatMode != RepeatMode.ALL) {
+                    break;
+                }
+                position = 0;
+            }
+            if (position == start) {
+                break;
+            }
+        }
+        return songs;
+    }
+
     /**
      * Removes the first instance of the Song the playlist & shuffleList.
      */
@@ -249,8 +333,25 @@ public class QueueManager {
 
         QueueItem currentQueueItem = getCurrentQueueItem();
 
-        playlist.remove(queueItem);
-        shuffleList.remove(queueItem);
+        int playlistIndex = playlist.indexOf(queueItem);
+        int shuffleListIndex = shuffleList.indexOf(queueItem);
+
+        if (playlistIndex != -1) {
+            playlist.remove(playlistIndex);
+        }
+        if (shuffleListIndex != -1) {
+            shuffleList.remove(shuffleListIndex);
+        }
+        clearShuffleOrder();
+
+        if (canJournalEdit()) {
+            if (playlistIndex != -1) {
+                queueStore.remove(QueueStore.LIST_PLAYLIST, new int[] { playlistIndex });
+            }
+            if (shuffleListIndex != -1) {
+                queueStore.remove(QueueStore.LIST_SHUFFLE, new int[] { shuffleListIndex });
+            }
+        }
 
         if (queueItem == currentQueueItem) {
             onCurrentSongRemoved(stop, moveToNextTrack);
@@ -258,7 +359,7 @@ public class QueueManager {
             queuePosition = getCurrentPlaylist().indexOf(currentQueueItem);
         }
 
-        QueueItemKt.updateOccurrence(getCurrentPlaylist());
+        getCurrentPlaylist().updateOccurrence(Collections.singleton(queueItem.getSong()));
 
         notifyQueueChanged();
     }
@@ -272,12 +373,30 @@ public class QueueManager {
      */
     void removeQueueItems(@NonNull List<QueueItem> queueItems, UnsafeAction stop, UnsafeAction moveToNextTrack) {
 
-        playlist.removeAll(queueItems);
-        shuffleList.removeAll(queueItems);
+        Set<QueueItem> removedItems = new HashSet<>(queueItems);
+
+        QueueItem currentQueueItem = getCurrentQueueItem();
+
+        int[] playlistIndices = indicesOf(playlist, removedItems);
+        int[] shuffleListIndices = indicesOf(shuffleList, removedItems);
+        int[] currentListIndices = getCurrentPlaylist() == playlist ? playlistIndices : shuffleListIndices;
 
-        QueueItemKt.updateOccurrence(getCurrentPlaylist());
+        playlist.removeAll(removedItems);
+        shuffleList.removeAll(removedItems);
+        clearShuffleOrder();
 
-        if (queueItems.contains(getCurrentQueueItem())) {
+        if (canJournalEdit()) {
+            queueStore.remove(QueueStore.LIST_PLAYLIST, playlistIndices);
+            queueStore.remove(QueueStore.LIST_SHUFFLE, shuffleListIndices);
+        }
+
+        Set<Song> removedSongs = new HashSet<>();
+        for (QueueItem queueItem : removedItems) {
+            removedSongs.add(queueItem.getSong());
+        }
+        getCurrentPlaylist().updateOccurrence(removedSongs);
+
+        if (currentQueueItem != null && removedItems.contains(currentQueueItem)) {
             /*
              * If we remove a list of songs from the current queue, and that list contains our currently
              * playing song, we need to figure out which song should play next. We'll play the first song
@@ -299,17 +418,37 @@ public class QueueManager {
              *
              * So after the removal, we'll play index 2, which is Song 8.
              */
-            queuePosition = Collections.indexOfSubList(getCurrentPlaylist(), queueItems);
+            queuePosition = currentListIndices[currentListIndices.length - 1];
             onCurrentSongRemoved(stop, moveToNextTrack);
         } else {
-            queuePosition = getCurrentPlaylist().indexOf(getCurrentQueueItem());
+            queuePosition = getCurrentPlaylist().indexOf(currentQueueItem);
         }
 
         notifyQueueChanged();
     }
 
+    /**
+     * @return the indices of the items of {@code list} contained in {@code items}, in descending order.
+     */
+    private static int[] indicesOf(List<QueueItem> list, Set<QueueItem> items) {
+        int count = 0;
+        int[] indices = new int[list.size()];
+        for (int i = list.size() - 1; i >= 0; i--) {
+            if (items.contains(list.get(i))) {
+                indices[count++] = i;
+            }
+        }
+        return Arrays.copyOf(indices, count);
+    }
+
     void removeSongs(@NonNull List<Song> songs, UnsafeAction stop, UnsafeAction moveToNextTrack) {
-        List<QueueItem> queueItems = Stream.of(playlist).filter(value -> songs.contains(value.getSong())).toList();
+        Set<Song> songSet = new HashSet<>(songs);
+        List<QueueItem> queueItems = new ArrayList<>();
+        for (QueueItem queueItem : playlist) {
+            if (songSet.contains(queueItem.getSong())) {
+                queueItems.add(queueItem);
+            }
+        }
         removeQueueItems(queueItems, stop, moveToNextTrack);
     }
 
@@ -336,22 +475,37 @@ public class QueueManager {
 
         List<QueueItem> queueItems = QueueItemKt.toQueueItems(songs);
 
+        clearShuffleOrder();
+
         switch (action) {
             case EnqueueAction.NEXT:
-                List<QueueItem> otherList = getCurrentPlaylist() == playlist ? shuffleList : playlist;
+                QueueList otherList = getCurrentPlaylist() == playlist ? shuffleList : playlist;
+                int otherListSize = otherList.size();
                 getCurrentPlaylist().addAll(queuePosition + 1, queueItems);
                 otherList.addAll(queueItems);
 
-                QueueItemKt.updateOccurrence(getCurrentPlaylist());
+                if (canJournalEdit()) {
+                    queueStore.insert(getCurrentListId(), queuePosition + 1, queueItems);
+                    queueStore.insert(otherList == playlist ? QueueStore.LIST_PLAYLIST : QueueStore.LIST_SHUFFLE, otherListSize, queueItems);
+                }
+
+                getCurrentPlaylist().updateOccurrence(new HashSet<>(songs));
 
                 setNextTrack.run();
                 notifyQueueChanged();
                 break;
             case EnqueueAction.LAST:
+                int playlistSize = playlist.size();
+                int shuffleListSize = shuffleList.size();
                 playlist.addAll(queueItems);
                 shuffleList.addAll(queueItems);
 
-                QueueItemKt.updateOccurrence(getCurrentPlaylist());
+                if (canJournalEdit()) {
+                    queueStore.insert(QueueStore.LIST_PLAYLIST, playlistSize, queueItems);
+                    queueStore.insert(QueueStore.LIST_SHUFFLE, shuffleListSize, queueItems);
+                }
+
+                getCurrentPlaylist().updateOccurrence(new HashSet<>(songs));
 
                 notifyQueueChanged();
                 break;
@@ -366,24 +520,27 @@ public class QueueManager {
     /**
      * Saves our state to preferences, including the queue position, repeat mode & shuffle mode.
      *
-     * @param saveQueue boolean whether to serialize the playlist/shuffleList and store those in preferences
-     * as well.
+     * @param saveQueue boolean whether to write a full snapshot of the playlist/shuffleList to the {@link QueueStore}
+     * as well. Edits to the queue are journaled as they happen, so this is only needed when the queue is replaced.
      */
     void saveQueue(boolean saveQueue) {
 
         if (!queueIsSaveable) {
+            if (saveQueue) {
+                queueStoreStale = true;
+            }
             return;
         }
 
         if (queueReloading) {
+            if (saveQueue) {
+                queueStoreStale = true;
+            }
             return;
         }
 
         if (saveQueue) {
-            playbackSettingsManager.setQueueList(serializePlaylist(playlist));
-            if (shuffleMode == ShuffleMode.ON) {
-                playbackSettingsManager.setShuffleList(serializePlaylist(shuffleList));
-            }
+            saveQueueSnapshot();
         }
 
         playbackSettingsManager.setQueuePosition(queuePosition);
@@ -391,158 +548,413 @@ public class QueueManager {
         playbackSettingsManager.setShuffleMode(shuffleMode);
     }
 
+    /**
+     * Writes playlist & shuffleList to the {@link QueueStore}, replacing whatever was saved.
+     */
+    private void saveQueueSnapshot() {
+        if (!queueIsSaveable || queueReloading) {
+            queueStoreStale = true;
+            return;
+        }
+
+        queueStore.write(playlist, shuffleList, shuffleOrder, library);
+        queueStoreStale = false;
+    }
+
+    /**
+     * Call when either list is edited, as the shuffle list is no longer in its order, nor the playlist the library.
+     */
+    private void clearShuffleOrder() {
+        shuffleOrder = null;
+        if (library != null) {
+            library = null;
+            // The store only has the library's signature, which an edit can't be journaled against
+            queueStoreStale = true;
+        }
+    }
+
+    /**
+     * Call after editing playlist or shuffleList.
+     *
+     * @return true if the edit should be journaled to the {@link QueueStore}. If the store is stale, a full snapshot
+     * (which includes the edit) is written instead, and false is returned.
+     */
+    private boolean canJournalEdit() {
+        if (!queueIsSaveable || queueReloading) {
+            queueStoreStale = true;
+            return false;
+        }
+        if (queueStoreStale) {
+            saveQueueSnapshot();
+            return false;
+        }
+        return true;
+    }
+
     Disposable reloadQueue(@NonNull Function0<Unit> onComplete) {
         queueReloading = true;
 
         shuffleMode = playbackSettingsManager.getShuffleMode();
         repeatMode = playbackSettingsManager.getRepeatMode();
 
-        return songsRepository.getAllSongs()
-                .first(Collections.emptyList())
-                .map(QueueItemKt::toQueueItems)
+        return queueStore.read()
+                .flatMap(savedQueue -> {
+                    if (savedQueue.getLibrary() != null) {
+                        return restoreLibraryQueue(savedQueue.getLibrary(), savedQueue.getShuffleOrder());
+                    }
+                    return songsRepository.getAllSongs()
+                            .first(Collections.emptyList())
+                            .map(songs -> restoreQueue(songs, savedQueue.getPlaylist(), savedQueue.getShuffleList(), savedQueue.getShuffleOrder(), false))
+                            .flatMap(restoredQueue -> {
+                                if (!restoredQueue.incomplete) {
+                                    return Single.just(restoredQueue);
+                                }
+                                // The library may have come from a stale cache. Check the dropped songs really are gone
+                                // before dropping them, and if MediaStore doesn't answer in time, don't overwrite the saved queue.
+                                return songsRepository.getMediaStoreSongs()
+                                        .firstOrError()
+                                        .timeout(LIBRARY_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                                        .map(songs -> restoreQueue(songs, savedQueue.getPlaylist(), savedQueue.getShuffleList(), savedQueue.getShuffleOrder(), false))
+                                        .onErrorReturnItem(restoredQueue.asProvisional());
+                            })
+                            .toMaybe();
+                })
+                .switchIfEmpty(songsRepository.getAllSongs()
+                        .first(Collections.emptyList())
+                        .flatMapMaybe(songs -> Maybe.fromCallable(() -> restoreLegacyQueue(songs))))
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
-                .subscribe((UnsafeConsumer<List<QueueItem>>) queueItems -> {
-                    String queueList = playbackSettingsManager.getQueueList();
-                    if (queueList != null) {
-                        playlist = deserializePlaylist(queueList, queueItems);
+                .subscribe((UnsafeConsumer<RestoredQueue>) restoredQueue -> {
+                    playlist = restoredQueue.playlist;
+                    library = restoredQueue.library;
+                    queueStoreStale = restoredQueue.incomplete;
+                    boolean saveRestoredQueue = !restoredQueue.provisional;
+
+                    if (restoredQueue.migrated) {
+                        playbackSettingsManager.setQueueList(null);
+                        playbackSettingsManager.setShuffleList(null);
+                    }
 
-                        final int queuePosition = playbackSettingsManager.getQueuePosition();
+                    final int queuePosition = playbackSettingsManager.getQueuePosition();
 
-                        if (queuePosition < 0 || queuePosition >= playlist.size()) {
-                            // The saved playlist is bogus, discard it
-                            playlist.clear();
-                            queueReloading = false;
-                            onComplete.invoke();
-                            return;
-                        }
+                    if (queuePosition < 0 || queuePosition >= playlist.size()) {
+                        // The saved playlist is bogus, discard it
+                        playlist.clear();
+                        clearShuffleOrder();
+                        queueStoreStale = true;
+                        onQueueReloaded(onComplete);
+                        return;
+                    }
 
-                        QueueManager.this.queuePosition = queuePosition;
+                    QueueManager.this.queuePosition = queuePosition;
 
-                        if (repeatMode != RepeatMode.ALL && repeatMode != RepeatMode.ONE) {
-                            repeatMode = RepeatMode.OFF;
-                        }
-                        if (shuffleMode != ShuffleMode.ON) {
-                            shuffleMode = ShuffleMode.OFF;
-                        }
-                        if (shuffleMode == ShuffleMode.ON) {
-                            queueList = playbackSettingsManager.getShuffleList();
-                            if (queueList != null) {
-                                shuffleList = deserializePlaylist(queueList, queueItems);
-
-                                if (queuePosition >= shuffleList.size()) {
-                                    // The saved playlist is bogus, discard it
-                                    shuffleList.clear();
-                                    queueReloading = false;
-                                    onComplete.invoke();
-                                    return;
-                                }
-                            }
+                    if (repeatMode != RepeatMode.ALL && repeatMode != RepeatMode.ONE) {
+                        repeatMode = RepeatMode.OFF;
+                    }
+                    if (shuffleMode != ShuffleMode.ON) {
+                        shuffleMode = ShuffleMode.OFF;
+                    }
+                    shuffleList = restoredQueue.shuffleList;
+                    shuffleOrder = restoredQueue.shuffleOrder;
+                    if (shuffleMode == ShuffleMode.ON && !shuffleList.isEmpty()) {
+                        if (queuePosition >= shuffleList.size()) {
+                            // The saved playlist is bogus, discard it
+                            shuffleList.clear();
+                            clearShuffleOrder();
+                            queueStoreStale = true;
+                            onQueueReloaded(onComplete);
+                            return;
                         }
+                    }
 
-                        if (QueueManager.this.queuePosition < 0 || QueueManager.this.queuePosition >= getCurrentPlaylist().size()) {
-                            QueueManager.this.queuePosition = 0;
-                        }
+                    if (QueueManager.this.queuePosition < 0 || QueueManager.this.queuePosition >= getCurrentPlaylist().size()) {
+                        QueueManager.this.queuePosition = 0;
+                    }
+                    if (saveRestoredQueue) {
+                        onQueueReloaded(onComplete);
+                    } else {
+                        // queueStoreStale stays set, so the first edit writes a snapshot
+                        queueReloading = false;
+                        onComplete.invoke();
                     }
-                    queueReloading = false;
-                    onComplete.invoke();
                 }, error -> {
                     queueReloading = false;
                     onComplete.invoke();
                     LogUtils.logException(TAG, "Reloading queue", error);
+                }, () -> {
+                    // Nothing was saved
+                    onQueueReloaded(onComplete);
                 });
     }
 
+    private void onQueueReloaded(@NonNull Function0<Unit> onComplete) {
+        queueReloading = false;
+        if (queueStoreStale) {
+            saveQueueSnapshot();
+        }
+        onComplete.invoke();
+    }
+
     /**
-     * Converts a playlist to a String which can be saved to SharedPrefs
+     * Maps saved song ids back to QueueItems, via a single id lookup per item. Ids of songs no longer in the library are dropped.
      */
-    private String serializePlaylist(List<QueueItem> queueItems) {
-
-        // The current playlist is saved as a list of "reverse hexadecimal"
-        // numbers, which we can generate faster than normal decimal or
-        // hexadecimal numbers, which in turn allows us to save the playlist
-        // more often without worrying too much about performance.
-
-        StringBuilder q = new StringBuilder();
-
-        List<Song> songs = Stream.of(queueItems).map(QueueItem::getSong).toList();
-        int len = songs.size();
-        for (int i = 0; i < len; i++) {
-            long n = songs.get(i).id;
-            if (n >= 0) {
-                if (n == 0) {
-                    q.append("0;");
-                } else {
-                    while (n != 0) {
-                        final int digit = (int) (n & 0xf);
-                        n >>>= 4;
-                        q.append(hexDigits[digit]);
-                    }
-                    q.append(";");
+    @NonNull
+    private static RestoredQueue restoreQueue(@NonNull List<Song> songs, @NonNull long[] playlistIds, @NonNull long[] shuffleListIds,
+            @Nullable ShuffleOrder shuffleOrder, boolean migrated) {
+        Map<Long, Song> songsById = new HashMap<>(songs.size() * 4 / 3 + 1);
+        for (Song song : songs) {
+            songsById.put(song.id, song);
+        }
+
+        List<Song> playlistSongs = new ArrayList<>(playlistIds.length);
+        for (long id : playlistIds) {
+            Song song = songsById.get(id);
+            if (song != null) {
+                playlistSongs.add(song);
+            }
+        }
+        QueueList playlist = new QueueList(QueueItemKt.toQueueItems(playlistSongs));
+
+        // The shuffle list holds the same QueueItems as the playlist, as it does when built by makeShuffleList()
+        Map<Long, ArrayDeque<QueueItem>> playlistItemsById = new HashMap<>(playlist.size() * 4 / 3 + 1);
+        for (QueueItem queueItem : playlist) {
+            ArrayDeque<QueueItem> queueItems = playlistItemsById.get(queueItem.getSong().id);
+            if (queueItems == null) {
+                queueItems = new ArrayDeque<>(1);
+                playlistItemsById.put(queueItem.getSong().id, queueItems);
+            }
+            queueItems.add(queueItem);
+        }
+
+        QueueList shuffleList = new QueueList();
+        for (long id : shuffleListIds) {
+            ArrayDeque<QueueItem> queueItems = playlistItemsById.get(id);
+            QueueItem queueItem = queueItems != null ? queueItems.pollFirst() : null;
+            if (queueItem == null) {
+                Song song = songsById.get(id);
+                if (song == null) {
+                    continue;
                 }
+                queueItem = new QueueItem(song, 1);
             }
+            shuffleList.add(queueItem);
         }
 
-        return q.toString();
+        boolean incomplete = migrated || playlist.size() != playlistIds.length || shuffleList.size() != shuffleListIds.length;
+        return new RestoredQueue(playlist, shuffleList, incomplete ? null : shuffleOrder, null, incomplete, migrated);
     }
 
     /**
-     * Converts a string representation of a playlist from SharedPrefs into a list of songs.
+     * Rebuilds a shuffled library from the library with the saved signature, which may take a moment to emit if the cached
+     * library is stale. If the library has changed since, it's shuffled again, with the same seed.
      */
-    private List<QueueItem> deserializePlaylist(String listString, List<QueueItem> queueItems) {
-        List<Long> ids = new ArrayList<>();
-        int n = 0;
+    @NonNull
+    private Maybe<RestoredQueue> restoreLibraryQueue(@NonNull LibrarySignature library, @NonNull ShuffleOrder shuffleOrder) {
+        Observable<List<Song>> librarySongs = songsRepository.getSongs((Function1<? super Song, Boolean>) null);
+        return librarySongs
+                .filter(library::matches)
+                .firstElement()
+                .map(songs -> {
+                    QueueList playlist = new QueueList(QueueItemKt.toQueueItems(songs));
+                    return new RestoredQueue(playlist, toShuffleList(playlist, shuffleOrder), shuffleOrder, library, false, false);
+                })
+                .timeout(LIBRARY_TIMEOUT_SECONDS, TimeUnit.SECONDS, librarySongs
+                        .firstElement()
+                        .map(songs -> {
+                            ShuffledQueue shuffledQueue = shuffleLibrary(songs, shuffleOrder.getSeed());
+                            return new RestoredQueue(shuffledQueue.playlist, shuffledQueue.shuffleList, shuffledQueue.shuffleOrder,
+                                    shuffledQueue.library, true, false);
+                        }));
+    }
+
+    /**
+     * Restores a queue saved to preferences by earlier versions, as "reverse hexadecimal" ids.
+     *
+     * @return the restored queue, or null if there isn't one.
+     */
+    @Nullable
+    private RestoredQueue restoreLegacyQueue(@NonNull List<Song> songs) {
+        String queueList = playbackSettingsManager.getQueueList();
+        if (queueList == null) {
+            return null;
+        }
+        String shuffleList = playbackSettingsManager.getShuffleList();
+        return restoreQueue(songs, parseLegacyIds(queueList), shuffleList != null ? parseLegacyIds(shuffleList) : new long[0], null, true);
+    }
+
+    /**
+     * Parses a ';' separated list of "reverse hexadecimal" ids. Parsing stops at the first bogus character.
+     */
+    @NonNull
+    static long[] parseLegacyIds(@NonNull String listString) {
+        long[] ids = new long[16];
+        int count = 0;
+        long n = 0;
         int shift = 0;
         for (int i = 0; i < listString.length(); i++) {
             char c = listString.charAt(i);
             if (c == ';') {
-                ids.add((long) n);
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, count * 2);
+                }
+                ids[count++] = n;
                 n = 0;
                 shift = 0;
             } else {
                 if (c >= '0' && c <= '9') {
-                    n += ((c - '0') << shift);
+                    n += ((long) (c - '0') << shift);
                 } else if (c >= 'a' && c <= 'f') {
-                    n += ((10 + c - 'a') << shift);
+                    n += ((long) (10 + c - 'a') << shift);
                 } else {
                     // bogus playlist data
-                    playlist.clear();
                     break;
                 }
                 shift += 4;
             }
         }
+        return Arrays.copyOf(ids, count);
+    }
 
-        Map<Integer, Song> map = new TreeMap<>();
+    private static final class RestoredQueue {
 
-        Stream.of(queueItems).map(QueueItem::getSong).forEach(song -> {
-            int index = ids.indexOf(song.id);
-            if (index != -1) {
-                map.put(index, song);
-            }
-        });
+        @NonNull
+        final QueueList playlist;
+
+        @NonNull
+        final QueueList shuffleList;
+
+        /**
+         * The order the shuffle list was saved as, if it was saved as a seed and came back intact.
+         */
+        @Nullable
+        final ShuffleOrder shuffleOrder;
+
+        /**
+         * True if the restored lists differ from what was saved (songs were dropped, or the queue came from preferences).
+         */
+        final boolean incomplete;
 
-        return QueueItemKt.toQueueItems(new ArrayList<>(map.values()));
+        final boolean migrated;
+
+        /**
+         * True if songs were dropped against a library which couldn't be checked against MediaStore in time, so the saved
+         * queue shouldn't be replaced by this one until the queue is edited.
+         */
+        final boolean provisional;
+
+        /**
+         * The library the playlist was rebuilt from, if it was saved as one.
+         */
+        @Nullable
+        final LibrarySignature library;
+
+        RestoredQueue(@NonNull QueueList playlist, @NonNull QueueList shuffleList, @Nullable ShuffleOrder shuffleOrder,
+                @Nullable LibrarySignature library, boolean incomplete, boolean migrated) {
+            this(playlist, shuffleList, shuffleOrder, library, incomplete, migrated, false);
+        }
+
+        private RestoredQueue(@NonNull QueueList playlist, @NonNull QueueList shuffleList, @Nullable ShuffleOrder shuffleOrder,
+                @Nullable LibrarySignature library, boolean incomplete, boolean migrated, boolean provisional) {
+            this.playlist = playlist;
+            this.shuffleList = shuffleList;
+            this.shuffleOrder = shuffleOrder;
+            this.library = library;
+            this.incomplete = incomplete;
+            this.migrated = migrated;
+            this.provisional = provisional;
+        }
+
+        @NonNull
+        RestoredQueue asProvisional() {
+            return new RestoredQueue(playlist, shuffleList, shuffleOrder, library, incomplete, migrated, true);
+        }
     }
 
+    /**
+     * Replaces the shuffle list with a new random order of the playlist. The current song (if any) is placed first.
+     */
     void makeShuffleList() {
         if (playlist.isEmpty()) {
             return;
         }
 
-        shuffleList = new ArrayList<>(playlist);
-        QueueItem currentSong = null;
-        if (queuePosition >= 0 && queuePosition < shuffleList.size()) {
-            currentSong = shuffleList.remove(queuePosition);
+        int first = queuePosition >= 0 && queuePosition < playlist.size() ? queuePosition : -1;
+        shuffleOrder = new ShuffleOrder(playlist.size(), first, ShuffleOrder.newSeed());
+        // The old shuffle list is discarded; detach it rather than have it materialised
+        shuffleList.clear();
+        shuffleList = toShuffleList(playlist, shuffleOrder);
+        queuePosition = 0;
+
+        saveQueueSnapshot();
+    }
+
+    /**
+     * Replaces the queue with one built via {@link #shuffleLibrary(List)}, and turns shuffle on.
+     */
+    void setShuffledQueue(@NonNull ShuffledQueue shuffledQueue) {
+        playlist = shuffledQueue.playlist;
+        shuffleList = shuffledQueue.shuffleList;
+        shuffleOrder = shuffledQueue.shuffleOrder;
+        library = shuffledQueue.library;
+        queuePosition = 0;
+
+        if (shuffleMode != ShuffleMode.ON) {
+            shuffleMode = ShuffleMode.ON;
+            notifyShuffleChanged();
         }
 
-        Collections.shuffle(shuffleList);
+        saveQueue(true);
+    }
+
+    /**
+     * Builds a queue of the library (as emitted by {@link Repository.SongsRepository#getSongs(Function1)}), in a new random
+     * order. Safe to call off the main thread.
+     */
+    @NonNull
+    static ShuffledQueue shuffleLibrary(@NonNull List<Song> songs) {
+        return shuffleLibrary(songs, ShuffleOrder.newSeed());
+    }
+
+    @NonNull
+    private static ShuffledQueue shuffleLibrary(@NonNull List<Song> songs, long seed) {
+        QueueList playlist = new QueueList(QueueItemKt.toQueueItems(songs));
+        ShuffleOrder shuffleOrder = new ShuffleOrder(playlist.size(), -1, seed);
+        return new ShuffledQueue(playlist, toShuffleList(playlist, shuffleOrder), shuffleOrder, LibrarySignature.of(songs));
+    }
 
-        if (currentSong != null) {
-            shuffleList.add(0, currentSong);
+    /**
+     * @return a view of the playlist in the passed in order (see {@link QueueList#ordered(QueueList, ShuffleOrder)}), with
+     * occurrences numbered in that order. Only a playlist with repeated songs has to be materialised to renumber them.
+     */
+    @NonNull
+    private static QueueList toShuffleList(@NonNull QueueList playlist, @NonNull ShuffleOrder shuffleOrder) {
+        QueueList shuffleList = QueueList.ordered(playlist, shuffleOrder);
+        if (playlist.hasDuplicateSongs()) {
+            shuffleList.updateOccurrence();
         }
-        queuePosition = 0;
+        return shuffleList;
+    }
+
+    static final class ShuffledQueue {
 
-        QueueItemKt.updateOccurrence(shuffleList);
+        @NonNull
+        final QueueList playlist;
+
+        @NonNull
+        final QueueList shuffleList;
+
+        @NonNull
+        final ShuffleOrder shuffleOrder;
+
+        @NonNull
+        final LibrarySignature library;
+
+        ShuffledQueue(@NonNull QueueList playlist, @NonNull QueueList shuffleList, @NonNull ShuffleOrder shuffleOrder,
+                @NonNull LibrarySignature library) {
+            this.playlist = playlist;
+            this.shuffleList = shuffleList;
+            this.shuffleOrder = shuffleOrder;
+            this.library = library;
+        }
     }
-}
\ No newline at end of file
+}
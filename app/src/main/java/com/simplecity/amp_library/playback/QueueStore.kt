@@ -0,0 +1,577 @@
+package com.simplecity.amp_library.playback
+
+import android.content.Context
+import android.support.annotation.WorkerThread
+import android.util.Log
+import com.simplecity.amp_library.ui.screens.queue.QueueItem
+import com.simplecity.amp_library.utils.LogUtils
+import io.reactivex.Maybe
+import io.reactivex.schedulers.Schedulers
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.util.concurrent.Executors
+import java.util.zip.CRC32
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Persists the playback queue (the playlist & shuffle list, as song ids) to a binary snapshot plus an append-only journal.
+ *
+ * Replacing the queue writes a new snapshot. Edits (enqueue, move, remove) append a small record to the journal instead of
+ * rewriting the whole queue, and the journal is folded back into a snapshot once it grows past [MAX_JOURNAL_ENTRIES].
+ *
+ * snapshot: magic (int), version (int), generation (long), playlist, shuffle list, CRC32 (int)
+ *     where the playlist is either its size (int) and ids (long), or [PLAYLIST_LIBRARY] (int), size (int), checksum (long),
+ *     and the shuffle list is either its size (int) and ids (long), or [SHUFFLE_SEEDED] (int), seed (long), first (int).
+ * journal:  magic (int), version (int), generation (long), then records of: length (int), CRC32 (int), op (byte), list (byte), args
+ *
+ * A journal only applies to the snapshot with the same generation. Replay stops at the first torn or inconsistent record.
+ *
+ * A shuffle list which is still in the order it was generated in is saved as its [ShuffleOrder], so it takes constant space
+ * however long the queue is. Its ids are only generated when it's read, or when an edit is made to either list.
+ *
+ * All file access happens on a single background thread, in the order the calls were made. The store keeps its own copy of
+ * the ids, so compaction doesn't need to consult the caller.
+ *
+ * A shuffled library (shuffle-all) is saved as just its [LibrarySignature] & [ShuffleOrder], so saving it is constant time.
+ * The caller rebuilds the playlist from the library when it's read. Edits can't be journaled against such a snapshot; the
+ * caller writes a full snapshot instead.
+ */
+@Singleton
+class QueueStore @Inject constructor(context: Context) {
+
+    /**
+     * @param shuffleOrder the order [shuffleList] was saved as, if it was saved as a seed.
+     * @param library if set, the playlist was saved as the library with this signature, and both id lists are empty.
+     */
+    class SavedQueue(val playlist: LongArray, val shuffleList: LongArray, val shuffleOrder: ShuffleOrder?, val library: LibrarySignature?) {
+
+        val isEmpty: Boolean
+            get() = library == null && playlist.isEmpty() && shuffleList.isEmpty()
+    }
+
+    private val snapshotFile = File(context.applicationContext.filesDir, SNAPSHOT_FILE_NAME)
+
+    private val journalFile = File(context.applicationContext.filesDir, JOURNAL_FILE_NAME)
+
+    private val scheduler = Schedulers.from(Executors.newSingleThreadExecutor())
+
+    // The following are only accessed from the store's thread
+
+    private var loaded = false
+
+    private val lists = arrayOf(ArrayList<Long>(), ArrayList<Long>())
+
+    /**
+     * If set, the shuffle list is this order of the playlist, and `lists[LIST_SHUFFLE]` is empty.
+     */
+    private var shuffleOrder: ShuffleOrder? = null
+
+    /**
+     * If set, the playlist is the library with this signature, `lists[LIST_PLAYLIST]` is empty, and [shuffleOrder] is set.
+     */
+    private var library: LibrarySignature? = null
+
+    private var generation = 0L
+
+    private var journal: DataOutputStream? = null
+
+    private var journalEntries = 0
+
+    /**
+     * Set when an edit couldn't be saved. Further edits are ignored until the queue is next replaced via [write].
+     */
+    private var broken = false
+
+    /**
+     * Returns the saved queue once any pending writes have completed, or completes empty if there is no saved queue.
+     */
+    fun read(): Maybe<SavedQueue> {
+        return Maybe.fromCallable<SavedQueue> {
+            ensureLoaded()
+            val playlist = lists[LIST_PLAYLIST].toLongArray()
+            val shuffleOrder = shuffleOrder
+            val library = library
+            val shuffleList = when {
+                library != null -> LongArray(0)
+                shuffleOrder != null -> LongArray(shuffleOrder.size) { i -> playlist[shuffleOrder.get(i)] }
+                else -> lists[LIST_SHUFFLE].toLongArray()
+            }
+            val savedQueue = SavedQueue(playlist, shuffleList, shuffleOrder, library)
+            if (savedQueue.isEmpty) null else savedQueue
+        }.subscribeOn(scheduler)
+    }
+
+    /**
+     * Replaces the saved queue.
+     *
+     * @param shuffleOrder the order [shuffleList] was generated in, if neither list has been edited since. The shuffle list is
+     * then saved as just the order.
+     * @param library the signature of the library [playlist] was built from, if it's unedited. Requires [shuffleOrder]. The
+     * playlist is then saved as just the signature.
+     */
+    fun write(playlist: List<QueueItem>, shuffleList: List<QueueItem>, shuffleOrder: ShuffleOrder?, library: LibrarySignature?) {
+        val library = if (shuffleOrder != null && library?.size == playlist.size) library else null
+        val playlistIds = if (library == null) playlist.toIds() else LongArray(0)
+        val shuffleIds = if (shuffleOrder == null) shuffleList.toIds() else LongArray(0)
+        execute {
+            if (!loaded) {
+                // Carry on from the saved generation, so a journal left over from it can't be mistaken for the new one's
+                generation = readGeneration()
+                loaded = true
+            }
+            broken = false
+            lists[LIST_PLAYLIST].reset(playlistIds)
+            lists[LIST_SHUFFLE].reset(shuffleIds)
+            this.shuffleOrder = shuffleOrder
+            this.library = library
+            writeSnapshot()
+        }
+    }
+
+    /**
+     * Records the insertion of [queueItems] into [list], at [index].
+     */
+    fun insert(list: Int, index: Int, queueItems: List<QueueItem>) {
+        val ids = queueItems.toIds()
+        execute {
+            if (broken) return@execute
+            ensureLoaded()
+            append(OP_INSERT, list) { output ->
+                output.writeInt(index)
+                output.writeInt(ids.size)
+                ids.forEach { id -> output.writeLong(id) }
+            }
+        }
+    }
+
+    /**
+     * Records the removal of the items at [indices] (in descending order) from [list].
+     */
+    fun remove(list: Int, indices: IntArray) {
+        if (indices.isEmpty()) return
+        execute {
+            if (broken) return@execute
+            ensureLoaded()
+            append(OP_REMOVE, list) { output ->
+                output.writeInt(indices.size)
+                indices.forEach { index -> output.writeInt(index) }
+            }
+        }
+    }
+
+    /**
+     * Records the move of the item at [from] to [to], within [list].
+     */
+    fun move(list: Int, from: Int, to: Int) {
+        execute {
+            if (broken) return@execute
+            ensureLoaded()
+            append(OP_MOVE, list) { output ->
+                output.writeInt(from)
+                output.writeInt(to)
+            }
+        }
+    }
+
+    private fun execute(action: () -> Unit) {
+        scheduler.scheduleDirect {
+            try {
+                action()
+            } catch (e: Exception) {
+                LogUtils.logException(TAG, "Queue store operation failed", e)
+                // The saved queue no longer matches the live one. Better to restore nothing than the wrong queue.
+                broken = true
+                closeJournal()
+                lists.forEach { list -> list.clear() }
+                shuffleOrder = null
+                library = null
+                snapshotFile.delete()
+                journalFile.delete()
+            }
+        }
+    }
+
+    @WorkerThread
+    private fun ensureLoaded() {
+        if (loaded) {
+            return
+        }
+        loaded = true
+
+        val time = System.currentTimeMillis()
+
+        if (!readSnapshot()) {
+            // Start from an empty snapshot, so that any journal written from here on has something to apply to
+            lists.forEach { list -> list.clear() }
+            shuffleOrder = null
+            library = null
+            writeSnapshot()
+            return
+        }
+
+        val consistent = replayJournal()
+
+        if (!consistent || journalEntries >= MAX_JOURNAL_ENTRIES) {
+            writeSnapshot()
+        }
+
+        if (LOGGING_ENABLED) {
+            Log.d(TAG, "Loaded ${lists[LIST_PLAYLIST].size} + ${lists[LIST_SHUFFLE].size} ids, $journalEntries journal entries, in ${System.currentTimeMillis() - time}ms")
+        }
+    }
+
+    /**
+     * @return false if there is no snapshot, or it is unreadable.
+     */
+    private fun readSnapshot(): Boolean {
+        if (!snapshotFile.exists()) {
+            return false
+        }
+        return try {
+            val bytes = snapshotFile.readBytes()
+            if (bytes.size < SNAPSHOT_HEADER_SIZE + CHECKSUM_SIZE) throw IOException("Truncated snapshot")
+
+            val crc = CRC32()
+            crc.update(bytes, 0, bytes.size - CHECKSUM_SIZE)
+
+            DataInputStream(bytes.inputStream()).use { input ->
+                if (input.readInt() != SNAPSHOT_MAGIC) throw IOException("Bad magic")
+                if (input.readInt() !in MIN_VERSION..VERSION) throw IOException("Unsupported version")
+                generation = input.readLong()
+                shuffleOrder = null
+                library = null
+                lists.forEach { list ->
+                    val size = input.readInt()
+                    list.clear()
+                    if (size == PLAYLIST_LIBRARY && list === lists[LIST_PLAYLIST]) {
+                        val librarySize = input.readInt()
+                        if (librarySize < 0) throw IOException("Bad library size")
+                        library = LibrarySignature(librarySize, input.readLong())
+                    } else if (size == SHUFFLE_SEEDED && list === lists[LIST_SHUFFLE]) {
+                        val seed = input.readLong()
+                        val first = input.readInt()
+                        val playlistSize = library?.size ?: lists[LIST_PLAYLIST].size
+                        if (first < -1 || first >= playlistSize) throw IOException("Bad shuffle order")
+                        shuffleOrder = ShuffleOrder(playlistSize, first, seed)
+                    } else {
+                        if (size < 0) throw IOException("Bad list size")
+                        list.ensureCapacity(size)
+                        for (i in 0 until size) {
+                            list.add(input.readLong())
+                        }
+                    }
+                }
+                if (library != null && shuffleOrder == null) throw IOException("Library saved without a shuffle order")
+                if (input.readInt() != crc.value.toInt()) throw IOException("Bad checksum")
+            }
+            true
+        } catch (e: IOException) {
+            LogUtils.logException(TAG, "Failed to read queue snapshot", e)
+            false
+        }
+    }
+
+    /**
+     * @return the generation of the saved snapshot, or 0 if there isn't one (or it's unreadable).
+     */
+    private fun readGeneration(): Long {
+        if (!snapshotFile.exists()) {
+            return 0L
+        }
+        return try {
+            DataInputStream(snapshotFile.inputStream()).use { input ->
+                if (input.readInt() == SNAPSHOT_MAGIC && input.readInt() in MIN_VERSION..VERSION) input.readLong() else 0L
+            }
+        } catch (e: IOException) {
+            0L
+        }
+    }
+
+    /**
+     * Applies the journal's records to the lists, and opens the journal for appending.
+     *
+     * @return false if the journal was torn, didn't belong to the snapshot, or contained an inconsistent record.
+     */
+    private fun replayJournal(): Boolean {
+        journalEntries = 0
+
+        if (!journalFile.exists()) {
+            return true
+        }
+
+        var consistent = true
+        try {
+            DataInputStream(journalFile.inputStream().buffered()).use { input ->
+                if (input.readInt() != JOURNAL_MAGIC || input.readInt() !in MIN_VERSION..VERSION || input.readLong() != generation) {
+                    // Left over from an older snapshot
+                    return false
+                }
+                while (true) {
+                    val length = try {
+                        input.readInt()
+                    } catch (e: EOFException) {
+                        break
+                    }
+                    val checksum = input.readInt()
+                    if (length <= 0 || length > MAX_RECORD_SIZE) throw IOException("Bad record length")
+                    val record = ByteArray(length)
+                    input.readFully(record)
+
+                    val crc = CRC32()
+                    crc.update(record)
+                    if (crc.value.toInt() != checksum) throw IOException("Bad record checksum")
+
+                    if (!apply(DataInputStream(record.inputStream()))) throw IOException("Inconsistent record")
+                    journalEntries++
+                }
+            }
+        } catch (e: IOException) {
+            LogUtils.logException(TAG, "Stopped replaying queue journal", e)
+            consistent = false
+        }
+
+        if (consistent) {
+            journal = DataOutputStream(FileOutputStream(journalFile, true).buffered())
+        }
+        return consistent
+    }
+
+    /**
+     * Applies a single journal record to the lists.
+     *
+     * @return false if the record doesn't fit the current lists.
+     */
+    private fun apply(input: DataInputStream): Boolean {
+        val op = input.readByte().toInt()
+        val listIndex = input.readByte().toInt()
+        if (listIndex != LIST_PLAYLIST && listIndex != LIST_SHUFFLE) return false
+        val list = lists[listIndex]
+
+        // The store doesn't know the library's ids, so can't apply edits to it. The caller writes a snapshot instead.
+        if (library != null) return false
+
+        // Any edit to either list breaks the shuffle order, so from here on the shuffle list is kept as ids
+        generateShuffleList()
+
+        when (op) {
+            OP_INSERT -> {
+                val index = input.readInt()
+                val count = input.readInt()
+                if (index < 0 || index > list.size || count < 0) return false
+                val ids = ArrayList<Long>(count)
+                for (i in 0 until count) {
+                    ids.add(input.readLong())
+                }
+                list.addAll(index, ids)
+            }
+            OP_REMOVE -> {
+                val count = input.readInt()
+                for (i in 0 until count) {
+                    val index = input.readInt()
+                    if (index < 0 || index >= list.size) return false
+                    list.removeAt(index)
+                }
+            }
+            OP_MOVE -> {
+                val from = input.readInt()
+                val to = input.readInt()
+                if (from < 0 || from >= list.size || to < 0 || to >= list.size) return false
+                list.add(to, list.removeAt(from))
+            }
+            else -> return false
+        }
+        return true
+    }
+
+    /**
+     * Applies the record to our own lists, then appends it to the journal, or compacts if the journal is full.
+     */
+    private fun append(op: Int, list: Int, writeArgs: (DataOutputStream) -> Unit) {
+        val bytes = ByteArrayOutputStream(RECORD_SIZE_ESTIMATE)
+        DataOutputStream(bytes).use { output ->
+            output.writeByte(op)
+            output.writeByte(list)
+            writeArgs(output)
+        }
+        val record = bytes.toByteArray()
+
+        if (!apply(DataInputStream(record.inputStream()))) {
+            throw IOException("Edit doesn't fit the saved queue")
+        }
+
+        if (journalEntries >= MAX_JOURNAL_ENTRIES) {
+            writeSnapshot()
+            return
+        }
+
+        val journal = journal ?: openJournal()
+        val crc = CRC32()
+        crc.update(record)
+        journal.writeInt(record.size)
+        journal.writeInt(crc.value.toInt())
+        journal.write(record)
+        journal.flush()
+        journalEntries++
+    }
+
+    private fun generateShuffleList() {
+        val shuffleOrder = shuffleOrder ?: return
+        val playlist = lists[LIST_PLAYLIST]
+        val shuffleList = lists[LIST_SHUFFLE]
+        shuffleList.clear()
+        shuffleList.ensureCapacity(shuffleOrder.size)
+        for (i in 0 until shuffleOrder.size) {
+            shuffleList.add(playlist[shuffleOrder.get(i)])
+        }
+        this.shuffleOrder = null
+    }
+
+    private fun openJournal(): DataOutputStream {
+        val journal = DataOutputStream(FileOutputStream(journalFile, false).buffered())
+        journal.writeInt(JOURNAL_MAGIC)
+        journal.writeInt(VERSION)
+        journal.writeLong(generation)
+        journal.flush()
+        this.journal = journal
+        return journal
+    }
+
+    private fun closeJournal() {
+        try {
+            journal?.close()
+        } catch (ignored: IOException) {
+        }
+        journal = null
+    }
+
+    /**
+     * Writes the lists to a new snapshot (under a new generation), and starts an empty journal.
+     */
+    private fun writeSnapshot() {
+        val time = System.currentTimeMillis()
+
+        closeJournal()
+
+        generation++
+
+        val bytes = ByteArrayOutputStream(SNAPSHOT_HEADER_SIZE + (lists[LIST_PLAYLIST].size + lists[LIST_SHUFFLE].size) * 8 + 8 + CHECKSUM_SIZE)
+        DataOutputStream(bytes).use { output ->
+            output.writeInt(SNAPSHOT_MAGIC)
+            output.writeInt(VERSION)
+            output.writeLong(generation)
+            val library = library
+            if (library != null) {
+                output.writeInt(PLAYLIST_LIBRARY)
+                output.writeInt(library.size)
+                output.writeLong(library.checksum)
+            } else {
+                output.writeIds(lists[LIST_PLAYLIST])
+            }
+            val shuffleOrder = shuffleOrder
+            if (shuffleOrder != null) {
+                output.writeInt(SHUFFLE_SEEDED)
+                output.writeLong(shuffleOrder.seed)
+                output.writeInt(shuffleOrder.first)
+            } else {
+                output.writeIds(lists[LIST_SHUFFLE])
+            }
+        }
+        val crc = CRC32()
+        crc.update(bytes.toByteArray())
+        DataOutputStream(bytes).writeInt(crc.value.toInt())
+
+        val tempFile = File(snapshotFile.parentFile, "$SNAPSHOT_FILE_NAME.tmp")
+        FileOutputStream(tempFile).use { output -> bytes.writeTo(output) }
+        if (!tempFile.renameTo(snapshotFile)) {
+            tempFile.delete()
+            throw IOException("Failed to rename ${tempFile.name}")
+        }
+
+        journalEntries = 0
+        openJournal()
+
+        if (LOGGING_ENABLED) {
+            Log.d(TAG, "Wrote snapshot of ${lists[LIST_PLAYLIST].size} + ${lists[LIST_SHUFFLE].size} ids in ${System.currentTimeMillis() - time}ms")
+        }
+    }
+
+    private fun DataOutputStream.writeIds(ids: List<Long>) {
+        writeInt(ids.size)
+        ids.forEach { id -> writeLong(id) }
+    }
+
+    private fun List<QueueItem>.toIds(): LongArray {
+        val ids = LongArray(size)
+        forEachIndexed { i, queueItem -> ids[i] = queueItem.song.id }
+        return ids
+    }
+
+    private fun ArrayList<Long>.reset(ids: LongArray) {
+        clear()
+        ensureCapacity(ids.size)
+        ids.forEach { id -> add(id) }
+    }
+
+    companion object {
+        const val TAG = "QueueStore"
+
+        private const val LOGGING_ENABLED = false
+
+        const val LIST_PLAYLIST = 0
+
+        const val LIST_SHUFFLE = 1
+
+        internal const val SNAPSHOT_FILE_NAME = "queue.bin"
+
+        internal const val JOURNAL_FILE_NAME = "queue.journal"
+
+        private const val SNAPSHOT_MAGIC = 0x53484c51 // "SHLQ"
+
+        private const val JOURNAL_MAGIC = 0x53484c4a // "SHLJ"
+
+        /**
+         * Increment when the snapshot or journal layout changes.
+         */
+        private const val VERSION = 3
+
+        /**
+         * The oldest version we can still read. Version 1 had no seeded shuffle lists, version 2 no library playlists.
+         */
+        private const val MIN_VERSION = 1
+
+        /**
+         * In place of the shuffle list's size: the shuffle list is saved as a [ShuffleOrder].
+         */
+        private const val SHUFFLE_SEEDED = -1
+
+        /**
+         * In place of the playlist's size: the playlist is saved as a [LibrarySignature].
+         */
+        private const val PLAYLIST_LIBRARY = -2
+
+        private const val SNAPSHOT_HEADER_SIZE = 16
+
+        private const val CHECKSUM_SIZE = 4
+
+        private const val OP_INSERT = 1
+
+        private const val OP_REMOVE = 2
+
+        private const val OP_MOVE = 3
+
+        /**
+         * The number of journal records after which the journal is folded into a new snapshot.
+         */
+        private const val MAX_JOURNAL_ENTRIES = 256
+
+        private const val MAX_RECORD_SIZE = 1024 * 1024
+
+        private const val RECORD_SIZE_ESTIMATE = 64
+    }
+}
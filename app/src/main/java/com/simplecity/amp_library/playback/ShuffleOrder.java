@@ -0,0 +1,120 @@
+package com.simplecity.amp_library.playback;
+
+import java.util.Random;
+
+/**
+ * A seeded random permutation of the positions {@code [0, size)}, computed one position at a time.
+ * <p>
+ * {@link #get(int)} is O(1) and the order itself is just (size, first, seed), so a shuffled queue can be described, and
+ * saved, without shuffling or storing an array of positions. The permutation is a small Feistel network over the smallest
+ * even power of two covering the size, 'cycle-walking' any output that falls outside the range until it lands inside it.
+ * <p>
+ * Optionally, one position ({@code first}) is pinned to the front, so the song which is playing when shuffle is turned on
+ * keeps playing.
+ */
+public final class ShuffleOrder {
+
+    private static final int ROUNDS = 4;
+
+    private static final Random seeds = new Random();
+
+    private final int size;
+
+    private final int first;
+
+    private final long seed;
+
+    /**
+     * The number of positions which are permuted (size, less the pinned position if there is one).
+     */
+    private final int count;
+
+    private final int halfBits;
+
+    private final long halfMask;
+
+    /**
+     * @param size  the number of positions
+     * @param first the position to place first, or -1 to shuffle every position
+     * @param seed  the seed, see {@link #newSeed()}
+     */
+    ShuffleOrder(int size, int first, long seed) {
+        if (size < 0 || first < -1 || first >= size) {
+            throw new IllegalArgumentException("Invalid shuffle order, size: " + size + " first: " + first);
+        }
+        this.size = size;
+        this.first = first;
+        this.seed = seed;
+
+        count = first == -1 ? size : size - 1;
+
+        int bits = 2;
+        while ((1L << bits) < count) {
+            bits += 2;
+        }
+        halfBits = bits / 2;
+        halfMask = (1L << halfBits) - 1;
+    }
+
+    static long newSeed() {
+        return seeds.nextLong();
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    int getFirst() {
+        return first;
+    }
+
+    long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return the original position of the item at {@code position} in the shuffled order.
+     */
+    int get(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Position: " + position + " size: " + size);
+        }
+        if (first == -1) {
+            return permute(position);
+        }
+        if (position == 0) {
+            return first;
+        }
+        int index = permute(position - 1);
+        return index < first ? index : index + 1;
+    }
+
+    private int permute(int index) {
+        long value = index;
+        do {
+            value = encrypt(value);
+        } while (value >= count);
+        return (int) value;
+    }
+
+    private long encrypt(long value) {
+        long left = value >>> halfBits;
+        long right = value & halfMask;
+        for (int round = 0; round < ROUNDS; round++) {
+            long next = left ^ (mix(right, round) & halfMask);
+            left = right;
+            right = next;
+        }
+        return (left << halfBits) | right;
+    }
+
+    /**
+     * The round function: a 64-bit finalizer (from SplitMix64) over the seed, round and half-block.
+     */
+    private long mix(long value, int round) {
+        long z = seed + (value + 1) * 0x9E3779B97F4A7C15L + round * 0xD1B54A32D192ED03L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
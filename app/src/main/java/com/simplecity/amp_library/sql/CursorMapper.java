@@ -0,0 +1,88 @@
+package com.simplecity.amp_library.sql;
+
+import android.database.Cursor;
+import android.support.annotation.Nullable;
+import io.reactivex.functions.Function;
+import java.util.HashMap;
+
+/**
+ * A {@link Cursor} mapper which resolves column indexes once per cursor, rather than once per row.
+ * <p>
+ * The resolved columns are bound to the first cursor seen, and re-resolved whenever a different cursor is passed in, so a
+ * single instance can be handed to {@link com.simplecity.amp_library.sql.sqlbrite.SqlBriteUtils} or {@link SqlUtils} and
+ * reused across re-queries. Each binding also carries a {@link StringPool}, used to share repeated strings (artist and album
+ * names, for example) between the rows of a single cursor.
+ *
+ * @param <T> the mapped type
+ * @param <C> the resolved column holder
+ */
+public final class CursorMapper<T, C> implements Function<Cursor, T> {
+
+    public interface ColumnResolver<C> {
+        C resolve(Cursor cursor);
+    }
+
+    public interface RowMapper<T, C> {
+        T map(Cursor cursor, C columns, StringPool strings);
+    }
+
+    private final ColumnResolver<C> resolver;
+    private final RowMapper<T, C> rowMapper;
+
+    /**
+     * Written once per cursor. Readers take a local copy, so concurrent use across cursors never mixes up columns.
+     */
+    private volatile Binding<C> binding;
+
+    public CursorMapper(ColumnResolver<C> resolver, RowMapper<T, C> rowMapper) {
+        this.resolver = resolver;
+        this.rowMapper = rowMapper;
+    }
+
+    @Override
+    public T apply(Cursor cursor) {
+        Binding<C> binding = this.binding;
+        if (binding == null || binding.cursor != cursor) {
+            binding = new Binding<>(cursor, resolver.resolve(cursor));
+            this.binding = binding;
+        }
+        return rowMapper.map(cursor, binding.columns, binding.strings);
+    }
+
+    private static final class Binding<C> {
+        final Cursor cursor;
+        final C columns;
+        final StringPool strings = new StringPool();
+
+        Binding(Cursor cursor, C columns) {
+            this.cursor = cursor;
+            this.columns = columns;
+        }
+    }
+
+    /**
+     * De-duplicates equal strings read from a single cursor. Not thread-safe; each cursor is only read from one thread.
+     */
+    public static final class StringPool {
+
+        private final HashMap<String, String> strings = new HashMap<>();
+
+        @Nullable
+        public String get(Cursor cursor, int columnIndex) {
+            return intern(cursor.getString(columnIndex));
+        }
+
+        @Nullable
+        public String intern(@Nullable String string) {
+            if (string == null) {
+                return null;
+            }
+            String pooled = strings.get(string);
+            if (pooled == null) {
+                strings.put(string, string);
+                pooled = string;
+            }
+            return pooled;
+        }
+    }
+}
@@ -46,25 +46,26 @@ public class SqlUtils {
     }
 
     public static <T> List<T> createQuery(Context context, Function<Cursor, T> mapper, Query query) {
-        List<T> items = new ArrayList<>();
         Cursor cursor = createQuery(context, query);
+        if (cursor == null) {
+            return new ArrayList<>();
+        }
 
-        if (cursor != null) {
-            try {
-                if (cursor.moveToFirst()) {
-                    do {
-                        T item = mapper.apply(cursor);
-                        if (item == null) {
-                            throw new DatabaseException("Mapper returned null for row " + cursor.getPosition());
-                        }
-                        items.add(item);
-                    } while (cursor.moveToNext());
-                }
-            } catch (Exception e) {
-                LogUtils.logException(TAG, "createSingle threw an error", e);
-            } finally {
-                cursor.close();
+        List<T> items = new ArrayList<>(cursor.getCount());
+        try {
+            if (cursor.moveToFirst()) {
+                do {
+                    T item = mapper.apply(cursor);
+                    if (item == null) {
+                        throw new DatabaseException("Mapper returned null for row " + cursor.getPosition());
+                    }
+                    items.add(item);
+                } while (cursor.moveToNext());
             }
+        } catch (Exception e) {
+            LogUtils.logException(TAG, "createSingle threw an error", e);
+        } finally {
+            cursor.close();
         }
         return items;
     }
@@ -6,6 +6,7 @@ import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
 import android.support.annotation.NonNull;
 import android.text.TextUtils;
@@ -24,6 +25,8 @@ public class PlayCountContentProvider extends ContentProvider {
 
     private static final int PLAY_COUNT_ID = 20;
 
+    private static final int PLAYS = 30;
+
     private static final String AUTHORITY = BuildConfig.APPLICATION_ID + ".play_count.contentprovider";
 
     private static final String BASE_PATH = "play_count";
@@ -33,6 +36,7 @@ public class PlayCountContentProvider extends ContentProvider {
     static {
         sURIMatcher.addURI(AUTHORITY, BASE_PATH, PLAY_COUNT);
         sURIMatcher.addURI(AUTHORITY, BASE_PATH + "/#", PLAY_COUNT_ID);
+        sURIMatcher.addURI(AUTHORITY, BASE_PATH + "/plays", PLAYS);
     }
 
     @Override
@@ -98,6 +102,55 @@ public class PlayCountContentProvider extends ContentProvider {
         return Uri.parse(BASE_PATH + "/" + id);
     }
 
+    /**
+     * For {@link PlayCountTable#PLAYS_URI}, adds each row's plays to the song's existing count (creating the row if necessary),
+     * all in one transaction, with a single change notification.
+     */
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        if (sURIMatcher.match(uri) != PLAYS) {
+            return super.bulkInsert(uri, values);
+        }
+
+        SQLiteDatabase sqlDB = database.getWritableDatabase();
+        SQLiteStatement update = sqlDB.compileStatement("UPDATE " + PlayCountTable.TABLE_PLAY_COUNT
+                + " SET " + PlayCountTable.COLUMN_PLAY_COUNT + " = " + PlayCountTable.COLUMN_PLAY_COUNT + " + ?, "
+                + PlayCountTable.COLUMN_TIME_PLAYED + " = ?"
+                + " WHERE " + PlayCountTable.COLUMN_ID + " = ?");
+        SQLiteStatement insert = sqlDB.compileStatement("INSERT INTO " + PlayCountTable.TABLE_PLAY_COUNT
+                + " (" + PlayCountTable.COLUMN_ID + ", " + PlayCountTable.COLUMN_PLAY_COUNT + ", " + PlayCountTable.COLUMN_TIME_PLAYED + ")"
+                + " VALUES (?, ?, ?)");
+
+        sqlDB.beginTransaction();
+        try {
+            for (ContentValues play : values) {
+                long id = play.getAsLong(PlayCountTable.COLUMN_ID);
+                long count = play.getAsLong(PlayCountTable.COLUMN_PLAY_COUNT);
+                long timePlayed = play.getAsLong(PlayCountTable.COLUMN_TIME_PLAYED);
+
+                update.bindLong(1, count);
+                update.bindLong(2, timePlayed);
+                update.bindLong(3, id);
+                if (update.executeUpdateDelete() == 0) {
+                    insert.bindLong(1, id);
+                    insert.bindLong(2, count);
+                    insert.bindLong(3, timePlayed);
+                    insert.executeInsert();
+                }
+            }
+            sqlDB.setTransactionSuccessful();
+        } finally {
+            sqlDB.endTransaction();
+            update.close();
+            insert.close();
+        }
+
+        if (values.length > 0) {
+            getContext().getContentResolver().notifyChange(PlayCountTable.URI, null);
+        }
+        return values.length;
+    }
+
     @Override
     public int delete(@NonNull Uri uri, String selection, String[] selectionArgs) {
         int uriType = sURIMatcher.match(uri);
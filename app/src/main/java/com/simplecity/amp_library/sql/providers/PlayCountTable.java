@@ -32,6 +32,12 @@ public class PlayCountTable extends SQLiteOpenHelper {
 
     public static final Uri URI = Uri.parse("content://" + AUTHORITY + "/" + "play_count");
 
+    /**
+     * Bulk insert plays here to add them to the existing counts, in a single transaction. Each row holds the song id, the number
+     * of plays to add, and the time of the last play.
+     */
+    public static final Uri PLAYS_URI = Uri.parse("content://" + AUTHORITY + "/" + "play_count/plays");
+
     public PlayCountTable(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
 
@@ -0,0 +1,287 @@
+package com.simplecity.amp_library.sql.sqlbrite;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.provider.MediaStore;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+import android.util.Log;
+import com.simplecity.amp_library.BuildConfig;
+import com.simplecity.amp_library.model.Query;
+import com.simplecity.amp_library.model.Song;
+import com.simplecity.amp_library.sql.SqlUtils;
+import com.squareup.sqlbrite2.SqlBrite;
+import io.reactivex.ObservableOperator;
+import io.reactivex.Observer;
+import io.reactivex.exceptions.Exceptions;
+import io.reactivex.functions.Function;
+import io.reactivex.observers.DisposableObserver;
+import io.reactivex.plugins.RxJavaPlugins;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps content provider notifications to a list of {@link Song}s, re-querying only the rows which have changed since the
+ * previous emission.
+ * <p>
+ * The first notification loads every row, and records a {@link MediaStore.Audio.Media#DATE_MODIFIED} and
+ * {@link MediaStore.Audio.Media#_ID} watermark. Subsequent notifications fetch the (cheap, single column) list of current ids
+ * to detect deletions, and then only the rows modified or inserted beyond the watermark. Unchanged {@link Song} instances
+ * are carried over as-is.
+ * <p>
+ * The id list is fetched in the query's sort order, so once a delta has been applied the songs are put back in that order,
+ * just as a full load would return them.
+ */
+final class SongDeltaOperator implements ObservableOperator<List<Song>, SqlBrite.Query> {
+
+    private static final String TAG = "SongDeltaOperator";
+
+    static final boolean LOGGING_ENABLED = false;
+
+    private final Context context;
+    private final Function<Cursor, Song> mapper;
+    private final Query query;
+
+    SongDeltaOperator(Context context, Function<Cursor, Song> mapper, Query query) {
+        this.context = context.getApplicationContext();
+        this.mapper = mapper;
+        this.query = query;
+    }
+
+    @Override
+    public Observer<? super SqlBrite.Query> apply(Observer<? super List<Song>> observer) {
+        return new DeltaObserver(observer, context, mapper, query);
+    }
+
+    static final class DeltaObserver extends DisposableObserver<SqlBrite.Query> {
+        private final Observer<? super List<Song>> downstream;
+        private final Context context;
+        private final Function<Cursor, Song> mapper;
+        private final Query query;
+
+        private final LinkedHashMap<Long, Song> songs = new LinkedHashMap<>();
+        private final Map<Long, Long> dateModified = new HashMap<>();
+
+        private boolean loaded = false;
+        private long dateModifiedWatermark = 0;
+        private long idWatermark = 0;
+
+        DeltaObserver(Observer<? super List<Song>> downstream, Context context, Function<Cursor, Song> mapper, Query query) {
+            this.downstream = downstream;
+            this.context = context;
+            this.mapper = mapper;
+            this.query = query;
+        }
+
+        @Override
+        protected void onStart() {
+            downstream.onSubscribe(this);
+        }
+
+        @Override
+        public void onNext(SqlBrite.Query notification) {
+            try {
+                long time = System.currentTimeMillis();
+
+                boolean changed;
+                if (!loaded) {
+                    loadAll();
+                    changed = true;
+                } else {
+                    changed = loadDelta();
+                }
+
+                if (LOGGING_ENABLED && BuildConfig.DEBUG) {
+                    Log.d(TAG, String.format("%s took %sms, %s songs", loaded ? "Delta" : "Full load", System.currentTimeMillis() - time, songs.size()));
+                }
+
+                loaded = true;
+
+                if (changed && !isDisposed()) {
+                    downstream.onNext(new ArrayList<>(songs.values()));
+                }
+            } catch (Throwable e) {
+                Exceptions.throwIfFatal(e);
+                onError(e);
+            }
+        }
+
+        private void loadAll() throws Exception {
+            songs.clear();
+            dateModified.clear();
+            dateModifiedWatermark = 0;
+            idWatermark = 0;
+            applyRows(rowQuery(query.selection, query.args));
+        }
+
+        /**
+         * @return true if any rows were added, removed or updated
+         */
+        private boolean loadDelta() throws Exception {
+            List<Long> ids = queryIds();
+            if (ids == null) {
+                return false;
+            }
+
+            boolean changed = removeDeletedRows(new HashSet<>(ids));
+
+            String watermarkSelection = MediaStore.Audio.Media.DATE_MODIFIED + ">=? OR " + MediaStore.Audio.Media._ID + ">?";
+            String selection = TextUtils.isEmpty(query.selection)
+                    ? watermarkSelection
+                    : "(" + query.selection + ") AND (" + watermarkSelection + ")";
+            String[] args = appendArgs(query.args, String.valueOf(dateModifiedWatermark), String.valueOf(idWatermark));
+
+            changed = applyRows(rowQuery(selection, args)) || changed;
+            if (changed) {
+                sort(ids);
+            }
+            return changed;
+        }
+
+        /**
+         * @return the ids of every row matching the query, in the query's sort order, or null if the query failed.
+         */
+        @Nullable
+        private List<Long> queryIds() {
+            Query idQuery = new Query.Builder()
+                    .uri(query.uri)
+                    .projection(new String[] { MediaStore.Audio.Media._ID })
+                    .selection(query.selection)
+                    .args(query.args)
+                    .sort(query.sort)
+                    .build();
+
+            Cursor cursor = SqlUtils.createQuery(context, idQuery);
+            if (cursor == null) {
+                return null;
+            }
+
+            List<Long> ids = new ArrayList<>(cursor.getCount());
+            try {
+                while (cursor.moveToNext()) {
+                    ids.add(cursor.getLong(0));
+                }
+            } finally {
+                cursor.close();
+            }
+            return ids;
+        }
+
+        /**
+         * Puts the songs in the order of the passed in ids. Songs which aren't in the list (inserted since it was queried)
+         * go last.
+         */
+        private void sort(List<Long> ids) {
+            LinkedHashMap<Long, Song> sortedSongs = new LinkedHashMap<>(Math.max(16, (int) (songs.size() / 0.75f) + 1));
+            for (Long id : ids) {
+                Song song = songs.get(id);
+                if (song != null) {
+                    sortedSongs.put(id, song);
+                }
+            }
+            if (sortedSongs.size() < songs.size()) {
+                for (Map.Entry<Long, Song> entry : songs.entrySet()) {
+                    if (!sortedSongs.containsKey(entry.getKey())) {
+                        sortedSongs.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+            songs.clear();
+            songs.putAll(sortedSongs);
+        }
+
+        private boolean removeDeletedRows(Set<Long> ids) {
+            boolean changed = false;
+            Iterator<Long> iterator = songs.keySet().iterator();
+            while (iterator.hasNext()) {
+                Long id = iterator.next();
+                if (!ids.contains(id)) {
+                    iterator.remove();
+                    dateModified.remove(id);
+                    changed = true;
+                }
+            }
+            return changed;
+        }
+
+        private Query rowQuery(String selection, String[] args) {
+            List<String> projection = new ArrayList<>(Arrays.asList(query.projection));
+            projection.add(MediaStore.Audio.Media.DATE_MODIFIED);
+
+            return new Query.Builder()
+                    .uri(query.uri)
+                    .projection(projection.toArray(new String[projection.size()]))
+                    .selection(selection)
+                    .args(args)
+                    .sort(query.sort)
+                    .build();
+        }
+
+        /**
+         * Maps each new or modified row to a {@link Song}, replacing any existing entry with the same id, and advances the
+         * watermarks. Rows re-read because they share the watermark's second are skipped if their modification date is unchanged.
+         *
+         * @return true if at least one row was added or replaced
+         */
+        private boolean applyRows(Query rowQuery) throws Exception {
+            Cursor cursor = SqlUtils.createQuery(context, rowQuery);
+            if (cursor == null) {
+                return false;
+            }
+
+            boolean changed = false;
+            try {
+                int dateModifiedIndex = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATE_MODIFIED);
+                int idIndex = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID);
+                while (cursor.moveToNext()) {
+                    long id = cursor.getLong(idIndex);
+                    long rowDateModified = cursor.getLong(dateModifiedIndex);
+                    Long previousDateModified = dateModified.put(id, rowDateModified);
+                    dateModifiedWatermark = Math.max(dateModifiedWatermark, rowDateModified);
+                    idWatermark = Math.max(idWatermark, id);
+                    if (previousDateModified != null && previousDateModified == rowDateModified && songs.containsKey(id)) {
+                        continue;
+                    }
+                    Song song = mapper.apply(cursor);
+                    songs.put(song.id, song);
+                    changed = true;
+                }
+            } finally {
+                cursor.close();
+            }
+            return changed;
+        }
+
+        private static String[] appendArgs(String[] args, String... extra) {
+            if (args == null) {
+                return extra;
+            }
+            String[] result = Arrays.copyOf(args, args.length + extra.length);
+            System.arraycopy(extra, 0, result, args.length, extra.length);
+            return result;
+        }
+
+        @Override
+        public void onComplete() {
+            if (!isDisposed()) {
+                downstream.onComplete();
+            }
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            if (isDisposed()) {
+                RxJavaPlugins.onError(e);
+            } else {
+                downstream.onError(e);
+            }
+        }
+    }
+}
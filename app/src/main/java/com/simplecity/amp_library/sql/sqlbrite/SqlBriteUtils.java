@@ -5,6 +5,7 @@ import android.database.Cursor;
 import android.util.Log;
 import com.simplecity.amp_library.BuildConfig;
 import com.simplecity.amp_library.model.Query;
+import com.simplecity.amp_library.model.Song;
 import com.squareup.sqlbrite2.BriteContentResolver;
 import com.squareup.sqlbrite2.SqlBrite;
 import io.reactivex.Observable;
@@ -63,6 +64,16 @@ public final class SqlBriteUtils {
                 .lift(new QueryToListOperator<>(mapper));
     }
 
+    /**
+     * Creates an {@link Observable} that emits the full list of {@link Song}s when subscribed, and a patched list when the
+     * content provider notifies of a change. Only rows which were inserted or modified since the previous emission are
+     * re-queried and re-mapped.
+     */
+    public static Observable<List<Song>> createSongDeltaList(@NonNull Context context, @NonNull Function<Cursor, Song> mapper, @NonNull Query query) {
+        return createObservable(context, query)
+                .lift(new SongDeltaOperator(context, mapper, query));
+    }
+
     /**
      * Creates a {@link Single} that emits a list.
      */
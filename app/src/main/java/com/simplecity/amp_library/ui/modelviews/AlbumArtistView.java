@@ -15,7 +15,6 @@ import com.simplecity.amp_library.model.AlbumArtist;
 import com.simplecity.amp_library.ui.adapters.ViewType;
 import com.simplecity.amp_library.utils.PlaceholderProvider;
 import com.simplecity.amp_library.utils.SettingsManager;
-import com.simplecity.amp_library.utils.StringUtils;
 import com.simplecity.amp_library.utils.sorting.SortManager;
 import java.util.Arrays;
 import java.util.List;
@@ -125,7 +124,7 @@ public class AlbumArtistView extends MultiItemView<AlbumArtistView.ViewHolder, A
                         .intoBackground(holder.bottomContainer)
                         .crossfade(true)
                         : null)
-                .diskCacheStrategy(DiskCacheStrategy.ALL)
+                .diskCacheStrategy(DiskCacheStrategy.RESULT)
                 .placeholder(PlaceholderProvider.getInstance(holder.itemView.getContext()).getPlaceHolderDrawable(albumArtist.name, false, settingsManager))
                 .into(holder.imageOne);
 
@@ -165,7 +164,7 @@ public class AlbumArtistView extends MultiItemView<AlbumArtistView.ViewHolder, A
         String string = null;
         switch (sortOrder) {
             case SortManager.ArtistSort.DEFAULT:
-                string = StringUtils.keyFor(albumArtist.name);
+                string = albumArtist.getSortKey();
                 break;
             case SortManager.ArtistSort.NAME:
                 string = albumArtist.name;
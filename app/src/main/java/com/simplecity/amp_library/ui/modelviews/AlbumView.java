@@ -133,7 +133,7 @@ public class AlbumView extends MultiItemView<AlbumView.ViewHolder, Album> implem
                         .intoBackground(holder.bottomContainer)
                         .crossfade(true)
                         : null)
-                .diskCacheStrategy(DiskCacheStrategy.ALL)
+                .diskCacheStrategy(DiskCacheStrategy.RESULT)
                 .placeholder(PlaceholderProvider.getInstance(holder.itemView.getContext()).getPlaceHolderDrawable(album.name, false, settingsManager))
                 .into(holder.imageOne);
 
@@ -176,7 +176,7 @@ public class AlbumView extends MultiItemView<AlbumView.ViewHolder, Album> implem
         boolean requiresSubstring = true;
         switch (sortOrder) {
             case SortManager.AlbumSort.DEFAULT:
-                string = StringUtils.keyFor(album.name);
+                string = album.getSortKey();
                 break;
             case SortManager.AlbumSort.NAME:
                 string = album.name;
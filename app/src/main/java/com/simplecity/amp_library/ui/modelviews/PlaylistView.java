@@ -1,17 +1,22 @@
 package com.simplecity.amp_library.ui.modelviews;
 
 import android.support.annotation.Nullable;
+import android.text.TextUtils;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
+import com.simplecity.amp_library.data.PlaylistSummary;
 import com.simplecity.amp_library.model.Playlist;
 import com.simplecity.amp_library.ui.views.NonScrollImageButton;
+import com.simplecity.amp_library.utils.StringUtils;
 import com.simplecityapps.recycler_adapter.model.BaseViewModel;
 import com.simplecityapps.recycler_adapter.recyclerview.BaseViewHolder;
 
 import static com.simplecity.amp_library.R.id.btn_overflow;
 import static com.simplecity.amp_library.R.id.line_one;
-import static com.simplecity.amp_library.R.layout.list_item_one_line;
+import static com.simplecity.amp_library.R.id.line_three;
+import static com.simplecity.amp_library.R.id.line_two;
+import static com.simplecity.amp_library.R.layout.list_item_two_lines;
 import static com.simplecity.amp_library.R.string.btn_options;
 import static com.simplecity.amp_library.ui.adapters.ViewType.PLAYLIST;
 import static com.simplecity.amp_library.ui.screens.playlist.list.PlaylistListFragment.PlaylistClickListener;
@@ -27,11 +32,18 @@ public class PlaylistView extends BaseViewModel<PlaylistView.ViewHolder> {
 
     public Playlist playlist;
 
+    /**
+     * The playlist's song count & duration, or null if not yet known.
+     */
+    @Nullable
+    public PlaylistSummary summary;
+
     @Nullable
     private OnClickListener listener;
 
-    public PlaylistView(Playlist playlist) {
+    public PlaylistView(Playlist playlist, @Nullable PlaylistSummary summary) {
         this.playlist = playlist;
+        this.summary = summary;
     }
 
     public void setListener(@Nullable OnClickListener listener) {
@@ -45,7 +57,7 @@ public class PlaylistView extends BaseViewModel<PlaylistView.ViewHolder> {
 
     @Override
     public int getLayoutResId() {
-        return list_item_one_line;
+        return list_item_two_lines;
     }
 
     @Override
@@ -53,6 +65,21 @@ public class PlaylistView extends BaseViewModel<PlaylistView.ViewHolder> {
         super.bindView(holder);
 
         holder.lineOne.setText(playlist.name);
+
+        String songsLabel = summary != null ? StringUtils.makeAlbumAndSongsLabel(holder.itemView.getContext(), -1, summary.getSongCount()) : null;
+        if (!TextUtils.isEmpty(songsLabel)) {
+            holder.lineTwo.setText(songsLabel);
+            holder.lineTwo.setVisibility(View.VISIBLE);
+        } else {
+            holder.lineTwo.setVisibility(View.GONE);
+        }
+
+        if (summary != null && !summary.isEmpty()) {
+            holder.lineThree.setText(StringUtils.makeTimeString(holder.itemView.getContext(), summary.getDuration() / 1000));
+            holder.lineThree.setVisibility(View.VISIBLE);
+        } else {
+            holder.lineThree.setVisibility(View.GONE);
+        }
         holder.overflowButton.setContentDescription(holder.itemView.getResources().getString(btn_options, playlist.name));
     }
 
@@ -76,6 +103,8 @@ public class PlaylistView extends BaseViewModel<PlaylistView.ViewHolder> {
     public static class ViewHolder extends BaseViewHolder<PlaylistView> {
 
         public TextView lineOne;
+        public TextView lineTwo;
+        public TextView lineThree;
         public NonScrollImageButton overflowButton;
         public PlaylistClickListener listener;
 
@@ -83,6 +112,8 @@ public class PlaylistView extends BaseViewModel<PlaylistView.ViewHolder> {
             super(itemView);
 
             lineOne = itemView.findViewById(line_one);
+            lineTwo = itemView.findViewById(line_two);
+            lineThree = itemView.findViewById(line_three);
             overflowButton = itemView.findViewById(btn_overflow);
 
             itemView.setOnClickListener(v -> viewModel.onPlaylistClicked(getAdapterPosition()));
@@ -112,6 +143,9 @@ public class PlaylistView extends BaseViewModel<PlaylistView.ViewHolder> {
 
     @Override
     public boolean areContentsEqual(Object other) {
-        return equals(other);
+        if (!equals(other)) return false;
+
+        PlaylistSummary otherSummary = ((PlaylistView) other).summary;
+        return summary != null ? summary.equals(otherSummary) : otherSummary == null;
     }
 }
@@ -47,7 +47,7 @@ public class QueuePagerItemView extends BaseViewModel<QueuePagerItemView.ViewHol
 
         requestManager
                 .load(song)
-                .diskCacheStrategy(DiskCacheStrategy.SOURCE)
+                .diskCacheStrategy(DiskCacheStrategy.RESULT)
                 .error(PlaceholderProvider.getInstance(holder.itemView.getContext()).getPlaceHolderDrawable(song.name, true, settingsManager))
                 .into(holder.imageView);
     }
@@ -20,7 +20,6 @@ import com.simplecity.amp_library.ui.views.NonScrollImageButton;
 import com.simplecity.amp_library.ui.views.PlayCountView;
 import com.simplecity.amp_library.utils.PlaceholderProvider;
 import com.simplecity.amp_library.utils.SettingsManager;
-import com.simplecity.amp_library.utils.StringUtils;
 import com.simplecity.amp_library.utils.sorting.SortManager;
 import com.simplecityapps.recycler_adapter.recyclerview.BaseViewHolder;
 import java.util.Arrays;
@@ -178,7 +177,7 @@ public class SongView extends BaseSelectableViewModel<SongView.ViewHolder> imple
             if (showAlbumArt && settingsManager.showArtworkInQueue()) {
                 holder.artwork.setVisibility(View.VISIBLE);
                 requestManager.load(song)
-                        .diskCacheStrategy(DiskCacheStrategy.ALL)
+                        .diskCacheStrategy(DiskCacheStrategy.RESULT)
                         .placeholder(PlaceholderProvider.getInstance(holder.itemView.getContext()).getPlaceHolderDrawable(song.albumName, false, settingsManager))
                         .into(holder.artwork);
             } else {
@@ -232,7 +231,7 @@ public class SongView extends BaseSelectableViewModel<SongView.ViewHolder> imple
             boolean requiresSubstring = true;
             switch (sortOrder) {
                 case SortManager.SongSort.DEFAULT:
-                    string = StringUtils.keyFor(song.name);
+                    string = song.getSortKey();
                     break;
                 case SortManager.SongSort.NAME:
                     string = song.name;
@@ -247,10 +246,10 @@ public class SongView extends BaseSelectableViewModel<SongView.ViewHolder> imple
                     requiresSubstring = false;
                     break;
                 case SortManager.SongSort.ALBUM_NAME:
-                    string = StringUtils.keyFor(song.albumName);
+                    string = song.getAlbumSortKey();
                     break;
                 case SortManager.SongSort.ARTIST_NAME:
-                    string = StringUtils.keyFor(song.artistName);
+                    string = song.getArtistSortKey();
                     break;
             }
 
@@ -76,7 +76,7 @@ public class SuggestedSongView extends MultiItemView<SuggestedSongView.ViewHolde
         }
 
         requestManager.load(song)
-                .diskCacheStrategy(DiskCacheStrategy.ALL)
+                .diskCacheStrategy(DiskCacheStrategy.RESULT)
                 .placeholder(PlaceholderProvider.getInstance(holder.imageOne.getContext()).getPlaceHolderDrawable(song.albumName, false, settingsManager))
                 .into(holder.imageOne);
 
@@ -280,7 +280,7 @@ class AlbumDetailFragment :
             // the same dimensions as the ImageView that the transition starts with.
             // So we'll set it to screen width (plus a little extra, which might fix an issue on some devices..)
             .override(width, height)
-            .diskCacheStrategy(DiskCacheStrategy.SOURCE)
+            .diskCacheStrategy(DiskCacheStrategy.RESULT)
             .priority(Priority.HIGH)
             .placeholder(PlaceholderProvider.getInstance(context).getPlaceHolderDrawable(album.name, true, settingsManager))
             .centerCrop()
@@ -217,13 +217,13 @@ class DrawerFragment : BaseFragment(), DrawerView, View.OnCreateContextMenuListe
             placeholder_text.setText(R.string.app_name)
 
             requestManager.load(song)
-                .diskCacheStrategy(DiskCacheStrategy.ALL)
+                .diskCacheStrategy(DiskCacheStrategy.RESULT)
                 .centerCrop()
                 .error(backgroundPlaceholder)
                 .into(background_image)
 
             requestManager.load<AlbumArtist>(song.albumArtist)
-                .diskCacheStrategy(DiskCacheStrategy.ALL)
+                .diskCacheStrategy(DiskCacheStrategy.RESULT)
                 .placeholder(PlaceholderProvider.getInstance(context).mediumPlaceHolderResId)
                 .into(artist_image)
 
@@ -316,7 +316,7 @@ class GenreDetailFragment :
             // the same dimensions as the ImageView that the transition starts with.
             // So we'll set it to screen width (plus a little extra, which might fix an issue on some devices..)
             .override(width, height)
-            .diskCacheStrategy(DiskCacheStrategy.SOURCE)
+            .diskCacheStrategy(DiskCacheStrategy.RESULT)
             .priority(Priority.HIGH)
             .placeholder(PlaceholderProvider.getInstance(context).getPlaceHolderDrawable(genre.name, true, settingsManager))
             .centerCrop()
@@ -565,7 +565,7 @@ class GenreDetailFragment :
     override fun fadeInSlideShowAlbum(previousAlbum: Album?, newAlbum: Album) {
         //This crazy business is what's required to have a smooth Glide crossfade with no 'white flicker'
         requestManager.load(newAlbum)
-            .diskCacheStrategy(DiskCacheStrategy.SOURCE)
+            .diskCacheStrategy(DiskCacheStrategy.RESULT)
             .priority(Priority.HIGH)
             .error(PlaceholderProvider.getInstance(context).getPlaceHolderDrawable(newAlbum.name, true, settingsManager))
             .centerCrop()
@@ -39,6 +39,7 @@ import com.simplecity.amp_library.ui.screens.nowplaying.PlayerFragmentModule;
 import com.simplecity.amp_library.ui.screens.playlist.detail.PlaylistDetailFragment;
 import com.simplecity.amp_library.ui.screens.playlist.detail.PlaylistDetailFragmentModule;
 import com.simplecity.amp_library.ui.screens.playlist.dialog.CreatePlaylistDialog;
+import com.simplecity.amp_library.ui.screens.playlist.dialog.CreateSmartPlaylistDialog;
 import com.simplecity.amp_library.ui.screens.playlist.dialog.DeletePlaylistConfirmationDialog;
 import com.simplecity.amp_library.ui.screens.playlist.dialog.M3uPlaylistDialog;
 import com.simplecity.amp_library.ui.screens.playlist.list.PlaylistListFragment;
@@ -169,6 +170,10 @@ public abstract class MainActivityModule {
     @ContributesAndroidInjector(modules = DialogFragmentModule.class)
     abstract CreatePlaylistDialog createPlaylistdialogInjector();
 
+    @FragmentScope
+    @ContributesAndroidInjector(modules = DialogFragmentModule.class)
+    abstract CreateSmartPlaylistDialog createSmartPlaylistDialogInjector();
+
     @FragmentScope
     @ContributesAndroidInjector(modules = DialogFragmentModule.class)
     abstract DeletePlaylistConfirmationDialog deletePlaylistConfirmationDialogInjector();
@@ -235,7 +235,7 @@ public class MiniPlayerFragment extends BaseFragment {
             Glide.with(getContext())
                     .load(song)
                     .priority(Priority.HIGH)
-                    .diskCacheStrategy(DiskCacheStrategy.ALL)
+                    .diskCacheStrategy(DiskCacheStrategy.RESULT)
                     .placeholder(PlaceholderProvider.getInstance(getContext()).getPlaceHolderDrawable(song.name, false, settingsManager))
                     .into(miniArtwork);
 
@@ -481,7 +481,7 @@ public class PlayerFragment extends BaseFragment implements
 
             target = Glide.with(this)
                     .load(song)
-                    .diskCacheStrategy(DiskCacheStrategy.SOURCE)
+                    .diskCacheStrategy(DiskCacheStrategy.RESULT)
                     .bitmapTransform(new BlurTransformation(getContext(), 15, 4))
                     .error(PlaceholderProvider.getInstance(getContext()).getPlaceHolderDrawable(song.name, true, settingsManager))
                     .thumbnail(Glide
@@ -510,7 +510,7 @@ public class PlayerFragment extends BaseFragment implements
                     .transcode(new ColorSetTranscoder(getContext()), ColorSet.class)
                     .override(250, 250)
                     .priority(Priority.HIGH)
-                    .diskCacheStrategy(DiskCacheStrategy.ALL)
+                    .diskCacheStrategy(DiskCacheStrategy.RESULT)
                     .into(paletteTarget);
         }
     }
@@ -60,35 +60,13 @@ class PlaylistDetailPresenter @AssistedInject constructor(
         songsMenuPresenter.unbindView(view)
     }
 
-    private fun sortSongs(songs: MutableList<Song>) {
-        @SortManager.SongSort val songSort = sortManager.getPlaylistDetailSongsSortOrder(playlist)
-
-        val songsAscending = sortManager.getPlaylistDetailSongsAscending(playlist)
-
-        sortManager.sortSongs(songs, songSort)
-        if (!songsAscending) {
-            songs.reverse()
-        }
-
-        if (songSort == SortManager.SongSort.DETAIL_DEFAULT) {
-            when {
-                playlist.type == Playlist.Type.MOST_PLAYED -> songs.sortWith(kotlin.Comparator { a, b -> ComparisonUtils.compareInt(b.playCount, a.playCount) })
-                playlist.type == Playlist.Type.RECENTLY_ADDED -> songs.sortWith(kotlin.Comparator { a, b -> ComparisonUtils.compareInt(b.dateAdded, a.dateAdded) })
-                playlist.type == Playlist.Type.RECENTLY_PLAYED -> songs.sortWith(kotlin.Comparator { a, b -> ComparisonUtils.compareLong(b.lastPlayed, a.lastPlayed) })
-            }
-            if (playlist.canEdit) {
-                songs.sortWith(kotlin.Comparator { a, b -> ComparisonUtils.compareLong(a.playlistSongPlayOrder, b.playlistSongPlayOrder) })
-            }
-        }
-    }
-
     fun loadData() {
         PermissionUtils.RequestStoragePermissions {
             addDisposable(
                 songsRepository.getSongs(playlist)
                     .map { it.toMutableList() }
                     .observeOn(AndroidSchedulers.mainThread())
-                    .doOnNext { songs -> sortSongs(songs) }
+                    .doOnNext { songs -> sortSongs(songs, playlist, sortManager) }
                     .subscribe({ songs ->
                         this.songs = songs
                         view?.setData(songs)
@@ -149,5 +127,37 @@ class PlaylistDetailPresenter @AssistedInject constructor(
 
     companion object {
         const val TAG = "PlaylistDetailPresenter"
+
+        /**
+         * Sorts the songs of [playlist] in place, in its detail sort order. By default, a playlist with an order of its own
+         * (play count, date added, playlist position, or a smart playlist's rule) keeps it.
+         */
+        @JvmStatic
+        fun sortSongs(songs: MutableList<Song>, playlist: Playlist, sortManager: SortManager) {
+            @SortManager.SongSort val songSort = sortManager.getPlaylistDetailSongsSortOrder(playlist)
+
+            if (songSort == SortManager.SongSort.DETAIL_DEFAULT && playlist.type == Playlist.Type.SMART) {
+                // Already in the order (& limited to the songs) the rule asks for
+                return
+            }
+
+            val songsAscending = sortManager.getPlaylistDetailSongsAscending(playlist)
+
+            sortManager.sortSongs(songs, songSort)
+            if (!songsAscending) {
+                songs.reverse()
+            }
+
+            if (songSort == SortManager.SongSort.DETAIL_DEFAULT) {
+                when {
+                    playlist.type == Playlist.Type.MOST_PLAYED -> songs.sortWith(kotlin.Comparator { a, b -> ComparisonUtils.compareInt(b.playCount, a.playCount) })
+                    playlist.type == Playlist.Type.RECENTLY_ADDED -> songs.sortWith(kotlin.Comparator { a, b -> ComparisonUtils.compareInt(b.dateAdded, a.dateAdded) })
+                    playlist.type == Playlist.Type.RECENTLY_PLAYED -> songs.sortWith(kotlin.Comparator { a, b -> ComparisonUtils.compareLong(b.lastPlayed, a.lastPlayed) })
+                }
+                if (playlist.canEdit) {
+                    songs.sortWith(kotlin.Comparator { a, b -> ComparisonUtils.compareLong(a.playlistSongPlayOrder, b.playlistSongPlayOrder) })
+                }
+            }
+        }
     }
 }
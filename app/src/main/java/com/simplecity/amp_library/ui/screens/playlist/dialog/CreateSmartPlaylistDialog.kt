@@ -0,0 +1,113 @@
+package com.simplecity.amp_library.ui.screens.playlist.dialog
+
+import android.annotation.SuppressLint
+import android.app.Dialog
+import android.content.Context
+import android.os.Bundle
+import android.support.v4.app.DialogFragment
+import android.support.v4.app.FragmentManager
+import android.text.Editable
+import android.text.TextWatcher
+import android.view.LayoutInflater
+import android.widget.EditText
+import android.widget.Toast
+import com.afollestad.materialdialogs.DialogAction
+import com.afollestad.materialdialogs.MaterialDialog
+import com.simplecity.amp_library.R
+import com.simplecity.amp_library.data.SmartPlaylistRule
+import com.simplecity.amp_library.data.SmartPlaylistStore
+import com.simplecity.amp_library.utils.LogUtils
+import dagger.android.support.AndroidSupportInjection
+import io.reactivex.Completable
+import io.reactivex.android.schedulers.AndroidSchedulers
+import io.reactivex.schedulers.Schedulers
+import javax.inject.Inject
+
+/**
+ * Creates a smart playlist from a name and the text of a [SmartPlaylistRule]. The rule is parsed as it's typed, and
+ * can't be saved until it's valid.
+ */
+class CreateSmartPlaylistDialog : DialogFragment() {
+
+    @Inject lateinit var smartPlaylistStore: SmartPlaylistStore
+
+    override fun onAttach(context: Context?) {
+        AndroidSupportInjection.inject(this)
+        super.onAttach(context)
+    }
+
+    override fun onCreateDialog(savedInstanceState: Bundle?): Dialog {
+
+        @SuppressLint("InflateParams")
+        val customView = LayoutInflater.from(context).inflate(R.layout.dialog_smart_playlist, null)
+        val nameEditText = customView.findViewById<EditText>(R.id.nameEditText)
+        val ruleEditText = customView.findViewById<EditText>(R.id.ruleEditText)
+
+        val applicationContext = context!!.applicationContext
+
+        val dialog = MaterialDialog.Builder(context!!)
+            .title(R.string.new_smart_playlist)
+            .customView(customView, false)
+            .positiveText(R.string.create_playlist_create_text)
+            .onPositive { materialDialog, dialogAction ->
+                val name = nameEditText.text.toString().trim()
+                val rule = ruleEditText.text.toString().trim()
+                Completable.fromAction { smartPlaylistStore.add(name, rule) }
+                    .subscribeOn(Schedulers.io())
+                    .observeOn(AndroidSchedulers.mainThread())
+                    .subscribe(
+                        { },
+                        { error ->
+                            LogUtils.logException(TAG, "Failed to create smart playlist", error)
+                            Toast.makeText(applicationContext, R.string.dialog_create_playlist_error, Toast.LENGTH_LONG).show()
+                        }
+                    )
+            }
+            .negativeText(R.string.cancel)
+            .build()
+
+        val textWatcher = object : TextWatcher {
+            override fun beforeTextChanged(s: CharSequence, start: Int, count: Int, after: Int) {}
+
+            override fun onTextChanged(s: CharSequence, start: Int, before: Int, count: Int) {
+                val isRuleValid = isValid(ruleEditText.text.toString())
+                ruleEditText.error = if (isRuleValid || ruleEditText.text.isBlank()) null else getString(R.string.smart_playlist_invalid_rule)
+                dialog.getActionButton(DialogAction.POSITIVE)?.isEnabled = nameEditText.text.isNotBlank() && isRuleValid
+            }
+
+            override fun afterTextChanged(s: Editable) {}
+        }
+
+        nameEditText.addTextChangedListener(textWatcher)
+        ruleEditText.addTextChangedListener(textWatcher)
+
+        dialog.setOnShowListener { dialog.getActionButton(DialogAction.POSITIVE)?.isEnabled = false }
+
+        return dialog
+    }
+
+    private fun isValid(rule: String): Boolean {
+        if (rule.isBlank()) {
+            return false
+        }
+        return try {
+            SmartPlaylistRule.parse(rule.trim())
+            true
+        } catch (e: IllegalArgumentException) {
+            false
+        }
+    }
+
+    fun show(fragmentManager: FragmentManager) {
+        show(fragmentManager, TAG)
+    }
+
+    companion object {
+
+        private const val TAG = "CreateSmartPlaylistDialog"
+
+        fun newInstance(): CreateSmartPlaylistDialog {
+            return CreateSmartPlaylistDialog()
+        }
+    }
+}
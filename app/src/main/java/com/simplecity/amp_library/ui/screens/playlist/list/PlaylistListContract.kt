@@ -1,5 +1,6 @@
 package com.simplecity.amp_library.ui.screens.playlist.list
 
+import com.simplecity.amp_library.data.PlaylistSummary
 import com.simplecity.amp_library.model.Playlist
 import com.simplecity.amp_library.ui.screens.playlist.menu.PlaylistMenuContract
 
@@ -7,7 +8,7 @@ interface PlaylistListContract {
 
     interface View : PlaylistMenuContract.View {
 
-        fun setData(playlists: List<Playlist>)
+        fun setData(playlists: List<Playlist>, summaries: Map<Long, PlaylistSummary>)
     }
 
     interface Presenter {
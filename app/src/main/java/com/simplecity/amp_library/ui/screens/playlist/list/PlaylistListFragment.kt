@@ -6,15 +6,20 @@ import android.support.v7.widget.LinearLayoutManager
 import android.support.v7.widget.PopupMenu
 import android.support.v7.widget.RecyclerView
 import android.view.LayoutInflater
+import android.view.Menu
+import android.view.MenuInflater
+import android.view.MenuItem
 import android.view.View
 import android.view.ViewGroup
 import android.widget.Toast
 import com.simplecity.amp_library.R
+import com.simplecity.amp_library.data.PlaylistSummary
 import com.simplecity.amp_library.data.Repository
 import com.simplecity.amp_library.model.Playlist
 import com.simplecity.amp_library.ui.common.BaseFragment
 import com.simplecity.amp_library.ui.dialog.WeekSelectorDialog
 import com.simplecity.amp_library.ui.modelviews.PlaylistView
+import com.simplecity.amp_library.ui.screens.playlist.dialog.CreateSmartPlaylistDialog
 import com.simplecity.amp_library.ui.screens.playlist.dialog.DeletePlaylistConfirmationDialog
 import com.simplecity.amp_library.ui.screens.playlist.dialog.M3uPlaylistDialog
 import com.simplecity.amp_library.ui.screens.playlist.dialog.RenamePlaylistDialog
@@ -64,6 +69,8 @@ class PlaylistListFragment :
         super.onCreate(savedInstanceState)
 
         adapter = ViewModelAdapter()
+
+        setHasOptionsMenu(true)
     }
 
     override fun onCreateView(inflater: LayoutInflater, container: ViewGroup?, savedInstanceState: Bundle?): View? {
@@ -105,6 +112,22 @@ class PlaylistListFragment :
         playlistClickListener = null
     }
 
+    override fun onCreateOptionsMenu(menu: Menu?, inflater: MenuInflater?) {
+        super.onCreateOptionsMenu(menu, inflater)
+
+        inflater!!.inflate(R.menu.menu_playlists, menu)
+    }
+
+    override fun onOptionsItemSelected(item: MenuItem?): Boolean {
+        when (item!!.itemId) {
+            R.id.new_smart_playlist -> {
+                CreateSmartPlaylistDialog.newInstance().show(childFragmentManager)
+                return true
+            }
+        }
+        return super.onOptionsItemSelected(item)
+    }
+
 
     // PlaylistView.PlaylistClickListener Implementation
 
@@ -122,9 +145,9 @@ class PlaylistListFragment :
 
     // PlaylistListContract.View Implementation
 
-    override fun setData(playlists: List<Playlist>) {
+    override fun setData(playlists: List<Playlist>, summaries: Map<Long, PlaylistSummary>) {
         adapter.setItems(playlists.map { playlist ->
-            PlaylistView(playlist).apply { setListener(this@PlaylistListFragment) } as com.simplecityapps.recycler_adapter.model.ViewModel<*>
+            PlaylistView(playlist, summaries[playlist.id]).apply { setListener(this@PlaylistListFragment) } as com.simplecityapps.recycler_adapter.model.ViewModel<*>
         })
     }
 
@@ -1,13 +1,17 @@
 package com.simplecity.amp_library.ui.screens.playlist.list
 
+import com.simplecity.amp_library.data.PlaylistSummary
 import com.simplecity.amp_library.data.Repository.PlaylistsRepository
 import com.simplecity.amp_library.data.Repository.SongsRepository
 import com.simplecity.amp_library.ui.common.Presenter
 import com.simplecity.amp_library.ui.screens.playlist.list.PlaylistListContract.View
 import com.simplecity.amp_library.ui.screens.playlist.menu.PlaylistMenuPresenter
 import com.simplecity.amp_library.utils.LogUtils
+import com.simplecity.amp_library.model.Playlist
 import com.simplecity.amp_library.utils.menu.playlist.PlaylistMenuCallbacks
+import io.reactivex.Observable
 import io.reactivex.android.schedulers.AndroidSchedulers
+import io.reactivex.functions.BiFunction
 import javax.inject.Inject
 
 class PlaylistListPresenter @Inject constructor(
@@ -32,16 +36,25 @@ class PlaylistListPresenter @Inject constructor(
     }
 
     override fun loadData() {
-        addDisposable(playlistsRepository.getAllPlaylists(songsRepository)
+        val playlistsObservable = playlistsRepository.getAllPlaylists(songsRepository)
             .map { playlists ->
                 playlists.apply {
                     sortBy { playlist -> playlist.name }
                     sortBy { playlist -> playlist.type }
                 }
             }
+
+        // The playlists are shown straight away, and their song counts & durations filled in once known
+        val summariesObservable = playlistsRepository.getPlaylistSummaries(songsRepository)
+            .startWith(emptyMap<Long, PlaylistSummary>())
+
+        addDisposable(Observable.combineLatest(
+            playlistsObservable,
+            summariesObservable,
+            BiFunction { playlists: List<Playlist>, summaries: Map<Long, PlaylistSummary> -> Pair(playlists, summaries) })
             .observeOn(AndroidSchedulers.mainThread())
             .subscribe(
-                { playlists -> view?.setData(playlists) },
+                { (playlists, summaries) -> view?.setData(playlists, summaries) },
                 { error -> LogUtils.logException(TAG, "Failed to load data", error) }
             )
         )
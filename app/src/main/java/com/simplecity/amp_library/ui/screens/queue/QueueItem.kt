@@ -3,9 +3,15 @@ package com.simplecity.amp_library.ui.screens.queue
 import android.support.v4.media.MediaDescriptionCompat
 import android.support.v4.media.session.MediaSessionCompat
 import com.simplecity.amp_library.model.Song
+import java.util.concurrent.atomic.AtomicLong
 
 class QueueItem(var song: Song, var occurrence: Int) {
 
+    /**
+     * Unique for the lifetime of the process, and stable across edits to the queue. Not part of equality.
+     */
+    val id: Long = nextId.getAndIncrement()
+
     override fun equals(other: Any?): Boolean {
         if (this === other) return true
         if (javaClass != other?.javaClass) return false
@@ -23,6 +29,10 @@ class QueueItem(var song: Song, var occurrence: Int) {
         result = 31 * result + occurrence
         return result
     }
+
+    companion object {
+        private val nextId = AtomicLong()
+    }
 }
 
 fun List<Song>.toQueueItems(): List<QueueItem> {
@@ -51,7 +61,7 @@ fun QueueItem.toMediaSessionQueueItem(): MediaSessionCompat.QueueItem {
         .setTitle(song.name)
         .setSubtitle(song.artistName)
         .build()
-    return MediaSessionCompat.QueueItem(mediaDescription, hashCode().toLong())
+    return MediaSessionCompat.QueueItem(mediaDescription, id)
 }
 
 fun List<QueueItem>.toMediaSessionQueueItems(): List<MediaSessionCompat.QueueItem> {
@@ -19,7 +19,6 @@ import com.simplecity.amp_library.ui.modelviews.SectionedView
 import com.simplecity.amp_library.ui.views.NonScrollImageButton
 import com.simplecity.amp_library.utils.PlaceholderProvider
 import com.simplecity.amp_library.utils.SettingsManager
-import com.simplecity.amp_library.utils.StringUtils
 import com.simplecity.amp_library.utils.sorting.SortManager
 import com.simplecityapps.recycler_adapter.recyclerview.BaseViewHolder
 
@@ -97,7 +96,7 @@ class QueueViewBinder(
             if (showAlbumArt && settingsManager.showArtworkInQueue()) {
                 artwork.visibility = View.VISIBLE
                 requestManager.load<Song>(queueItem.song)
-                    .diskCacheStrategy(DiskCacheStrategy.ALL)
+                    .diskCacheStrategy(DiskCacheStrategy.RESULT)
                     .placeholder(PlaceholderProvider.getInstance(holder.itemView.context).getPlaceHolderDrawable(queueItem.song.albumName, false, settingsManager))
                     .into(artwork)
             } else {
@@ -129,7 +128,7 @@ class QueueViewBinder(
             var string = ""
             var requiresSubstring = true
             when (sortOrder) {
-                SortManager.SongSort.DEFAULT -> string = StringUtils.keyFor(queueItem.song.name)
+                SortManager.SongSort.DEFAULT -> string = queueItem.song.sortKey
                 SortManager.SongSort.NAME -> string = queueItem.song.name
                 SortManager.SongSort.YEAR -> {
                     string = queueItem.song.year.toString()
@@ -140,8 +139,8 @@ class QueueViewBinder(
                     }
                     requiresSubstring = false
                 }
-                SortManager.SongSort.ALBUM_NAME -> string = StringUtils.keyFor(queueItem.song.albumName)
-                SortManager.SongSort.ARTIST_NAME -> string = StringUtils.keyFor(queueItem.song.artistName)
+                SortManager.SongSort.ALBUM_NAME -> string = queueItem.song.albumSortKey
+                SortManager.SongSort.ARTIST_NAME -> string = queueItem.song.artistSortKey
             }
 
             if (requiresSubstring) {
@@ -137,7 +137,7 @@ public class QueuePagerFragment extends BaseFragment implements
             public GenericRequestBuilder getPreloadRequestBuilder(QueuePagerItemView item) {
                 return requestManager
                         .load(item.song)
-                        .diskCacheStrategy(DiskCacheStrategy.SOURCE)
+                        .diskCacheStrategy(DiskCacheStrategy.RESULT)
                         .error(PlaceholderProvider.getInstance(getContext()).getPlaceHolderDrawable(item.song.name, true, settingsManager));
             }
         }, (item, adapterPosition, perItemPosition) -> imageSize, 3));
@@ -45,13 +45,11 @@ import com.simplecity.amp_library.utils.sorting.SortManager
 import com.simplecityapps.recycler_adapter.adapter.CompletionListUpdateCallbackAdapter
 import com.simplecityapps.recycler_adapter.adapter.ViewModelAdapter
 import com.simplecityapps.recycler_adapter.model.ViewModel
-import io.reactivex.BackpressureStrategy
 import io.reactivex.Single
 import io.reactivex.disposables.CompositeDisposable
 import io.reactivex.disposables.Disposable
 import kotlinx.android.synthetic.main.fragment_search.*
 import java.util.*
-import java.util.concurrent.TimeUnit
 import javax.inject.Inject
 import kotlinx.android.synthetic.main.fragment_search.contextualToolbar as ctxToolbar
 
@@ -173,8 +171,6 @@ class SearchFragment :
 
         disposables.add(RxSearchView.queryTextChangeEvents(searchView)
                 .skip(1)
-                .debounce(200, TimeUnit.MILLISECONDS)
-                .toFlowable(BackpressureStrategy.LATEST)
                 .subscribe { searchViewQueryTextEvent ->
                     query = searchViewQueryTextEvent.queryText().toString()
                     presenter.queryChanged(query)
@@ -249,6 +245,8 @@ class SearchFragment :
         }
 
         analyticsManager!!.dropBreadcrumb(TAG, "setData..")
+        // Results arrive progressively, so a newer set may replace one which is still being diffed
+        setDataDisposable?.dispose()
         setDataDisposable = adapter.setItems(viewModels, object : CompletionListUpdateCallbackAdapter() {
             override fun onComplete() {
                 super.onComplete()
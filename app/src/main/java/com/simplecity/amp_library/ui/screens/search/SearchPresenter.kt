@@ -1,7 +1,9 @@
 package com.simplecity.amp_library.ui.screens.search
 
 import android.text.TextUtils
-import com.simplecity.amp_library.data.Repository
+import com.jakewharton.rxrelay2.PublishRelay
+import com.simplecity.amp_library.data.LibrarySearchIndex
+import com.simplecity.amp_library.data.SearchIndex
 import com.simplecity.amp_library.model.Album
 import com.simplecity.amp_library.model.AlbumArtist
 import com.simplecity.amp_library.model.Song
@@ -17,23 +19,18 @@ import com.simplecity.amp_library.ui.screens.songs.menu.SongMenuContract
 import com.simplecity.amp_library.ui.screens.songs.menu.SongMenuPresenter
 import com.simplecity.amp_library.utils.LogUtils
 import com.simplecity.amp_library.utils.SettingsManager
-import com.simplecity.amp_library.utils.StringUtils
+import com.simplecity.amp_library.utils.sorting.Comparators
+import io.reactivex.Observable
 import io.reactivex.Single
-import io.reactivex.SingleObserver
-import io.reactivex.SingleOperator
 import io.reactivex.android.schedulers.AndroidSchedulers
-import io.reactivex.disposables.Disposable
-import io.reactivex.functions.Function3
 import io.reactivex.schedulers.Schedulers
-import java.util.*
+import java.util.concurrent.TimeUnit
 import javax.inject.Inject
 
 class SearchPresenter @Inject
 constructor(
         private val mediaManager: MediaManager,
-        private val songsRepository: Repository.SongsRepository,
-        private val albumsRepository: Repository.AlbumsRepository,
-        private val albumArtistsRepository: Repository.AlbumArtistsRepository,
+        private val librarySearchIndex: LibrarySearchIndex,
         private val settingsManager: SettingsManager,
         private val songMenuPresenter: SongMenuPresenter,
         private val albumMenuPresenter: AlbumMenuPresenter,
@@ -44,7 +41,18 @@ constructor(
         AlbumMenuContract.Presenter by albumMenuPresenter,
         AlbumArtistMenuContract.Presenter by albumArtistsMenuPresenter {
 
-    private var performSearchSubscription: Disposable? = null
+    private val queryRelay = PublishRelay.create<String>()
+
+    /**
+     * Queries to search immediately, bypassing the debounce (after a filter setting changes, for example).
+     */
+    private val refreshRelay = PublishRelay.create<String>()
+
+    private val songSearch = IncrementalSearch(Comparators.SONG_DEFAULT, false)
+
+    private val albumSearch = IncrementalSearch(Comparators.ALBUM_DEFAULT, false)
+
+    private val albumArtistSearch = IncrementalSearch(Comparators.ARTIST_DEFAULT, true)
 
     private var query: String? = null
 
@@ -58,6 +66,23 @@ constructor(
         view.setFilterFuzzyChecked(settingsManager.searchFuzzy)
         view.setFilterArtistsChecked(settingsManager.searchArtists)
         view.setFilterAlbumsChecked(settingsManager.searchAlbums)
+
+        addDisposable(
+                Observable.merge(
+                        queryRelay.debounce<Long> { query -> if (query.isEmpty()) Observable.empty<Long>() else Observable.timer(SEARCH_DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS) },
+                        refreshRelay
+                )
+                        .observeOn(AndroidSchedulers.mainThread())
+                        // switchMap disposes the in-flight search as soon as a newer query arrives
+                        .switchMap { query ->
+                            this.view?.setLoading(true)
+                            search(query)
+                                    .doOnError { error -> LogUtils.logException(TAG, "Error refreshing adapter", error) }
+                                    .onErrorResumeNext(Observable.empty<SearchResult>())
+                                    .observeOn(AndroidSchedulers.mainThread())
+                        }
+                        .subscribe { searchResult -> this.view?.setData(searchResult) }
+        )
     }
 
     override fun unbindView(view: SearchView) {
@@ -65,6 +90,9 @@ constructor(
         songMenuPresenter.unbindView(view)
         albumMenuPresenter.unbindView(view)
         albumArtistsMenuPresenter.unbindView(view)
+
+        // Any in-flight search was disposed along with the view, so search again when the next view is bound.
+        query = null
     }
 
     fun queryChanged(query: String?) {
@@ -78,66 +106,56 @@ constructor(
             return
         }
 
-        loadData(query!!)
-
         this.query = query
-    }
-
-    private fun loadData(query: String) {
 
-        val searchView = view
-
-        if (searchView != null) {
-
-            searchView.setLoading(true)
-
-            //We've received a new refresh call. Unsubscribe the in-flight subscription if it exists.
-            if (performSearchSubscription != null) {
-                performSearchSubscription!!.dispose()
-            }
+        queryRelay.accept(query!!)
+    }
 
-            val albumArtistsObservable = if (settingsManager.searchArtists)
-                albumArtistsRepository.getAlbumArtists()
-                        .first(emptyList())
-                        .lift(AlbumArtistFilterOperator(query))
-            else
-                Single.just(emptyList())
-
-            val albumsObservable = if (settingsManager.searchAlbums)
-                albumsRepository.getAlbums()
-                        .first(emptyList())
-                        .lift(AlbumFilterOperator(query))
-            else
-                Single.just(emptyList())
-
-            val songsObservable = songsRepository.getSongs(null as Function1<Song, Boolean>?)
-                    .first(emptyList())
-                    .lift(SongFilterOperator(query))
-
-            performSearchSubscription = Single.zip<List<AlbumArtist>, List<Album>, List<Song>, SearchResult>(albumArtistsObservable, albumsObservable, songsObservable, Function3 { albumArtists: List<AlbumArtist>, albums: List<Album>, songs: List<Song> -> SearchResult(albumArtists, albums, songs) })
-                    .observeOn(AndroidSchedulers.mainThread())
-                    .subscribe(
-                            { searchView.setData(it) },
-                            { error -> LogUtils.logException(TAG, "Error refreshing adapter", error) }
-                    )
-
-            addDisposable(performSearchSubscription!!)
-        }
+    /**
+     * Searches songs, then albums, then album artists, emitting a [SearchResult] as each completes so that song results
+     * are shown without waiting on the rest.
+     */
+    private fun search(query: String): Observable<SearchResult> {
+        val fuzzy = settingsManager.searchFuzzy
+        val searchAlbums = settingsManager.searchAlbums
+        val searchArtists = settingsManager.searchArtists
+
+        return librarySearchIndex.getIndex()
+                .firstOrError()
+                .flatMapObservable { index ->
+                    Observable.create<SearchResult> { emitter ->
+                        var result = SearchResult(emptyList(), emptyList(), songSearch.search(index.songs, query, fuzzy))
+                        emitter.onNext(result)
+
+                        if (searchAlbums && !emitter.isDisposed) {
+                            result = SearchResult(result.albumArtists, albumSearch.search(index.albums, query, fuzzy), result.songs)
+                            emitter.onNext(result)
+                        }
+
+                        if (searchArtists && !emitter.isDisposed) {
+                            result = SearchResult(albumArtistSearch.search(index.albumArtists, query, fuzzy), result.albums, result.songs)
+                            emitter.onNext(result)
+                        }
+
+                        emitter.onComplete()
+                    }
+                }
+                .subscribeOn(Schedulers.io())
     }
 
     fun setSearchFuzzy(searchFuzzy: Boolean) {
         settingsManager.searchFuzzy = searchFuzzy
-        loadData(query!!)
+        refreshRelay.accept(query ?: "")
     }
 
     fun setSearchArtists(searchArtists: Boolean) {
         settingsManager.searchArtists = searchArtists
-        loadData(query!!)
+        refreshRelay.accept(query ?: "")
     }
 
     fun setSearchAlbums(searchAlbums: Boolean) {
         settingsManager.searchAlbums = searchAlbums
-        loadData(query!!)
+        refreshRelay.accept(query ?: "")
     }
 
     fun onSongClick(songs: List<Song>, song: Song) {
@@ -159,105 +177,45 @@ constructor(
         view?.goToAlbum(albumView.album, viewHolder.imageOne)
     }
 
-    private inner class SongFilterOperator internal constructor(internal var filterString: String) : SingleOperator<List<Song>, List<Song>> {
-
-        override fun apply(observer: SingleObserver<in List<Song>>): SingleObserver<in List<Song>> {
-            return object : SingleObserver<List<Song>> {
-                override fun onSubscribe(d: Disposable) {
-                    observer.onSubscribe(d)
-                }
-
-                override fun onSuccess(songs: List<Song>) {
-                    var songs = songs
-                    val songList = songs.filter { song -> song.name != null }
-                    songs = (if (settingsManager.searchFuzzy) applyJaroWinklerFilter(songList) else applySongFilter(songList)).toList()
-                    observer.onSuccess(songs)
-                }
-
-                override fun onError(e: Throwable) {
-                    observer.onError(e)
-                }
-            }
-        }
-
-        internal fun applyJaroWinklerFilter(songList: List<Song>): List<Song> {
-            return songList.map { song -> JaroWinklerObject(song, filterString, song.name) }
-                    .filter { jaroWinklerObject -> jaroWinklerObject.score > SCORE_THRESHOLD || TextUtils.isEmpty(filterString) }
-                    .sortedWith(Comparator { a, b -> a.`object`.compareTo(b.`object`) })
-                    .sortedWith(Comparator { a, b -> java.lang.Double.compare(b.score, a.score) })
-                    .map { jaroWinklerObject -> jaroWinklerObject.`object` }
-        }
-
-        internal fun applySongFilter(songStream: List<Song>): List<Song> {
-            return songStream.filter { song -> StringUtils.containsIgnoreCase(song.name, filterString) }
-        }
-    }
+    /**
+     * Searches a [SearchIndex], remembering the last plain (non-fuzzy) query and its results. When the next query contains
+     * the last one, and the index hasn't changed since, only the last results need to be checked.
+     */
+    private class IncrementalSearch<T : Any>(private val comparator: Comparator<in T>, private val sortMatches: Boolean) {
 
-    private inner class AlbumFilterOperator internal constructor(internal var filterString: String) : SingleOperator<List<Album>, List<Album>> {
+        private var lastQuery: String? = null
 
-        override fun apply(observer: SingleObserver<in List<Album>>): SingleObserver<in List<Album>> {
-            return object : SingleObserver<List<Album>> {
-                override fun onSubscribe(d: Disposable) {
-                    observer.onSubscribe(d)
-                }
+        private var lastVersion = 0
 
-                override fun onSuccess(albums: List<Album>) {
-                    albums.sortedWith(Comparator { a, b -> a.compareTo(b) })
-                    val albumStream = albums.filter { album -> album.name != null }
-                    val filteredStream = if (settingsManager.searchFuzzy) applyJaroWinklerAlbumFilter(albumStream) else applyAlbumFilter(albumStream)
-                    observer.onSuccess(filteredStream.toList())
-                }
+        private var lastResults: List<T>? = null
 
-                override fun onError(e: Throwable) {
-                    observer.onError(e)
-                }
+        @Synchronized
+        fun search(index: SearchIndex<T>, query: String, fuzzy: Boolean): List<T> {
+            if (fuzzy) {
+                // Jaro-Winkler scores don't narrow as the query grows
+                lastQuery = null
+                lastResults = null
+                return index.fuzzySearch(query, SCORE_THRESHOLD, comparator)
             }
-        }
 
-        internal fun applyJaroWinklerAlbumFilter(albums: List<Album>): List<Album> {
-            return albums.map { album -> JaroWinklerObject(album, filterString, album.name) }
-                    .filter { jaroWinklerObject -> jaroWinklerObject.score > SCORE_THRESHOLD || TextUtils.isEmpty(filterString) }
-                    .sortedWith(Comparator { a, b -> a.`object`.compareTo(b.`object`) })
-                    .sortedWith(Comparator { a, b -> java.lang.Double.compare(b.score, a.score) })
-                    .map { jaroWinklerObject -> jaroWinklerObject.`object` }
-        }
-
-        internal fun applyAlbumFilter(stream: List<Album>): List<Album> {
-            return stream.filter { album -> StringUtils.containsIgnoreCase(album.name, filterString) }
-        }
-    }
-
-    private inner class AlbumArtistFilterOperator internal constructor(internal var filterString: String) : SingleOperator<List<AlbumArtist>, List<AlbumArtist>> {
+            // Hold the index lock, so it can't be updated between checking its version and searching it
+            val results = synchronized(index) {
+                val lastQuery = lastQuery
+                val within = if (lastQuery != null
+                        && lastQuery.isNotEmpty()
+                        && lastVersion == index.version
+                        && SearchIndex.normalize(query).contains(SearchIndex.normalize(lastQuery))) lastResults else null
 
-        override fun apply(observer: SingleObserver<in List<AlbumArtist>>): SingleObserver<in List<AlbumArtist>> {
-            return object : SingleObserver<List<AlbumArtist>> {
-                override fun onSubscribe(d: Disposable) {
-                    observer.onSubscribe(d)
-                }
+                val results = index.search(query, within)
 
-                override fun onSuccess(albumArtists: List<AlbumArtist>) {
-                    Collections.sort(albumArtists) { obj, albumArtist -> obj.compareTo(albumArtist) }
-                    val albumArtistList = albumArtists.filter { albumArtist -> albumArtist.name != null }
-                    val filteredList = if (settingsManager.searchFuzzy) applyJaroWinklerAlbumArtistFilter(albumArtistList) else applyAlbumArtistFilter(albumArtistList)
-                    observer.onSuccess(filteredList.toList())
-                }
+                this.lastQuery = query
+                lastVersion = index.version
+                lastResults = results
 
-                override fun onError(e: Throwable) {
-                    observer.onError(e)
-                }
+                results
             }
-        }
 
-        internal fun applyJaroWinklerAlbumArtistFilter(stream: List<AlbumArtist>): List<AlbumArtist> {
-            return stream.map { albumArtist -> JaroWinklerObject(albumArtist, filterString, albumArtist.name) }
-                    .filter { jaroWinklerObject -> jaroWinklerObject.score > SCORE_THRESHOLD || TextUtils.isEmpty(filterString) }
-                    .sortedWith(Comparator { a, b -> a.`object`.compareTo(b.`object`) })
-                    .sortedWith(Comparator { a, b -> java.lang.Double.compare(b.score, a.score) })
-                    .map { jaroWinklerObject -> jaroWinklerObject.`object` }
-        }
-
-        internal fun applyAlbumArtistFilter(stream: List<AlbumArtist>): List<AlbumArtist> {
-            return stream.filter { albumArtist -> StringUtils.containsIgnoreCase(albumArtist.name, filterString) }
+            return if (sortMatches) results.sortedWith(comparator) else results
         }
     }
 
@@ -278,5 +236,10 @@ constructor(
         private const val TAG = "SearchPresenter"
 
         private const val SCORE_THRESHOLD = 0.80
+
+        /**
+         * How long the query must be stable before it is searched. An empty query is searched immediately.
+         */
+        private const val SEARCH_DEBOUNCE_MILLIS = 150L
     }
 }
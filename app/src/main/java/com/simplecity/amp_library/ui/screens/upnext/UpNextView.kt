@@ -152,7 +152,7 @@ class UpNextView constructor(context: Context, attrs: AttributeSet? = null, defS
                         .transcode(ColorSetTranscoder(getContext()), ColorSet::class.java)
                         .override(250, 250)
                         .priority(Priority.HIGH)
-                        .diskCacheStrategy(DiskCacheStrategy.ALL)
+                        .diskCacheStrategy(DiskCacheStrategy.RESULT)
                         .into(paletteTarget)
                 }
             }
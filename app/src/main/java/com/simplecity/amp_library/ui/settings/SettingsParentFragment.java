@@ -316,6 +316,14 @@ public class SettingsParentFragment extends BaseNavigationController implements
                 });
             }
 
+            Preference artworkCacheSizePreference = findPreference(SettingsManager.KEY_PREF_ARTWORK_CACHE_SIZE);
+            if (artworkCacheSizePreference != null) {
+                artworkCacheSizePreference.setOnPreferenceClickListener(preference -> {
+                    settingsPresenter.artworkCacheSizeClicked(getContext());
+                    return true;
+                });
+            }
+
             SwitchPreferenceCompat ignoreEmbeddedArtworkPreference = (SwitchPreferenceCompat) findPreference(SettingsManager.KEY_IGNORE_EMBEDDED_ARTWORK);
             if (ignoreEmbeddedArtworkPreference != null) {
                 ignoreEmbeddedArtworkPreference.setOnPreferenceChangeListener((preference, newValue) -> {
@@ -567,6 +575,11 @@ public class SettingsParentFragment extends BaseNavigationController implements
             dialog.show();
         }
 
+        @Override
+        public void showArtworkCacheSizeDialog(MaterialDialog dialog) {
+            dialog.show();
+        }
+
         @Override
         public void showArtworkPreferenceChangeDialog(MaterialDialog dialog) {
             dialog.show();
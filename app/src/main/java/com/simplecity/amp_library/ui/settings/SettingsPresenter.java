@@ -6,6 +6,7 @@ import android.content.SharedPreferences;
 import android.net.Uri;
 import android.preference.PreferenceManager;
 import android.support.v4.content.ContextCompat;
+import android.text.format.Formatter;
 import com.afollestad.aesthetic.Aesthetic;
 import com.afollestad.materialdialogs.MaterialDialog;
 import com.afollestad.materialdialogs.color.ColorChooserDialog;
@@ -15,6 +16,8 @@ import com.bumptech.glide.Glide;
 import com.simplecity.amp_library.R;
 import com.simplecity.amp_library.ShuttleApplication;
 import com.simplecity.amp_library.billing.BillingManager;
+import com.simplecity.amp_library.glide.fetcher.ArtworkMissCache;
+import com.simplecity.amp_library.glide.fetcher.ArtworkThumbnailCache;
 import com.simplecity.amp_library.model.CategoryItem;
 import com.simplecity.amp_library.services.ArtworkDownloadService;
 import com.simplecity.amp_library.ui.common.PurchasePresenter;
@@ -266,11 +269,44 @@ public class SettingsPresenter extends PurchasePresenter<SettingsView> {
 
         Glide.get(application).clearMemory();
 
+        ArtworkMissCache.getInstance(application).clear();
+
         Completable.fromAction(() -> Glide.get(application).clearDiskCache())
+                .andThen(Completable.fromAction(() -> ArtworkThumbnailCache.getInstance(application).clear()))
                 .subscribeOn(Schedulers.io())
                 .subscribe();
     }
 
+    private static final int[] ARTWORK_CACHE_SIZES_MB = { 25, 50, 100, 250, 500 };
+
+    public void artworkCacheSizeClicked(Context context) {
+        SettingsView settingsView = getView();
+        if (settingsView != null) {
+            int selectedIndex = 0;
+            String[] items = new String[ARTWORK_CACHE_SIZES_MB.length];
+            for (int i = 0; i < ARTWORK_CACHE_SIZES_MB.length; i++) {
+                items[i] = Formatter.formatShortFileSize(context, ARTWORK_CACHE_SIZES_MB[i] * 1024L * 1024L);
+                if (ARTWORK_CACHE_SIZES_MB[i] == settingsManager.getArtworkCacheSizeMb()) {
+                    selectedIndex = i;
+                }
+            }
+
+            settingsView.showArtworkCacheSizeDialog(
+                    new MaterialDialog.Builder(context)
+                            .title(R.string.pref_title_artwork_cache_size)
+                            .items((CharSequence[]) items)
+                            .itemsCallbackSingleChoice(selectedIndex, (dialog, itemView, which, text) -> {
+                                int sizeMb = ARTWORK_CACHE_SIZES_MB[which];
+                                settingsManager.setArtworkCacheSizeMb(sizeMb);
+                                Completable.fromAction(() -> ArtworkThumbnailCache.getInstance(application).setMaxLength(sizeMb * 1024L * 1024L))
+                                        .subscribeOn(Schedulers.io())
+                                        .subscribe();
+                                return false;
+                            })
+                            .build());
+        }
+    }
+
     public void changeArtworkPreferenceClicked(Context context) {
         SettingsView settingsView = getView();
         if (settingsView != null) {
@@ -34,6 +34,8 @@ public interface SettingsView extends PurchaseView {
 
     void showDeleteArtworkDialog(MaterialDialog dialog);
 
+    void showArtworkCacheSizeDialog(MaterialDialog dialog);
+
     void showArtworkPreferenceChangeDialog(MaterialDialog dialog);
 
     // Scrobbling
@@ -383,7 +383,7 @@ public abstract class BaseWidgetConfigureActivity extends BaseActivity implement
 
                     Glide.with(this)
                             .load(mediaManager.getSong())
-                            .diskCacheStrategy(DiskCacheStrategy.ALL)
+                            .diskCacheStrategy(DiskCacheStrategy.RESULT)
                             .placeholder(R.drawable.ic_placeholder_light_medium)
                             .into(albumArt);
                 }
@@ -146,7 +146,7 @@ public abstract class BaseWidgetProvider extends AppWidgetProvider {
         Glide.with(service)
                 .load(service.getSong())
                 .asBitmap()
-                .diskCacheStrategy(DiskCacheStrategy.ALL)
+                .diskCacheStrategy(DiskCacheStrategy.RESULT)
                 .into(new CustomAppWidgetTarget(service, views, R.id.album_art, size, size, errorListener, appWidgetIds));
     }
 
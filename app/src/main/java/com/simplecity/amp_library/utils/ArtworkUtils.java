@@ -9,7 +9,6 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.WorkerThread;
 import android.util.Log;
-import com.annimon.stream.Stream;
 import com.simplecity.amp_library.model.Album;
 import com.simplecity.amp_library.model.Song;
 import java.io.ByteArrayInputStream;
@@ -21,7 +20,6 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.regex.Pattern;
 import org.jaudiotagger.audio.AudioFile;
 import org.jaudiotagger.audio.AudioFileIO;
 import org.jaudiotagger.audio.exceptions.CannotReadException;
@@ -40,37 +38,19 @@ public class ArtworkUtils {
     }
 
     /**
-     * Searches the parent directory of the passed in path for [cover/album/artwork].[png/jpg/jpeg]
-     * using regex and returns a {@link InputStream} representing the artwork
+     * Returns a {@link InputStream} for the largest [cover/album/folder].[png/jpg/jpeg] in the parent directory of the passed
+     * in path. See {@link FolderArtworkIndex}.
      */
     @WorkerThread
     public static InputStream getFolderArtwork(@Nullable final String path) {
-
-        InputStream fileInputStream = null;
-
-        if (path != null) {
-            File[] files;
-            File file = new File(path);
-            File parent = file.getParentFile();
-            if (parent.exists() && parent.isDirectory()) {
-                final Pattern pattern = Pattern.compile("(folder|cover|album).*\\.(jpg|jpeg|png)", Pattern.CASE_INSENSITIVE);
-                files = parent.listFiles(file1 -> pattern.matcher(file1.getName()).matches());
-
-                if (files.length > 0) {
-                    try {
-                        File artworkFile = Stream.of(files)
-                                .filter(aFile -> aFile.exists() && aFile.length() > 1024)
-                                .max((a, b) -> (int) (a.length() / 1024 - b.length() / 1024))
-                                .get();
-
-                        fileInputStream = getFileArtwork(artworkFile);
-                    } catch (NoSuchElementException e) {
-                        Log.e(TAG, "getFolderArtwork failed: " + e.toString());
-                    }
-                }
-            }
+        if (path == null) {
+            return null;
         }
-        return fileInputStream;
+        File parent = new File(path).getParentFile();
+        if (parent == null) {
+            return null;
+        }
+        return getFileArtwork(FolderArtworkIndex.getCover(parent));
     }
 
     /**
@@ -148,6 +128,9 @@ public class ArtworkUtils {
 
     /**
      * Retrieves the Artwork from the id3 tags of the file at the given path.
+     * <p>
+     * Where possible, the picture is located with {@link EmbeddedArtworkLocator} and streamed straight from the file,
+     * falling back to a full tag parse otherwise.
      */
     @WorkerThread
     public static InputStream getTagArtwork(@Nullable String filePath) {
@@ -155,6 +138,14 @@ public class ArtworkUtils {
         InputStream inputStream = null;
 
         if (filePath != null) {
+            try {
+                return EmbeddedArtworkLocator.open(new File(filePath));
+            } catch (EmbeddedArtworkLocator.UnsupportedTagException ignored) {
+                // Fall through to jaudiotagger
+            } catch (IOException e) {
+                return null;
+            }
+
             try {
                 AudioFile audioFIle = AudioFileIO.read(new File(filePath));
                 if (audioFIle != null) {
@@ -175,29 +166,18 @@ public class ArtworkUtils {
     }
 
     /**
-     * Searches the parent directory of the passed in path for [cover/album/artwork].[png/jpg/jpeg]
-     * using regex and returns a {@link List<File>} representing the artwork
+     * Returns every [cover/album/folder].[png/jpg/jpeg] in the parent directory of the passed in path. See
+     * {@link FolderArtworkIndex}.
      */
     @WorkerThread
     public static List<File> getAllFolderArtwork(@Nullable final String path) {
-        List<File> fileArray = new ArrayList<>();
-
-        if (path != null) {
-            File[] files;
-            File parent = new File(path).getParentFile();
-            if (parent.exists() && parent.isDirectory()) {
-                final Pattern pattern = Pattern.compile("(folder|cover|album).*\\.(jpg|jpeg|png)", Pattern.CASE_INSENSITIVE);
-                files = parent.listFiles(file1 -> pattern.matcher(file1.getName()).matches());
-
-                if (files.length != 0) {
-                    for (File file : files) {
-                        if (file.exists()) {
-                            fileArray.add(file);
-                        }
-                    }
-                }
-            }
+        if (path == null) {
+            return new ArrayList<>();
+        }
+        File parent = new File(path).getParentFile();
+        if (parent == null) {
+            return new ArrayList<>();
         }
-        return fileArray;
+        return new ArrayList<>(FolderArtworkIndex.getFiles(parent));
     }
 }
\ No newline at end of file
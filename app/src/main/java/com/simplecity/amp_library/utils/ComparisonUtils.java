@@ -1,5 +1,6 @@
 package com.simplecity.amp_library.utils;
 
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import java.text.Collator;
 import java.util.Locale;
@@ -8,6 +9,8 @@ public class ComparisonUtils {
 
     private static Collator collator = Collator.getInstance(Locale.getDefault());
 
+    private static final byte[] EMPTY_KEY = new byte[0];
+
     private ComparisonUtils() {
 
     }
@@ -35,4 +38,36 @@ public class ComparisonUtils {
             return collator.compare(str1, str2);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * @return the {@link java.text.CollationKey} for the passed in String, as a byte array. Comparing two keys via
+     * {@link #compare(byte[], byte[])} is much cheaper than comparing their Strings via a Collator, so keys should be computed
+     * once (off the main thread) & cached. A null String results in an empty key, which is ordered first.
+     */
+    @NonNull
+    public static byte[] getCollationKey(@Nullable String str) {
+        if (str == null) {
+            return EMPTY_KEY;
+        }
+        synchronized (collator) {
+            return collator.getCollationKey(str).toByteArray();
+        }
+    }
+
+    /**
+     * Compares two keys obtained via {@link #getCollationKey(String)}, as unsigned bytes.
+     */
+    public static int compare(@NonNull byte[] key1, @NonNull byte[] key2) {
+        if (key1 == key2) {
+            return 0;
+        }
+        int length = Math.min(key1.length, key2.length);
+        for (int i = 0; i < length; i++) {
+            int result = (key1[i] & 0xff) - (key2[i] & 0xff);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return key1.length - key2.length;
+    }
+}
@@ -0,0 +1,608 @@
+package com.simplecity.amp_library.utils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Finds the embedded picture in an audio file by walking just the tag structure (ID3v2 APIC/PIC frames, FLAC PICTURE
+ * blocks, or the MP4 'covr' atom), and streams the image bytes straight from that region of the file.
+ * <p>
+ * Compared to parsing every tag with jaudiotagger, only a few small headers are read, and the image itself is never
+ * copied into memory up front, so it can be decoded (and downsampled) straight from the file.
+ * <p>
+ * Anything this doesn't understand (other formats, unsynchronised, compressed or encrypted ID3 frames, malformed
+ * structures) results in an {@link UnsupportedTagException}, and the caller should fall back to a full tag parser.
+ */
+final class EmbeddedArtworkLocator {
+
+    /**
+     * Thrown when the file's picture can't be located this way.
+     */
+    static final class UnsupportedTagException extends IOException {
+
+        UnsupportedTagException(String message) {
+            super(message);
+        }
+    }
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private static final int PICTURE_TYPE_FRONT_COVER = 3;
+
+    /**
+     * The most of an APIC frame we'll read to find the end of its description.
+     */
+    private static final int MAX_APIC_HEADER_LENGTH = 4096;
+
+    private static final class Region {
+
+        final long offset;
+
+        final long length;
+
+        final int pictureType;
+
+        Region(long offset, long length, int pictureType) {
+            this.offset = offset;
+            this.length = length;
+            this.pictureType = pictureType;
+        }
+    }
+
+    /**
+     * The file has been read, and has no picture.
+     */
+    private static final Region NONE = new Region(0, 0, -1);
+
+    private EmbeddedArtworkLocator() {
+
+    }
+
+    /**
+     * @return a stream over the embedded picture (which must be closed), or null if the file has no picture.
+     * @throws UnsupportedTagException if the picture can't be located without a full tag parse.
+     * @throws IOException if the file can't be read.
+     */
+    @WorkerThread
+    @Nullable
+    static InputStream open(@NonNull File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            Region region = locate(randomAccessFile.getChannel());
+            if (region != NONE) {
+                InputStream inputStream = new RegionInputStream(randomAccessFile, region.offset, region.length);
+                randomAccessFile = null;
+                return inputStream;
+            }
+            return null;
+        } finally {
+            if (randomAccessFile != null) {
+                randomAccessFile.close();
+            }
+        }
+    }
+
+    @NonNull
+    private static Region locate(FileChannel channel) throws IOException {
+        ByteBuffer header = read(channel, 0, 12);
+        if (header.remaining() < 12) {
+            throw new UnsupportedTagException("File too short");
+        }
+        if (matches(header, 0, "ID3")) {
+            return locateId3v2(channel, header);
+        }
+        if (matches(header, 0, "fLaC")) {
+            return locateFlac(channel, 4);
+        }
+        if (matches(header, 4, "ftyp")) {
+            return locateMp4(channel);
+        }
+        throw new UnsupportedTagException("Unsupported format");
+    }
+
+    // ID3v2
+
+    private static Region locateId3v2(FileChannel channel, ByteBuffer header) throws IOException {
+        int majorVersion = header.get(3) & 0xFF;
+        int flags = header.get(5) & 0xFF;
+        long tagSize = syncsafe(header, 6);
+
+        if (majorVersion < 2 || majorVersion > 4) {
+            throw new UnsupportedTagException("Unsupported ID3v2 version: " + majorVersion);
+        }
+        // Unsynchronisation (& in 2.2, compression)
+        if ((flags & 0x80) != 0 || (majorVersion == 2 && (flags & 0x40) != 0)) {
+            throw new UnsupportedTagException("Unsynchronised ID3v2 tag");
+        }
+
+        long end = 10 + tagSize;
+        long position = 10;
+
+        // Extended header. Its size excludes itself in 2.3, and includes itself (& is syncsafe) in 2.4.
+        if (majorVersion > 2 && (flags & 0x40) != 0) {
+            ByteBuffer extendedHeader = readFully(channel, position, 4);
+            position += majorVersion == 4 ? syncsafe(extendedHeader, 0) : uint32(extendedHeader, 0) + 4;
+            if (position > end) {
+                throw new UnsupportedTagException("ID3v2 extended header overruns tag");
+            }
+        }
+
+        int frameHeaderLength = majorVersion == 2 ? 6 : 10;
+        String pictureFrameId = majorVersion == 2 ? "PIC" : "APIC";
+
+        Region picture = NONE;
+        while (position + frameHeaderLength <= end) {
+            ByteBuffer frameHeader = readFully(channel, position, frameHeaderLength);
+            if (frameHeader.get(0) == 0) {
+                // Padding
+                break;
+            }
+
+            int idLength = majorVersion == 2 ? 3 : 4;
+            if (!isFrameId(frameHeader, idLength)) {
+                throw new UnsupportedTagException("Invalid ID3v2 frame id");
+            }
+
+            long dataPosition = position + frameHeaderLength;
+
+            long frameSize;
+            int frameFlags = 0;
+            if (majorVersion == 2) {
+                frameSize = uint24(frameHeader, 3);
+            } else if (majorVersion == 3) {
+                frameSize = uint32(frameHeader, 4);
+                frameFlags = frameHeader.getShort(8) & 0xFFFF;
+            } else {
+                // Some taggers (notably iTunes) write plain 2.3 style sizes in 2.4 tags. Sizes under 0x80 read the same either
+                // way; otherwise, make sure the syncsafe size lands on the next frame.
+                if ((frameHeader.getInt(4) & 0x80808080) != 0) {
+                    throw new UnsupportedTagException("ID3v2.4 frame size isn't syncsafe");
+                }
+                frameSize = syncsafe(frameHeader, 4);
+                if (frameSize >= 0x80 && !isFrameBoundary(channel, dataPosition + frameSize, end)) {
+                    throw new UnsupportedTagException("ID3v2.4 frame size isn't syncsafe");
+                }
+                frameFlags = frameHeader.getShort(8) & 0xFFFF;
+            }
+
+            if (dataPosition + frameSize > end) {
+                throw new UnsupportedTagException("ID3v2 frame overruns tag");
+            }
+
+            if (matches(frameHeader, 0, pictureFrameId)) {
+                // Compression, encryption or grouping (2.3), or grouping, compression, encryption, unsynchronisation or a data
+                // length indicator (2.4). Each either encodes the image, or adds bytes before it.
+                if ((majorVersion == 3 && (frameFlags & 0x00E0) != 0) || (majorVersion == 4 && (frameFlags & 0x004F) != 0)) {
+                    throw new UnsupportedTagException("Encoded ID3v2 picture frame");
+                }
+                Region region = locateId3v2Picture(channel, dataPosition, frameSize, majorVersion);
+                if (region != NONE) {
+                    if (region.pictureType == PICTURE_TYPE_FRONT_COVER) {
+                        return region;
+                    }
+                    if (picture == NONE) {
+                        picture = region;
+                    }
+                }
+            }
+
+            position = dataPosition + frameSize;
+        }
+
+        if (picture == NONE) {
+            // A FLAC file may (unusually) be preceded by an ID3v2 tag, holding its picture in a PICTURE block instead.
+            long tagEnd = end + ((flags & 0x10) != 0 ? 10 : 0);
+            ByteBuffer next = read(channel, tagEnd, 4);
+            if (next.remaining() == 4 && matches(next, 0, "fLaC")) {
+                return locateFlac(channel, tagEnd + 4);
+            }
+        }
+
+        return picture;
+    }
+
+    /**
+     * @return true if the first {@code idLength} bytes are a valid frame id (A-Z, 0-9).
+     */
+    private static boolean isFrameId(ByteBuffer buffer, int idLength) {
+        for (int i = 0; i < idLength; i++) {
+            byte c = buffer.get(i);
+            if (!((c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if an ID3v2.3/2.4 frame (or the padding, or the end of the tag) could start at this position.
+     */
+    private static boolean isFrameBoundary(FileChannel channel, long position, long end) throws IOException {
+        if (position + 10 > end) {
+            return position <= end;
+        }
+        ByteBuffer buffer = readFully(channel, position, 4);
+        return buffer.get(0) == 0 || isFrameId(buffer, 4);
+    }
+
+    /**
+     * APIC: text encoding (1), MIME type (null terminated), picture type (1), description (null terminated, in the text
+     * encoding), picture data. PIC (2.2) has a 3 character image format in place of the MIME type.
+     */
+    private static Region locateId3v2Picture(FileChannel channel, long position, long size, int majorVersion) throws IOException {
+        if (size < 2) {
+            throw new UnsupportedTagException("Truncated ID3v2 picture frame");
+        }
+        ByteBuffer buffer = readFully(channel, position, (int) Math.min(size, MAX_APIC_HEADER_LENGTH));
+        int limit = buffer.remaining();
+
+        int encoding = buffer.get(0);
+        int i = 1;
+        String mimeType;
+        if (majorVersion == 2) {
+            i += 3;
+            mimeType = "";
+        } else {
+            int mimeTypeStart = i;
+            while (i < limit && buffer.get(i) != 0) {
+                i++;
+            }
+            mimeType = ascii(buffer, mimeTypeStart, i - mimeTypeStart);
+            i++;
+        }
+        if (i >= limit) {
+            throw new UnsupportedTagException("Truncated ID3v2 picture frame");
+        }
+
+        int pictureType = buffer.get(i++) & 0xFF;
+
+        // UTF-16 descriptions are terminated by 2 null bytes
+        if (encoding == 1 || encoding == 2) {
+            while (i + 1 < limit && (buffer.get(i) != 0 || buffer.get(i + 1) != 0)) {
+                i += 2;
+            }
+            i += 2;
+        } else {
+            while (i < limit && buffer.get(i) != 0) {
+                i++;
+            }
+            i++;
+        }
+        if (i > limit) {
+            throw new UnsupportedTagException("ID3v2 picture description too long");
+        }
+
+        // '-->' means the data is a URL, rather than an image
+        if (mimeType.equals("-->") || size - i <= 0) {
+            return NONE;
+        }
+        return new Region(position + i, size - i, pictureType);
+    }
+
+    // FLAC
+
+    /**
+     * @param position the position of the first metadata block header, just after the 'fLaC' marker.
+     */
+    private static Region locateFlac(FileChannel channel, long position) throws IOException {
+        Region picture = NONE;
+        while (true) {
+            ByteBuffer blockHeader = readFully(channel, position, 4);
+            int typeAndLast = blockHeader.get(0) & 0xFF;
+            boolean isLast = (typeAndLast & 0x80) != 0;
+            int type = typeAndLast & 0x7F;
+            long length = uint24(blockHeader, 1);
+            long dataPosition = position + 4;
+
+            if (type == 127) {
+                throw new UnsupportedTagException("Invalid FLAC metadata block");
+            }
+
+            // PICTURE: type (4), MIME type length (4), MIME type, description length (4), description, width, height,
+            // depth & colors (4 each), data length (4), data
+            if (type == 6) {
+                long blockEnd = dataPosition + length;
+
+                ByteBuffer buffer = readFully(channel, dataPosition, 8, blockEnd);
+                int pictureType = buffer.getInt(0);
+                long offset = dataPosition + 8 + uint32(buffer, 4);
+
+                buffer = readFully(channel, offset, 4, blockEnd);
+                offset += 4 + uint32(buffer, 0) + 16;
+
+                buffer = readFully(channel, offset, 4, blockEnd);
+                long dataLength = uint32(buffer, 0);
+                offset += 4;
+
+                if (offset + dataLength > blockEnd) {
+                    throw new UnsupportedTagException("FLAC picture overruns block");
+                }
+                if (dataLength > 0) {
+                    if (pictureType == PICTURE_TYPE_FRONT_COVER) {
+                        return new Region(offset, dataLength, pictureType);
+                    }
+                    if (picture == NONE) {
+                        picture = new Region(offset, dataLength, pictureType);
+                    }
+                }
+            }
+
+            if (isLast) {
+                return picture;
+            }
+            position = dataPosition + length;
+        }
+    }
+
+    // MP4
+
+    /**
+     * The cover is the first 'data' atom of moov/udta/meta/ilst/covr. A data atom holds a type indicator (4) and a locale
+     * (4), followed by the image.
+     */
+    private static Region locateMp4(FileChannel channel) throws IOException {
+        long[] moov = findAtom(channel, 0, channel.size(), "moov");
+        if (moov == null) {
+            throw new UnsupportedTagException("No moov atom");
+        }
+        long[] udta = findAtom(channel, moov[0], moov[1], "udta");
+        if (udta == null) {
+            return NONE;
+        }
+        long[] meta = findAtom(channel, udta[0], udta[1], "meta");
+        if (meta == null) {
+            return NONE;
+        }
+        // 'meta' is usually a full box, with 4 bytes of version & flags before its children (but not in QuickTime files)
+        ByteBuffer metaHeader = read(channel, meta[0], 4);
+        long metaChildren = metaHeader.remaining() == 4 && metaHeader.getInt(0) == 0 ? meta[0] + 4 : meta[0];
+
+        long[] ilst = findAtom(channel, metaChildren, meta[1], "ilst");
+        if (ilst == null) {
+            return NONE;
+        }
+        long[] covr = findAtom(channel, ilst[0], ilst[1], "covr");
+        if (covr == null) {
+            return NONE;
+        }
+        long[] data = findAtom(channel, covr[0], covr[1], "data");
+        if (data == null || data[1] - data[0] <= 8) {
+            return NONE;
+        }
+        return new Region(data[0] + 8, data[1] - data[0] - 8, PICTURE_TYPE_FRONT_COVER);
+    }
+
+    /**
+     * @return the start & end of the contents of the first atom of the given type within [start, end), or null if there
+     * isn't one.
+     */
+    @Nullable
+    private static long[] findAtom(FileChannel channel, long start, long end, String type) throws IOException {
+        long position = start;
+        while (position + 8 <= end) {
+            ByteBuffer header = read(channel, position, 16);
+            if (header.remaining() < 8) {
+                throw new UnsupportedTagException("Truncated MP4 atom header");
+            }
+            long size = uint32(header, 0);
+            int headerLength = 8;
+            if (size == 1) {
+                if (header.remaining() < 16) {
+                    throw new UnsupportedTagException("Truncated MP4 atom header");
+                }
+                size = header.getLong(8);
+                headerLength = 16;
+            } else if (size == 0) {
+                // Extends to the end of the enclosing atom (or file)
+                size = end - position;
+            }
+            if (size < headerLength || position + size > end) {
+                throw new UnsupportedTagException("Invalid MP4 atom size");
+            }
+            if (matches(header, 4, type)) {
+                return new long[] { position + headerLength, position + size };
+            }
+            position += size;
+        }
+        return null;
+    }
+
+    // Helpers
+
+    /**
+     * Reads exactly {@code length} bytes at {@code position}.
+     *
+     * @throws UnsupportedTagException if the file ends first.
+     */
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = read(channel, position, length);
+        if (buffer.remaining() < length) {
+            throw new UnsupportedTagException("Truncated tag at " + position);
+        }
+        return buffer;
+    }
+
+    /**
+     * Reads exactly {@code length} bytes at {@code position}, which must lie before {@code end}.
+     *
+     * @throws UnsupportedTagException if they don't, or the file ends first.
+     */
+    private static ByteBuffer readFully(FileChannel channel, long position, int length, long end) throws IOException {
+        if (position < 0 || position + length > end) {
+            throw new UnsupportedTagException("Structure overruns its parent at " + position);
+        }
+        return readFully(channel, position, length);
+    }
+
+    /**
+     * Reads up to {@code length} bytes at {@code position}, returning a buffer which may be short if the file ends first.
+     */
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) <= 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static boolean matches(ByteBuffer buffer, int index, String ascii) {
+        if (buffer.remaining() < index + ascii.length()) {
+            return false;
+        }
+        for (int i = 0; i < ascii.length(); i++) {
+            if (buffer.get(index + i) != ascii.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String ascii(ByteBuffer buffer, int index, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(index + i);
+        }
+        return new String(bytes, ASCII);
+    }
+
+    private static long syncsafe(ByteBuffer buffer, int index) {
+        return ((buffer.get(index) & 0x7FL) << 21)
+                | ((buffer.get(index + 1) & 0x7FL) << 14)
+                | ((buffer.get(index + 2) & 0x7FL) << 7)
+                | (buffer.get(index + 3) & 0x7FL);
+    }
+
+    private static long uint24(ByteBuffer buffer, int index) {
+        return ((buffer.get(index) & 0xFFL) << 16) | ((buffer.get(index + 1) & 0xFFL) << 8) | (buffer.get(index + 2) & 0xFFL);
+    }
+
+    private static long uint32(ByteBuffer buffer, int index) {
+        return buffer.getInt(index) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * A buffered stream over a region of a file, read via positional reads on its channel. Mark & reset just move the
+     * position, so a decoder can read the image bounds, then rewind and decode (downsampled) without buffering the image.
+     */
+    private static final class RegionInputStream extends InputStream {
+
+        private static final int BUFFER_SIZE = 16 * 1024;
+
+        private final RandomAccessFile file;
+
+        private final FileChannel channel;
+
+        private final long end;
+
+        /**
+         * The file position of the next byte to be returned.
+         */
+        private long position;
+
+        private long mark;
+
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        RegionInputStream(RandomAccessFile file, long offset, long length) {
+            this.file = file;
+            this.channel = file.getChannel();
+            this.position = offset;
+            this.mark = offset;
+            this.end = offset + length;
+            buffer.limit(0);
+        }
+
+        private boolean fill() throws IOException {
+            if (buffer.hasRemaining()) {
+                return true;
+            }
+            if (position >= end) {
+                return false;
+            }
+            buffer.clear();
+            buffer.limit((int) Math.min(BUFFER_SIZE, end - position));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) <= 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            return buffer.hasRemaining();
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            position++;
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(@NonNull byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public long skip(long count) {
+            if (count <= 0) {
+                return 0;
+            }
+            long skipped = Math.min(count, end - position);
+            if (skipped < buffer.remaining()) {
+                buffer.position(buffer.position() + (int) skipped);
+            } else {
+                buffer.limit(0);
+            }
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readLimit) {
+            mark = position;
+        }
+
+        @Override
+        public synchronized void reset() {
+            position = mark;
+            buffer.limit(0);
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+}
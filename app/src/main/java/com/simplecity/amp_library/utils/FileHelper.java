@@ -209,18 +209,21 @@ public class FileHelper {
     }
 
     /**
-     * Recursively collects all the songs for the given directory and
-     * all of its sub-directories. Must be called Asynchronously.
+     * Collects all the songs for the given directory, and optionally
+     * all of its sub-directories, from the library's folder index.
      *
-     * @param file the File to retrieve the song Id's from
-     * @param recursive whether to recursively check the sub-directories for song Id's
-     * @return List<Song> a list of the songs for the given fileObject's directory & sub-directories
+     * @param file the directory to retrieve the songs from
+     * @param recursive whether to include the songs in the sub-directories
+     * @param inSameDir whether to retrieve the songs from the directory containing file, rather than file itself
+     * @return List<Song> a list of the songs for the given fileObject's directory (& sub-directories)
      */
     public static Single<List<Song>> getSongList(Repository.SongsRepository songsRepository, File file, boolean recursive, boolean inSameDir) {
-        return Single.fromCallable(
-                () -> walk(file, new ArrayList<>(), recursive, inSameDir))
-                .flatMap(filePaths -> songsRepository.getSongs(song -> song.path.contains(FileHelper.getPath(inSameDir ? file.getParentFile() : file)))
-                        .first(Collections.emptyList()))
+        return songsRepository.getLibrarySnapshot()
+                .map(snapshot -> {
+                    String folderPath = FileHelper.getPath(inSameDir ? file.getParentFile() : file);
+                    return folderPath != null ? snapshot.getSongsInFolder(folderPath, recursive) : Collections.<Song>emptyList();
+                })
+                .first(Collections.emptyList())
                 .subscribeOn(Schedulers.io());
     }
 
@@ -228,11 +231,19 @@ public class FileHelper {
      * Gets the song for a given file
      */
     public static Single<Song> getSong(Repository.SongsRepository songsRepository, File file) {
-        return songsRepository.getSongs(song -> song.path.contains(FileHelper.getPath(file)))
+        return songsRepository.getLibrarySnapshot()
                 .firstOrError()
-                .flatMap(songs -> {
+                .flatMap(snapshot -> {
+                    String path = FileHelper.getPath(file);
+                    String folderPath = path != null ? new File(path).getParent() : null;
+                    if (folderPath == null) {
+                        return Single.error(new NoSuchElementException("No song for file: " + file));
+                    }
                     try {
-                        return Single.just(Stream.of(songs).findFirst().get());
+                        return Single.just(Stream.of(snapshot.getSongsInFolder(folderPath, false))
+                                .filter(song -> path.equals(song.path))
+                                .findFirst()
+                                .get());
                     } catch (NoSuchElementException e) {
                         return Single.error(e);
                     }
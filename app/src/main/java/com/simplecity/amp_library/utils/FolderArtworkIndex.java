@@ -0,0 +1,132 @@
+package com.simplecity.amp_library.utils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * The artwork images found in each folder, so that every song (and album) in a folder shares a single directory scan.
+ * <p>
+ * Entries are keyed by folder path, and hold the folder's modification time as of the scan. Adding, removing or renaming
+ * a file changes that time, so a stale entry is detected with a single stat() and the folder is scanned again.
+ */
+final class FolderArtworkIndex {
+
+    private static final Pattern ARTWORK_FILE_NAME = Pattern.compile("(folder|cover|album).*\\.(jpg|jpeg|png)", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Images smaller than this are ignored when choosing a folder's cover.
+     */
+    private static final long MIN_COVER_LENGTH = 1024;
+
+    private static final int MAX_FOLDERS = 500;
+
+    private static final class Entry {
+
+        final long lastModified;
+
+        /**
+         * Every artwork image in the folder.
+         */
+        @NonNull
+        final List<File> files;
+
+        /**
+         * The largest image in the folder, or null if there isn't one of a sensible size.
+         */
+        @Nullable
+        final File cover;
+
+        Entry(long lastModified, @NonNull List<File> files, @Nullable File cover) {
+            this.lastModified = lastModified;
+            this.files = files;
+            this.cover = cover;
+        }
+    }
+
+    // Guarded by itself. Access ordered, so the least recently used folders are dropped first.
+    private static final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_FOLDERS;
+        }
+    };
+
+    private FolderArtworkIndex() {
+
+    }
+
+    /**
+     * @return the cover image for the folder, or null if it has none.
+     */
+    @WorkerThread
+    @Nullable
+    static File getCover(@NonNull File folder) {
+        Entry entry = getEntry(folder);
+        return entry == null ? null : entry.cover;
+    }
+
+    /**
+     * @return every artwork image in the folder.
+     */
+    @WorkerThread
+    @NonNull
+    static List<File> getFiles(@NonNull File folder) {
+        Entry entry = getEntry(folder);
+        return entry == null ? Collections.<File>emptyList() : entry.files;
+    }
+
+    @Nullable
+    private static Entry getEntry(@NonNull File folder) {
+        // 0 if the folder doesn't exist (or can't be read)
+        long lastModified = folder.lastModified();
+        if (lastModified == 0) {
+            return null;
+        }
+
+        String key = folder.getPath();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.lastModified == lastModified) {
+                return entry;
+            }
+        }
+
+        Entry entry = scan(folder, lastModified);
+        if (entry != null) {
+            synchronized (entries) {
+                entries.put(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    @Nullable
+    private static Entry scan(@NonNull File folder, long lastModified) {
+        File[] files = folder.listFiles(file -> ARTWORK_FILE_NAME.matcher(file.getName()).matches());
+        if (files == null) {
+            return null;
+        }
+
+        File cover = null;
+        long coverLength = MIN_COVER_LENGTH;
+        for (File file : files) {
+            // 0 if the file doesn't exist
+            long length = file.length();
+            if (length > coverLength) {
+                cover = file;
+                coverLength = length;
+            }
+        }
+
+        List<File> fileList = files.length == 0 ? Collections.<File>emptyList() : Collections.unmodifiableList(Arrays.asList(files));
+        return new Entry(lastModified, fileList, cover);
+    }
+}
@@ -0,0 +1,223 @@
+package com.simplecity.amp_library.utils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Jaro-Winkler similarity over pre-normalized char arrays.
+ * <p>
+ * Callers normalize each string once, via {@link #normalize(String)}, and then score as many pairs as they like. Scoring
+ * allocates nothing: the match flags live in per-thread scratch buffers, and whitespace separated words are scored as
+ * ranges of the original array rather than as split strings.
+ * <p>
+ * Each score method takes a threshold. Once the best score reachable for a pair falls below it, scoring stops and
+ * {@link #NO_MATCH} is returned. Scores which are returned are rounded to two decimal places.
+ */
+public final class JaroWinklerScorer {
+
+    public static final double NO_MATCH = 0D;
+
+    private static final double SCALING_FACTOR = 0.1D;
+
+    private static final double BOOST_THRESHOLD = 0.7D;
+
+    /**
+     * Scores are rounded to two decimal places, so a raw score this far below the threshold may still round up to it.
+     */
+    private static final double ROUNDING_MARGIN = 0.005D;
+
+    private static final char[] EMPTY = new char[0];
+
+    private static final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    private JaroWinklerScorer() {
+
+    }
+
+    /**
+     * @return the lower-cased, NFD-normalized chars of the passed in string.
+     */
+    @NonNull
+    public static char[] normalize(@Nullable String string) {
+        if (string == null || string.isEmpty()) {
+            return EMPTY;
+        }
+        return Normalizer.normalize(string.toLowerCase(Locale.getDefault()), Normalizer.Form.NFD).toCharArray();
+    }
+
+    /**
+     * Scores {@code text} against {@code query}, and also each whitespace separated word of {@code text} against
+     * {@code query}, returning the best score.
+     *
+     * @return the best score, or {@link #NO_MATCH} if it can't reach {@code threshold}
+     */
+    public static double adjustedScore(@NonNull char[] text, @NonNull char[] query, double threshold) {
+        if (text.length == 0 || query.length == 0) {
+            return NO_MATCH;
+        }
+
+        double best = score(text, 0, text.length, query, threshold);
+
+        if (hasWordBreak(text)) {
+            int start = 0;
+            for (int i = 0; i <= text.length; i++) {
+                if (i == text.length || isWhitespace(text[i])) {
+                    if (i > start) {
+                        best = Math.max(best, score(text, start, i, query, Math.max(threshold, best)));
+                    }
+                    start = i + 1;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Scores {@code text[start, end)} against {@code query}.
+     *
+     * @return the Jaro-Winkler similarity, or {@link #NO_MATCH} if it can't reach {@code threshold}
+     */
+    public static double score(@NonNull char[] text, int start, int end, @NonNull char[] query, double threshold) {
+        int textLength = end - start;
+        int queryLength = query.length;
+        if (textLength == 0 || queryLength == 0) {
+            return NO_MATCH;
+        }
+
+        int longerLength = Math.max(textLength, queryLength);
+        int shorterLength = Math.min(textLength, queryLength);
+        double minScore = threshold - ROUNDING_MARGIN;
+
+        int prefix = 0;
+        while (prefix < shorterLength && text[start + prefix] == query[prefix]) {
+            prefix++;
+        }
+        double boost = Math.min(SCALING_FACTOR, 1D / longerLength) * prefix;
+
+        // Even if every char of the shorter string matched, without transpositions
+        if (upperBound(shorterLength, textLength, queryLength, boost) < minScore) {
+            return NO_MATCH;
+        }
+
+        // On ties the query is treated as the longer string
+        boolean textIsLonger = textLength > queryLength;
+        char[] longer = textIsLonger ? text : query;
+        int longerStart = textIsLonger ? start : 0;
+        char[] shorter = textIsLonger ? query : text;
+        int shorterStart = textIsLonger ? 0 : start;
+
+        Scratch scratch = JaroWinklerScorer.scratch.get();
+        boolean[] shorterFlags = scratch.shorterFlags(shorterLength);
+        boolean[] longerFlags = scratch.longerFlags(longerLength);
+
+        int range = Math.max(longerLength / 2 - 1, 0);
+        int matches = 0;
+        for (int i = 0; i < shorterLength; i++) {
+            char c = shorter[shorterStart + i];
+            int windowEnd = Math.min(i + range + 1, longerLength);
+            for (int j = Math.max(i - range, 0); j < windowEnd; j++) {
+                if (!longerFlags[j] && c == longer[longerStart + j]) {
+                    shorterFlags[i] = true;
+                    longerFlags[j] = true;
+                    matches++;
+                    break;
+                }
+            }
+            // Every remaining char of the shorter string could still match
+            if (upperBound(matches + shorterLength - i - 1, textLength, queryLength, boost) < minScore) {
+                return NO_MATCH;
+            }
+        }
+
+        if (matches == 0) {
+            return NO_MATCH;
+        }
+
+        int transpositions = 0;
+        for (int i = 0, j = 0; i < shorterLength; i++) {
+            if (shorterFlags[i]) {
+                while (!longerFlags[j]) {
+                    j++;
+                }
+                if (shorter[shorterStart + i] != longer[longerStart + j]) {
+                    transpositions++;
+                }
+                j++;
+            }
+        }
+
+        double m = matches;
+        double jaro = (m / textLength + m / queryLength + (m - transpositions / 2) / m) / 3D;
+        double jaroWinkler = jaro < BOOST_THRESHOLD ? jaro : jaro + boost * (1D - jaro);
+        return Math.round(jaroWinkler * 100.0D) / 100.0D;
+    }
+
+    /**
+     * @return the highest Jaro-Winkler score possible with the given number of matches, assuming no transpositions.
+     */
+    private static double upperBound(int matches, int firstLength, int secondLength, double boost) {
+        if (matches == 0) {
+            return 0D;
+        }
+        double jaro = ((double) matches / firstLength + (double) matches / secondLength + 1D) / 3D;
+        return jaro < BOOST_THRESHOLD ? jaro : jaro + boost * (1D - jaro);
+    }
+
+    /**
+     * Mirrors {@code String.split("\\s").length > 1}: true if any whitespace is followed by a non-whitespace char.
+     */
+    private static boolean hasWordBreak(char[] text) {
+        boolean seenWhitespace = false;
+        for (char c : text) {
+            if (isWhitespace(c)) {
+                seenWhitespace = true;
+            } else if (seenWhitespace) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The regex {@code \s} character class.
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Per-thread match flags, grown on demand and cleared before each use.
+     */
+    private static final class Scratch {
+
+        private boolean[] shorterFlags = new boolean[32];
+
+        private boolean[] longerFlags = new boolean[64];
+
+        boolean[] shorterFlags(int length) {
+            if (shorterFlags.length < length) {
+                shorterFlags = new boolean[Math.max(length, shorterFlags.length * 2)];
+            } else {
+                Arrays.fill(shorterFlags, 0, length, false);
+            }
+            return shorterFlags;
+        }
+
+        boolean[] longerFlags(int length) {
+            if (longerFlags.length < length) {
+                longerFlags = new boolean[Math.max(length, longerFlags.length * 2)];
+            } else {
+                Arrays.fill(longerFlags, 0, length, false);
+            }
+            return longerFlags;
+        }
+    }
+}
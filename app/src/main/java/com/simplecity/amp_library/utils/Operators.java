@@ -4,12 +4,14 @@ import com.annimon.stream.Collectors;
 import com.annimon.stream.Stream;
 import com.simplecity.amp_library.model.Album;
 import com.simplecity.amp_library.model.AlbumArtist;
+import com.simplecity.amp_library.model.Artist;
 import com.simplecity.amp_library.model.Song;
 import com.simplecity.amp_library.utils.sorting.SortManager;
 import io.reactivex.Single;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
@@ -17,65 +19,129 @@ public class Operators {
 
     private static final String TAG = "Operators";
 
-    public static List<Album> songsToAlbums(List<Song> songs) {
+    /**
+     * The albums and album-artists aggregated from a list of songs.
+     */
+    public static final class LibraryAggregate {
 
-        HashMap<Long, Album> albumMap = new HashMap<>();
+        public final List<Album> albums;
 
-        for (Song song : songs) {
+        public final List<AlbumArtist> albumArtists;
 
-            //Create an album representing the album this song belongs to
-            Album album = song.getAlbum();
+        LibraryAggregate(List<Album> albums, List<AlbumArtist> albumArtists) {
+            this.albums = albums;
+            this.albumArtists = albumArtists;
+        }
+    }
 
-            //Now check if there's already an equivalent album in our albumMap
-            Album oldAlbum = albumMap.get(album.id);
+    /**
+     * Per-album bookkeeping, used to de-duplicate artists & paths in constant time while aggregating.
+     */
+    private static final class AlbumState {
+
+        final Album album;
+        final HashSet<Artist> artists = new HashSet<>();
+        final HashSet<String> paths = new HashSet<>();
+
+        AlbumState(Album album) {
+            this.album = album;
+            artists.addAll(album.artists);
+            paths.addAll(album.paths);
+        }
+    }
 
-            if (oldAlbum != null) {
+    /**
+     * Builds the albums and album-artists for the passed in songs in a single pass.
+     * <p>
+     * An album belongs to the album-artist of the first song seen for that album. Sort keys for the resulting albums &
+     * album-artists are computed up front.
+     */
+    public static LibraryAggregate aggregate(List<Song> songs) {
 
-                //Increment the number of songs.
-                oldAlbum.numSongs++;
+        HashMap<Long, AlbumState> albumMap = new HashMap<>();
+        HashMap<String, AlbumArtist> albumArtistMap = new HashMap<>();
 
-                //The number of discs is just the largest disc number for songs
-                oldAlbum.numDiscs = Math.max(song.discNumber, oldAlbum.numDiscs);
+        List<Album> albums = new ArrayList<>();
+        List<AlbumArtist> albumArtists = new ArrayList<>();
 
-                oldAlbum.songPlayCount += song.playCount;
+        for (Song song : songs) {
 
-                //Add any new artists
-                Stream.of(album.artists)
-                        .filter(artist -> !oldAlbum.artists.contains(artist))
-                        .forEach(artist -> oldAlbum.artists.add(artist));
+            AlbumState albumState = albumMap.get(song.albumId);
 
-                //Add new paths
-                Stream.of(album.paths)
-                        .filter(path -> !oldAlbum.paths.contains(path))
-                        .forEach(path -> oldAlbum.paths.add(path));
-            } else {
+            if (albumState == null) {
                 //Couldn't find an existing entry for this album. Add a new one.
-                albumMap.put(album.id, album);
+                Album album = song.getAlbum();
+                albumMap.put(album.id, new AlbumState(album));
+                albums.add(album);
+
+                //Add the album to its album-artist
+                AlbumArtist albumArtist = albumArtistMap.get(album.albumArtistName);
+                if (albumArtist == null) {
+                    albumArtist = new AlbumArtist(album.albumArtistName, new ArrayList<>());
+                    albumArtistMap.put(album.albumArtistName, albumArtist);
+                    albumArtists.add(albumArtist);
+                }
+                albumArtist.albums.add(album);
+                continue;
+            }
+
+            Album album = albumState.album;
+
+            //Increment the number of songs.
+            album.numSongs++;
+
+            //The number of discs is just the largest disc number for songs
+            album.numDiscs = Math.max(song.discNumber, album.numDiscs);
+
+            album.songPlayCount += song.playCount;
+
+            //Add any new artists
+            Artist artist = new Artist(song.artistId, song.artistName);
+            if (albumState.artists.add(artist)) {
+                album.artists.add(artist);
             }
+
+            //Add new paths
+            if (albumState.paths.add(song.path)) {
+                album.paths.add(song.path);
+            }
+        }
+
+        for (Album album : albums) {
+            album.computeSortKeys();
+        }
+        for (AlbumArtist albumArtist : albumArtists) {
+            albumArtist.computeSortKeys();
         }
 
-        return new ArrayList<>(albumMap.values());
+        return new LibraryAggregate(albums, albumArtists);
+    }
+
+    public static List<Album> songsToAlbums(List<Song> songs) {
+        return aggregate(songs).albums;
     }
 
     public static List<AlbumArtist> albumsToAlbumArtists(List<Album> albums) {
 
         HashMap<String, AlbumArtist> albumArtistMap = new HashMap<>();
+        HashMap<String, HashSet<Album>> albumSetMap = new HashMap<>();
 
         for (Album album : albums) {
 
-            //Create an album-artist representing the album-artist this album belongs to
-            AlbumArtist albumArtist = album.getAlbumArtist();
-
             //Check if there's already an equivalent album-artist in our albumArtistMap
-            AlbumArtist oldAlbumArtist = albumArtistMap.get(albumArtist.name);
+            AlbumArtist oldAlbumArtist = albumArtistMap.get(album.albumArtistName);
             if (oldAlbumArtist != null) {
 
                 //Add this album to the album artist's albums
-                if (!oldAlbumArtist.albums.contains(album)) {
+                if (albumSetMap.get(album.albumArtistName).add(album)) {
                     oldAlbumArtist.albums.add(album);
                 }
             } else {
-                albumArtistMap.put(albumArtist.name, albumArtist);
+                //Create an album-artist representing the album-artist this album belongs to
+                albumArtistMap.put(album.albumArtistName, album.getAlbumArtist());
+                HashSet<Album> albumSet = new HashSet<>();
+                albumSet.add(album);
+                albumSetMap.put(album.albumArtistName, albumSet);
             }
         }
 
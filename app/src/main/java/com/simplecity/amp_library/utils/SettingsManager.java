@@ -45,6 +45,7 @@ public class SettingsManager extends BaseSettingsManager {
     // Artwork
     public static String KEY_PREF_DOWNLOAD_ARTWORK = "pref_download_artwork";
     public static String KEY_PREF_DELETE_ARTWORK = "pref_delete_artwork";
+    public static String KEY_PREF_ARTWORK_CACHE_SIZE = "pref_artwork_cache_size";
 
     // Scrobbler
     public static String KEY_PREF_DOWNLOAD_SCROBBLER = "pref_download_simple_lastfm_scrobbler";
@@ -361,6 +362,19 @@ public class SettingsManager extends BaseSettingsManager {
         return getBool(KEY_IGNORE_EMBEDDED_ARTWORK, false);
     }
 
+    private static final String KEY_ARTWORK_CACHE_SIZE_MB = "artwork_cache_size_mb";
+
+    /**
+     * @return the size budget (MB) for artwork thumbnails.
+     */
+    public int getArtworkCacheSizeMb() {
+        return getInt(KEY_ARTWORK_CACHE_SIZE_MB, 100);
+    }
+
+    public void setArtworkCacheSizeMb(int sizeMb) {
+        setInt(KEY_ARTWORK_CACHE_SIZE_MB, sizeMb);
+    }
+
     private static final String KEY_PLAYLIST_IGNORE_DUPLICATES = "pref_ignore_duplicates";
 
     public boolean ignoreDuplicates() {
@@ -5,7 +5,6 @@ import android.app.Activity;
 import android.app.AlertDialog;
 import android.content.ContentResolver;
 import android.content.ContentUris;
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
@@ -22,7 +21,6 @@ import android.provider.BaseColumns;
 import android.provider.MediaStore;
 import android.provider.Settings;
 import android.support.annotation.NonNull;
-import android.util.Log;
 import android.widget.Toast;
 import com.annimon.stream.Stream;
 import com.simplecity.amp_library.BuildConfig;
@@ -34,7 +32,6 @@ import com.simplecity.amp_library.model.BaseFileObject;
 import com.simplecity.amp_library.model.Query;
 import com.simplecity.amp_library.model.Song;
 import com.simplecity.amp_library.sql.SqlUtils;
-import com.simplecity.amp_library.sql.providers.PlayCountTable;
 import io.reactivex.Observable;
 import io.reactivex.Single;
 import io.reactivex.android.schedulers.AndroidSchedulers;
@@ -179,26 +176,6 @@ public final class ShuttleUtils {
                 }).toSingle();
     }
 
-    public static void incrementPlayCount(Context context, Song song) {
-
-        if (song == null) {
-            return;
-        }
-
-        ContentValues values = new ContentValues();
-        values.put(PlayCountTable.COLUMN_ID, song.id);
-        values.put(PlayCountTable.COLUMN_PLAY_COUNT, song.getPlayCount(context) + 1);
-        values.put(PlayCountTable.COLUMN_TIME_PLAYED, System.currentTimeMillis());
-
-        try {
-            if (context.getContentResolver().update(PlayCountTable.URI, values, PlayCountTable.COLUMN_ID + " ='" + song.id + "'", null) < 1) {
-                context.getContentResolver().insert(PlayCountTable.URI, values);
-            }
-        } catch (IllegalArgumentException e) {
-            Log.e(TAG, "Failed to increment play count: " + e.toString());
-        }
-    }
-
     public static String getIpAddr(Context context) {
         @SuppressLint("WifiManagerLeak")
         int i = ((WifiManager) context.getSystemService(Context.WIFI_SERVICE)).getConnectionInfo().getIpAddress();
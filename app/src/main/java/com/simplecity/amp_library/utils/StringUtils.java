@@ -6,8 +6,6 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.text.TextUtils;
 import com.simplecity.amp_library.R;
-import java.text.Normalizer;
-import java.util.Arrays;
 import java.util.Formatter;
 import java.util.Locale;
 import java.util.regex.Pattern;
@@ -206,168 +204,6 @@ public class StringUtils {
         return s1.toLowerCase().contains(s2.toLowerCase());
     }
 
-    /**
-     * Find the Jaro Winkler Similarity which indicates the similarity score between two Strings.
-     * <p>
-     * Note: This method splits the {@param first} string at whitespaces, and returns the best Jaro-Winkler
-     * score between {@param second} and the 'split' strings.
-     */
-    public static double getAdjustedJaroWinklerSimilarity(@Nullable String first, @Nullable String second) {
-
-        if (TextUtils.isEmpty(first) || TextUtils.isEmpty(second)) {
-            return 0;
-        }
-
-        String[] split = first.split("\\s");
-        if (split.length > 1) {
-            double score = 0;
-            for (String str : split) {
-                double curScore = getJaroWinklerSimilarity(str, second);
-                if (curScore > score) {
-                    score = curScore;
-                }
-            }
-            //Make sure we do a normal (non-adjusted) test as well, in case that comes out as our best match.
-            return Math.max(getJaroWinklerSimilarity(first, second), score);
-        } else {
-            return getJaroWinklerSimilarity(first, second);
-        }
-    }
-
-    /**
-     * <p>Find the Jaro Winkler Similarity which indicates the similarity score between two Strings.</p>
-     * <p>
-     * <p>The Jaro measure is the weighted sum of percentage of matched characters from each file and transposed characters.
-     * Winkler increased this measure for matching initial characters.</p>
-     * <p>
-     * <p>This implementation is based on the Jaro Winkler similarity algorithm
-     * from <a href="http://en.wikipedia.org/wiki/Jaro%E2%80%93Winkler_distance">http://en.wikipedia.org/wiki/Jaro%E2%80%93Winkler_distance</a>.</p>
-     * <p>
-     *
-     * @param first the first String, must not be null
-     * @param second the second String, must not be null
-     * @return result similarity
-     */
-    public static double getJaroWinklerSimilarity(@NonNull String first, @NonNull String second) {
-
-        final double DEFAULT_SCALING_FACTOR = 0.1;
-
-        first = first.toLowerCase();
-        second = second.toLowerCase();
-        first = Normalizer.normalize(first, Normalizer.Form.NFD);
-        second = Normalizer.normalize(second, Normalizer.Form.NFD);
-
-        final int[] mtp = matches(first, second);
-        final double m = mtp[0];
-        if (m == 0) {
-            return 0D;
-        }
-        final double j = ((m / first.length() + m / second.length() + (m - mtp[1]) / m)) / 3;
-        final double jw = j < 0.7D ? j : j + Math.min(DEFAULT_SCALING_FACTOR, 1D / mtp[3]) * mtp[2] * (1D - j);
-        return Math.round(jw * 100.0D) / 100.0D;
-    }
-
-    private static int[] matches(final CharSequence first, final CharSequence second) {
-        // Determine which string is longer
-        CharSequence longer = first.length() > second.length() ? first : second;
-        CharSequence shorter = first.length() > second.length() ? second : first;
-        
-        // Find matches within range
-        int[] matchResults = findMatches(longer, shorter);
-        int matches = matchResults[0];
-        int[] matchIndexes = (int[]) matchResults[1];
-        boolean[] matchFlags = (boolean[]) matchResults[2];
-        
-        if (matches == 0) {
-            return new int[] { 0, 0, 0, longer.length() };
-        }
-        
-        // Get matched characters
-        char[] matchedShorter = getMatchedCharacters(shorter, matchIndexes, matches);
-        char[] matchedLonger = getMatchedCharacters(longer, matchFlags, matches);
-        
-        // Count transpositions
-        int transpositions = countTranspositions(matchedShorter, matchedLonger);
-        
-        // Count matching prefix
-        int prefix = countMatchingPrefix(first, second);
-        
-        return new int[] { matches, transpositions / 2, prefix, longer.length() };
-    }
-    
-    private static int[] findMatches(CharSequence longer, CharSequence shorter) {
-        int range = Math.max(longer.length() / 2 - 1, 0);
-        int[] matchIndexes = new int[shorter.length()];
-        Arrays.fill(matchIndexes, -1);
-        boolean[] matchFlags = new boolean[longer.length()];
-        int matches = 0;
-        
-        for (int i = 0; i < shorter.length(); i++) {
-            char shorterChar = shorter.charAt(i);
-            int start = Math.max(i - range, 0);
-            int end = Math.min(i + range + 1, longer.length());
-            
-            for (int j = start; j < end; j++) {
-                if (!matchFlags[j] && shorterChar == longer.charAt(j)) {
-                    matchIndexes[i] = j;
-                    matchFlags[j] = true;
-                    matches++;
-                    break;
-                }
-            }
-        }
-        
-        return new int[] { matches, matchIndexes, matchFlags };
-    }
-    
-    private static char[] getMatchedCharacters(CharSequence source, Object matchData, int matches) {
-        char[] result = new char[matches];
-        int resultIndex = 0;
-        
-        if (matchData instanceof int[]) {
-            int[] matchIndexes = (int[]) matchData;
-            for (int i = 0; i < source.length(); i++) {
-                if (matchIndexes[i] != -1) {
-                    result[resultIndex++] = source.charAt(i);
-                }
-            }
-        } else if (matchData instanceof boolean[]) {
-            boolean[] matchFlags = (boolean[]) matchData;
-            for (int i = 0; i < source.length(); i++) {
-                if (matchFlags[i]) {
-                    result[resultIndex++] = source.charAt(i);
-                }
-            }
-        }
-        
-        return result;
-    }
-    
-    private static int countTranspositions(char[] str1, char[] str2) {
-        int transpositions = 0;
-        for (int i = 0; i < str1.length; i++) {
-            if (str1[i] != str2[i]) {
-                transpositions++;
-            }
-        }
-        return transpositions;
-    }
-    
-    private static int countMatchingPrefix(CharSequence str1, CharSequence str2) {
-        int prefix = 0;
-        int minLength = Math.min(str1.length(), str2.length());
-        
-        for (int i = 0; i < minLength; i++) {
-            if (str1.charAt(i) == str2.charAt(i)) {
-                prefix++;
-            } else {
-                break;
-            }
-        }
-        
-        return prefix;
-    }
-
     public static int parseInt(@Nullable String string) {
         if (string != null) {
             try {
@@ -3,15 +3,11 @@ package com.simplecity.amp_library.utils.extensions
 import com.simplecity.amp_library.data.Repository.SongsRepository
 import com.simplecity.amp_library.model.AlbumArtist
 import com.simplecity.amp_library.model.Song
-import com.simplecity.amp_library.utils.ComparisonUtils
+import com.simplecity.amp_library.utils.sorting.Comparators
 import io.reactivex.Single
-import java.util.Comparator
 
 private fun List<Song>.sortSongs(): List<Song> {
-    return sortedWith(Comparator { a, b -> ComparisonUtils.compareInt(b.year, a.year) })
-        .sortedWith(Comparator { a, b -> ComparisonUtils.compareInt(a.track, b.track) })
-        .sortedWith(Comparator { a, b -> ComparisonUtils.compareInt(a.discNumber, b.discNumber) })
-        .sortedWith(Comparator { a, b -> ComparisonUtils.compare(a.albumName, b.albumName) })
+    return sortedWith(Comparators.SONG_ALBUM_ARTIST_TRACKS)
 }
 
 fun AlbumArtist.getSongs(songsRepository: SongsRepository): Single<List<Song>> {
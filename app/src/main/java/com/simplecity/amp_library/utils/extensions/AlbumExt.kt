@@ -4,18 +4,13 @@ import com.simplecity.amp_library.data.Repository
 import com.simplecity.amp_library.data.Repository.SongsRepository
 import com.simplecity.amp_library.model.Album
 import com.simplecity.amp_library.model.Song
-import com.simplecity.amp_library.utils.ComparisonUtils
+import com.simplecity.amp_library.utils.sorting.Comparators
 import io.reactivex.Single
 
 fun Album.getSongsSingle(songsRepository: Repository.SongsRepository): Single<List<Song>> {
     return songsRepository.getSongs(this)
         .first(emptyList())
-        .map { songs ->
-            songs
-                .sortedWith(Comparator { a, b -> ComparisonUtils.compareInt(b.year, a.year) })
-                .sortedWith(Comparator { a, b -> ComparisonUtils.compareInt(a.track, b.track) })
-                .sortedWith(Comparator { a, b -> ComparisonUtils.compareInt(a.discNumber, b.discNumber) })
-        }
+        .map { songs -> songs.sortedWith(Comparators.SONG_ALBUM_TRACKS) }
 }
 
 fun List<Album>.getSongs(songsRepository: SongsRepository): Single<List<Song>> {
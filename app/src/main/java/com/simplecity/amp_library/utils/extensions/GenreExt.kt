@@ -5,25 +5,17 @@ import android.provider.MediaStore
 import com.simplecity.amp_library.model.Genre
 import com.simplecity.amp_library.model.Song
 import com.simplecity.amp_library.sql.sqlbrite.SqlBriteUtils
-import com.simplecity.amp_library.utils.ComparisonUtils
+import com.simplecity.amp_library.utils.sorting.Comparators
 import io.reactivex.Single
-import java.util.Comparator
 
 fun Genre.getSongsObservable(context: Context): Single<List<Song>> {
     val query = Song.getQuery()
     query.uri = MediaStore.Audio.Genres.Members.getContentUri("external", id)
 
-    return SqlBriteUtils.createSingleList(context, { Song(it) }, query)
+    return SqlBriteUtils.createSingleList(context, Song.mapper(), query)
 }
 
 fun Genre.getSongs(context: Context): Single<List<Song>> {
     return getSongsObservable(context)
-        .map { songs ->
-            songs
-                .sortedWith(Comparator { a, b -> ComparisonUtils.compareInt(b.year, a.year) })
-                .sortedWith(Comparator { a, b -> ComparisonUtils.compareInt(a.track, b.track) })
-                .sortedWith(Comparator { a, b -> ComparisonUtils.compareInt(a.discNumber, b.discNumber) })
-                .sortedWith(Comparator { a, b -> ComparisonUtils.compare(a.albumName, b.albumName) })
-                .sortedWith(Comparator { a, b -> ComparisonUtils.compare(a.albumArtistName, b.albumArtistName) })
-        }
+        .map { songs -> songs.sortedWith(Comparators.SONG_GENRE) }
 }
\ No newline at end of file
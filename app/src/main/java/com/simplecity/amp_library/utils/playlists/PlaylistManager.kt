@@ -47,6 +47,11 @@ class PlaylistManager @Inject constructor(
             const val MOST_PLAYED_PLAYLIST: Long = -3
             const val PODCASTS_PLAYLIST: Long = -4
             const val RECENTLY_PLAYED_PLAYLIST: Long = -5
+
+            /**
+             * Smart playlist ids count down from here. See [com.simplecity.amp_library.data.SmartPlaylist.playlistId].
+             */
+            const val SMART_PLAYLISTS: Long = -1000
         }
     }
 
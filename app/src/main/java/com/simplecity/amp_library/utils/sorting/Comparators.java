@@ -0,0 +1,114 @@
+package com.simplecity.amp_library.utils.sorting;
+
+import com.simplecity.amp_library.model.Album;
+import com.simplecity.amp_library.model.AlbumArtist;
+import com.simplecity.amp_library.model.Song;
+import com.simplecity.amp_library.utils.ComparisonUtils;
+import java.util.Comparator;
+
+/**
+ * Composite comparators for library models. Each comparator orders by its primary key first, falling through to
+ * secondary keys on ties, so a list is sorted in a single pass.
+ * <p>
+ * String keys are compared via the models' precomputed collation keys (byte arrays), rather than via a Collator.
+ */
+public final class Comparators {
+
+    private Comparators() {
+
+    }
+
+    // Songs
+
+    public static final Comparator<Song> SONG_DEFAULT = Song::compareTo;
+
+    public static final Comparator<Song> SONG_NAME = (a, b) -> ComparisonUtils.compare(a.getNameCollationKey(), b.getNameCollationKey());
+
+    public static final Comparator<Song> SONG_DISC_TRACK = (a, b) -> {
+        int result = ComparisonUtils.compareInt(a.discNumber, b.discNumber);
+        if (result != 0) return result;
+        return ComparisonUtils.compareInt(a.track, b.track);
+    };
+
+    public static final Comparator<Song> SONG_DURATION = (a, b) -> ComparisonUtils.compareLong(a.duration, b.duration);
+
+    public static final Comparator<Song> SONG_DATE_ADDED_DESC = (a, b) -> ComparisonUtils.compareInt(b.dateAdded, a.dateAdded);
+
+    public static final Comparator<Song> SONG_YEAR_DESC = (a, b) -> ComparisonUtils.compareInt(b.year, a.year);
+
+    private static final Comparator<Song> SONG_ALBUM_NAME = (a, b) -> ComparisonUtils.compare(a.getAlbumNameCollationKey(), b.getAlbumNameCollationKey());
+
+    private static final Comparator<Song> SONG_ALBUM_ARTIST_NAME = (a, b) -> ComparisonUtils.compare(a.getAlbumArtistNameCollationKey(), b.getAlbumArtistNameCollationKey());
+
+    /**
+     * Year (descending), then song sort key, album name & album-artist name.
+     */
+    public static final Comparator<Song> SONG_YEAR = chain(SONG_YEAR_DESC, SONG_DEFAULT, SONG_ALBUM_NAME, SONG_ALBUM_ARTIST_NAME);
+
+    /**
+     * Album name, then disc & track number, then album-artist name.
+     */
+    public static final Comparator<Song> SONG_ALBUM = chain(SONG_ALBUM_NAME, SONG_DISC_TRACK, SONG_ALBUM_ARTIST_NAME);
+
+    /**
+     * Album-artist name, then disc & track number, then album name.
+     */
+    public static final Comparator<Song> SONG_ARTIST = chain(SONG_ALBUM_ARTIST_NAME, SONG_DISC_TRACK, SONG_ALBUM_NAME);
+
+    /**
+     * Disc & track number, then year (descending). Used for the songs of a single album.
+     */
+    public static final Comparator<Song> SONG_ALBUM_TRACKS = chain(SONG_DISC_TRACK, SONG_YEAR_DESC);
+
+    /**
+     * Album name, disc & track number, then year (descending). Used for the songs of a single album-artist.
+     */
+    public static final Comparator<Song> SONG_ALBUM_ARTIST_TRACKS = chain(SONG_ALBUM_NAME, SONG_DISC_TRACK, SONG_YEAR_DESC);
+
+    /**
+     * Album name, disc & track number, year (descending), then album-artist name.
+     */
+    public static final Comparator<Song> SONG_DETAIL_DEFAULT = chain(SONG_ALBUM_NAME, SONG_DISC_TRACK, SONG_YEAR_DESC, SONG_ALBUM_ARTIST_NAME);
+
+    /**
+     * Album-artist name, album name, disc & track number, then year (descending).
+     */
+    public static final Comparator<Song> SONG_GENRE = chain(SONG_ALBUM_ARTIST_NAME, SONG_ALBUM_NAME, SONG_DISC_TRACK, SONG_YEAR_DESC);
+
+    /**
+     * Date added (descending), then in {@link #SONG_DETAIL_DEFAULT} order.
+     */
+    public static final Comparator<Song> SONG_RECENTLY_ADDED = chain(SONG_DATE_ADDED_DESC, SONG_DETAIL_DEFAULT);
+
+    // Albums
+
+    public static final Comparator<Album> ALBUM_DEFAULT = Album::compareTo;
+
+    public static final Comparator<Album> ALBUM_NAME = (a, b) -> ComparisonUtils.compare(a.getNameCollationKey(), b.getNameCollationKey());
+
+    public static final Comparator<Album> ALBUM_YEAR_DESC = (a, b) -> ComparisonUtils.compareInt(b.year, a.year);
+
+    public static final Comparator<Album> ALBUM_ARTIST_NAME = (a, b) -> ComparisonUtils.compare(a.getAlbumArtistNameCollationKey(), b.getAlbumArtistNameCollationKey());
+
+    // Album artists
+
+    public static final Comparator<AlbumArtist> ARTIST_DEFAULT = AlbumArtist::compareTo;
+
+    public static final Comparator<AlbumArtist> ARTIST_NAME = (a, b) -> ComparisonUtils.compare(a.getNameCollationKey(), b.getNameCollationKey());
+
+    /**
+     * @return a comparator which consults each of the passed in comparators in turn, until one of them returns non-zero.
+     */
+    @SafeVarargs
+    public static <T> Comparator<T> chain(Comparator<? super T>... comparators) {
+        return (a, b) -> {
+            for (Comparator<? super T> comparator : comparators) {
+                int result = comparator.compare(a, b);
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return 0;
+        };
+    }
+}
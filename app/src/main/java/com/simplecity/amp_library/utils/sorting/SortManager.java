@@ -7,7 +7,6 @@ import com.simplecity.amp_library.model.Album;
 import com.simplecity.amp_library.model.AlbumArtist;
 import com.simplecity.amp_library.model.Playlist;
 import com.simplecity.amp_library.model.Song;
-import com.simplecity.amp_library.utils.ComparisonUtils;
 import java.util.Collections;
 import java.util.List;
 import javax.inject.Inject;
@@ -276,17 +275,16 @@ public class SortManager {
     public void sortAlbums(List<Album> albums, int key) {
         switch (key) {
             case AlbumSort.DEFAULT:
-                Collections.sort(albums, Album::compareTo);
+                Collections.sort(albums, Comparators.ALBUM_DEFAULT);
                 break;
             case AlbumSort.NAME:
-                Collections.sort(albums, (a, b) -> ComparisonUtils.compare(a.name, b.name));
-                Collections.sort(albums, (a, b) -> ComparisonUtils.compare(a.name, b.name));
+                Collections.sort(albums, Comparators.ALBUM_NAME);
                 break;
             case AlbumSort.YEAR:
-                Collections.sort(albums, (a, b) -> ComparisonUtils.compareInt(b.year, a.year));
+                Collections.sort(albums, Comparators.ALBUM_YEAR_DESC);
                 break;
             case AlbumSort.ARTIST_NAME:
-                Collections.sort(albums, (a, b) -> ComparisonUtils.compare(a.albumArtistName, b.albumArtistName));
+                Collections.sort(albums, Comparators.ALBUM_ARTIST_NAME);
                 break;
         }
     }
@@ -298,45 +296,31 @@ public class SortManager {
     public void sortSongs(List<Song> songs, @SongSort int key) {
         switch (key) {
             case SongSort.DEFAULT:
-                Collections.sort(songs, Song::compareTo);
+                Collections.sort(songs, Comparators.SONG_DEFAULT);
                 break;
             case SongSort.NAME:
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compare(a.name, b.name));
+                Collections.sort(songs, Comparators.SONG_NAME);
                 break;
             case SongSort.TRACK_NUMBER:
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compareInt(a.track, b.track));
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compareInt(a.discNumber, b.discNumber));
+                Collections.sort(songs, Comparators.SONG_DISC_TRACK);
                 break;
             case SongSort.DURATION:
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compareLong(a.duration, b.duration));
+                Collections.sort(songs, Comparators.SONG_DURATION);
                 break;
             case SongSort.DATE:
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compareInt(b.dateAdded, a.dateAdded));
+                Collections.sort(songs, Comparators.SONG_DATE_ADDED_DESC);
                 break;
             case SongSort.YEAR:
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compare(a.albumArtistName, b.albumArtistName));
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compare(a.albumName, b.albumName));
-                Collections.sort(songs, Song::compareTo);
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compareInt(b.year, a.year));
+                Collections.sort(songs, Comparators.SONG_YEAR);
                 break;
             case SongSort.ALBUM_NAME:
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compare(a.albumArtistName, b.albumArtistName));
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compareInt(a.track, b.track));
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compareInt(a.discNumber, b.discNumber));
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compare(a.albumName, b.albumName));
+                Collections.sort(songs, Comparators.SONG_ALBUM);
                 break;
             case SongSort.ARTIST_NAME:
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compare(a.albumName, b.albumName));
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compareInt(a.track, b.track));
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compareInt(a.discNumber, b.discNumber));
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compare(a.albumArtistName, b.albumArtistName));
+                Collections.sort(songs, Comparators.SONG_ARTIST);
                 break;
             case SongSort.DETAIL_DEFAULT:
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compare(a.albumArtistName, b.albumArtistName));
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compareInt(b.year, a.year));
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compareInt(a.track, b.track));
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compareInt(a.discNumber, b.discNumber));
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compare(a.albumName, b.albumName));
+                Collections.sort(songs, Comparators.SONG_DETAIL_DEFAULT);
                 break;
         }
     }
@@ -345,11 +329,11 @@ public class SortManager {
         int sortOrder = mPrefs.getInt(Key.ARTISTS, ArtistSort.DEFAULT);
         switch (sortOrder) {
             case ArtistSort.DEFAULT:
-                Collections.sort(albumArtists, AlbumArtist::compareTo);
+                Collections.sort(albumArtists, Comparators.ARTIST_DEFAULT);
                 break;
             case ArtistSort.NAME:
-                Collections.sort(albumArtists, (a, b) -> ComparisonUtils.compare(a.name, b.name));
+                Collections.sort(albumArtists, Comparators.ARTIST_NAME);
                 break;
         }
     }
-}
\ No newline at end of file
+}
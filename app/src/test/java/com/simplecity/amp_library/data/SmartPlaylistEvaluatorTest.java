@@ -0,0 +1,232 @@
+package com.simplecity.amp_library.data;
+
+import com.simplecity.amp_library.model.Song;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Runs under Robolectric, as building a {@link LibrarySnapshot} computes the songs' sort keys.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class SmartPlaylistEvaluatorTest {
+
+    private static final SmartPlaylistRule RULE = SmartPlaylistRule.parse("year > 2000 AND playCount >= 3 ORDER BY playCount DESC");
+
+    private static final Map<String, Set<Long>> NO_GENRES = Collections.emptyMap();
+
+    @Test
+    public void firstEvaluationMatchesTheWholeLibrary() {
+        List<Song> songs = songs(2001, 1999, 2005, 2010);
+        Map<Long, PlayStats> playStats = playStats(3, 5, 4, 1);
+
+        List<Song> result = new SmartPlaylistEvaluator(RULE).evaluate(new LibrarySnapshot(songs), playStats, NO_GENRES);
+
+        // Song 1 (2001, 3 plays) & song 3 (2005, 4 plays), most played first
+        assertEquals(ids(3, 1), ids(result));
+    }
+
+    @Test
+    public void unchangedInputsReturnThePreviousResult() {
+        SmartPlaylistEvaluator evaluator = new SmartPlaylistEvaluator(RULE);
+        List<Song> songs = songs(2001, 1999, 2005, 2010);
+        Map<Long, PlayStats> playStats = playStats(3, 5, 4, 1);
+        LibrarySnapshot snapshot = new LibrarySnapshot(songs);
+
+        List<Song> result = evaluator.evaluate(snapshot, playStats, NO_GENRES);
+
+        assertSame(result, evaluator.evaluate(snapshot, playStats, NO_GENRES));
+        // A new snapshot & play stats, holding the same song instances & stats
+        assertSame(result, evaluator.evaluate(new LibrarySnapshot(new ArrayList<>(songs)), new HashMap<>(playStats), NO_GENRES));
+    }
+
+    @Test
+    public void changesToNonMatchingSongsReturnThePreviousResult() {
+        SmartPlaylistEvaluator evaluator = new SmartPlaylistEvaluator(RULE);
+        List<Song> songs = songs(2001, 1999, 2005, 2010);
+        Map<Long, PlayStats> playStats = playStats(3, 5, 4, 1);
+
+        List<Song> result = evaluator.evaluate(new LibrarySnapshot(songs), playStats, NO_GENRES);
+
+        // Song 2 is re-read (still too old), and song 4 is played again (still not played enough)
+        List<Song> changedSongs = new ArrayList<>(songs);
+        changedSongs.set(1, song(2, 1998));
+        Map<Long, PlayStats> changedPlayStats = new HashMap<>(playStats);
+        changedPlayStats.put(4L, new PlayStats(2, 1000));
+
+        assertSame(result, evaluator.evaluate(new LibrarySnapshot(changedSongs), changedPlayStats, NO_GENRES));
+    }
+
+    @Test
+    public void changedSongsAreRetested() {
+        SmartPlaylistEvaluator evaluator = new SmartPlaylistEvaluator(RULE);
+        List<Song> songs = songs(2001, 1999, 2005, 2010);
+        Map<Long, PlayStats> playStats = playStats(3, 5, 4, 1);
+
+        List<Song> result = evaluator.evaluate(new LibrarySnapshot(songs), playStats, NO_GENRES);
+
+        // Song 2's year is corrected, so it now matches. Song 1's year is corrected, so it no longer does.
+        List<Song> changedSongs = new ArrayList<>(songs);
+        changedSongs.set(0, song(1, 1990));
+        changedSongs.set(1, song(2, 2002));
+
+        List<Song> changedResult = evaluator.evaluate(new LibrarySnapshot(changedSongs), playStats, NO_GENRES);
+
+        assertNotSame(result, changedResult);
+        assertEquals(ids(2, 3), ids(changedResult));
+        assertSame(changedSongs.get(1), changedResult.get(0));
+    }
+
+    @Test
+    public void changedPlayStatsAreRetested() {
+        SmartPlaylistEvaluator evaluator = new SmartPlaylistEvaluator(RULE);
+        List<Song> songs = songs(2001, 1999, 2005, 2010);
+        LibrarySnapshot snapshot = new LibrarySnapshot(songs);
+
+        evaluator.evaluate(snapshot, playStats(3, 5, 4, 1), NO_GENRES);
+
+        // Song 4 reaches 3 plays, and song 1 overtakes song 3
+        assertEquals(ids(1, 3, 4), ids(evaluator.evaluate(snapshot, playStats(6, 5, 4, 3), NO_GENRES)));
+    }
+
+    @Test
+    public void removedSongsAreDropped() {
+        SmartPlaylistEvaluator evaluator = new SmartPlaylistEvaluator(RULE);
+        List<Song> songs = songs(2001, 1999, 2005, 2010);
+        Map<Long, PlayStats> playStats = playStats(3, 5, 4, 1);
+
+        evaluator.evaluate(new LibrarySnapshot(songs), playStats, NO_GENRES);
+
+        List<Song> changedSongs = new ArrayList<>(songs);
+        changedSongs.remove(2);
+
+        assertEquals(ids(1), ids(evaluator.evaluate(new LibrarySnapshot(changedSongs), playStats, NO_GENRES)));
+    }
+
+    @Test
+    public void genreMembershipChangesReevaluateEverySong() {
+        SmartPlaylistEvaluator evaluator = new SmartPlaylistEvaluator(SmartPlaylistRule.parse("genre = Jazz"));
+        LibrarySnapshot snapshot = new LibrarySnapshot(songs(2001, 1999, 2005, 2010));
+        Map<Long, PlayStats> playStats = playStats(0, 0, 0, 0);
+
+        assertEquals(ids(1, 2), ids(evaluator.evaluate(snapshot, playStats, genres("jazz", 1, 2))));
+        // The songs & play stats are unchanged, only the genre's members
+        assertEquals(ids(2, 4), ids(evaluator.evaluate(snapshot, playStats, genres("jazz", 2, 4))));
+        // A genre the rule doesn't reference
+        List<Song> result = evaluator.evaluate(snapshot, playStats, genres("jazz", 2, 4));
+        Map<String, Set<Long>> unreferenced = new HashMap<>(genres("jazz", 2, 4));
+        unreferenced.put("rock", Collections.singleton(1L));
+        assertSame(result, evaluator.evaluate(snapshot, playStats, unreferenced));
+    }
+
+    @Test
+    public void incrementalEvaluationMatchesFullEvaluation() {
+        Random random = new Random(42);
+        SmartPlaylistEvaluator evaluator = new SmartPlaylistEvaluator(RULE);
+
+        List<Song> songs = new ArrayList<>();
+        Map<Long, PlayStats> playStats = new HashMap<>();
+        for (long id = 1; id <= 200; id++) {
+            songs.add(song(id, 1990 + random.nextInt(30)));
+            playStats.put(id, new PlayStats(random.nextInt(6), 0));
+        }
+
+        for (int round = 0; round < 50; round++) {
+            songs = new ArrayList<>(songs);
+            playStats = new HashMap<>(playStats);
+            for (int i = 0; i < 5; i++) {
+                int index = random.nextInt(songs.size());
+                long id = songs.get(index).id;
+                switch (random.nextInt(3)) {
+                    case 0:
+                        songs.set(index, song(id, 1990 + random.nextInt(30)));
+                        break;
+                    case 1:
+                        playStats.put(id, new PlayStats(random.nextInt(6), 0));
+                        break;
+                    default:
+                        songs.remove(index);
+                        break;
+                }
+            }
+            LibrarySnapshot snapshot = new LibrarySnapshot(songs);
+
+            List<Song> incremental = evaluator.evaluate(snapshot, playStats, NO_GENRES);
+            List<Song> full = new SmartPlaylistEvaluator(RULE).evaluate(snapshot, playStats, NO_GENRES);
+
+            assertEquals("Round " + round, ids(full), ids(incremental));
+        }
+    }
+
+    /**
+     * @return a song for each year, with ids counting up from 1.
+     */
+    private static List<Song> songs(int... years) {
+        List<Song> songs = new ArrayList<>(years.length);
+        for (int i = 0; i < years.length; i++) {
+            songs.add(song(i + 1, years[i]));
+        }
+        return songs;
+    }
+
+    private static Song song(long id, int year) {
+        Song song = new Song();
+        song.id = id;
+        song.name = "Song " + id;
+        song.albumId = id;
+        song.albumName = "Album " + id;
+        song.albumArtistName = "Artist";
+        song.path = "/music/" + id + ".mp3";
+        song.year = year;
+        return song;
+    }
+
+    /**
+     * @return play stats with the given play counts, for the songs with ids counting up from 1.
+     */
+    private static Map<Long, PlayStats> playStats(int... playCounts) {
+        Map<Long, PlayStats> playStats = new HashMap<>();
+        for (int i = 0; i < playCounts.length; i++) {
+            playStats.put((long) i + 1, new PlayStats(playCounts[i], 0));
+        }
+        return playStats;
+    }
+
+    private static Map<String, Set<Long>> genres(String genre, long... songIds) {
+        Set<Long> members = new HashSet<>();
+        for (long songId : songIds) {
+            members.add(songId);
+        }
+        return Collections.singletonMap(genre, members);
+    }
+
+    private static List<Long> ids(long... ids) {
+        List<Long> list = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            list.add(id);
+        }
+        return list;
+    }
+
+    private static List<Long> ids(List<Song> songs) {
+        List<Long> ids = new ArrayList<>(songs.size());
+        for (Song song : songs) {
+            ids.add(song.id);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,249 @@
+package com.simplecity.amp_library.data;
+
+import com.simplecity.amp_library.model.Song;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SmartPlaylistRuleTest {
+
+    private static final PlayStats NO_STATS = new PlayStats(0, 0);
+
+    private static final Map<String, Set<Long>> NO_GENRES = Collections.emptyMap();
+
+    @Test
+    public void parsesConditionsOrderAndLimit() {
+        SmartPlaylistRule rule = SmartPlaylistRule.parse("genre = Jazz AND year > 2000 AND playCount >= 3 ORDER BY lastPlayed DESC LIMIT 200");
+
+        assertEquals("genre = Jazz AND year > 2000 AND playCount >= 3 ORDER BY lastPlayed DESC LIMIT 200", rule.toString());
+        assertEquals(Collections.singleton("jazz"), rule.getGenres());
+        assertEquals(200, rule.getLimit());
+
+        Map<String, Set<Long>> genres = Collections.singletonMap("jazz", (Set<Long>) new HashSet<>(Arrays.asList(1L, 2L)));
+        assertTrue(rule.matches(song(1, "A", 2005), new PlayStats(3, 0), genres));
+        assertFalse(rule.matches(song(1, "A", 2000), new PlayStats(3, 0), genres));
+        assertFalse(rule.matches(song(1, "A", 2005), new PlayStats(2, 0), genres));
+        assertFalse(rule.matches(song(3, "A", 2005), new PlayStats(3, 0), genres));
+    }
+
+    @Test
+    public void emptyRuleMatchesEverything() {
+        SmartPlaylistRule rule = SmartPlaylistRule.parse("");
+
+        assertEquals(SmartPlaylistRule.NO_LIMIT, rule.getLimit());
+        assertTrue(rule.getGenres().isEmpty());
+        assertTrue(rule.matches(song(1, "A", 0), NO_STATS, NO_GENRES));
+    }
+
+    @Test
+    public void keywordsAndFieldsIgnoreCase() {
+        SmartPlaylistRule rule = SmartPlaylistRule.parse("YEAR > 2000 and Title = A order by Year desc limit 1");
+
+        assertEquals(1, rule.getLimit());
+        assertTrue(rule.matches(song(1, "a", 2001), NO_STATS, NO_GENRES));
+    }
+
+    @Test
+    public void numericOperators() {
+        Song song = song(1, "A", 2000);
+
+        assertTrue(matches("year = 2000", song));
+        assertFalse(matches("year = 1999", song));
+        assertTrue(matches("year != 1999", song));
+        assertFalse(matches("year != 2000", song));
+        assertTrue(matches("year < 2001", song));
+        assertFalse(matches("year < 2000", song));
+        assertTrue(matches("year <= 2000", song));
+        assertFalse(matches("year <= 1999", song));
+        assertTrue(matches("year > 1999", song));
+        assertFalse(matches("year > 2000", song));
+        assertTrue(matches("year >= 2000", song));
+        assertFalse(matches("year >= 2001", song));
+        assertTrue(matches("year \u2264 2000", song));
+        assertFalse(matches("year \u2264 1999", song));
+        assertTrue(matches("year \u2265 2000", song));
+        assertFalse(matches("year \u2265 2001", song));
+        // Operators needn't be separated from their operands
+        assertTrue(matches("year>=2000", song));
+    }
+
+    @Test
+    public void numericFields() {
+        Song song = song(1, "A", 2000);
+        song.track = 3;
+        song.duration = 200_000;
+        song.dateAdded = 1_500_000_000;
+        PlayStats stats = new PlayStats(4, 1_600_000_000_000L);
+
+        assertTrue(SmartPlaylistRule.parse("track = 3").matches(song, stats, NO_GENRES));
+        assertTrue(SmartPlaylistRule.parse("duration = 200").matches(song, stats, NO_GENRES));
+        assertTrue(SmartPlaylistRule.parse("dateAdded = 1500000000").matches(song, stats, NO_GENRES));
+        assertTrue(SmartPlaylistRule.parse("playCount = 4").matches(song, stats, NO_GENRES));
+        assertTrue(SmartPlaylistRule.parse("lastPlayed = 1600000000").matches(song, stats, NO_GENRES));
+    }
+
+    @Test
+    public void textOperators() {
+        Song song = song(1, "Bohemian Rhapsody", 1975);
+        song.artistName = "Queen";
+        song.albumName = "A Night at the Opera";
+        song.albumArtistName = "Queen";
+        song.path = "/music/Queen/Bohemian Rhapsody.mp3";
+
+        assertTrue(matches("title = bohemian rhapsody", song));
+        assertFalse(matches("title = bohemian", song));
+        assertTrue(matches("title != bohemian", song));
+        assertFalse(matches("title != Bohemian Rhapsody", song));
+        assertTrue(matches("title ~ RHAPS", song));
+        assertFalse(matches("title ~ waltz", song));
+        assertTrue(matches("artist = queen", song));
+        assertTrue(matches("album ~ opera", song));
+        assertTrue(matches("albumArtist = Queen", song));
+        assertTrue(matches("path ~ /music/queen/", song));
+    }
+
+    @Test
+    public void quotedValuesMayContainKeywords() {
+        Song song = song(1, "Rock AND Roll", 0);
+
+        assertTrue(matches("title = \"Rock AND Roll\"", song));
+        assertTrue(matches("title = 'rock and roll' AND year = 0", song));
+    }
+
+    @Test
+    public void bareValuesRunToTheNextKeyword() {
+        Song song = song(1, "Rock Roll", 0);
+
+        assertTrue(matches("title = Rock Roll AND year = 0", song));
+        assertTrue(matches("title = Rock Roll ORDER BY title", song));
+    }
+
+    @Test
+    public void genreMembership() {
+        Map<String, Set<Long>> genres = Collections.singletonMap("rock", Collections.singleton(1L));
+
+        assertTrue(SmartPlaylistRule.parse("genre = Rock").matches(song(1, "A", 0), NO_STATS, genres));
+        assertFalse(SmartPlaylistRule.parse("genre = Rock").matches(song(2, "A", 0), NO_STATS, genres));
+        assertFalse(SmartPlaylistRule.parse("genre != Rock").matches(song(1, "A", 0), NO_STATS, genres));
+        assertTrue(SmartPlaylistRule.parse("genre != Rock").matches(song(2, "A", 0), NO_STATS, genres));
+        // An unknown genre has no members
+        assertFalse(SmartPlaylistRule.parse("genre = Jazz").matches(song(1, "A", 0), NO_STATS, genres));
+    }
+
+    @Test
+    public void arrangeOrdersAndLimits() {
+        List<Song> songs = new ArrayList<>(Arrays.asList(song(1, "C", 0), song(2, "A", 0), song(3, "B", 0)));
+        Map<Long, PlayStats> playStats = new HashMap<>();
+        playStats.put(1L, new PlayStats(5, 0));
+        playStats.put(3L, new PlayStats(1, 0));
+
+        assertEquals(Arrays.asList(1L, 3L), ids(SmartPlaylistRule.parse("ORDER BY playCount DESC LIMIT 2").arrange(new ArrayList<>(songs), playStats)));
+        assertEquals(Arrays.asList(2L, 3L, 1L), ids(SmartPlaylistRule.parse("ORDER BY playCount").arrange(new ArrayList<>(songs), playStats)));
+        assertEquals(Arrays.asList(2L, 3L, 1L), ids(SmartPlaylistRule.parse("ORDER BY title ASC").arrange(new ArrayList<>(songs), playStats)));
+        assertEquals(Arrays.asList(1L, 3L, 2L), ids(SmartPlaylistRule.parse("ORDER BY title DESC").arrange(new ArrayList<>(songs), playStats)));
+        // Without an order, the songs keep theirs
+        assertEquals(Arrays.asList(1L, 2L), ids(SmartPlaylistRule.parse("LIMIT 2").arrange(new ArrayList<>(songs), playStats)));
+        assertEquals(Arrays.asList(1L, 2L, 3L), ids(SmartPlaylistRule.parse("LIMIT 10").arrange(new ArrayList<>(songs), playStats)));
+        assertEquals(Collections.emptyList(), ids(SmartPlaylistRule.parse("LIMIT 0").arrange(new ArrayList<>(songs), playStats)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownField() {
+        SmartPlaylistRule.parse("rating > 3");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingOperator() {
+        SmartPlaylistRule.parse("year 2000");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingValue() {
+        SmartPlaylistRule.parse("year >");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void danglingAnd() {
+        SmartPlaylistRule.parse("year > 2000 AND");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonNumericValue() {
+        SmartPlaylistRule.parse("year > last");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void containsOnNumericField() {
+        SmartPlaylistRule.parse("year ~ 20");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void containsOnGenre() {
+        SmartPlaylistRule.parse("genre ~ rock");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void comparisonOnTextField() {
+        SmartPlaylistRule.parse("title < b");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void orderWithoutBy() {
+        SmartPlaylistRule.parse("ORDER title");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void orderByGenre() {
+        SmartPlaylistRule.parse("ORDER BY genre");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidLimit() {
+        SmartPlaylistRule.parse("LIMIT all");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeLimit() {
+        SmartPlaylistRule.parse("LIMIT -1");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void trailingTokens() {
+        SmartPlaylistRule.parse("LIMIT 10 year > 2000");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unterminatedQuote() {
+        SmartPlaylistRule.parse("title = \"Rock");
+    }
+
+    private static boolean matches(String rule, Song song) {
+        return SmartPlaylistRule.parse(rule).matches(song, NO_STATS, NO_GENRES);
+    }
+
+    private static Song song(long id, String name, int year) {
+        Song song = new Song();
+        song.id = id;
+        song.name = name;
+        song.year = year;
+        return song;
+    }
+
+    private static List<Long> ids(List<Song> songs) {
+        List<Long> ids = new ArrayList<>(songs.size());
+        for (Song song : songs) {
+            ids.add(song.id);
+        }
+        return ids;
+    }
+}
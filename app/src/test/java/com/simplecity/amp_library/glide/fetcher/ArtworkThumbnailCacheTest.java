@@ -0,0 +1,236 @@
+package com.simplecity.amp_library.glide.fetcher;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ArtworkThumbnailCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File directory;
+
+    @Before
+    public void setUp() {
+        // Not created yet, as on first run
+        directory = new File(temporaryFolder.getRoot(), "thumbnails");
+    }
+
+    @Test
+    public void thumbnailSizeBuckets() {
+        assertEquals(256, ArtworkThumbnailCache.getThumbnailSize(1, 1));
+        assertEquals(256, ArtworkThumbnailCache.getThumbnailSize(256, 100));
+        assertEquals(512, ArtworkThumbnailCache.getThumbnailSize(100, 257));
+        assertEquals(512, ArtworkThumbnailCache.getThumbnailSize(512, 512));
+        assertEquals(1024, ArtworkThumbnailCache.getThumbnailSize(513, 200));
+        assertEquals(1024, ArtworkThumbnailCache.getThumbnailSize(1024, 1024));
+        // Larger than any thumbnail
+        assertEquals(0, ArtworkThumbnailCache.getThumbnailSize(1025, 100));
+        // Unknown sizes, such as Target.SIZE_ORIGINAL
+        assertEquals(0, ArtworkThumbnailCache.getThumbnailSize(0, 0));
+        assertEquals(0, ArtworkThumbnailCache.getThumbnailSize(Integer.MIN_VALUE, Integer.MIN_VALUE));
+    }
+
+    @Test
+    public void putThenGet() throws IOException {
+        ArtworkThumbnailCache cache = new ArtworkThumbnailCache(directory, 1000);
+
+        assertNull(cache.get("a", 256));
+
+        cache.put("a", 256, bytes(10, 1));
+
+        assertArrayEquals(bytes(10, 1), read(cache.get("a", 256)));
+        // Keyed by size as well as id
+        assertNull(cache.get("a", 512));
+        assertNull(cache.get("b", 256));
+    }
+
+    @Test
+    public void putReplaces() throws IOException {
+        ArtworkThumbnailCache cache = new ArtworkThumbnailCache(directory, 20);
+
+        cache.put("a", 256, bytes(10, 1));
+        cache.put("a", 256, bytes(10, 2));
+        // Only counts the replacement, so both fit
+        cache.put("b", 256, bytes(10, 3));
+
+        assertArrayEquals(bytes(10, 2), read(cache.get("a", 256)));
+        assertArrayEquals(bytes(10, 3), read(cache.get("b", 256)));
+    }
+
+    @Test
+    public void trimsLeastRecentlyUsed() throws IOException {
+        ArtworkThumbnailCache cache = new ArtworkThumbnailCache(directory, 30);
+
+        cache.put("a", 256, bytes(10, 1));
+        cache.put("b", 256, bytes(10, 2));
+        cache.put("c", 256, bytes(10, 3));
+        // 'a' is now more recently used than 'b'
+        read(cache.get("a", 256));
+
+        cache.put("d", 256, bytes(10, 4));
+
+        assertNull(cache.get("b", 256));
+        assertFalse(file("b", 256).exists());
+        assertArrayEquals(bytes(10, 1), read(cache.get("a", 256)));
+        assertArrayEquals(bytes(10, 3), read(cache.get("c", 256)));
+        assertArrayEquals(bytes(10, 4), read(cache.get("d", 256)));
+    }
+
+    @Test
+    public void setMaxLengthTrims() throws IOException {
+        ArtworkThumbnailCache cache = new ArtworkThumbnailCache(directory, 1000);
+        cache.put("a", 256, bytes(10, 1));
+        cache.put("b", 256, bytes(10, 2));
+        cache.put("c", 256, bytes(10, 3));
+
+        cache.setMaxLength(25);
+
+        assertNull(cache.get("a", 256));
+        assertFalse(file("a", 256).exists());
+        assertArrayEquals(bytes(10, 2), read(cache.get("b", 256)));
+        assertArrayEquals(bytes(10, 3), read(cache.get("c", 256)));
+
+        cache.setMaxLength(0);
+
+        assertNull(cache.get("b", 256));
+        assertNull(cache.get("c", 256));
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    @Test
+    public void clear() throws IOException {
+        ArtworkThumbnailCache cache = new ArtworkThumbnailCache(directory, 30);
+        cache.put("a", 256, bytes(10, 1));
+        cache.put("a", 512, bytes(10, 2));
+
+        cache.clear();
+
+        assertNull(cache.get("a", 256));
+        assertNull(cache.get("a", 512));
+        assertEquals(0, directory.listFiles().length);
+
+        // The budget is free again
+        cache.put("b", 256, bytes(10, 3));
+        cache.put("c", 256, bytes(10, 4));
+        cache.put("d", 256, bytes(10, 5));
+        assertArrayEquals(bytes(10, 3), read(cache.get("b", 256)));
+    }
+
+    @Test
+    public void loadsThumbnailsFromDisk() throws IOException {
+        new ArtworkThumbnailCache(directory, 1000).put("a", 256, bytes(10, 1));
+
+        ArtworkThumbnailCache cache = new ArtworkThumbnailCache(directory, 1000);
+
+        assertArrayEquals(bytes(10, 1), read(cache.get("a", 256)));
+    }
+
+    @Test
+    public void leastRecentlyUsedOrderSurvivesRestart() throws IOException {
+        ArtworkThumbnailCache previous = new ArtworkThumbnailCache(directory, 1000);
+        previous.put("a", 256, bytes(10, 1));
+        previous.put("b", 256, bytes(10, 2));
+        previous.put("c", 256, bytes(10, 3));
+        // As if 'b' was used longest ago, then 'c', then 'a'
+        assertTrue(file("b", 256).setLastModified(1_000_000));
+        assertTrue(file("c", 256).setLastModified(2_000_000));
+        assertTrue(file("a", 256).setLastModified(3_000_000));
+
+        ArtworkThumbnailCache cache = new ArtworkThumbnailCache(directory, 1000);
+        cache.setMaxLength(20);
+
+        assertFalse(file("b", 256).exists());
+        assertTrue(file("c", 256).exists());
+        assertTrue(file("a", 256).exists());
+    }
+
+    @Test
+    public void trimsOnLoad() throws IOException {
+        ArtworkThumbnailCache previous = new ArtworkThumbnailCache(directory, 1000);
+        previous.put("a", 256, bytes(10, 1));
+        previous.put("b", 256, bytes(10, 2));
+        assertTrue(file("a", 256).setLastModified(1_000_000));
+        assertTrue(file("b", 256).setLastModified(2_000_000));
+
+        // A smaller budget than when the thumbnails were written
+        ArtworkThumbnailCache cache = new ArtworkThumbnailCache(directory, 15);
+
+        assertNull(cache.get("a", 256));
+        assertFalse(file("a", 256).exists());
+        assertArrayEquals(bytes(10, 2), read(cache.get("b", 256)));
+    }
+
+    @Test
+    public void deletesTemporaryFilesOnLoad() throws IOException {
+        assertTrue(directory.mkdirs());
+        File tempFile = new File(directory, ArtworkThumbnailCache.getName("a", 256) + ".12.tmp");
+        write(tempFile, bytes(100, 1));
+
+        ArtworkThumbnailCache cache = new ArtworkThumbnailCache(directory, 20);
+
+        // Neither served, nor counted against the budget
+        assertNull(cache.get("a", 256));
+        assertFalse(tempFile.exists());
+        cache.put("b", 256, bytes(10, 2));
+        cache.put("c", 256, bytes(10, 3));
+        assertArrayEquals(bytes(10, 2), read(cache.get("b", 256)));
+        assertArrayEquals(bytes(10, 3), read(cache.get("c", 256)));
+    }
+
+    @Test
+    public void missingFileIsAMiss() throws IOException {
+        ArtworkThumbnailCache cache = new ArtworkThumbnailCache(directory, 20);
+        cache.put("a", 256, bytes(10, 1));
+        assertTrue(file("a", 256).delete());
+
+        assertNull(cache.get("a", 256));
+
+        // No longer counted against the budget
+        cache.put("b", 256, bytes(10, 2));
+        cache.put("c", 256, bytes(10, 3));
+        assertArrayEquals(bytes(10, 2), read(cache.get("b", 256)));
+    }
+
+    private File file(String id, int size) {
+        return new File(directory, ArtworkThumbnailCache.getName(id, size));
+    }
+
+    private static byte[] bytes(int length, int value) {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte) value);
+        return bytes;
+    }
+
+    private static void write(File file, byte[] bytes) throws IOException {
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(bytes);
+        }
+    }
+
+    private static byte[] read(InputStream inputStream) throws IOException {
+        try (InputStream input = inputStream) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+            return outputStream.toByteArray();
+        }
+    }
+}
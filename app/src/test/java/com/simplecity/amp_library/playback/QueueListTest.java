@@ -0,0 +1,436 @@
+package com.simplecity.amp_library.playback;
+
+import com.simplecity.amp_library.model.Song;
+import com.simplecity.amp_library.ui.screens.queue.QueueItem;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class QueueListTest {
+
+    @Test
+    public void indexesAfterAdd() {
+        List<QueueItem> queueItems = queueItems(5);
+        QueueList queueList = new QueueList(queueItems);
+        assertIndexed(queueList);
+
+        QueueItem first = queueItem(10);
+        QueueItem middle = queueItem(11);
+        QueueItem last = queueItem(12);
+        queueList.add(0, first);
+        queueList.add(3, middle);
+        queueList.add(last);
+
+        assertEquals(0, queueList.indexOfId(first.getId()));
+        assertEquals(3, queueList.indexOfId(middle.getId()));
+        assertEquals(7, queueList.indexOfId(last.getId()));
+        assertIndexed(queueList);
+    }
+
+    @Test
+    public void indexesAfterAddAll() {
+        QueueList queueList = new QueueList(queueItems(5));
+        assertIndexed(queueList);
+
+        List<QueueItem> inserted = queueItems(3);
+        queueList.addAll(2, inserted);
+
+        assertEquals(2, queueList.indexOfId(inserted.get(0).getId()));
+        assertEquals(4, queueList.indexOfId(inserted.get(2).getId()));
+        assertIndexed(queueList);
+
+        queueList.addAll(queueItems(3));
+        assertIndexed(queueList);
+
+        assertFalse(queueList.addAll(Collections.emptyList()));
+        assertIndexed(queueList);
+    }
+
+    @Test
+    public void indexesAfterMove() {
+        List<QueueItem> queueItems = queueItems(6);
+        QueueList queueList = new QueueList(queueItems);
+        assertIndexed(queueList);
+
+        queueList.move(1, 4);
+        assertEquals(4, queueList.indexOfId(queueItems.get(1).getId()));
+        assertEquals(1, queueList.indexOfId(queueItems.get(2).getId()));
+        assertIndexed(queueList);
+
+        queueList.move(5, 0);
+        assertEquals(0, queueList.indexOfId(queueItems.get(5).getId()));
+        assertEquals(1, queueList.indexOfId(queueItems.get(0).getId()));
+        assertIndexed(queueList);
+
+        queueList.move(3, 3);
+        assertIndexed(queueList);
+    }
+
+    @Test
+    public void indexesAfterRemove() {
+        List<QueueItem> queueItems = queueItems(8);
+        QueueList queueList = new QueueList(queueItems);
+        assertIndexed(queueList);
+
+        assertSame(queueItems.get(2), queueList.remove(2));
+        assertTrue(queueList.remove(queueItems.get(6)));
+        assertFalse(queueList.remove(queueItem(20)));
+
+        assertEquals(-1, queueList.indexOfId(queueItems.get(2).getId()));
+        assertEquals(-1, queueList.indexOfId(queueItems.get(6).getId()));
+        assertEquals(2, queueList.indexOfId(queueItems.get(3).getId()));
+        assertIndexed(queueList);
+
+        // Removing the last item
+        queueList.remove(queueList.size() - 1);
+        assertEquals(-1, queueList.indexOfId(queueItems.get(7).getId()));
+        assertIndexed(queueList);
+    }
+
+    @Test
+    public void indexesAfterRemoveAll() {
+        List<QueueItem> queueItems = queueItems(8);
+        QueueList queueList = new QueueList(queueItems);
+        assertIndexed(queueList);
+
+        assertTrue(queueList.removeAll(new HashSet<>(Arrays.asList(queueItems.get(0), queueItems.get(3), queueItems.get(4)))));
+        assertFalse(queueList.removeAll(Collections.singleton(queueItems.get(0))));
+
+        assertEquals(-1, queueList.indexOfId(queueItems.get(0).getId()));
+        assertEquals(-1, queueList.indexOfId(queueItems.get(3).getId()));
+        assertEquals(2, queueList.indexOfId(queueItems.get(5).getId()));
+        assertIndexed(queueList);
+    }
+
+    @Test
+    public void indexesAfterRemoveRange() {
+        List<QueueItem> queueItems = queueItems(8);
+        QueueList queueList = new QueueList(queueItems);
+        assertIndexed(queueList);
+
+        queueList.subList(2, 5).clear();
+
+        assertEquals(-1, queueList.indexOfId(queueItems.get(2).getId()));
+        assertEquals(-1, queueList.indexOfId(queueItems.get(4).getId()));
+        assertEquals(2, queueList.indexOfId(queueItems.get(5).getId()));
+        assertIndexed(queueList);
+    }
+
+    @Test
+    public void indexesAfterSet() {
+        List<QueueItem> queueItems = queueItems(5);
+        QueueList queueList = new QueueList(queueItems);
+        assertIndexed(queueList);
+
+        QueueItem replacement = queueItem(10);
+        assertSame(queueItems.get(2), queueList.set(2, replacement));
+
+        assertEquals(-1, queueList.indexOfId(queueItems.get(2).getId()));
+        assertEquals(2, queueList.indexOfId(replacement.getId()));
+        assertIndexed(queueList);
+    }
+
+    @Test
+    public void duplicateIdsIndexTheFirstCopy() {
+        List<QueueItem> queueItems = queueItems(4);
+        QueueItem duplicate = queueItems.get(1);
+        QueueList queueList = new QueueList(queueItems);
+        queueList.add(duplicate);
+        queueList.add(2, duplicate);
+
+        // [0, d, d, 2, 3, d]
+        assertEquals(1, queueList.indexOfId(duplicate.getId()));
+        assertEquals(1, queueList.indexOf(duplicate));
+        assertIndexed(queueList);
+
+        // A later copy is removed, the first remains
+        queueList.remove(5);
+        assertEquals(1, queueList.indexOfId(duplicate.getId()));
+        assertIndexed(queueList);
+
+        queueList.remove(2);
+        assertEquals(1, queueList.indexOfId(duplicate.getId()));
+        assertIndexed(queueList);
+
+        // A new copy is moved before the first
+        queueList.add(duplicate);
+        queueList.move(4, 0);
+        assertEquals(0, queueList.indexOfId(duplicate.getId()));
+        assertIndexed(queueList);
+
+        // The first copy is removed, the later one is found
+        queueList.remove(0);
+        assertEquals(1, queueList.indexOfId(duplicate.getId()));
+        assertIndexed(queueList);
+
+        queueList.remove(duplicate);
+        assertEquals(-1, queueList.indexOfId(duplicate.getId()));
+        assertIndexed(queueList);
+    }
+
+    @Test
+    public void duplicateIdsAfterSetAndRemoveRange() {
+        List<QueueItem> queueItems = queueItems(4);
+        QueueItem duplicate = queueItems.get(0);
+        QueueList queueList = new QueueList(queueItems);
+        queueList.add(duplicate);
+        queueList.add(duplicate);
+        assertIndexed(queueList);
+
+        // [d, 1, 2, 3, d, d]. Replacing a later copy keeps the first.
+        queueList.set(4, queueItem(10));
+        assertEquals(0, queueList.indexOfId(duplicate.getId()));
+        assertIndexed(queueList);
+
+        queueList.subList(3, 6).clear();
+        assertEquals(0, queueList.indexOfId(duplicate.getId()));
+        assertIndexed(queueList);
+
+        queueList.add(duplicate);
+        queueList.removeAll(Collections.singleton(duplicate));
+        assertEquals(-1, queueList.indexOfId(duplicate.getId()));
+        assertIndexed(queueList);
+    }
+
+    @Test
+    public void indexesMatchListAfterRandomEdits() {
+        Random random = new Random(42);
+        List<QueueItem> pool = queueItems(30);
+        List<QueueItem> expected = new ArrayList<>(pool.subList(0, 10));
+        QueueList queueList = new QueueList(expected);
+
+        for (int round = 0; round < 500; round++) {
+            QueueItem queueItem = pool.get(random.nextInt(pool.size()));
+            int size = expected.size();
+            switch (random.nextInt(6)) {
+                case 0: {
+                    int index = random.nextInt(size + 1);
+                    expected.add(index, queueItem);
+                    queueList.add(index, queueItem);
+                    break;
+                }
+                case 1: {
+                    if (size == 0) {
+                        break;
+                    }
+                    int index = random.nextInt(size);
+                    expected.remove(index);
+                    queueList.remove(index);
+                    break;
+                }
+                case 2: {
+                    if (size == 0) {
+                        break;
+                    }
+                    int from = random.nextInt(size);
+                    int to = random.nextInt(size);
+                    expected.add(to, expected.remove(from));
+                    queueList.move(from, to);
+                    break;
+                }
+                case 3: {
+                    int index = random.nextInt(size + 1);
+                    List<QueueItem> added = Arrays.asList(pool.get(random.nextInt(pool.size())), pool.get(random.nextInt(pool.size())));
+                    expected.addAll(index, added);
+                    queueList.addAll(index, added);
+                    break;
+                }
+                case 4: {
+                    if (size == 0) {
+                        break;
+                    }
+                    int index = random.nextInt(size);
+                    expected.set(index, queueItem);
+                    queueList.set(index, queueItem);
+                    break;
+                }
+                default: {
+                    expected.removeAll(Collections.singleton(queueItem));
+                    queueList.removeAll(Collections.singleton(queueItem));
+                    break;
+                }
+            }
+            assertEquals("Round " + round, expected, queueList);
+            // Only look up some of the time, so several edits pile up between lookups
+            if (random.nextBoolean()) {
+                for (QueueItem poolItem : pool) {
+                    assertEquals("Round " + round, firstIndexOf(expected, poolItem), queueList.indexOfId(poolItem.getId()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void orderedViewIndexesInOrder() {
+        List<QueueItem> queueItems = queueItems(5);
+        QueueList source = new QueueList(queueItems);
+        ShuffleOrder order = new ShuffleOrder(5, 3, 42);
+        QueueList view = QueueList.ordered(source, order);
+
+        assertEquals(5, view.size());
+        assertSame(queueItems.get(3), view.get(0));
+        for (int i = 0; i < 5; i++) {
+            assertSame(queueItems.get(order.get(i)), view.get(i));
+        }
+        assertIndexed(view);
+    }
+
+    @Test
+    public void editingTheSourceMaterialisesTheView() {
+        List<QueueItem> queueItems = queueItems(5);
+        QueueList source = new QueueList(queueItems);
+        QueueList view = QueueList.ordered(source, new ShuffleOrder(5, -1, 42));
+        List<QueueItem> viewItems = new ArrayList<>(view);
+
+        source.remove(0);
+        source.add(queueItem(10));
+
+        // The view keeps the items it had
+        assertEquals(viewItems, view);
+        assertIndexed(view);
+        assertIndexed(source);
+    }
+
+    @Test
+    public void editingTheViewLeavesTheSource() {
+        List<QueueItem> queueItems = queueItems(5);
+        QueueList source = new QueueList(queueItems);
+        QueueList view = QueueList.ordered(source, new ShuffleOrder(5, -1, 42));
+
+        QueueItem removed = view.remove(0);
+        view.move(0, 3);
+
+        assertEquals(4, view.size());
+        assertEquals(-1, view.indexOfId(removed.getId()));
+        assertIndexed(view);
+        assertEquals(queueItems, source);
+        assertIndexed(source);
+    }
+
+    @Test
+    public void clearingTheViewDetachesIt() {
+        List<QueueItem> queueItems = queueItems(5);
+        QueueList source = new QueueList(queueItems);
+        QueueList view = QueueList.ordered(source, new ShuffleOrder(5, -1, 42));
+
+        view.clear();
+
+        assertTrue(view.isEmpty());
+        assertEquals(-1, view.indexOfId(queueItems.get(0).getId()));
+        // The source is unaffected, & editing it no longer touches the view
+        assertEquals(queueItems, source);
+        source.remove(0);
+        assertTrue(view.isEmpty());
+        assertIndexed(source);
+    }
+
+    @Test
+    public void clearingTheSourceMaterialisesTheView() {
+        List<QueueItem> queueItems = queueItems(5);
+        QueueList source = new QueueList(queueItems);
+        QueueList view = QueueList.ordered(source, new ShuffleOrder(5, -1, 42));
+        List<QueueItem> viewItems = new ArrayList<>(view);
+
+        source.clear();
+
+        assertTrue(source.isEmpty());
+        assertEquals(viewItems, view);
+        assertIndexed(view);
+    }
+
+    @Test
+    public void reorderingMaterialisesThePreviousView() {
+        List<QueueItem> queueItems = queueItems(5);
+        QueueList source = new QueueList(queueItems);
+        QueueList first = QueueList.ordered(source, new ShuffleOrder(5, -1, 1));
+        List<QueueItem> firstItems = new ArrayList<>(first);
+        QueueList second = QueueList.ordered(source, new ShuffleOrder(5, -1, 2));
+
+        // Only the latest view is materialised by an edit, so the previous one must already be
+        source.remove(0);
+
+        assertEquals(firstItems, first);
+        assertEquals(5, second.size());
+        assertIndexed(first);
+        assertIndexed(second);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void orderSizeMustMatch() {
+        QueueList.ordered(new QueueList(queueItems(5)), new ShuffleOrder(4, -1, 42));
+    }
+
+    @Test
+    public void occurrencesFollowListOrder() {
+        Song song = song(1);
+        QueueItem a = new QueueItem(song, 1);
+        QueueItem b = new QueueItem(song, 1);
+        QueueItem c = new QueueItem(song(2), 1);
+        QueueList queueList = new QueueList(Arrays.asList(a, c, b));
+
+        assertTrue(queueList.hasDuplicateSongs());
+
+        queueList.updateOccurrence();
+        assertEquals(1, a.getOccurrence());
+        assertEquals(2, b.getOccurrence());
+        assertEquals(1, c.getOccurrence());
+
+        queueList.move(2, 0);
+        queueList.updateOccurrence(Collections.singleton(song));
+        assertEquals(2, a.getOccurrence());
+        assertEquals(1, b.getOccurrence());
+
+        queueList.remove(b);
+        assertFalse(queueList.hasDuplicateSongs());
+    }
+
+    /**
+     * Asserts that every item's id maps to the position of its first copy.
+     */
+    private static void assertIndexed(QueueList queueList) {
+        List<QueueItem> snapshot = new ArrayList<>(queueList);
+        for (int i = 0; i < snapshot.size(); i++) {
+            QueueItem queueItem = snapshot.get(i);
+            assertEquals("Position " + i, firstIndexOf(snapshot, queueItem), queueList.indexOfId(queueItem.getId()));
+        }
+    }
+
+    private static int firstIndexOf(List<QueueItem> queueItems, QueueItem queueItem) {
+        for (int i = 0; i < queueItems.size(); i++) {
+            if (queueItems.get(i) == queueItem) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return items for songs with ids counting up from 1.
+     */
+    private static List<QueueItem> queueItems(int count) {
+        List<QueueItem> queueItems = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            queueItems.add(queueItem(i + 1));
+        }
+        return queueItems;
+    }
+
+    private static QueueItem queueItem(long songId) {
+        return new QueueItem(song(songId), 1);
+    }
+
+    private static Song song(long id) {
+        Song song = new Song();
+        song.id = id;
+        return song;
+    }
+}
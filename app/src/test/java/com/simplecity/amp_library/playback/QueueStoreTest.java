@@ -0,0 +1,479 @@
+package com.simplecity.amp_library.playback;
+
+import com.simplecity.amp_library.model.Song;
+import com.simplecity.amp_library.ui.screens.queue.QueueItem;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Each test 'restarts' the app by reading through a new {@link QueueStore}, once the previous store's writes have completed.
+ * <p>
+ * Runs under Robolectric, for the store's Context & logging.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class QueueStoreTest {
+
+    private static final int SNAPSHOT_MAGIC = 0x53484c51;
+
+    private static final int JOURNAL_MAGIC = 0x53484c4a;
+
+    private static final int OP_INSERT = 1;
+
+    private File snapshotFile;
+
+    private File journalFile;
+
+    @Before
+    public void setUp() {
+        File filesDir = RuntimeEnvironment.application.getFilesDir();
+        snapshotFile = new File(filesDir, QueueStore.SNAPSHOT_FILE_NAME);
+        journalFile = new File(filesDir, QueueStore.JOURNAL_FILE_NAME);
+        snapshotFile.delete();
+        journalFile.delete();
+    }
+
+    @Test
+    public void nothingSaved() {
+        assertNull(newStore().read().blockingGet());
+    }
+
+    @Test
+    public void roundTrip() {
+        QueueStore store = newStore();
+        store.write(queueItems(1, 2, 3, 2), queueItems(3, 2, 1, 2), null, null);
+        close(store);
+
+        QueueStore.SavedQueue savedQueue = newStore().read().blockingGet();
+
+        assertArrayEquals(new long[] { 1, 2, 3, 2 }, savedQueue.getPlaylist());
+        assertArrayEquals(new long[] { 3, 2, 1, 2 }, savedQueue.getShuffleList());
+        assertNull(savedQueue.getShuffleOrder());
+        assertNull(savedQueue.getLibrary());
+    }
+
+    @Test
+    public void roundTripEmptyQueue() {
+        QueueStore store = newStore();
+        store.write(queueItems(1, 2), queueItems(), null, null);
+        store.write(queueItems(), queueItems(), null, null);
+        close(store);
+
+        assertNull(newStore().read().blockingGet());
+    }
+
+    @Test
+    public void roundTripShuffleOrder() {
+        ShuffleOrder shuffleOrder = new ShuffleOrder(5, 2, 42L);
+        QueueStore store = newStore();
+        store.write(queueItems(10, 20, 30, 40, 50), queueItems(), shuffleOrder, null);
+        close(store);
+
+        QueueStore.SavedQueue savedQueue = newStore().read().blockingGet();
+
+        assertArrayEquals(new long[] { 10, 20, 30, 40, 50 }, savedQueue.getPlaylist());
+        assertArrayEquals(shuffle(savedQueue.getPlaylist(), shuffleOrder), savedQueue.getShuffleList());
+        assertEquals(30, savedQueue.getShuffleList()[0]);
+        assertNotNull(savedQueue.getShuffleOrder());
+        assertEquals(42L, savedQueue.getShuffleOrder().getSeed());
+        assertEquals(2, savedQueue.getShuffleOrder().getFirst());
+        assertNull(savedQueue.getLibrary());
+    }
+
+    @Test
+    public void roundTripLibrary() {
+        ShuffleOrder shuffleOrder = new ShuffleOrder(3, -1, 7L);
+        LibrarySignature library = new LibrarySignature(3, 123456789L);
+        QueueStore store = newStore();
+        store.write(queueItems(1, 2, 3), queueItems(), shuffleOrder, library);
+        close(store);
+
+        QueueStore.SavedQueue savedQueue = newStore().read().blockingGet();
+
+        assertEquals(library, savedQueue.getLibrary());
+        assertEquals(0, savedQueue.getPlaylist().length);
+        assertEquals(0, savedQueue.getShuffleList().length);
+        assertEquals(7L, savedQueue.getShuffleOrder().getSeed());
+        assertEquals(3, savedQueue.getShuffleOrder().getSize());
+    }
+
+    @Test
+    public void libraryRequiresAMatchingPlaylist() {
+        QueueStore store = newStore();
+        // The signature is for a different number of songs, so the playlist is saved as ids
+        store.write(queueItems(1, 2, 3), queueItems(), new ShuffleOrder(3, -1, 7L), new LibrarySignature(4, 1L));
+        close(store);
+
+        QueueStore.SavedQueue savedQueue = newStore().read().blockingGet();
+
+        assertNull(savedQueue.getLibrary());
+        assertArrayEquals(new long[] { 1, 2, 3 }, savedQueue.getPlaylist());
+    }
+
+    @Test
+    public void journalReplay() {
+        QueueStore store = newStore();
+        store.write(queueItems(1, 2, 3), queueItems(3, 1, 2), null, null);
+        store.insert(QueueStore.LIST_PLAYLIST, 1, queueItems(4, 5));
+        store.insert(QueueStore.LIST_SHUFFLE, 3, queueItems(4, 5));
+        store.move(QueueStore.LIST_PLAYLIST, 0, 4);
+        store.remove(QueueStore.LIST_PLAYLIST, new int[] { 3, 1 });
+        store.remove(QueueStore.LIST_SHUFFLE, new int[] { 0 });
+        close(store);
+
+        assertTrue(journalFile.length() > 16);
+
+        QueueStore.SavedQueue savedQueue = newStore().read().blockingGet();
+
+        // [1, 2, 3] -> [1, 4, 5, 2, 3] -> [4, 5, 2, 3, 1] -> [4, 2, 1]
+        assertArrayEquals(new long[] { 4, 2, 1 }, savedQueue.getPlaylist());
+        // [3, 1, 2] -> [3, 1, 2, 4, 5] -> [1, 2, 4, 5]
+        assertArrayEquals(new long[] { 1, 2, 4, 5 }, savedQueue.getShuffleList());
+    }
+
+    @Test
+    public void journalReplayAcrossRestarts() {
+        QueueStore store = newStore();
+        store.write(queueItems(1, 2, 3), queueItems(), null, null);
+        store.insert(QueueStore.LIST_PLAYLIST, 3, queueItems(4));
+        close(store);
+
+        store = newStore();
+        store.move(QueueStore.LIST_PLAYLIST, 3, 0);
+        close(store);
+
+        assertArrayEquals(new long[] { 4, 1, 2, 3 }, newStore().read().blockingGet().getPlaylist());
+    }
+
+    @Test
+    public void editsGenerateTheShuffleList() {
+        ShuffleOrder shuffleOrder = new ShuffleOrder(4, -1, 99L);
+        QueueStore store = newStore();
+        store.write(queueItems(1, 2, 3, 4), queueItems(), shuffleOrder, null);
+        store.insert(QueueStore.LIST_SHUFFLE, 4, queueItems(5));
+        close(store);
+
+        QueueStore.SavedQueue savedQueue = newStore().read().blockingGet();
+
+        long[] expected = Arrays.copyOf(shuffle(new long[] { 1, 2, 3, 4 }, shuffleOrder), 5);
+        expected[4] = 5;
+        assertArrayEquals(expected, savedQueue.getShuffleList());
+        assertNull(savedQueue.getShuffleOrder());
+    }
+
+    @Test
+    public void journalCompaction() {
+        List<Long> expected = new ArrayList<>();
+        QueueStore store = newStore();
+        store.write(queueItems(), queueItems(), null, null);
+        for (long id = 1; id <= 1000; id++) {
+            store.insert(QueueStore.LIST_PLAYLIST, 0, queueItems(id));
+            expected.add(0, id);
+        }
+        close(store);
+
+        // The journal was folded into the snapshot along the way, so it holds fewer records than were made
+        assertTrue(journalFile.length() < 1000 * 20);
+        assertArrayEquals(toArray(expected), newStore().read().blockingGet().getPlaylist());
+    }
+
+    @Test
+    public void tornTrailingRecord() throws IOException {
+        QueueStore store = newStore();
+        store.write(queueItems(1, 2, 3), queueItems(), null, null);
+        store.insert(QueueStore.LIST_PLAYLIST, 3, queueItems(4));
+        store.insert(QueueStore.LIST_PLAYLIST, 4, queueItems(5));
+        close(store);
+
+        // As if the process died part way through writing the last record
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        store = newStore();
+        assertArrayEquals(new long[] { 1, 2, 3, 4 }, store.read().blockingGet().getPlaylist());
+
+        // The replayed records were folded into a new snapshot, so the journal can be appended to again
+        store.insert(QueueStore.LIST_PLAYLIST, 0, queueItems(6));
+        close(store);
+
+        assertArrayEquals(new long[] { 6, 1, 2, 3, 4 }, newStore().read().blockingGet().getPlaylist());
+    }
+
+    @Test
+    public void checksumMismatchedTrailingRecord() throws IOException {
+        QueueStore store = newStore();
+        store.write(queueItems(1, 2, 3), queueItems(), null, null);
+        store.remove(QueueStore.LIST_PLAYLIST, new int[] { 0 });
+        store.insert(QueueStore.LIST_PLAYLIST, 0, queueItems(7));
+        close(store);
+
+        // Corrupt the id in the last record
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            file.seek(file.length() - 1);
+            int b = file.read();
+            file.seek(file.length() - 1);
+            file.write(b ^ 0xff);
+        }
+
+        store = newStore();
+        assertArrayEquals(new long[] { 2, 3 }, store.read().blockingGet().getPlaylist());
+        store.insert(QueueStore.LIST_PLAYLIST, 2, queueItems(8));
+        close(store);
+
+        assertArrayEquals(new long[] { 2, 3, 8 }, newStore().read().blockingGet().getPlaylist());
+    }
+
+    @Test
+    public void journalFromAnotherSnapshotIsIgnored() throws IOException {
+        QueueStore store = newStore();
+        store.write(queueItems(1, 2, 3), queueItems(), null, null);
+        store.insert(QueueStore.LIST_PLAYLIST, 0, queueItems(4));
+        close(store);
+        byte[] staleJournal = Files.readAllBytes(journalFile.toPath());
+
+        store = newStore();
+        store.write(queueItems(5, 6), queueItems(), null, null);
+        close(store);
+        Files.write(journalFile.toPath(), staleJournal);
+
+        assertArrayEquals(new long[] { 5, 6 }, newStore().read().blockingGet().getPlaylist());
+    }
+
+    @Test
+    public void corruptSnapshotIsDiscarded() throws IOException {
+        QueueStore store = newStore();
+        store.write(queueItems(1, 2, 3), queueItems(), null, null);
+        close(store);
+
+        try (RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw")) {
+            file.seek(20);
+            int b = file.read();
+            file.seek(20);
+            file.write(b ^ 0xff);
+        }
+
+        assertNull(newStore().read().blockingGet());
+    }
+
+    @Test
+    public void inconsistentEditDiscardsTheSavedQueue() {
+        QueueStore store = newStore();
+        store.write(queueItems(1, 2, 3), queueItems(), null, null);
+        // There's no item 10 to remove, so the saved queue no longer matches the live one
+        store.remove(QueueStore.LIST_PLAYLIST, new int[] { 10 });
+        store.insert(QueueStore.LIST_PLAYLIST, 0, queueItems(4));
+        close(store);
+
+        assertNull(newStore().read().blockingGet());
+
+        // Until the queue is next replaced
+        store = newStore();
+        store.write(queueItems(5), queueItems(), null, null);
+        close(store);
+
+        assertArrayEquals(new long[] { 5 }, newStore().read().blockingGet().getPlaylist());
+    }
+
+    @Test
+    public void version1Snapshot() throws IOException {
+        writeSnapshot(1, 1L, new long[] { 1, 2, 3 }, new long[] { 3, 2, 1 });
+        writeJournal(1, 1L, insertRecord(QueueStore.LIST_PLAYLIST, 0, 4));
+
+        QueueStore store = newStore();
+        QueueStore.SavedQueue savedQueue = store.read().blockingGet();
+
+        assertArrayEquals(new long[] { 4, 1, 2, 3 }, savedQueue.getPlaylist());
+        assertArrayEquals(new long[] { 3, 2, 1 }, savedQueue.getShuffleList());
+
+        // The next snapshot is written in the current version
+        store.write(queueItems(5), queueItems(), null, null);
+        close(store);
+
+        assertEquals(3, readSnapshotVersion());
+        assertArrayEquals(new long[] { 5 }, newStore().read().blockingGet().getPlaylist());
+    }
+
+    @Test
+    public void version2SeededSnapshot() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(SNAPSHOT_MAGIC);
+        output.writeInt(2);
+        output.writeLong(1L);
+        writeIds(output, new long[] { 1, 2, 3, 4 });
+        output.writeInt(-1); // Seeded shuffle list
+        output.writeLong(5L);
+        output.writeInt(0);
+        writeWithChecksum(snapshotFile, bytes.toByteArray());
+
+        QueueStore.SavedQueue savedQueue = newStore().read().blockingGet();
+
+        assertArrayEquals(new long[] { 1, 2, 3, 4 }, savedQueue.getPlaylist());
+        assertArrayEquals(shuffle(savedQueue.getPlaylist(), new ShuffleOrder(4, 0, 5L)), savedQueue.getShuffleList());
+        assertEquals(1, savedQueue.getShuffleList()[0]);
+    }
+
+    @Test
+    public void unknownVersionIsDiscarded() throws IOException {
+        writeSnapshot(99, 1L, new long[] { 1, 2, 3 }, new long[0]);
+
+        assertNull(newStore().read().blockingGet());
+    }
+
+    @Test
+    public void legacyPreferenceIds() {
+        assertArrayEquals(new long[0], QueueManager.parseLegacyIds(""));
+        assertArrayEquals(new long[] { 0, 1, 0x1a3, 0xfedcba9876L }, QueueManager.parseLegacyIds("0;1;3a1;6789abcdef;"));
+        // Parsing stops at the first bogus character
+        assertArrayEquals(new long[] { 0x1a3 }, QueueManager.parseLegacyIds("3a1;zz;5;"));
+
+        Random random = new Random(42);
+        long[] ids = new long[1000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = random.nextLong() & Long.MAX_VALUE;
+        }
+        assertArrayEquals(ids, QueueManager.parseLegacyIds(serializeLegacyIds(ids)));
+    }
+
+    private static QueueStore newStore() {
+        return new QueueStore(RuntimeEnvironment.application);
+    }
+
+    /**
+     * Waits for the store's pending writes to complete.
+     */
+    private static void close(QueueStore store) {
+        store.read().blockingGet();
+    }
+
+    private static List<QueueItem> queueItems(long... ids) {
+        List<QueueItem> queueItems = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            Song song = new Song();
+            song.id = id;
+            queueItems.add(new QueueItem(song, 1));
+        }
+        return queueItems;
+    }
+
+    private static long[] shuffle(long[] ids, ShuffleOrder shuffleOrder) {
+        long[] shuffled = new long[shuffleOrder.getSize()];
+        for (int i = 0; i < shuffled.length; i++) {
+            shuffled[i] = ids[shuffleOrder.get(i)];
+        }
+        return shuffled;
+    }
+
+    private static long[] toArray(List<Long> ids) {
+        long[] array = new long[ids.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = ids.get(i);
+        }
+        return array;
+    }
+
+    private int readSnapshotVersion() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(snapshotFile, "r")) {
+            file.seek(4);
+            return file.readInt();
+        }
+    }
+
+    private void writeSnapshot(int version, long generation, long[] playlist, long[] shuffleList) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(SNAPSHOT_MAGIC);
+        output.writeInt(version);
+        output.writeLong(generation);
+        writeIds(output, playlist);
+        writeIds(output, shuffleList);
+        writeWithChecksum(snapshotFile, bytes.toByteArray());
+    }
+
+    private void writeJournal(int version, long generation, byte[]... records) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(JOURNAL_MAGIC);
+        output.writeInt(version);
+        output.writeLong(generation);
+        for (byte[] record : records) {
+            CRC32 crc = new CRC32();
+            crc.update(record);
+            output.writeInt(record.length);
+            output.writeInt((int) crc.getValue());
+            output.write(record);
+        }
+        Files.write(journalFile.toPath(), bytes.toByteArray());
+    }
+
+    private static byte[] insertRecord(int list, int index, long... ids) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeByte(OP_INSERT);
+        output.writeByte(list);
+        output.writeInt(index);
+        output.writeInt(ids.length);
+        for (long id : ids) {
+            output.writeLong(id);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeIds(DataOutputStream output, long[] ids) throws IOException {
+        output.writeInt(ids.length);
+        for (long id : ids) {
+            output.writeLong(id);
+        }
+    }
+
+    private static void writeWithChecksum(File file, byte[] bytes) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        output.write(bytes);
+        new DataOutputStream(output).writeInt((int) crc.getValue());
+        Files.write(file.toPath(), output.toByteArray());
+    }
+
+    /**
+     * As queues were saved to preferences before the store.
+     */
+    private static String serializeLegacyIds(long[] ids) {
+        char[] hexDigits = "0123456789abcdef".toCharArray();
+        StringBuilder builder = new StringBuilder();
+        for (long n : ids) {
+            if (n == 0) {
+                builder.append("0;");
+            } else {
+                while (n != 0) {
+                    builder.append(hexDigits[(int) (n & 0xf)]);
+                    n >>>= 4;
+                }
+                builder.append(';');
+            }
+        }
+        return builder.toString();
+    }
+}
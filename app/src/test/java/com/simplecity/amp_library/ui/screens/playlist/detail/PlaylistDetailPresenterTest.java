@@ -0,0 +1,123 @@
+package com.simplecity.amp_library.ui.screens.playlist.detail;
+
+import com.simplecity.amp_library.data.LibrarySnapshot;
+import com.simplecity.amp_library.data.PlayStats;
+import com.simplecity.amp_library.data.SmartPlaylistEvaluator;
+import com.simplecity.amp_library.data.SmartPlaylistRule;
+import com.simplecity.amp_library.model.Playlist;
+import com.simplecity.amp_library.model.Song;
+import com.simplecity.amp_library.utils.sorting.SortManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs under Robolectric, as building a {@link LibrarySnapshot} computes the songs' sort keys.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class PlaylistDetailPresenterTest {
+
+    private static final Playlist SMART_PLAYLIST = new Playlist(Playlist.Type.SMART, -1001, "Smart", false, false, true, false, false);
+
+    private static final Playlist MOST_PLAYED_PLAYLIST = new Playlist(Playlist.Type.MOST_PLAYED, -2, "Most played", false, false, false, false, false);
+
+    @Test
+    public void smartPlaylistKeepsTheRuleOrderByDefault() {
+        List<Song> songs = Arrays.asList(song(1), song(2), song(3), song(4));
+        Map<Long, PlayStats> playStats = new HashMap<>();
+        playStats.put(1L, new PlayStats(2, 0));
+        playStats.put(2L, new PlayStats(7, 0));
+        playStats.put(3L, new PlayStats(5, 0));
+        playStats.put(4L, new PlayStats(1, 0));
+
+        List<Song> evaluated = new SmartPlaylistEvaluator(SmartPlaylistRule.parse("playCount >= 2 ORDER BY playCount DESC LIMIT 2"))
+                .evaluate(new LibrarySnapshot(songs), playStats, Collections.emptyMap());
+        assertEquals(ids(2, 3), ids(evaluated));
+
+        SortManager sortManager = sortManager(SMART_PLAYLIST, SortManager.SongSort.DETAIL_DEFAULT, false);
+        List<Song> sorted = new ArrayList<>(evaluated);
+        PlaylistDetailPresenter.sortSongs(sorted, SMART_PLAYLIST, sortManager);
+
+        assertEquals(ids(2, 3), ids(sorted));
+        verify(sortManager, never()).sortSongs(anyList(), anyInt());
+    }
+
+    @Test
+    public void smartPlaylistIsSortedWhenAnotherOrderIsChosen() {
+        SortManager sortManager = sortManager(SMART_PLAYLIST, SortManager.SongSort.NAME, true);
+        List<Song> songs = new ArrayList<>(Arrays.asList(song(2), song(1)));
+
+        PlaylistDetailPresenter.sortSongs(songs, SMART_PLAYLIST, sortManager);
+
+        verify(sortManager).sortSongs(songs, SortManager.SongSort.NAME);
+    }
+
+    @Test
+    public void mostPlayedIsOrderedByPlayCountByDefault() {
+        SortManager sortManager = sortManager(MOST_PLAYED_PLAYLIST, SortManager.SongSort.DETAIL_DEFAULT, true);
+        Song a = song(1);
+        a.playCount = 2;
+        Song b = song(2);
+        b.playCount = 9;
+        Song c = song(3);
+        c.playCount = 4;
+        List<Song> songs = new ArrayList<>(Arrays.asList(a, b, c));
+
+        PlaylistDetailPresenter.sortSongs(songs, MOST_PLAYED_PLAYLIST, sortManager);
+
+        assertEquals(ids(2, 3, 1), ids(songs));
+    }
+
+    /**
+     * @return a sort manager with the passed in detail sort order for the playlist. Its sortSongs() does nothing.
+     */
+    private static SortManager sortManager(Playlist playlist, int songSort, boolean ascending) {
+        SortManager sortManager = mock(SortManager.class);
+        when(sortManager.getPlaylistDetailSongsSortOrder(playlist)).thenReturn(songSort);
+        when(sortManager.getPlaylistDetailSongsAscending(playlist)).thenReturn(ascending);
+        return sortManager;
+    }
+
+    private static Song song(long id) {
+        Song song = new Song();
+        song.id = id;
+        song.name = "Song " + id;
+        song.albumId = id;
+        song.albumName = "Album " + id;
+        song.albumArtistName = "Artist";
+        song.path = "/music/" + id + ".mp3";
+        return song;
+    }
+
+    private static List<Long> ids(long... ids) {
+        List<Long> list = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            list.add(id);
+        }
+        return list;
+    }
+
+    private static List<Long> ids(List<Song> songs) {
+        List<Long> ids = new ArrayList<>(songs.size());
+        for (Song song : songs) {
+            ids.add(song.id);
+        }
+        return ids;
+    }
+}
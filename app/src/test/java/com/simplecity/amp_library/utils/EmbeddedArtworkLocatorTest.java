@@ -0,0 +1,474 @@
+package com.simplecity.amp_library.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class EmbeddedArtworkLocatorTest {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    // ID3v2
+
+    @Test
+    public void id3v23PrefersFrontCover() throws IOException {
+        byte[] backCover = image(100, 1);
+        byte[] frontCover = image(200, 2);
+        byte[] file = id3v2(3, 0,
+                id3v23Frame("TIT2", 0, text("Title")),
+                id3v23Frame("APIC", 0, apic(4, "back", backCover)),
+                id3v23Frame("APIC", 0, apic(3, "front", frontCover)));
+
+        assertArrayEquals(frontCover, open(file));
+    }
+
+    @Test
+    public void id3v23FallsBackToFirstPicture() throws IOException {
+        byte[] other = image(100, 1);
+        byte[] file = id3v2(3, 0, id3v23Frame("APIC", 0, apic(0, "", other)));
+
+        assertArrayEquals(other, open(file));
+    }
+
+    @Test
+    public void id3v23Utf16Description() throws IOException {
+        byte[] cover = image(100, 3);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(1);
+        writeAscii(body, "image/png");
+        body.write(0);
+        body.write(3);
+        // BOM, 'a', 'b', then a 2 byte terminator
+        body.write(new byte[] { (byte) 0xFF, (byte) 0xFE, 'a', 0, 'b', 0, 0, 0 });
+        body.write(cover);
+
+        byte[] file = id3v2(3, 0, id3v23Frame("APIC", 0, body.toByteArray()));
+
+        assertArrayEquals(cover, open(file));
+    }
+
+    @Test
+    public void id3v24SyncsafeFrameSizes() throws IOException {
+        // Large enough that the syncsafe & plain sizes differ
+        byte[] cover = image(1000, 4);
+        byte[] file = id3v2(4, 0,
+                id3v24Frame("APIC", syncsafe(apic(3, "", cover).length), 0, apic(3, "", cover)),
+                id3v24Frame("TIT2", syncsafe(text("Title").length), 0, text("Title")));
+
+        assertArrayEquals(cover, open(file));
+    }
+
+    @Test
+    public void id3v22Pic() throws IOException {
+        byte[] cover = image(300, 5);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(0);
+        writeAscii(body, "JPG");
+        body.write(3);
+        body.write(0);
+        body.write(cover);
+
+        byte[] file = id3v2(2, 0, id3v22Frame("PIC", body.toByteArray()));
+
+        assertArrayEquals(cover, open(file));
+    }
+
+    @Test
+    public void id3v2WithoutPicture() throws IOException {
+        byte[] file = id3v2(3, 0, id3v23Frame("TIT2", 0, text("Title")));
+
+        assertNull(EmbeddedArtworkLocator.open(write(file)));
+    }
+
+    @Test
+    public void id3v2LinkedPictureIsIgnored() throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(0);
+        writeAscii(body, "-->");
+        body.write(0);
+        body.write(3);
+        body.write(0);
+        writeAscii(body, "http://example.com/cover.jpg");
+
+        byte[] file = id3v2(3, 0, id3v23Frame("APIC", 0, body.toByteArray()));
+
+        assertNull(EmbeddedArtworkLocator.open(write(file)));
+    }
+
+    @Test
+    public void id3v2FollowedByFlac() throws IOException {
+        byte[] cover = image(500, 6);
+        byte[] id3 = id3v2(3, 0, id3v23Frame("TIT2", 0, text("Title")));
+        byte[] flac = flac(flacPicture(3, "image/jpeg", "", cover));
+
+        assertArrayEquals(cover, open(concat(id3, flac)));
+    }
+
+    @Test(expected = EmbeddedArtworkLocator.UnsupportedTagException.class)
+    public void id3v2UnsynchronisedTagIsUnsupported() throws IOException {
+        EmbeddedArtworkLocator.open(write(id3v2(3, 0x80, id3v23Frame("APIC", 0, apic(3, "", image(100, 1))))));
+    }
+
+    @Test(expected = EmbeddedArtworkLocator.UnsupportedTagException.class)
+    public void id3v23CompressedPictureIsUnsupported() throws IOException {
+        EmbeddedArtworkLocator.open(write(id3v2(3, 0, id3v23Frame("APIC", 0x0080, apic(3, "", image(100, 1))))));
+    }
+
+    @Test(expected = EmbeddedArtworkLocator.UnsupportedTagException.class)
+    public void id3v23GroupedPictureIsUnsupported() throws IOException {
+        // The group id byte would otherwise be mistaken for the start of the picture
+        EmbeddedArtworkLocator.open(write(id3v2(3, 0, id3v23Frame("APIC", 0x0020, apic(3, "", image(100, 1))))));
+    }
+
+    @Test(expected = EmbeddedArtworkLocator.UnsupportedTagException.class)
+    public void id3v24GroupedPictureIsUnsupported() throws IOException {
+        byte[] body = apic(3, "", image(100, 1));
+        EmbeddedArtworkLocator.open(write(id3v2(4, 0, id3v24Frame("APIC", syncsafe(body.length), 0x0040, body))));
+    }
+
+    @Test(expected = EmbeddedArtworkLocator.UnsupportedTagException.class)
+    public void id3v24DataLengthIndicatorIsUnsupported() throws IOException {
+        byte[] body = apic(3, "", image(100, 1));
+        EmbeddedArtworkLocator.open(write(id3v2(4, 0, id3v24Frame("APIC", syncsafe(body.length), 0x0001, body))));
+    }
+
+    @Test(expected = EmbeddedArtworkLocator.UnsupportedTagException.class)
+    public void id3v24SizeWithHighBitsIsUnsupported() throws IOException {
+        // 200 written as a plain integer (0xC8) isn't a valid syncsafe integer
+        byte[] body = apic(3, "", image(200 - 14, 1));
+        assertEquals(200, body.length);
+        EmbeddedArtworkLocator.open(write(id3v2(4, 0, id3v24Frame("APIC", body.length, 0, body))));
+    }
+
+    @Test(expected = EmbeddedArtworkLocator.UnsupportedTagException.class)
+    public void id3v24PlainSizeIsUnsupported() throws IOException {
+        // 300 written as a plain integer (0x012C) is also a valid syncsafe integer (172), which lands inside the image
+        byte[] body = apic(3, "", image(300 - 14, 0xFF));
+        assertEquals(300, body.length);
+        EmbeddedArtworkLocator.open(write(id3v2(4, 0,
+                id3v24Frame("APIC", body.length, 0, body),
+                id3v24Frame("TIT2", text("Title").length, 0, text("Title")))));
+    }
+
+    @Test(expected = EmbeddedArtworkLocator.UnsupportedTagException.class)
+    public void id3v2EmptyPictureFrameIsUnsupported() throws IOException {
+        EmbeddedArtworkLocator.open(write(id3v2(3, 0, id3v23Frame("APIC", 0, new byte[0]))));
+    }
+
+    @Test(expected = EmbeddedArtworkLocator.UnsupportedTagException.class)
+    public void id3v2UnterminatedMimeTypeIsUnsupported() throws IOException {
+        EmbeddedArtworkLocator.open(write(id3v2(3, 0, id3v23Frame("APIC", 0, new byte[] { 0, 'i', 'm', 'a', 'g', 'e' }))));
+    }
+
+    @Test(expected = EmbeddedArtworkLocator.UnsupportedTagException.class)
+    public void id3v2FrameOverrunningTagIsUnsupported() throws IOException {
+        byte[] frame = id3v23Frame("APIC", 0, apic(3, "", image(100, 1)));
+        // Claim a frame size larger than the tag
+        ByteBuffer.wrap(frame).putInt(4, 100000);
+        EmbeddedArtworkLocator.open(write(id3v2(3, 0, frame)));
+    }
+
+    @Test(expected = EmbeddedArtworkLocator.UnsupportedTagException.class)
+    public void id3v2TruncatedFileIsUnsupported() throws IOException {
+        byte[] file = id3v2(3, 0, id3v23Frame("APIC", 0, apic(3, "", image(100, 1))));
+        EmbeddedArtworkLocator.open(write(Arrays.copyOf(file, 20)));
+    }
+
+    @Test(expected = EmbeddedArtworkLocator.UnsupportedTagException.class)
+    public void id3v2InvalidFrameIdIsUnsupported() throws IOException {
+        EmbeddedArtworkLocator.open(write(id3v2(3, 0, id3v23Frame("ap!c", 0, apic(3, "", image(100, 1))))));
+    }
+
+    // FLAC
+
+    @Test
+    public void flacPrefersFrontCover() throws IOException {
+        byte[] other = image(100, 1);
+        byte[] cover = image(400, 2);
+        byte[] file = flac(flacPicture(0, "image/png", "other", other), flacPicture(3, "image/jpeg", "front", cover));
+
+        assertArrayEquals(cover, open(file));
+    }
+
+    @Test
+    public void flacWithoutPicture() throws IOException {
+        assertNull(EmbeddedArtworkLocator.open(write(flac())));
+    }
+
+    @Test(expected = EmbeddedArtworkLocator.UnsupportedTagException.class)
+    public void flacPictureOverrunningBlockIsUnsupported() throws IOException {
+        byte[] picture = flacPicture(3, "image/jpeg", "", image(100, 1));
+        // Claim more picture data than the block holds
+        ByteBuffer.wrap(picture).putInt(picture.length - 100 - 4, 1000);
+        EmbeddedArtworkLocator.open(write(flac(picture)));
+    }
+
+    @Test(expected = EmbeddedArtworkLocator.UnsupportedTagException.class)
+    public void flacHugeMimeTypeLengthIsUnsupported() throws IOException {
+        byte[] picture = flacPicture(3, "image/jpeg", "", image(100, 1));
+        ByteBuffer.wrap(picture).putInt(4, 0x7FFFFFF0);
+        EmbeddedArtworkLocator.open(write(flac(picture)));
+    }
+
+    @Test(expected = EmbeddedArtworkLocator.UnsupportedTagException.class)
+    public void flacTruncatedPictureIsUnsupported() throws IOException {
+        byte[] file = flac(flacPicture(3, "image/jpeg", "", image(100, 1)));
+        // Cut off within the picture block's header
+        EmbeddedArtworkLocator.open(write(Arrays.copyOf(file, 4 + 4 + 34 + 4 + 6)));
+    }
+
+    // MP4
+
+    @Test
+    public void mp4Cover() throws IOException {
+        byte[] cover = image(600, 7);
+        byte[] file = mp4(meta(true, ilst(atom("covr", dataAtom(cover)))));
+
+        assertArrayEquals(cover, open(file));
+    }
+
+    @Test
+    public void mp4QuickTimeMeta() throws IOException {
+        byte[] cover = image(600, 8);
+        byte[] file = mp4(meta(false, ilst(atom("covr", dataAtom(cover)))));
+
+        assertArrayEquals(cover, open(file));
+    }
+
+    @Test
+    public void mp4WithoutCover() throws IOException {
+        byte[] file = mp4(meta(true, ilst(atom("\u00A9nam", dataAtom(text("Title"))))));
+
+        assertNull(EmbeddedArtworkLocator.open(write(file)));
+    }
+
+    @Test(expected = EmbeddedArtworkLocator.UnsupportedTagException.class)
+    public void mp4InvalidAtomSizeIsUnsupported() throws IOException {
+        byte[] file = mp4(meta(true, ilst(atom("covr", dataAtom(image(100, 1))))));
+        // The moov atom follows the 20 byte ftyp atom. Claim it's larger than the file.
+        ByteBuffer.wrap(file).putInt(20, file.length * 2);
+        EmbeddedArtworkLocator.open(write(file));
+    }
+
+    // Other
+
+    @Test(expected = EmbeddedArtworkLocator.UnsupportedTagException.class)
+    public void oggIsUnsupported() throws IOException {
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        writeAscii(file, "OggS");
+        file.write(new byte[100]);
+        EmbeddedArtworkLocator.open(write(file.toByteArray()));
+    }
+
+    @Test
+    public void streamSupportsMarkAndReset() throws IOException {
+        byte[] cover = image(50000, 9);
+        try (InputStream inputStream = EmbeddedArtworkLocator.open(write(id3v2(3, 0, id3v23Frame("APIC", 0, apic(3, "", cover)))))) {
+            assertNotNull(inputStream);
+
+            byte[] start = new byte[1000];
+            assertEquals(1000, readFully(inputStream, start));
+            assertArrayEquals(Arrays.copyOf(cover, 1000), start);
+
+            inputStream.mark(Integer.MAX_VALUE);
+            assertEquals(30000, inputStream.skip(30000));
+            assertEquals(cover[31000] & 0xFF, inputStream.read());
+            inputStream.reset();
+
+            byte[] rest = new byte[cover.length - 1000];
+            assertEquals(rest.length, readFully(inputStream, rest));
+            assertArrayEquals(Arrays.copyOfRange(cover, 1000, cover.length), rest);
+            assertEquals(-1, inputStream.read());
+        }
+    }
+
+    // Helpers
+
+    private byte[] open(byte[] file) throws IOException {
+        try (InputStream inputStream = EmbeddedArtworkLocator.open(write(file))) {
+            assertNotNull(inputStream);
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, count);
+            }
+            return outputStream.toByteArray();
+        }
+    }
+
+    private File write(byte[] bytes) throws IOException {
+        File file = temporaryFolder.newFile();
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(bytes);
+        }
+        return file;
+    }
+
+    private static int readFully(InputStream inputStream, byte[] bytes) throws IOException {
+        int total = 0;
+        while (total < bytes.length) {
+            int count = inputStream.read(bytes, total, bytes.length - total);
+            if (count == -1) {
+                break;
+            }
+            total += count;
+        }
+        return total;
+    }
+
+    private static byte[] image(int length, int seed) {
+        byte[] image = new byte[length];
+        for (int i = 0; i < length; i++) {
+            image[i] = seed == 0xFF ? (byte) 0xFF : (byte) (i * 31 + seed);
+        }
+        return image;
+    }
+
+    private static byte[] text(String text) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        outputStream.write(0);
+        writeAscii(outputStream, text);
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] apic(int pictureType, String description, byte[] image) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        outputStream.write(0);
+        writeAscii(outputStream, "image/jpeg");
+        outputStream.write(0);
+        outputStream.write(pictureType);
+        writeAscii(outputStream, description);
+        outputStream.write(0);
+        outputStream.write(image, 0, image.length);
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] id3v2(int majorVersion, int flags, byte[]... frames) {
+        byte[] body = concat(concat(frames), new byte[16]);
+        ByteBuffer header = ByteBuffer.allocate(10);
+        header.put((byte) 'I').put((byte) 'D').put((byte) '3');
+        header.put((byte) majorVersion).put((byte) 0).put((byte) flags);
+        header.putInt(syncsafe(body.length));
+        return concat(header.array(), body);
+    }
+
+    private static byte[] id3v22Frame(String id, byte[] body) {
+        ByteBuffer header = ByteBuffer.allocate(6);
+        header.put(id.getBytes(ASCII));
+        header.put((byte) (body.length >> 16)).put((byte) (body.length >> 8)).put((byte) body.length);
+        return concat(header.array(), body);
+    }
+
+    private static byte[] id3v23Frame(String id, int flags, byte[] body) {
+        return id3v2Frame(id, body.length, flags, body);
+    }
+
+    /**
+     * @param size the size field, as written (so the caller decides whether it's syncsafe).
+     */
+    private static byte[] id3v24Frame(String id, int size, int flags, byte[] body) {
+        return id3v2Frame(id, size, flags, body);
+    }
+
+    private static byte[] id3v2Frame(String id, int size, int flags, byte[] body) {
+        ByteBuffer header = ByteBuffer.allocate(10);
+        header.put(id.getBytes(Charset.forName("ISO-8859-1")));
+        header.putInt(size);
+        header.putShort((short) flags);
+        return concat(header.array(), body);
+    }
+
+    private static int syncsafe(int value) {
+        return (value & 0x7F) | ((value & 0x3F80) << 1) | ((value & 0x1FC000) << 2) | ((value & 0xFE00000) << 3);
+    }
+
+    private static byte[] flac(byte[]... pictures) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        writeAscii(outputStream, "fLaC");
+        // STREAMINFO
+        writeBlockHeader(outputStream, 0, pictures.length == 0, 34);
+        outputStream.write(new byte[34], 0, 34);
+        for (int i = 0; i < pictures.length; i++) {
+            writeBlockHeader(outputStream, 6, i == pictures.length - 1, pictures[i].length);
+            outputStream.write(pictures[i], 0, pictures[i].length);
+        }
+        // Some audio
+        outputStream.write(new byte[64], 0, 64);
+        return outputStream.toByteArray();
+    }
+
+    private static void writeBlockHeader(ByteArrayOutputStream outputStream, int type, boolean isLast, int length) {
+        outputStream.write(type | (isLast ? 0x80 : 0));
+        outputStream.write(length >> 16);
+        outputStream.write(length >> 8);
+        outputStream.write(length);
+    }
+
+    private static byte[] flacPicture(int pictureType, String mimeType, String description, byte[] image) {
+        ByteBuffer buffer = ByteBuffer.allocate(8 + mimeType.length() + 4 + description.length() + 16 + 4 + image.length);
+        buffer.putInt(pictureType);
+        buffer.putInt(mimeType.length()).put(mimeType.getBytes(ASCII));
+        buffer.putInt(description.length()).put(description.getBytes(ASCII));
+        buffer.putInt(500).putInt(500).putInt(24).putInt(0);
+        buffer.putInt(image.length).put(image);
+        return buffer.array();
+    }
+
+    private static byte[] atom(String type, byte[]... children) {
+        byte[] body = concat(children);
+        ByteBuffer header = ByteBuffer.allocate(8);
+        header.putInt(8 + body.length);
+        header.put(type.getBytes(Charset.forName("ISO-8859-1")));
+        return concat(header.array(), body);
+    }
+
+    private static byte[] mp4(byte[] meta) {
+        byte[] ftyp = atom("ftyp", "M4A ".getBytes(ASCII), new byte[4], "M4A ".getBytes(ASCII));
+        byte[] moov = atom("moov", atom("mvhd", new byte[100]), atom("udta", meta));
+        return concat(ftyp, moov, atom("mdat", new byte[64]));
+    }
+
+    private static byte[] meta(boolean isFullBox, byte[] ilst) {
+        byte[] hdlr = atom("hdlr", new byte[25]);
+        return isFullBox ? atom("meta", new byte[4], hdlr, ilst) : atom("meta", hdlr, ilst);
+    }
+
+    private static byte[] ilst(byte[]... items) {
+        return atom("ilst", items);
+    }
+
+    private static byte[] dataAtom(byte[] value) {
+        // Type indicator (13: JPEG) & locale
+        return atom("data", new byte[] { 0, 0, 0, 13, 0, 0, 0, 0 }, value);
+    }
+
+    private static byte[] concat(byte[]... arrays) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        for (byte[] array : arrays) {
+            outputStream.write(array, 0, array.length);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static void writeAscii(ByteArrayOutputStream outputStream, String string) {
+        byte[] bytes = string.getBytes(ASCII);
+        outputStream.write(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,183 @@
+package com.simplecity.amp_library.utils;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link JaroWinklerScorer} (texts normalized once, scored against a threshold, without allocating) agrees
+ * with the string based scoring it replaced (both strings normalized, split & scored with fresh arrays on every call).
+ */
+public class JaroWinklerScorerTest {
+
+    private static final int TEXT_COUNT = 2_000;
+
+    private static final String[] QUERIES = { "beatles", "the wall", "daft punk", "bohemian rhapsody", "zz" };
+
+    private static final double THRESHOLD = 0.8;
+
+    private static final String[] WORDS = {
+            "the", "love", "night", "song", "blue", "wall", "dream", "rhapsody", "punk", "daft", "beat", "beatles", "city",
+            "fire", "heart", "caf\u00e9", "na\u00efve", "\u00dcber", "r\u00e9sum\u00e9", "road", "live", "remastered", "mix"
+    };
+
+    @Test
+    public void scoresMatchReference() {
+        List<String> texts = createTexts(TEXT_COUNT);
+        for (String query : QUERIES) {
+            char[] normalizedQuery = JaroWinklerScorer.normalize(query);
+            for (String text : texts) {
+                double expected = referenceAdjustedScore(text, query);
+                char[] normalizedText = JaroWinklerScorer.normalize(text);
+
+                assertEquals(text + " / " + query, expected, JaroWinklerScorer.adjustedScore(normalizedText, normalizedQuery, 0), 0);
+
+                double thresholded = JaroWinklerScorer.adjustedScore(normalizedText, normalizedQuery, THRESHOLD);
+                if (expected >= THRESHOLD) {
+                    assertEquals(text + " / " + query, expected, thresholded, 0);
+                } else {
+                    assertTrue(text + " / " + query, thresholded == JaroWinklerScorer.NO_MATCH || thresholded == expected);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void searchMatchesReference() {
+        List<String> texts = createTexts(TEXT_COUNT);
+
+        int matches = searchScorer(texts);
+
+        assertTrue(matches > 0);
+        assertEquals(searchReference(texts), matches);
+    }
+
+    /**
+     * Searches as before: every text & the query are normalized for every score.
+     */
+    private static int searchReference(List<String> texts) {
+        int matches = 0;
+        for (String query : QUERIES) {
+            for (String text : texts) {
+                if (referenceAdjustedScore(text, query) >= THRESHOLD) {
+                    matches++;
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Searches as SearchIndex does: the query is normalized once per search, and each text once (on first use).
+     */
+    private static int searchScorer(List<String> texts) {
+        char[][] normalizedTexts = new char[texts.size()][];
+        int matches = 0;
+        for (String query : QUERIES) {
+            char[] normalizedQuery = JaroWinklerScorer.normalize(query);
+            for (int i = 0, size = texts.size(); i < size; i++) {
+                char[] text = normalizedTexts[i];
+                if (text == null) {
+                    text = JaroWinklerScorer.normalize(texts.get(i));
+                    normalizedTexts[i] = text;
+                }
+                if (JaroWinklerScorer.adjustedScore(text, normalizedQuery, THRESHOLD) >= THRESHOLD) {
+                    matches++;
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static List<String> createTexts(int count) {
+        Random random = new Random(42);
+        List<String> texts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int wordCount = 1 + random.nextInt(4);
+            StringBuilder text = new StringBuilder();
+            for (int j = 0; j < wordCount; j++) {
+                if (j > 0) {
+                    text.append(' ');
+                }
+                String word = WORDS[random.nextInt(WORDS.length)];
+                text.append(random.nextInt(4) == 0 ? word.toUpperCase(Locale.US) : word);
+            }
+            texts.add(text.toString());
+        }
+        return texts;
+    }
+
+    /**
+     * The string based scoring: the best of the whole text, and each of its words, against the query.
+     */
+    private static double referenceAdjustedScore(String first, String second) {
+        if (first.isEmpty() || second.isEmpty()) {
+            return 0;
+        }
+        String[] split = first.split("\\s");
+        double score = referenceScore(first, second);
+        if (split.length > 1) {
+            for (String word : split) {
+                if (!word.isEmpty()) {
+                    score = Math.max(score, referenceScore(word, second));
+                }
+            }
+        }
+        return score;
+    }
+
+    private static double referenceScore(String first, String second) {
+        first = Normalizer.normalize(first.toLowerCase(Locale.getDefault()), Normalizer.Form.NFD);
+        second = Normalizer.normalize(second.toLowerCase(Locale.getDefault()), Normalizer.Form.NFD);
+
+        String longer = first.length() > second.length() ? first : second;
+        String shorter = first.length() > second.length() ? second : first;
+
+        int range = Math.max(longer.length() / 2 - 1, 0);
+        boolean[] shorterFlags = new boolean[shorter.length()];
+        boolean[] longerFlags = new boolean[longer.length()];
+        int matches = 0;
+        for (int i = 0; i < shorter.length(); i++) {
+            for (int j = Math.max(i - range, 0); j < Math.min(i + range + 1, longer.length()); j++) {
+                if (!longerFlags[j] && shorter.charAt(i) == longer.charAt(j)) {
+                    shorterFlags[i] = true;
+                    longerFlags[j] = true;
+                    matches++;
+                    break;
+                }
+            }
+        }
+        if (matches == 0) {
+            return 0;
+        }
+
+        int transpositions = 0;
+        for (int i = 0, j = 0; i < shorter.length(); i++) {
+            if (shorterFlags[i]) {
+                while (!longerFlags[j]) {
+                    j++;
+                }
+                if (shorter.charAt(i) != longer.charAt(j)) {
+                    transpositions++;
+                }
+                j++;
+            }
+        }
+
+        int prefix = 0;
+        while (prefix < shorter.length() && first.charAt(prefix) == second.charAt(prefix)) {
+            prefix++;
+        }
+
+        double m = matches;
+        double jaro = (m / first.length() + m / second.length() + (m - transpositions / 2) / m) / 3;
+        double jaroWinkler = jaro < 0.7 ? jaro : jaro + Math.min(0.1, 1D / longer.length()) * prefix * (1D - jaro);
+        return Math.round(jaroWinkler * 100.0D) / 100.0D;
+    }
+}